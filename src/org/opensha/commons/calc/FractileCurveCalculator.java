@@ -29,6 +29,8 @@ import org.opensha.commons.data.function.XY_DataSetList;
 /**
  * <p>Title:  FractileCurveCalculator</p>
  * <p>Description: This class calculates fractiles from a list of discretized functions (e.g., hazzard curves) and their relative weights</p>
+ * <p>For very large numbers of curves, see {@link StreamingFractileCurveCalculator}, which doesn't require
+ * all curves to be held in memory.</p>
  * <p>Copyright: Copyright (c) 2002</p>
  * <p>Company: </p>
  * @author unascribed
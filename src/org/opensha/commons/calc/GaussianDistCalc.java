@@ -36,7 +36,8 @@ import java.text.DecimalFormat;
  * assuming a gaussian distribution.  The object
  * edu.uah.math.psol.distributions.NormalDistribution is not used
  * here because it was found to be ~3 times slower (see the getCDF_Alt()
- * method commented out).
+ * method commented out). See {@link TabulatedGaussianDistCalc} for a faster table based
+ * implementation for use in tight loops with a fixed truncation.
   <p>
  *
  * @author Edward Field
@@ -0,0 +1,606 @@
+package org.opensha.commons.calc;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.opensha.commons.data.function.XY_DataSet;
+
+/**
+ * Streaming alternative to {@link FractileCurveCalculator} for very large logic trees. Curves are
+ * supplied one at a time through {@link #addCurve(XY_DataSet, double)} and are not retained; instead,
+ * each x value keeps its own primitive accumulator. Mean, standard deviation, minimum and maximum
+ * curves are always exact (and identical in definition to those of {@link FractileCurveCalculator}).
+ * Fractiles are computed either:
+ * <ul>
+ * <li><b>exactly</b>, in which case the y value and weight of every curve are stored in primitive arrays
+ * (16 bytes per curve per x value), and fractiles match
+ * {@link org.opensha.commons.data.function.ArbDiscrEmpiricalDistFunc#getDiscreteFractile(double)}</li>
+ * <li><b>approximately</b>, using a weighted t-digest with bounded memory that is independent of the number
+ * of curves. Accuracy is best toward the tails; fractiles are interpolated between digest centroids.</li>
+ * </ul>
+ * Values for different x indexes are stored independently, and accumulators are thread safe, so curves
+ * (or values for individual x indexes, see {@link #addValue(int, double, double)}) can be added from
+ * multiple threads. Fractiles are computed in parallel across x indexes. Calculators are serializable and
+ * can be combined with {@link #merge(StreamingFractileCurveCalculator)}, so partial results from separate
+ * workers (or JVMs) can be combined without ever materializing the full list of curves.
+ */
+public class StreamingFractileCurveCalculator implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default t-digest compression for approximate fractiles. Larger values are more accurate and use
+	 * more memory (the number of centroids is bounded by roughly twice the compression).
+	 */
+	public static final double DEFAULT_COMPRESSION = 200;
+
+	private XY_DataSet xValues;
+	private boolean exact;
+	private double compression;
+	private Accumulator[] accumulators;
+
+	/**
+	 * Creates a calculator with exact fractiles
+	 *
+	 * @param xValues function with the x values of all curves. results are returned as copies of this function
+	 */
+	public StreamingFractileCurveCalculator(XY_DataSet xValues) {
+		this(xValues, true);
+	}
+
+	/**
+	 * @param xValues function with the x values of all curves. results are returned as copies of this function
+	 * @param exact if true, fractiles are exact, otherwise they are approximated with the default compression
+	 */
+	public StreamingFractileCurveCalculator(XY_DataSet xValues, boolean exact) {
+		this(xValues, exact, DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param xValues function with the x values of all curves. results are returned as copies of this function
+	 * @param exact if true, fractiles are exact, otherwise they are approximated
+	 * @param compression t-digest compression used for approximate fractiles
+	 */
+	public StreamingFractileCurveCalculator(XY_DataSet xValues, boolean exact, double compression) {
+		checkNotNull(xValues, "x values cannot be null");
+		checkArgument(xValues.size() > 0, "x values cannot be empty");
+		checkArgument(exact || compression >= 10, "compression must be >= 10");
+		this.xValues = xValues.deepClone();
+		this.exact = exact;
+		this.compression = compression;
+		accumulators = new Accumulator[xValues.size()];
+		for (int i=0; i<accumulators.length; i++)
+			accumulators[i] = new Accumulator(exact, compression);
+	}
+
+	/**
+	 * @return true if fractiles are exact, false if approximate
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * @return number of x values
+	 */
+	public int size() {
+		return accumulators.length;
+	}
+
+	/**
+	 * Adds the given curve, which must have the same number of x values as this calculator
+	 *
+	 * @param curve
+	 * @param weight relative weight of the curve, must be >= 0 (weights don't need to be normalized)
+	 */
+	public void addCurve(XY_DataSet curve, double weight) {
+		checkArgument(curve.size() == accumulators.length,
+				"Number of points in each curve should be same");
+		checkWeight(weight);
+		for (int i=0; i<accumulators.length; i++)
+			accumulators[i].add(curve.getY(i), weight);
+	}
+
+	/**
+	 * Adds the given curve y values, which must have the same number of values as this calculator
+	 *
+	 * @param yVals
+	 * @param weight relative weight of the curve, must be >= 0 (weights don't need to be normalized)
+	 */
+	public void addCurve(double[] yVals, double weight) {
+		checkArgument(yVals.length == accumulators.length,
+				"Number of points in each curve should be same");
+		checkWeight(weight);
+		for (int i=0; i<accumulators.length; i++)
+			accumulators[i].add(yVals[i], weight);
+	}
+
+	/**
+	 * Adds a single value for the given x index. This can be used to process each x index separately
+	 * (for example, in parallel), but a value must eventually be added at each x index for each curve.
+	 *
+	 * @param xIndex
+	 * @param y
+	 * @param weight relative weight of the curve, must be >= 0 (weights don't need to be normalized)
+	 */
+	public void addValue(int xIndex, double y, double weight) {
+		checkWeight(weight);
+		accumulators[xIndex].add(y, weight);
+	}
+
+	private static void checkWeight(double weight) {
+		checkArgument(weight >= 0 && Double.isFinite(weight), "weight must be finite and >= 0: %s", weight);
+	}
+
+	/**
+	 * Adds all curves from the given calculator to this one. The other calculator must have the same
+	 * number of x values and fractile mode, and is not modified.
+	 *
+	 * @param other
+	 */
+	public void merge(StreamingFractileCurveCalculator other) {
+		checkArgument(other.accumulators.length == accumulators.length, "calculators must be the same size");
+		checkArgument(other.exact == exact, "cannot merge exact and approximate calculators");
+		for (int i=0; i<accumulators.length; i++)
+			accumulators[i].merge(other.accumulators[i]);
+	}
+
+	/**
+	 * @param xIndex
+	 * @return number of values added at the given x index
+	 */
+	public long getNumValues(int xIndex) {
+		return accumulators[xIndex].getCount();
+	}
+
+	/**
+	 * @return the weighted mean curve
+	 */
+	public XY_DataSet getMeanCurve() {
+		XY_DataSet result = buildResult("Mean");
+		for (int i=0; i<accumulators.length; i++)
+			result.set(i, accumulators[i].getMean());
+		return result;
+	}
+
+	/**
+	 * @return the weighted standard deviation at each x value (finite number of samples not accounted for)
+	 */
+	public XY_DataSet getStdDev() {
+		XY_DataSet result = buildResult("stdDev");
+		for (int i=0; i<accumulators.length; i++)
+			result.set(i, accumulators[i].getStdDev());
+		return result;
+	}
+
+	/**
+	 * @return the minimum value at each x value among all curves (regardless of weight)
+	 */
+	public XY_DataSet getMinimumCurve() {
+		XY_DataSet result = buildResult("Minimum");
+		for (int i=0; i<accumulators.length; i++)
+			result.set(i, accumulators[i].getMin());
+		return result;
+	}
+
+	/**
+	 * @return the maximum value at each x value among all curves (regardless of weight)
+	 */
+	public XY_DataSet getMaximumCurve() {
+		XY_DataSet result = buildResult("Maximum");
+		for (int i=0; i<accumulators.length; i++)
+			result.set(i, accumulators[i].getMax());
+		return result;
+	}
+
+	/**
+	 * This returns the fractile curve corresponding to the specified fraction
+	 *
+	 * @param fraction value between 0 and 1
+	 * @return
+	 */
+	public XY_DataSet getFractile(double fraction) {
+		return getFractiles(fraction)[0];
+	}
+
+	/**
+	 * This returns fractile curves corresponding to each of the specified fractions. This is more efficient
+	 * than calling {@link #getFractile(double)} for each fraction as each accumulator is only visited once.
+	 * Accumulators are processed in parallel.
+	 *
+	 * @param fractions values between 0 and 1
+	 * @return
+	 */
+	public XY_DataSet[] getFractiles(double... fractions) {
+		for (double fraction : fractions)
+			checkArgument(fraction >= 0 && fraction <= 1, "fraction value must be between 0 and 1");
+		double[][] vals = new double[accumulators.length][];
+		IntStream.range(0, accumulators.length).parallel().forEach(
+				i -> vals[i] = accumulators[i].getFractiles(fractions));
+		XY_DataSet[] results = new XY_DataSet[fractions.length];
+		for (int f=0; f<fractions.length; f++) {
+			results[f] = buildResult(fractions[f]+" fractile");
+			for (int i=0; i<accumulators.length; i++)
+				results[f].set(i, vals[i][f]);
+		}
+		return results;
+	}
+
+	private XY_DataSet buildResult(String name) {
+		XY_DataSet result = xValues.deepClone();
+		result.setName(name);
+		return result;
+	}
+
+	/**
+	 * Accumulator for the values at a single x index
+	 */
+	private static class Accumulator implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private long count;
+		private double min = Double.POSITIVE_INFINITY;
+		private double max = Double.NEGATIVE_INFINITY;
+		// weighted moments (West's algorithm)
+		private double sumWeight;
+		private double mean;
+		private double m2;
+
+		// exact mode
+		private double[] values;
+		private double[] weights;
+		private boolean sorted = true;
+
+		// approximate mode
+		private WeightedDigest digest;
+
+		private Accumulator(boolean exact, double compression) {
+			if (exact) {
+				values = new double[16];
+				weights = new double[16];
+			} else {
+				digest = new WeightedDigest(compression);
+			}
+		}
+
+		private synchronized void add(double value, double weight) {
+			addMoments(value, weight);
+			if (values != null) {
+				if (count == values.length)
+					grow((int)count+1);
+				int index = (int)count;
+				values[index] = value;
+				weights[index] = weight;
+				if (index > 0 && value < values[index-1])
+					sorted = false;
+			} else {
+				digest.add(value, weight);
+			}
+			count++;
+		}
+
+		private void addMoments(double value, double weight) {
+			if (value < min)
+				min = value;
+			if (value > max)
+				max = value;
+			if (weight == 0d)
+				return;
+			sumWeight += weight;
+			double delta = value - mean;
+			mean += delta*weight/sumWeight;
+			m2 += weight*delta*(value - mean);
+		}
+
+		private void grow(int minCapacity) {
+			checkState(minCapacity <= Integer.MAX_VALUE - 8, "too many values for exact fractiles");
+			int capacity = (int)Math.min(Integer.MAX_VALUE - 8, Math.max(minCapacity, 2l*values.length));
+			values = Arrays.copyOf(values, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+		}
+
+		private void merge(Accumulator other) {
+			// copy the other state first to avoid holding both locks
+			Accumulator o;
+			synchronized (other) {
+				o = other.copy();
+			}
+			synchronized (this) {
+				if (o.count == 0)
+					return;
+				min = Math.min(min, o.min);
+				max = Math.max(max, o.max);
+				if (o.sumWeight > 0) {
+					double totWeight = sumWeight + o.sumWeight;
+					double delta = o.mean - mean;
+					m2 += o.m2 + delta*delta*sumWeight*o.sumWeight/totWeight;
+					mean += delta*o.sumWeight/totWeight;
+					sumWeight = totWeight;
+				}
+				if (values != null) {
+					grow((int)(count + o.count));
+					System.arraycopy(o.values, 0, values, (int)count, (int)o.count);
+					System.arraycopy(o.weights, 0, weights, (int)count, (int)o.count);
+					sorted = false;
+				} else {
+					digest.merge(o.digest);
+				}
+				count += o.count;
+			}
+		}
+
+		private Accumulator copy() {
+			Accumulator o = new Accumulator(values != null, digest == null ? 0 : digest.compression);
+			o.count = count;
+			o.min = min;
+			o.max = max;
+			o.sumWeight = sumWeight;
+			o.mean = mean;
+			o.m2 = m2;
+			if (values != null) {
+				o.values = Arrays.copyOf(values, (int)count);
+				o.weights = Arrays.copyOf(weights, (int)count);
+			} else {
+				o.digest = digest.copy();
+			}
+			return o;
+		}
+
+		private synchronized long getCount() {
+			return count;
+		}
+
+		private synchronized double getMean() {
+			return sumWeight > 0 ? mean : Double.NaN;
+		}
+
+		private synchronized double getStdDev() {
+			return sumWeight > 0 ? Math.sqrt(Math.max(0d, m2/sumWeight)) : Double.NaN;
+		}
+
+		private synchronized double getMin() {
+			return count > 0 ? min : Double.NaN;
+		}
+
+		private synchronized double getMax() {
+			return count > 0 ? max : Double.NaN;
+		}
+
+		private synchronized double[] getFractiles(double[] fractions) {
+			double[] ret = new double[fractions.length];
+			if (count == 0) {
+				Arrays.fill(ret, Double.NaN);
+				return ret;
+			}
+			if (values == null) {
+				for (int f=0; f<fractions.length; f++)
+					ret[f] = digest.quantile(fractions[f], min, max);
+				return ret;
+			}
+			int n = (int)count;
+			if (!sorted) {
+				sort(values, weights, 0, n-1);
+				sorted = true;
+			}
+			// cumulative weights of each distinct value, as in ArbDiscrEmpiricalDistFunc
+			double total = 0d;
+			for (int i=0; i<n; i++)
+				total += weights[i];
+			for (int f=0; f<fractions.length; f++) {
+				double fraction = fractions[f];
+				double sum = 0d;
+				ret[f] = values[n-1];
+				for (int i=0; i<n; i++) {
+					sum += weights[i];
+					if (i < n-1 && values[i+1] == values[i])
+						continue;
+					if (fraction <= sum/total) {
+						ret[f] = values[i];
+						break;
+					}
+				}
+			}
+			return ret;
+		}
+	}
+
+	/*
+	 * In place sort of values (and the corresponding weights) on [lo, hi]. Uses a three way partition
+	 * as logic tree branches often have many duplicate values.
+	 */
+	private static void sort(double[] values, double[] weights, int lo, int hi) {
+		while (hi - lo > 16) {
+			int mid = (lo + hi) >>> 1;
+			// median of three pivot
+			double a = values[lo], b = values[mid], c = values[hi];
+			double pivot = a < b ? (b < c ? b : (a < c ? c : a)) : (a < c ? a : (b < c ? c : b));
+			int lt = lo, gt = hi, i = lo;
+			while (i <= gt) {
+				double v = values[i];
+				if (v < pivot)
+					swap(values, weights, lt++, i++);
+				else if (v > pivot)
+					swap(values, weights, i, gt--);
+				else
+					i++;
+			}
+			// recurse into the smaller side
+			if (lt - lo < hi - gt) {
+				sort(values, weights, lo, lt-1);
+				lo = gt+1;
+			} else {
+				sort(values, weights, gt+1, hi);
+				hi = lt-1;
+			}
+		}
+		// insertion sort for small ranges
+		for (int i=lo+1; i<=hi; i++) {
+			double v = values[i];
+			double w = weights[i];
+			int j = i-1;
+			while (j >= lo && values[j] > v) {
+				values[j+1] = values[j];
+				weights[j+1] = weights[j];
+				j--;
+			}
+			values[j+1] = v;
+			weights[j+1] = w;
+		}
+	}
+
+	private static void swap(double[] values, double[] weights, int i, int j) {
+		double tv = values[i]; values[i] = values[j]; values[j] = tv;
+		double tw = weights[i]; weights[i] = weights[j]; weights[j] = tw;
+	}
+
+	/**
+	 * Weighted merging t-digest (Dunning & Ertl) using the arcsine scale function. Incoming values are buffered
+	 * and periodically merged into a sorted list of centroids whose sizes are bounded such that centroids near
+	 * the tails are small.
+	 */
+	private static class WeightedDigest implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double compression;
+
+		private double[] means;
+		private double[] weights;
+		private int numCentroids;
+
+		private double[] bufMeans;
+		private double[] bufWeights;
+		private int bufCount;
+
+		private WeightedDigest(double compression) {
+			this.compression = compression;
+			int maxCentroids = (int)Math.ceil(2*compression) + 10;
+			means = new double[maxCentroids];
+			weights = new double[maxCentroids];
+			int bufSize = 5*maxCentroids;
+			bufMeans = new double[bufSize];
+			bufWeights = new double[bufSize];
+		}
+
+		private void add(double value, double weight) {
+			if (weight == 0d)
+				return;
+			if (bufCount == bufMeans.length)
+				compress();
+			bufMeans[bufCount] = value;
+			bufWeights[bufCount] = weight;
+			bufCount++;
+		}
+
+		private void merge(WeightedDigest other) {
+			for (int i=0; i<other.numCentroids; i++)
+				add(other.means[i], other.weights[i]);
+			for (int i=0; i<other.bufCount; i++)
+				add(other.bufMeans[i], other.bufWeights[i]);
+		}
+
+		private WeightedDigest copy() {
+			WeightedDigest o = new WeightedDigest(compression);
+			o.means = means.clone();
+			o.weights = weights.clone();
+			o.numCentroids = numCentroids;
+			o.bufMeans = bufMeans.clone();
+			o.bufWeights = bufWeights.clone();
+			o.bufCount = bufCount;
+			return o;
+		}
+
+		private double scale(double q) {
+			return compression*Math.asin(2*q - 1)/(2*Math.PI);
+		}
+
+		private double inverseScale(double k) {
+			if (k >= compression/4)
+				return 1d;
+			return (Math.sin(k*2*Math.PI/compression) + 1)/2;
+		}
+
+		private void compress() {
+			if (bufCount == 0)
+				return;
+			int n = numCentroids + bufCount;
+			double[] allMeans = Arrays.copyOf(means, n);
+			double[] allWeights = Arrays.copyOf(weights, n);
+			System.arraycopy(bufMeans, 0, allMeans, numCentroids, bufCount);
+			System.arraycopy(bufWeights, 0, allWeights, numCentroids, bufCount);
+			bufCount = 0;
+			sort(allMeans, allWeights, 0, n-1);
+
+			double total = 0d;
+			for (int i=0; i<n; i++)
+				total += allWeights[i];
+
+			numCentroids = 0;
+			double curMean = allMeans[0];
+			double curWeight = allWeights[0];
+			double weightSoFar = 0d;
+			double limit = total*inverseScale(scale(0d) + 1);
+			for (int i=1; i<n; i++) {
+				if (weightSoFar + curWeight + allWeights[i] <= limit) {
+					curWeight += allWeights[i];
+					curMean += (allMeans[i] - curMean)*allWeights[i]/curWeight;
+				} else {
+					addCentroid(curMean, curWeight);
+					weightSoFar += curWeight;
+					limit = total*inverseScale(scale(weightSoFar/total) + 1);
+					curMean = allMeans[i];
+					curWeight = allWeights[i];
+				}
+			}
+			addCentroid(curMean, curWeight);
+		}
+
+		private void addCentroid(double mean, double weight) {
+			if (numCentroids == means.length) {
+				means = Arrays.copyOf(means, 2*means.length);
+				weights = Arrays.copyOf(weights, 2*weights.length);
+			}
+			means[numCentroids] = mean;
+			weights[numCentroids] = weight;
+			numCentroids++;
+		}
+
+		private double quantile(double q, double min, double max) {
+			compress();
+			if (numCentroids == 0)
+				return Double.NaN;
+			if (numCentroids == 1)
+				return means[0];
+			double total = 0d;
+			for (int i=0; i<numCentroids; i++)
+				total += weights[i];
+			double index = q*total;
+
+			// left tail, between the minimum and the first centroid
+			double halfFirst = weights[0]/2;
+			if (index < halfFirst)
+				return min + (means[0] - min)*index/halfFirst;
+
+			double weightSoFar = halfFirst;
+			for (int i=0; i<numCentroids-1; i++) {
+				double dw = (weights[i] + weights[i+1])/2;
+				if (weightSoFar + dw > index) {
+					double z1 = index - weightSoFar;
+					double z2 = weightSoFar + dw - index;
+					return (means[i]*z2 + means[i+1]*z1)/dw;
+				}
+				weightSoFar += dw;
+			}
+
+			// right tail, between the last centroid and the maximum
+			double halfLast = weights[numCentroids-1]/2;
+			double z = Math.min(1d, (index - weightSoFar)/halfLast);
+			return means[numCentroids-1] + (max - means[numCentroids-1])*z;
+		}
+	}
+
+}
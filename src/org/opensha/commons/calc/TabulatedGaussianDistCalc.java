@@ -0,0 +1,322 @@
+package org.opensha.commons.calc;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Table based alternative to {@link GaussianDistCalc} for calculating exceedance probabilities of a
+ * (possibly truncated) Gaussian distribution in tight loops, such as hazard curve calculations where the
+ * exceedance probability is needed for every site, rupture and intensity measure level.
+ * <br><br>
+ * The upper tail probability, Q(z) = 1 - CDF(z), of the same approximation used by
+ * {@link GaussianDistCalc#getCDF(double)} is precomputed along with its derivative at {@link #TABLE_RESOLUTION}
+ * spacing for 0 &le; z &le; {@link #TABLE_MAX_SRV}, and evaluated with cubic Hermite interpolation (values
+ * for negative z follow from symmetry). This table is shared by all instances; each instance only precomputes
+ * the normalization for its truncation levels, which {@link GaussianDistCalc#getExceedProb(double, double, double)}
+ * recomputes on each call.
+ * <br><br>
+ * <b>Error bound:</b> interpolated values of Q(z) are within a relative error of {@link #MAX_RELATIVE_ERROR} of
+ * those from {@link GaussianDistCalc#getCDF(double)} (the relative error is largest in the far tail, and is
+ * less than 2e-10 for |z| &lt; 4). Exceedance probabilities therefore differ from
+ * {@link GaussianDistCalc#getExceedProb(double, double, double)} by at most 1e-12 (absolute), and untruncated
+ * exceedance probabilities are within that relative error in the upper tail. Values beyond the table are
+ * calculated directly.
+ * <br><br>
+ * {@link #getStandRandVar(double)} inverts the exceedance probability in constant time using a second table
+ * (in terms of sqrt(-ln(2q)), in which the inverse is smooth), refined with a single Newton step. Unlike
+ * {@link GaussianDistCalc#getStandRandVar(double, int, double, double)}, it doesn't take a tolerance and returns
+ * the value at which the (tabulated) exceedance probability equals the target to within 1e-12 (relative).
+ * <br><br>
+ * Instances are immutable and thread safe.
+ */
+public class TabulatedGaussianDistCalc {
+
+	/**
+	 * Spacing of the tabulated values, in units of SRV
+	 */
+	public static final double TABLE_RESOLUTION = 1d/256d;
+
+	/**
+	 * Maximum absolute SRV in the table, beyond which values are calculated directly
+	 */
+	public static final double TABLE_MAX_SRV = 8d;
+
+	/**
+	 * Maximum relative error of tabulated upper tail probabilities, compared with
+	 * {@link GaussianDistCalc#getCDF(double)}
+	 */
+	public static final double MAX_RELATIVE_ERROR = 2e-9;
+
+	private static final int TABLE_SIZE = (int)Math.round(TABLE_MAX_SRV/TABLE_RESOLUTION) + 1;
+	private static final double TABLE_SCALE = 1d/TABLE_RESOLUTION;
+
+	// upper tail probability Q(z) = 1 - CDF(z), and dQ/dz, for z = i*TABLE_RESOLUTION
+	private static final double[] TAIL_PROBS = new double[TABLE_SIZE];
+	private static final double[] TAIL_DERIVS = new double[TABLE_SIZE];
+
+	// inverse table: z as a function of s = sqrt(-ln(2q)) for upper tail probability q
+	private static final int INV_TABLE_SIZE = 1025;
+	private static final double INV_MAX_S = Math.sqrt(-Math.log(2*tailProb(TABLE_MAX_SRV)));
+	private static final double INV_SCALE = (INV_TABLE_SIZE-1)/INV_MAX_S;
+	private static final double[] INV_SRVS = new double[INV_TABLE_SIZE];
+	private static final double[] INV_DERIVS = new double[INV_TABLE_SIZE];
+
+	static {
+		for (int i=0; i<TABLE_SIZE; i++) {
+			double z = i*TABLE_RESOLUTION;
+			TAIL_PROBS[i] = tailProb(z);
+			TAIL_DERIVS[i] = -density(z);
+		}
+		for (int i=0; i<INV_TABLE_SIZE; i++) {
+			double s = i/INV_SCALE;
+			double q = 0.5*Math.exp(-s*s);
+			double z = tailInverseExact(q);
+			INV_SRVS[i] = z;
+			// dz/ds = (dq/ds)/(dq/dz) = (-2 s q)/(-density(z))
+			INV_DERIVS[i] = i == 0 ? 0d : 2*s*q/density(z);
+		}
+	}
+
+	private final double lowerTruncLevel, upperTruncLevel;
+	// CDF values at the truncation levels, and the normalization factor
+	private final double pLow, pUp, norm;
+
+	/**
+	 * Creates a calculator with no truncation
+	 */
+	public TabulatedGaussianDistCalc() {
+		this(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Creates a calculator with the given truncation, equivalent to
+	 * {@link GaussianDistCalc#getExceedProb(double, int, double)}
+	 *
+	 * @param truncType  set 0 for none, 1 for upper only, and 2 for two sided
+	 * @param truncLevel in units of SRV (must be positive, and can't = 0.0 for truncType = 2)
+	 */
+	public TabulatedGaussianDistCalc(int truncType, double truncLevel) {
+		this(lowerForTruncType(truncType, truncLevel), truncType == 0 ? Double.POSITIVE_INFINITY : truncLevel);
+	}
+
+	private static double lowerForTruncType(int truncType, double truncLevel) {
+		if (truncType == 2)
+			Preconditions.checkArgument(truncLevel > 0d, "truncLevel must be greater than zero for truncType=2");
+		else
+			Preconditions.checkArgument(truncLevel >= 0d, "truncLevel cannot be negative");
+		switch (truncType) {
+		case 0:
+		case 1:
+			return Double.NEGATIVE_INFINITY;
+		case 2:
+			return -truncLevel;
+		default:
+			throw new IllegalArgumentException("truncType must be 0, 1, or 2");
+		}
+	}
+
+	/**
+	 * Creates a calculator which is non-symmetrically truncated on both sides, equivalent to
+	 * {@link GaussianDistCalc#getExceedProb(double, double, double)}. Either level can be infinite.
+	 *
+	 * @param lowerTruncLevel in units of SRV
+	 * @param upperTruncLevel in units of SRV
+	 */
+	public TabulatedGaussianDistCalc(double lowerTruncLevel, double upperTruncLevel) {
+		Preconditions.checkArgument(lowerTruncLevel < upperTruncLevel,
+				"lowerTruncLevel should be less than upperTruncLevel");
+		this.lowerTruncLevel = lowerTruncLevel;
+		this.upperTruncLevel = upperTruncLevel;
+		pLow = Double.isInfinite(lowerTruncLevel) ? 0d : GaussianDistCalc.getCDF(lowerTruncLevel);
+		pUp = Double.isInfinite(upperTruncLevel) ? 1d : GaussianDistCalc.getCDF(upperTruncLevel);
+		norm = 1d/(pUp - pLow);
+	}
+
+	public double getLowerTruncLevel() {
+		return lowerTruncLevel;
+	}
+
+	public double getUpperTruncLevel() {
+		return upperTruncLevel;
+	}
+
+	/*
+	 * Direct calculation of the upper tail probability for z >= 0, the same as GaussianDistCalc.getCDF
+	 */
+	private static double tailProb(double z) {
+		double poly = (((((GaussianDistCalc.d6*z+GaussianDistCalc.d5)*z+GaussianDistCalc.d4)*z
+				+GaussianDistCalc.d3)*z+GaussianDistCalc.d2)*z+GaussianDistCalc.d1)*z+1;
+		return 0.5*Math.pow(poly, -16);
+	}
+
+	/*
+	 * Probability density (derivative of the CDF) of the approximation, for z >= 0
+	 */
+	private static double density(double z) {
+		double poly = (((((GaussianDistCalc.d6*z+GaussianDistCalc.d5)*z+GaussianDistCalc.d4)*z
+				+GaussianDistCalc.d3)*z+GaussianDistCalc.d2)*z+GaussianDistCalc.d1)*z+1;
+		double polyDeriv = ((((6*GaussianDistCalc.d6*z+5*GaussianDistCalc.d5)*z+4*GaussianDistCalc.d4)*z
+				+3*GaussianDistCalc.d3)*z+2*GaussianDistCalc.d2)*z+GaussianDistCalc.d1;
+		return 8d*Math.pow(poly, -17)*polyDeriv;
+	}
+
+	/*
+	 * Tabulated upper tail probability for z >= 0
+	 */
+	private static double interpTailProb(double z) {
+		if (z >= TABLE_MAX_SRV)
+			return tailProb(z);
+		double x = z*TABLE_SCALE;
+		int i = (int)x;
+		double t = x - i;
+		return hermite(TAIL_PROBS[i], TAIL_PROBS[i+1], TAIL_DERIVS[i]*TABLE_RESOLUTION,
+				TAIL_DERIVS[i+1]*TABLE_RESOLUTION, t);
+	}
+
+	/*
+	 * Linearly interpolated density for 0 <= z < TABLE_MAX_SRV
+	 */
+	private static double interpDensity(double z) {
+		double x = z*TABLE_SCALE;
+		int i = (int)x;
+		double t = x - i;
+		return -(TAIL_DERIVS[i] + t*(TAIL_DERIVS[i+1] - TAIL_DERIVS[i]));
+	}
+
+	/*
+	 * Cubic Hermite interpolation on the unit interval, with derivatives already scaled by the interval width
+	 */
+	private static double hermite(double y0, double y1, double m0, double m1, double t) {
+		double t2 = t*t;
+		double t3 = t2*t;
+		return (2*t3 - 3*t2 + 1)*y0 + (t3 - 2*t2 + t)*m0 + (-2*t3 + 3*t2)*y1 + (t3 - t2)*m1;
+	}
+
+	/**
+	 * Tabulated equivalent of {@link GaussianDistCalc#getCDF(double)}
+	 * @param standRandVariable
+	 * @return
+	 */
+	public static double getCDF(double standRandVariable) {
+		if (standRandVariable < 0)
+			return interpTailProb(-standRandVariable);
+		return 1d - interpTailProb(standRandVariable);
+	}
+
+	/*
+	 * Tabulated untruncated exceedance probability, keeping full relative precision in the upper tail
+	 */
+	private static double untruncatedExceedProb(double standRandVariable) {
+		if (standRandVariable < 0)
+			return 1d - interpTailProb(-standRandVariable);
+		return interpTailProb(standRandVariable);
+	}
+
+	/**
+	 * Exceedance probability for the given standardized random variable
+	 * @param standRandVariable
+	 * @return
+	 */
+	public double getExceedProb(double standRandVariable) {
+		if (standRandVariable > upperTruncLevel)
+			return 0d;
+		if (standRandVariable < lowerTruncLevel)
+			return 1d;
+		if (pLow == 0d)
+			// no lower truncation: (pUp - cdf)/pUp = (exceed - (1 - pUp))/pUp
+			return (untruncatedExceedProb(standRandVariable) - (1d - pUp))*norm;
+		return (pUp - getCDF(standRandVariable))*norm;
+	}
+
+	/**
+	 * Calculates exceedance probabilities for each of the given values, for example, intensity measure levels
+	 * for a ground motion with the given mean and standard deviation.
+	 * If the standard deviation is zero, the exceedance probability is 1 for values less than or equal to the
+	 * mean, and 0 otherwise.
+	 *
+	 * @param mean
+	 * @param std standard deviation, must be >= 0
+	 * @param vals values at which to calculate the exceedance probability (e.g., log intensity measure levels)
+	 * @param out array for the exceedance probabilities, must be at least as long as vals
+	 */
+	public void getExceedProbs(double mean, double std, double[] vals, double[] out) {
+		Preconditions.checkArgument(std >= 0d, "standard deviation must be >= 0");
+		Preconditions.checkArgument(out.length >= vals.length, "output array is too short");
+		if (std == 0d) {
+			for (int i=0; i<vals.length; i++)
+				out[i] = vals[i] > mean ? 0d : 1d;
+			return;
+		}
+		double invStd = 1d/std;
+		for (int i=0; i<vals.length; i++)
+			out[i] = getExceedProb((vals[i] - mean)*invStd);
+	}
+
+	/*
+	 * Exact (to the precision of the approximation) inverse of the upper tail probability, using bisection
+	 * followed by Newton's method. Only used to build the inverse table and beyond its range.
+	 */
+	private static double tailInverseExact(double q) {
+		if (q >= 0.5)
+			return 0d;
+		double lower = 0d;
+		double upper = 1d;
+		while (tailProb(upper) > q)
+			upper *= 2;
+		for (int i=0; i<30; i++) {
+			double mid = 0.5*(lower + upper);
+			if (tailProb(mid) > q)
+				lower = mid;
+			else
+				upper = mid;
+		}
+		double z = 0.5*(lower + upper);
+		for (int i=0; i<3; i++)
+			z += (tailProb(z) - q)/density(z);
+		return z;
+	}
+
+	/*
+	 * Inverse of the upper tail probability (q <= 0.5), in constant time
+	 */
+	private static double tailInverse(double q) {
+		double s = Math.sqrt(-Math.log(2*q));
+		if (s >= INV_MAX_S)
+			return tailInverseExact(q);
+		double x = s*INV_SCALE;
+		int i = (int)x;
+		double t = x - i;
+		double z = hermite(INV_SRVS[i], INV_SRVS[i+1], INV_DERIVS[i]/INV_SCALE, INV_DERIVS[i+1]/INV_SCALE, t);
+		// single Newton step on the tabulated tail probability
+		if (z > 0d)
+			z += (interpTailProb(z) - q)/interpDensity(z);
+		return z;
+	}
+
+	/**
+	 * Returns the standardized random variable at which the exceedance probability equals the given value.
+	 * If the exceedance probability is 0 or 1, the upper or lower truncation level is returned (which is infinite
+	 * if untruncated).
+	 *
+	 * @param exceedProb between 0 and 1
+	 * @return
+	 */
+	public double getStandRandVar(double exceedProb) {
+		Preconditions.checkArgument(exceedProb >= 0d && exceedProb <= 1d,
+				"invalid exceed probability (prob=%s)", exceedProb);
+		if (exceedProb == 0d)
+			return upperTruncLevel;
+		if (exceedProb == 1d)
+			return lowerTruncLevel;
+		// solve CDF(z) = pUp - exceedProb*(pUp - pLow), using whichever tail has better precision
+		double upperTail = (1d - pUp) + exceedProb*(pUp - pLow);
+		double z;
+		if (upperTail <= 0.5) {
+			z = tailInverse(upperTail);
+		} else {
+			double lowerTail = pUp - exceedProb*(pUp - pLow);
+			z = -tailInverse(lowerTail);
+		}
+		return Math.max(lowerTruncLevel, Math.min(upperTruncLevel, z));
+	}
+
+}
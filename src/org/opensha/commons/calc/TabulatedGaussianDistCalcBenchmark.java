@@ -0,0 +1,92 @@
+package org.opensha.commons.calc;
+
+import java.util.Random;
+
+/**
+ * Rough benchmark of the speed and accuracy of {@link TabulatedGaussianDistCalc} compared to
+ * {@link GaussianDistCalc}, for exceedance probabilities (as in a hazard curve calculation, with a random mean
+ * and standard deviation and a fixed set of intensity measure levels) and for inverse lookups.
+ * <br><br>
+ * Usage: TabulatedGaussianDistCalcBenchmark [numCurves]
+ */
+public class TabulatedGaussianDistCalcBenchmark {
+	
+	private static final int ROUNDS = 5;
+	
+	public static void main(String[] args) {
+		int numCurves = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int truncType = 2;
+		double truncLevel = 3d;
+		
+		double[] imls = new double[51];
+		for (int i=0; i<imls.length; i++)
+			imls[i] = Math.log(0.0001*Math.pow(10, 4d*i/(imls.length-1)));
+		Random r = new Random(numCurves);
+		double[] means = new double[numCurves];
+		double[] stds = new double[numCurves];
+		for (int i=0; i<numCurves; i++) {
+			means[i] = Math.log(0.001 + r.nextDouble());
+			stds[i] = 0.4 + 0.4*r.nextDouble();
+		}
+		
+		TabulatedGaussianDistCalc calc = new TabulatedGaussianDistCalc(truncType, truncLevel);
+		double[] exact = new double[imls.length];
+		double[] tabulated = new double[imls.length];
+		double maxAbsDiff = 0d;
+		double maxRelDiff = 0d;
+		double sum = 0d;
+		for (int round=0; round<ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i=0; i<numCurves; i++) {
+				for (int j=0; j<imls.length; j++) {
+					double srv = (imls[j] - means[i])/stds[i];
+					exact[j] = GaussianDistCalc.getExceedProb(srv, truncType, truncLevel);
+				}
+				sum += exact[0];
+			}
+			double exactNanos = (double)(System.nanoTime() - start)/(numCurves*(double)imls.length);
+			
+			start = System.nanoTime();
+			for (int i=0; i<numCurves; i++) {
+				calc.getExceedProbs(means[i], stds[i], imls, tabulated);
+				sum += tabulated[0];
+			}
+			double tabNanos = (double)(System.nanoTime() - start)/(numCurves*(double)imls.length);
+			System.out.println("Round "+round+": GaussianDistCalc: "+(float)exactNanos
+					+" ns/prob, TabulatedGaussianDistCalc: "+(float)tabNanos+" ns/prob");
+		}
+		
+		for (int i=0; i<numCurves; i++) {
+			calc.getExceedProbs(means[i], stds[i], imls, tabulated);
+			for (int j=0; j<imls.length; j++) {
+				double srv = (imls[j] - means[i])/stds[i];
+				double prob = GaussianDistCalc.getExceedProb(srv, truncType, truncLevel);
+				double diff = Math.abs(prob - tabulated[j]);
+				maxAbsDiff = Math.max(maxAbsDiff, diff);
+				if (prob > 0d)
+					maxRelDiff = Math.max(maxRelDiff, diff/prob);
+			}
+		}
+		System.out.println("Max absolute difference: "+maxAbsDiff+", max relative difference: "+maxRelDiff);
+		
+		// inverse lookups
+		int numInverse = 10000;
+		double[] probs = new double[numInverse];
+		for (int i=0; i<numInverse; i++)
+			probs[i] = Math.pow(10, -6*r.nextDouble());
+		long start = System.nanoTime();
+		for (double prob : probs)
+			sum += GaussianDistCalc.getStandRandVar(prob, truncType, truncLevel, 1e-6);
+		double exactNanos = (double)(System.nanoTime() - start)/numInverse;
+		start = System.nanoTime();
+		for (int round=0; round<ROUNDS; round++)
+			for (double prob : probs)
+				sum += calc.getStandRandVar(prob);
+		double tabNanos = (double)(System.nanoTime() - start)/(ROUNDS*numInverse);
+		System.out.println("getStandRandVar: GaussianDistCalc: "+(float)exactNanos
+				+" ns, TabulatedGaussianDistCalc: "+(float)tabNanos+" ns");
+		// print the checksum so that the work can't be optimized away
+		System.out.println("checksum: "+sum);
+	}
+
+}
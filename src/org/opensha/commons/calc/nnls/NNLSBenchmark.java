@@ -0,0 +1,75 @@
+package org.opensha.commons.calc.nnls;
+
+import java.util.Random;
+
+/**
+ * Compares {@link NNLSWrapper} (the Lawson-Hanson {@link Nnls} port) with {@link ParallelNNLS} on
+ * synthetic problems of increasing size. Each problem has a uniform random A with twice as many rows
+ * as columns, and b computed from a sparse non-negative solution plus noise. ParallelNNLS is timed
+ * both from a cold start and warm started from the solution of the same problem with a perturbed b.
+ * <br><br>
+ * Usage: NNLSBenchmark [maxCols]
+ */
+public class NNLSBenchmark {
+
+	public static void main(String[] args) {
+		int maxCols = args.length > 0 ? Integer.parseInt(args[0]) : 1600;
+		System.out.println("Threads: "+Runtime.getRuntime().availableProcessors());
+		System.out.println("rows\tcols\tnnlsMS\tsetupMS\tcoldMS\tcoldIts\twarmMS\twarmIts\trnormRatio");
+		for (int ncols=100; ncols<=maxCols; ncols*=2) {
+			int nrows = 2*ncols;
+			Random r = new Random(ncols);
+			double[] A = new double[nrows*ncols];
+			for (int i=0; i<A.length; i++)
+				A[i] = r.nextDouble();
+			double[] b = new double[nrows];
+			for (int j=0; j<ncols; j++) {
+				if (r.nextDouble() < 0.3) {
+					double xj = r.nextDouble();
+					for (int i=0; i<nrows; i++)
+						b[i] += A[j*nrows + i]*xj;
+				}
+			}
+			double[] bPerturbed = new double[nrows];
+			for (int i=0; i<nrows; i++) {
+				b[i] += r.nextGaussian();
+				bPerturbed[i] = b[i] + 0.01*r.nextGaussian();
+			}
+
+			long start = System.nanoTime();
+			NNLSWrapper wrapper = new NNLSWrapper(A, nrows, ncols);
+			double[] xRef = new double[ncols];
+			wrapper.solve(b, xRef);
+			double nnlsMS = (System.nanoTime() - start)/1e6;
+
+			ParallelNNLS nnls = new ParallelNNLS(A, nrows, ncols);
+			double[] xPrev = new double[ncols];
+			nnls.solve(bPerturbed, xPrev);
+			double[] x = new double[ncols];
+			nnls.solve(b, x);
+			double coldMS = nnls.getSolveMillis();
+			int coldIts = nnls.getIterations();
+			double rnorm = nnls.getResidualNorm();
+			nnls.solve(b, xPrev, true);
+			double warmMS = nnls.getSolveMillis();
+			int warmIts = nnls.getIterations();
+
+			System.out.println(nrows+"\t"+ncols+"\t"+(float)nnlsMS+"\t"+(float)nnls.getSetupMillis()
+					+"\t"+(float)coldMS+"\t"+coldIts+"\t"+(float)warmMS+"\t"+warmIts
+					+"\t"+(float)(rnorm/residualNorm(A, b, xRef)));
+		}
+	}
+
+	private static double residualNorm(double[] A, double[] b, double[] x) {
+		int nrows = b.length;
+		double[] r = b.clone();
+		for (int j=0; j<x.length; j++)
+			for (int i=0; i<nrows; i++)
+				r[i] -= A[j*nrows + i]*x[j];
+		double sum = 0;
+		for (double v : r)
+			sum += v*v;
+		return Math.sqrt(sum);
+	}
+
+}
@@ -0,0 +1,492 @@
+package org.opensha.commons.calc.nnls;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Non-negative least squares solver for large problems: finds the x that minimizes ||Ax - b|| subject
+ * to x >= 0, with A given in the same flat column-major layout as {@link NNLSWrapper}.
+ * <br><br>
+ * This uses the Lawson-Hanson active set algorithm (as does {@link Nnls}), but works on the normal
+ * equations (as in the "fast NNLS" of Bro and De Jong, 1997). The products AᵀA and Aᵀb are computed up front
+ * in cache sized blocks, in parallel, and each iteration then solves the passive set subproblem with a
+ * Cholesky factorization that is updated (rather than recomputed) as variables enter and leave the passive
+ * set. The cost of each iteration is therefore independent of the number of rows of A. Dual vector updates
+ * are also computed in parallel.
+ * <br><br>
+ * AᵀA is held in memory, which requires 8n² bytes for n columns. Because the normal equations square the
+ * condition number of A, {@link Nnls} may be more accurate for badly conditioned problems.
+ * <br><br>
+ * Repeated solves with small changes to b (or to A via {@link #update(double[])}) can be warm started from
+ * a previous solution, whose positive values define the initial passive set; see
+ * {@link #solve(double[], double[], boolean)}. Iteration counts and timings of the most recent solve are
+ * available after each call. Instances are not thread safe.
+ */
+public class ParallelNNLS {
+
+	// columns per block for the AᵀA computation
+	private static final int COL_BLOCK = 32;
+	// rows per block for the AᵀA computation
+	private static final int ROW_BLOCK = 512;
+	// minimum number of dual vector entries per parallel task
+	private static final int DUAL_BLOCK = 256;
+	// relative size of a new Cholesky pivot below which a column is considered dependent
+	private static final double DEPENDENT_TOL = 1e-12;
+
+	private double[] A;
+	private final int nrows;
+	private final int ncols;
+
+	private final double[] AtA; // row major, symmetric
+	private final double[] Atb;
+	private final double[] w;
+	private final double[] s;
+	private final boolean[] passive;
+	private final boolean[] rejected;
+
+	// passive set, in order of addition, with lower triangular Cholesky factor of AᵀA[P,P]
+	private final int[] pSet;
+	private int numPassive;
+	private double[][] L;
+	private final double[] work;
+
+	private boolean parallel = true;
+	private int maxIterations;
+	private double tol;
+
+	// statistics
+	private long setupNanos;
+	private long solveNanos;
+	private int iterations;
+	private int innerIterations;
+	private double rnorm;
+
+	/**
+	 * Creates a solver for the given matrix, which is referenced (not copied) and must not be
+	 * modified other than through {@link #update(double[])}.
+	 *
+	 * @param A matrix in column major order, such that A[row + col*nrows] is the value at (row, col)
+	 * @param nrows number of rows in A (the length of b)
+	 * @param ncols number of columns in A (the length of x)
+	 */
+	public ParallelNNLS(double[] A, int nrows, int ncols) {
+		Preconditions.checkArgument(nrows > 0 && ncols > 0, "A must have at least one row and column");
+		Preconditions.checkArgument(A.length == (long)nrows*ncols, "A must have nrows*ncols elements");
+		Preconditions.checkArgument((long)ncols*ncols <= Integer.MAX_VALUE - 8, "Too many columns: %s", ncols);
+		this.nrows = nrows;
+		this.ncols = ncols;
+		AtA = new double[ncols*ncols];
+		Atb = new double[ncols];
+		w = new double[ncols];
+		s = new double[ncols];
+		passive = new boolean[ncols];
+		rejected = new boolean[ncols];
+		pSet = new int[ncols];
+		L = new double[Math.min(ncols, 16)][];
+		work = new double[ncols];
+		maxIterations = 3*ncols;
+		update(A);
+	}
+
+	/**
+	 * Replaces A with a matrix of the same dimensions and recomputes AᵀA. The array is referenced, not copied.
+	 * @param A
+	 */
+	public void update(double[] A) {
+		Preconditions.checkArgument(A.length == (long)nrows*ncols, "A must have nrows*ncols elements");
+		long start = System.nanoTime();
+		this.A = A;
+		int numBlocks = (ncols + COL_BLOCK - 1) / COL_BLOCK;
+		// upper triangle of block pairs
+		int numPairs = numBlocks*(numBlocks+1)/2;
+		IntStream pairs = IntStream.range(0, numPairs);
+		if (parallel)
+			pairs = pairs.parallel();
+		pairs.forEach(pair -> {
+			// map pair index to (bi, bj) with bi <= bj
+			int bi = 0;
+			int rem = pair;
+			while (rem >= numBlocks - bi) {
+				rem -= numBlocks - bi;
+				bi++;
+			}
+			int bj = bi + rem;
+			computeBlock(bi*COL_BLOCK, Math.min(ncols, (bi+1)*COL_BLOCK),
+					bj*COL_BLOCK, Math.min(ncols, (bj+1)*COL_BLOCK));
+		});
+		// mirror to the lower triangle
+		for (int i=0; i<ncols; i++)
+			for (int j=0; j<i; j++)
+				AtA[i*ncols + j] = AtA[j*ncols + i];
+
+		// scale for the dual vector tolerance, as in MATLAB's lsqnonneg
+		double maxColSum = 0;
+		for (int j=0; j<ncols; j++) {
+			double sum = 0;
+			for (int r=0; r<nrows; r++)
+				sum += Math.abs(A[j*nrows + r]);
+			maxColSum = Math.max(maxColSum, sum);
+		}
+		tol = 10*Math.ulp(1d)*maxColSum*Math.max(nrows, ncols);
+		setupNanos = System.nanoTime() - start;
+	}
+
+	/*
+	 * Computes AᵀA for columns [i0,i1) x [j0,j1) with i0 <= j0, only where i <= j. Rows are processed in
+	 * blocks so that the column segments of both blocks stay in cache.
+	 */
+	private void computeBlock(int i0, int i1, int j0, int j1) {
+		for (int i=i0; i<i1; i++)
+			for (int j=Math.max(i, j0); j<j1; j++)
+				AtA[i*ncols + j] = 0d;
+		for (int r0=0; r0<nrows; r0+=ROW_BLOCK) {
+			int r1 = Math.min(nrows, r0 + ROW_BLOCK);
+			for (int i=i0; i<i1; i++) {
+				int ci = i*nrows;
+				for (int j=Math.max(i, j0); j<j1; j++) {
+					int cj = j*nrows;
+					double sum = 0;
+					for (int r=r0; r<r1; r++)
+						sum += A[ci + r]*A[cj + r];
+					AtA[i*ncols + j] += sum;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param parallel if true (the default), AᵀA, Aᵀb and dual vector computations use multiple threads
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * @param maxIterations maximum number of outer iterations per solve, 3*ncols by default
+	 * (as with {@link Nnls})
+	 */
+	public void setMaxIterations(int maxIterations) {
+		Preconditions.checkArgument(maxIterations > 0);
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Solves from an initial solution of zero.
+	 *
+	 * @param b right hand side, of length nrows
+	 * @param x array of length ncols to be filled with the solution
+	 * @return true if successful, false if the iteration limit was reached
+	 */
+	public boolean solve(double[] b, double[] x) {
+		return solve(b, x, false);
+	}
+
+	/**
+	 * Solves the problem, optionally warm started from the solution held in x. When warm starting, the
+	 * initial passive set consists of the variables with positive values in x (negative values are treated
+	 * as zero), so a previous solution of a similar problem can greatly reduce the number of iterations.
+	 *
+	 * @param b right hand side, of length nrows
+	 * @param x array of length ncols to be filled with the solution; if warmStart is true, it must hold
+	 * the starting solution
+	 * @param warmStart if true, start from the values in x
+	 * @return true if successful, false if the iteration limit was reached
+	 */
+	public boolean solve(double[] b, double[] x, boolean warmStart) {
+		Preconditions.checkArgument(b.length == nrows, "b must be of length nrows");
+		Preconditions.checkArgument(x.length == ncols, "x must be of length ncols");
+		long start = System.nanoTime();
+		iterations = 0;
+		innerIterations = 0;
+
+		computeAtb(b);
+
+		numPassive = 0;
+		Arrays.fill(passive, false);
+		Arrays.fill(rejected, false);
+		if (warmStart) {
+			for (int j=0; j<ncols; j++) {
+				if (x[j] > 0 && numPassive < nrows && addPassive(j)) {
+					continue;
+				}
+				x[j] = 0d;
+			}
+			if (numPassive > 0) {
+				solvePassive();
+				removeInfeasible(x);
+			}
+		} else {
+			Arrays.fill(x, 0d);
+		}
+
+		boolean converged = false;
+		while (iterations < maxIterations) {
+			if (numPassive == ncols || numPassive >= nrows) {
+				converged = true;
+				break;
+			}
+			computeDual(x);
+			// find the largest dual value
+			int jMax = -1;
+			double wMax = tol;
+			for (int j=0; j<ncols; j++) {
+				if (!passive[j] && !rejected[j] && w[j] > wMax) {
+					wMax = w[j];
+					jMax = j;
+				}
+			}
+			if (jMax < 0) {
+				converged = true;
+				break;
+			}
+			iterations++;
+			if (!addPassive(jMax)) {
+				// linearly dependent on the passive set
+				rejected[jMax] = true;
+				continue;
+			}
+			solvePassive();
+			if (s[jMax] <= 0) {
+				// rounding error, would be immediately removed
+				removePassive(numPassive-1);
+				rejected[jMax] = true;
+				continue;
+			}
+			Arrays.fill(rejected, false);
+			removeInfeasible(x);
+		}
+
+		rnorm = computeResidualNorm(b, x);
+		solveNanos = System.nanoTime() - start;
+		return converged;
+	}
+
+	private void computeAtb(double[] b) {
+		IntStream cols = IntStream.range(0, ncols);
+		if (parallel)
+			cols = cols.parallel();
+		cols.forEach(j -> {
+			int cj = j*nrows;
+			double sum = 0;
+			for (int r=0; r<nrows; r++)
+				sum += A[cj + r]*b[r];
+			Atb[j] = sum;
+		});
+	}
+
+	/*
+	 * Computes the dual vector w = Aᵀb - AᵀA x for variables outside of the passive set.
+	 */
+	private void computeDual(double[] x) {
+		int numBlocks = (ncols + DUAL_BLOCK - 1) / DUAL_BLOCK;
+		IntStream blocks = IntStream.range(0, numBlocks);
+		if (parallel && numPassive*(long)ncols > 1 << 16)
+			blocks = blocks.parallel();
+		blocks.forEach(block -> {
+			int end = Math.min(ncols, (block+1)*DUAL_BLOCK);
+			for (int j=block*DUAL_BLOCK; j<end; j++) {
+				if (passive[j])
+					continue;
+				int row = j*ncols;
+				double sum = Atb[j];
+				for (int k=0; k<numPassive; k++) {
+					int p = pSet[k];
+					sum -= AtA[row + p]*x[p];
+				}
+				w[j] = sum;
+			}
+		});
+	}
+
+	/*
+	 * Inner loop: while the passive set solution has non-positive values, moves x toward it as far as
+	 * feasible and drops the variables that reach zero.
+	 */
+	private void removeInfeasible(double[] x) {
+		while (true) {
+			double alpha = Double.POSITIVE_INFINITY;
+			int kMin = -1;
+			for (int k=0; k<numPassive; k++) {
+				int j = pSet[k];
+				if (s[j] <= 0) {
+					double a = x[j] <= 0 ? 0d : x[j] / (x[j] - s[j]);
+					if (a < alpha) {
+						alpha = a;
+						kMin = k;
+					}
+				}
+			}
+			if (kMin < 0) {
+				for (int k=0; k<numPassive; k++)
+					x[pSet[k]] = s[pSet[k]];
+				return;
+			}
+			innerIterations++;
+			for (int k=0; k<numPassive; k++) {
+				int j = pSet[k];
+				x[j] += alpha*(s[j] - x[j]);
+			}
+			// remove the limiting variable, and any others that reached zero
+			x[pSet[kMin]] = 0d;
+			for (int k=numPassive; --k>=0;) {
+				int j = pSet[k];
+				if (x[j] <= 0) {
+					x[j] = 0d;
+					removePassive(k);
+				}
+			}
+			if (numPassive == 0)
+				return;
+			solvePassive();
+		}
+	}
+
+	/*
+	 * Adds the given variable to the passive set and extends the Cholesky factor by one row. Returns
+	 * false (and leaves the passive set unchanged) if the column is numerically dependent on the
+	 * passive set.
+	 */
+	private boolean addPassive(int j) {
+		int p = numPassive;
+		int row = j*ncols;
+		double[] l = new double[p+1];
+		double dot = 0;
+		// forward substitution for L l = AᵀA[P,j]
+		for (int k=0; k<p; k++) {
+			double[] Lk = L[k];
+			double sum = AtA[row + pSet[k]];
+			for (int i=0; i<k; i++)
+				sum -= Lk[i]*l[i];
+			l[k] = sum / Lk[k];
+			dot += l[k]*l[k];
+		}
+		double diag = AtA[row + j];
+		double d2 = diag - dot;
+		if (!(d2 > DEPENDENT_TOL*diag))
+			return false;
+		l[p] = Math.sqrt(d2);
+		if (p == L.length)
+			L = Arrays.copyOf(L, Math.min(ncols, 2*L.length));
+		L[p] = l;
+		pSet[p] = j;
+		passive[j] = true;
+		numPassive++;
+		return true;
+	}
+
+	/*
+	 * Removes the variable at position k of the passive set, updating the Cholesky factor with Givens
+	 * rotations.
+	 */
+	private void removePassive(int k) {
+		passive[pSet[k]] = false;
+		int p = numPassive;
+		for (int i=k; i<p-1; i++) {
+			pSet[i] = pSet[i+1];
+			L[i] = L[i+1];
+		}
+		L[p-1] = null;
+		numPassive--;
+		// rows k..p-2 now have one entry above the diagonal, in column i+1; rotate columns (i, i+1) to
+		// zero it out
+		for (int i=k; i<p-1; i++) {
+			double[] Li = L[i];
+			double a = Li[i];
+			double b = Li[i+1];
+			double r = Math.hypot(a, b);
+			double c = a / r;
+			double sn = b / r;
+			for (int m=i; m<p-1; m++) {
+				double[] Lm = L[m];
+				double x0 = Lm[i];
+				double x1 = Lm[i+1];
+				Lm[i] = c*x0 + sn*x1;
+				Lm[i+1] = -sn*x0 + c*x1;
+			}
+			L[i] = Arrays.copyOf(Li, i+1);
+		}
+	}
+
+	/*
+	 * Solves AᵀA[P,P] s[P] = Aᵀb[P] using the Cholesky factor
+	 */
+	private void solvePassive() {
+		int p = numPassive;
+		double[] y = work;
+		for (int k=0; k<p; k++) {
+			double[] Lk = L[k];
+			double sum = Atb[pSet[k]];
+			for (int i=0; i<k; i++)
+				sum -= Lk[i]*y[i];
+			y[k] = sum / Lk[k];
+		}
+		for (int k=p; --k>=0;) {
+			double sum = y[k];
+			for (int i=k+1; i<p; i++)
+				sum -= L[i][k]*y[i];
+			y[k] = sum / L[k][k];
+		}
+		for (int k=0; k<p; k++)
+			s[pSet[k]] = y[k];
+	}
+
+	private double computeResidualNorm(double[] b, double[] x) {
+		double[] r = Arrays.copyOf(b, nrows);
+		for (int k=0; k<numPassive; k++) {
+			int j = pSet[k];
+			double xj = x[j];
+			int cj = j*nrows;
+			for (int i=0; i<nrows; i++)
+				r[i] -= A[cj + i]*xj;
+		}
+		double sum = 0;
+		for (double v : r)
+			sum += v*v;
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * @return the two-norm of the residual Ax - b of the most recent solution
+	 */
+	public double getResidualNorm() {
+		return rnorm;
+	}
+
+	/**
+	 * @return number of outer iterations (variables added to the passive set) in the most recent solve
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return number of inner iterations (steps limited by a variable reaching zero) in the most recent solve
+	 */
+	public int getInnerIterations() {
+		return innerIterations;
+	}
+
+	/**
+	 * @return number of variables in the passive set (positive values) of the most recent solution
+	 */
+	public int getNumPassive() {
+		return numPassive;
+	}
+
+	/**
+	 * @return time in milliseconds spent computing AᵀA at construction or in the most recent update
+	 */
+	public double getSetupMillis() {
+		return setupNanos / 1e6;
+	}
+
+	/**
+	 * @return time in milliseconds spent in the most recent solve
+	 */
+	public double getSolveMillis() {
+		return solveNanos / 1e6;
+	}
+
+}
@@ -1,8 +1,9 @@
 package org.opensha.commons.data;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
@@ -17,8 +18,6 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
-import org.opensha.commons.util.FileUtils;
-
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
@@ -233,7 +232,7 @@ public class CSVFile<E> implements Iterable<List<E>> {
 	}
 	
 	public void writeToFile(File file) throws IOException {
-		FileWriter fw = new FileWriter(file);
+		Writer fw = new BufferedWriter(new FileWriter(file));
 		writeWriter(fw);
 		fw.close();
 	}
@@ -251,13 +250,14 @@ public class CSVFile<E> implements Iterable<List<E>> {
 	
 	private void writeWriter(Writer w) throws IOException {
 		for (int i=0; i<getNumRows(); i++) {
-			w.write(getLineStr(i) + "\n");
+			w.write(getLineStr(i));
+			w.write('\n');
 		}
 		w.flush();
 	}
 	
 	public void writeToTabSeparatedFile(File file, int headerLines) throws IOException {
-		FileWriter fw = new FileWriter(file);
+		Writer fw = new BufferedWriter(new FileWriter(file));
 
 		for (int i=0; i<getNumRows(); i++) {
 			List<E> line = getLine(i);
@@ -291,32 +291,6 @@ public class CSVFile<E> implements Iterable<List<E>> {
 		}
 	}
 	
-	private static ArrayList<String> loadLine(String line, int num) {
-		line = line.trim();
-		ArrayList<String> vals = new ArrayList<String>();
-		boolean inside = false;
-		String cur = "";
-		for (int i=0; i<line.length(); i++) {
-			char c = line.charAt(i);
-			if (!inside && c == ',') {
-				// we're done with a value
-				vals.add(cur);
-				cur = "";
-				continue;
-			}
-			if (c == '"') {
-				inside = !inside;
-				continue;
-			}
-			cur += c;
-		}
-		if (!cur.isEmpty())
-			vals.add(cur);
-		while (vals.size() < num)
-			vals.add("");
-		return vals;
-	}
-	
 	public static CSVFile<String> readFile(File file, boolean strictRowSizes) throws IOException {
 		return readFile(file, strictRowSizes, -1);
 	}
@@ -339,17 +313,17 @@ public class CSVFile<E> implements Iterable<List<E>> {
 	
 	public static CSVFile<String> readStream(InputStream is, boolean strictRowSizes, int cols)
 			throws IOException {
-		if (!(is instanceof BufferedInputStream))
-			is = new BufferedInputStream(is);
 		List<List<String>> values = new ArrayList<List<String>>();
-		for (String line : FileUtils.loadStream(is)) {
-			if (strictRowSizes && cols < 0) {
-				cols = loadLine(line, -1).size();
+		try (CSVReader reader = new CSVReader(is)) {
+			for (CSVReader.Row row : reader) {
+				if (strictRowSizes && cols < 0) {
+					cols = row.columns();
+				}
+				ArrayList<String> vals = row.getLine(cols);
+				if (strictRowSizes && vals.size() > cols)
+					throw new IllegalStateException("Line lenghts inconsistant and strictRowSizes=true");
+				values.add(vals);
 			}
-			ArrayList<String> vals = loadLine(line, cols);
-			if (strictRowSizes && vals.size() > cols)
-				throw new IllegalStateException("Line lenghts inconsistant and strictRowSizes=true");
-			values.add(vals);
 		}
 		
 		return new CSVFile<String>(values, strictRowSizes);
@@ -367,39 +341,68 @@ public class CSVFile<E> implements Iterable<List<E>> {
 	
 	public static CSVFile<Double> readStreamNumeric(InputStream is, boolean strictRowSizes,
 			int cols, int headerLines) throws NumberFormatException, IOException {
-		if (!(is instanceof BufferedInputStream))
-			is = new BufferedInputStream(is);
 		List<List<Double>> values = new ArrayList<List<Double>>();
-		int lineCount = 0;
-		for (String line : FileUtils.loadStream(is)) {
-			if (headerLines > lineCount) {
-				lineCount++;
-				continue;
-			}
-			if (strictRowSizes && cols < 0) {
-				cols = loadLine(line, -1).size();
-			}
-			ArrayList<String> vals = loadLine(line, cols);
-			if (strictRowSizes && vals.size() > cols)
-				throw new IllegalStateException("Line lenghts inconsistant and strictRowSizes=true");
-			List<Double> doubles;
-			if (strictRowSizes) {
-				// use backing array for memory efficiency
-				double[] array = new double[vals.size()];
-				for (int i=0; i<array.length; i++)
-					array[i] = Double.parseDouble(vals.get(i));
-				doubles = Doubles.asList(array);
-			} else {
-				doubles = Lists.newArrayList();
-				for (String val : vals)
-					doubles.add(Double.parseDouble(val));
+		try (CSVReader reader = new CSVReader(is)) {
+			reader.skip(headerLines);
+			for (CSVReader.Row row : reader) {
+				if (strictRowSizes && cols < 0) {
+					cols = row.columns();
+				}
+				if (strictRowSizes && row.columns() > cols)
+					throw new IllegalStateException("Line lenghts inconsistant and strictRowSizes=true");
+				// short rows are padded with empty values, which can't be parsed
+				if (row.columns() < cols)
+					throw new NumberFormatException("empty String");
+				List<Double> doubles;
+				if (strictRowSizes) {
+					// use backing array for memory efficiency
+					double[] array = new double[row.columns()];
+					for (int i=0; i<array.length; i++)
+						array[i] = row.getDouble(i);
+					doubles = Doubles.asList(array);
+				} else {
+					doubles = Lists.newArrayList();
+					for (int i=0; i<row.columns(); i++)
+						doubles.add(row.getDouble(i));
+				}
+				values.add(doubles);
 			}
-			values.add(doubles);
-			lineCount++;
 		}
 		
 		return new CSVFile<Double>(values, strictRowSizes);
 	}
+	
+	/**
+	 * Reads a numeric CSV file directly into columns, without boxing or building
+	 * a CSVFile. All rows after any header must have the same number of columns.
+	 * @param file
+	 * @param headerLines number of leading lines to skip
+	 * @return array of columns, indexed as [column][row]
+	 * @throws NumberFormatException
+	 * @throws IOException
+	 * @see CSVReader#readNumericColumns(int)
+	 */
+	public static double[][] readFileNumericColumns(File file, int headerLines)
+			throws NumberFormatException, IOException {
+		return readStreamNumericColumns(new FileInputStream(file), headerLines);
+	}
+	
+	/**
+	 * Reads a numeric CSV stream directly into columns, without boxing or building
+	 * a CSVFile. The stream will be closed.
+	 * @param is
+	 * @param headerLines number of leading lines to skip
+	 * @return array of columns, indexed as [column][row]
+	 * @throws NumberFormatException
+	 * @throws IOException
+	 * @see CSVReader#readNumericColumns(int)
+	 */
+	public static double[][] readStreamNumericColumns(InputStream is, int headerLines)
+			throws NumberFormatException, IOException {
+		try (CSVReader reader = new CSVReader(is)) {
+			return reader.readNumericColumns(headerLines);
+		}
+	}
 
 	@Override
 	public Iterator<List<E>> iterator() {
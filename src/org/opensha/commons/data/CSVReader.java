@@ -0,0 +1,472 @@
+package org.opensha.commons.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Streaming reader of CSV data that parses one row at a time, for files too
+ * large to load into a {@link CSVFile}. Rows are split into cells as by
+ * {@link CSVFile#readStream(InputStream, boolean)}: lines are trimmed, commas
+ * within double quotes do not separate cells, quote characters are dropped,
+ * and an empty final cell is ignored.<br>
+ * <br>
+ * The {@link Row} returned by {@link #read()} is a cursor that is reused for
+ * every row, so reading a row does not allocate memory. Cell values may be
+ * fetched as strings or parsed directly as numbers; {@link Row#getDouble(int)}
+ * returns exactly the value of {@link Double#parseDouble(String)}, but parses
+ * common decimal values without creating strings. Instances are not thread
+ * safe.
+ *
+ * @see CSVWriter
+ */
+public class CSVReader implements Closeable, Iterable<CSVReader.Row> {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// exact powers of ten for the fast parsing path
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1d;
+		for (int i=1; i<POW10.length; i++)
+			POW10[i] = POW10[i-1] * 10d;
+	}
+
+	private final Reader reader;
+	private final char[] buf = new char[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+	private boolean skipLF;
+
+	private final Row row = new Row();
+	private long rowCount;
+	private boolean eof;
+
+	/**
+	 * Creates a reader of the given stream, decoded with the platform default charset
+	 * @param is
+	 */
+	public CSVReader(InputStream is) {
+		this(new InputStreamReader(is));
+	}
+
+	/**
+	 * Creates a reader of the given character stream. It is already buffered
+	 * internally so need not be a BufferedReader.
+	 * @param reader
+	 */
+	public CSVReader(Reader reader) {
+		this.reader = Preconditions.checkNotNull(reader);
+	}
+
+	/**
+	 * Reads the next row
+	 * @return the next row, or null if the end of the stream has been reached. The
+	 * returned instance is reused by subsequent calls.
+	 * @throws IOException
+	 */
+	public Row read() throws IOException {
+		if (eof || !readLine()) {
+			eof = true;
+			return null;
+		}
+		row.parse(rowCount++);
+		return row;
+	}
+
+	/**
+	 * Skips the given number of rows (e.g. headers) without parsing them
+	 * @param rows
+	 * @return the number of rows actually skipped
+	 * @throws IOException
+	 */
+	public int skip(int rows) throws IOException {
+		int skipped = 0;
+		while (skipped < rows && !eof && readLine()) {
+			rowCount++;
+			skipped++;
+		}
+		return skipped;
+	}
+
+	/**
+	 * @return the number of rows read or skipped so far
+	 */
+	public long getRowsRead() {
+		return rowCount;
+	}
+
+	/*
+	 * Reads the next line into the row line buffer with the line termination
+	 * rules of BufferedReader.readLine(), returning false at end of stream
+	 */
+	private boolean readLine() throws IOException {
+		row.lineLen = 0;
+		boolean any = false;
+		while (true) {
+			if (pos >= limit) {
+				limit = reader.read(buf, 0, buf.length);
+				pos = 0;
+				if (limit <= 0) {
+					limit = 0;
+					return any;
+				}
+			}
+			if (skipLF) {
+				skipLF = false;
+				if (buf[pos] == '\n') {
+					pos++;
+					continue;
+				}
+			}
+			any = true;
+			int start = pos;
+			while (pos < limit) {
+				char c = buf[pos];
+				if (c == '\n' || c == '\r') {
+					row.append(buf, start, pos - start);
+					pos++;
+					skipLF = c == '\r';
+					return true;
+				}
+				pos++;
+			}
+			row.append(buf, start, pos - start);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Iterator over remaining rows. As with {@link #read()}, the same {@link Row}
+	 * instance is returned each time. I/O errors are rethrown as
+	 * {@link UncheckedIOException}s.
+	 */
+	@Override
+	public Iterator<Row> iterator() {
+		return new Iterator<Row>() {
+
+			private Row next;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null) {
+					try {
+						next = read();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public Row next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				Row ret = next;
+				next = null;
+				return ret;
+			}
+		};
+	}
+
+	/**
+	 * Reads all remaining rows as numeric columns, without boxing. All rows must have
+	 * the same number of columns.
+	 * @param headerLines number of leading rows to skip
+	 * @return array of columns, indexed as [column][row]
+	 * @throws IOException
+	 * @throws NumberFormatException if any value is not a number
+	 * @throws IllegalStateException if row lengths are inconsistent
+	 */
+	public double[][] readNumericColumns(int headerLines) throws IOException {
+		skip(headerLines);
+		double[][] columns = null;
+		int size = 0;
+		int capacity = 1024;
+		for (Row row = read(); row != null; row = read()) {
+			if (columns == null) {
+				columns = new double[row.columns()][capacity];
+			} else {
+				if (row.columns() != columns.length)
+					throw new IllegalStateException("Line lengths inconsistent at row "
+							+row.index()+": expected "+columns.length+", got "+row.columns());
+				if (size == capacity) {
+					capacity = (int)Math.min(Integer.MAX_VALUE - 8, size + (long)(size >> 1));
+					Preconditions.checkState(capacity > size, "Too many rows");
+					for (int c=0; c<columns.length; c++)
+						columns[c] = Arrays.copyOf(columns[c], capacity);
+				}
+			}
+			for (int c=0; c<columns.length; c++)
+				columns[c][size] = row.getDouble(c);
+			size++;
+		}
+		if (columns == null)
+			return new double[0][];
+		for (int c=0; c<columns.length; c++)
+			columns[c] = Arrays.copyOf(columns[c], size);
+		return columns;
+	}
+
+	/**
+	 * Parses a double from the given characters. The result is identical to that
+	 * of {@link Double#parseDouble(String)}; decimal values with no more than 18
+	 * significant digits that can be exactly represented are parsed without
+	 * allocation, all others fall back to {@link Double#parseDouble(String)}.
+	 * @param chars
+	 * @param start first index (inclusive)
+	 * @param end last index (exclusive)
+	 * @return parsed value
+	 * @throws NumberFormatException
+	 */
+	public static double parseDouble(char[] chars, int start, int end) {
+		int i = start;
+		boolean neg = false;
+		if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+			neg = chars[i] == '-';
+			i++;
+		}
+		long mant = 0;
+		int digits = 0; // significant digits in mantissa
+		int exp = 0;
+		boolean any = false;
+		boolean point = false;
+		for (; i<end; i++) {
+			char c = chars[i];
+			if (c >= '0' && c <= '9') {
+				any = true;
+				if (digits > 0 || c != '0') {
+					if (++digits > 18)
+						return fallback(chars, start, end);
+					mant = mant * 10 + (c - '0');
+				}
+				if (point)
+					exp--;
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (!any)
+			return fallback(chars, start, end);
+		if (i < end) {
+			char c = chars[i];
+			if (c != 'e' && c != 'E')
+				return fallback(chars, start, end);
+			i++;
+			boolean expNeg = false;
+			if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+				expNeg = chars[i] == '-';
+				i++;
+			}
+			if (i == end || end - i > 4)
+				return fallback(chars, start, end);
+			int e = 0;
+			for (; i<end; i++) {
+				c = chars[i];
+				if (c < '0' || c > '9')
+					return fallback(chars, start, end);
+				e = e * 10 + (c - '0');
+			}
+			exp += expNeg ? -e : e;
+		}
+		double value;
+		if (mant == 0) {
+			value = 0d;
+		} else if (mant <= (1L << 53) && exp >= -22 && exp <= 22) {
+			// both operands exact, so the result is correctly rounded
+			value = exp < 0 ? mant / POW10[-exp] : mant * POW10[exp];
+		} else {
+			return fallback(chars, start, end);
+		}
+		return neg ? -value : value;
+	}
+
+	private static double fallback(char[] chars, int start, int end) {
+		return Double.parseDouble(new String(chars, start, end - start));
+	}
+
+	/**
+	 * Parses a long from the given characters as by {@link Long#parseLong(String)}.
+	 * @param chars
+	 * @param start first index (inclusive)
+	 * @param end last index (exclusive)
+	 * @return parsed value
+	 * @throws NumberFormatException
+	 */
+	public static long parseLong(char[] chars, int start, int end) {
+		int i = start;
+		boolean neg = false;
+		if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+			neg = chars[i] == '-';
+			i++;
+		}
+		// 18 digits can't overflow
+		if (i == end || end - i > 18)
+			return Long.parseLong(new String(chars, start, end - start));
+		long value = 0;
+		for (; i<end; i++) {
+			char c = chars[i];
+			if (c < '0' || c > '9')
+				return Long.parseLong(new String(chars, start, end - start));
+			value = value * 10 + (c - '0');
+		}
+		return neg ? -value : value;
+	}
+
+	/**
+	 * A single parsed row. Cell contents are held in a reusable buffer that is
+	 * overwritten when the next row is read.
+	 */
+	public static class Row {
+
+		private char[] line = new char[256];
+		private int lineLen;
+
+		private char[] cells = new char[256];
+		private int[] starts = new int[16];
+		private int[] ends = new int[16];
+		private int numCells;
+		private long index;
+
+		private Row() {}
+
+		private void append(char[] chars, int off, int len) {
+			if (lineLen + len > line.length)
+				line = Arrays.copyOf(line, Math.max(lineLen + len, line.length * 2));
+			System.arraycopy(chars, off, line, lineLen, len);
+			lineLen += len;
+		}
+
+		private void parse(long index) {
+			this.index = index;
+			numCells = 0;
+			if (cells.length < lineLen)
+				cells = new char[Math.max(lineLen, cells.length * 2)];
+			// trim as String.trim()
+			int s = 0, e = lineLen;
+			while (s < e && line[s] <= ' ')
+				s++;
+			while (e > s && line[e-1] <= ' ')
+				e--;
+			boolean inside = false;
+			int len = 0;
+			int cellStart = 0;
+			for (int i=s; i<e; i++) {
+				char c = line[i];
+				if (!inside && c == ',') {
+					addCell(cellStart, len);
+					cellStart = len;
+					continue;
+				}
+				if (c == '"') {
+					inside = !inside;
+					continue;
+				}
+				cells[len++] = c;
+			}
+			if (len > cellStart)
+				addCell(cellStart, len);
+		}
+
+		private void addCell(int start, int end) {
+			if (numCells == starts.length) {
+				starts = Arrays.copyOf(starts, numCells * 2);
+				ends = Arrays.copyOf(ends, numCells * 2);
+			}
+			starts[numCells] = start;
+			ends[numCells] = end;
+			numCells++;
+		}
+
+		private void checkColumn(int col) {
+			Preconditions.checkElementIndex(col, numCells, "column");
+		}
+
+		/**
+		 * @return zero based index of this row in the stream, including skipped rows
+		 */
+		public long index() {
+			return index;
+		}
+
+		/**
+		 * @return number of cells in this row
+		 */
+		public int columns() {
+			return numCells;
+		}
+
+		public String get(int col) {
+			checkColumn(col);
+			return new String(cells, starts[col], ends[col] - starts[col]);
+		}
+
+		public boolean isEmpty(int col) {
+			checkColumn(col);
+			return starts[col] == ends[col];
+		}
+
+		public double getDouble(int col) throws NumberFormatException {
+			checkColumn(col);
+			return parseDouble(cells, starts[col], ends[col]);
+		}
+
+		public float getFloat(int col) throws NumberFormatException {
+			return Float.parseFloat(get(col));
+		}
+
+		public long getLong(int col) throws NumberFormatException {
+			checkColumn(col);
+			return parseLong(cells, starts[col], ends[col]);
+		}
+
+		public int getInt(int col) throws NumberFormatException {
+			long value = getLong(col);
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+				throw new NumberFormatException("Value out of range: "+get(col));
+			return (int)value;
+		}
+
+		/**
+		 * @return a new list of the cells in this row
+		 */
+		public ArrayList<String> getLine() {
+			return getLine(-1);
+		}
+
+		/**
+		 * @param num minimum size of the list, padded with empty strings
+		 * @return a new list of the cells in this row
+		 */
+		public ArrayList<String> getLine(int num) {
+			ArrayList<String> vals = new ArrayList<String>(Math.max(num, numCells));
+			for (int i=0; i<numCells; i++)
+				vals.add(get(i));
+			while (vals.size() < num)
+				vals.add("");
+			return vals;
+		}
+
+		@Override
+		public String toString() {
+			return CSVFile.getLineStr(getLine());
+		}
+	}
+
+}
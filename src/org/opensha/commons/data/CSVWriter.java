@@ -0,0 +1,172 @@
+package org.opensha.commons.data;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Buffered, incremental writer of CSV rows, for output too large to assemble
+ * in a {@link CSVFile}. Rows are formatted as by {@link CSVFile#getLineStr(List)}.<br>
+ * <br>
+ * Instances are thread safe. Rows may be appended in the order that
+ * {@link #write(List)} is called, or placed by row index with
+ * {@link #write(long, List)}, in which case rows that arrive early are held in
+ * memory until all preceding rows have been written. Formatting is done by the
+ * calling thread, outside of any lock.
+ *
+ * @see CSVReader
+ */
+public class CSVWriter implements Closeable, Flushable {
+
+	private final Writer writer;
+	private long nextRow;
+	private final Map<Long, String> pending = new HashMap<Long, String>();
+	private boolean closed;
+
+	/**
+	 * Creates a writer to the given file, which will be overwritten
+	 * @param file
+	 * @throws IOException
+	 */
+	public CSVWriter(File file) throws IOException {
+		this(new FileWriter(file));
+	}
+
+	/**
+	 * Creates a writer to the given stream, encoded with the platform default charset
+	 * @param stream
+	 */
+	public CSVWriter(OutputStream stream) {
+		this(new OutputStreamWriter(stream));
+	}
+
+	/**
+	 * Creates a writer to the given character stream, which will be buffered if not
+	 * already a BufferedWriter
+	 * @param writer
+	 */
+	public CSVWriter(Writer writer) {
+		Preconditions.checkNotNull(writer);
+		if (!(writer instanceof BufferedWriter))
+			writer = new BufferedWriter(writer, 1 << 16);
+		this.writer = writer;
+	}
+
+	/**
+	 * Appends a row after all previously written rows
+	 * @param line
+	 * @throws IOException
+	 */
+	public void write(List<?> line) throws IOException {
+		String str = CSVFile.getLineStr(line);
+		synchronized (this) {
+			checkOpen();
+			append(str);
+			drain();
+		}
+	}
+
+	/**
+	 * Appends a row after all previously written rows
+	 * @param line
+	 * @throws IOException
+	 */
+	public void write(Object... line) throws IOException {
+		String str = CSVFile.getLineStr(line);
+		synchronized (this) {
+			checkOpen();
+			append(str);
+			drain();
+		}
+	}
+
+	/**
+	 * Writes a row at the given zero based row index. If preceding rows have not yet
+	 * been written, the row is held until they are.
+	 * @param row index of this row
+	 * @param line
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a row has already been written or
+	 * is pending at the given index
+	 */
+	public void write(long row, List<?> line) throws IOException {
+		String str = CSVFile.getLineStr(line);
+		synchronized (this) {
+			checkOpen();
+			Preconditions.checkArgument(row >= nextRow && !pending.containsKey(row),
+					"Row %s has already been written", row);
+			if (row == nextRow) {
+				append(str);
+				drain();
+			} else {
+				pending.put(row, str);
+			}
+		}
+	}
+
+	private void append(String str) throws IOException {
+		writer.write(str);
+		writer.write('\n');
+		nextRow++;
+	}
+
+	private void drain() throws IOException {
+		while (!pending.isEmpty()) {
+			String str = pending.remove(nextRow);
+			if (str == null)
+				return;
+			append(str);
+		}
+	}
+
+	private void checkOpen() {
+		Preconditions.checkState(!closed, "Writer has been closed");
+	}
+
+	/**
+	 * @return the number of rows written, not including pending rows
+	 */
+	public synchronized long getNumRowsWritten() {
+		return nextRow;
+	}
+
+	/**
+	 * @return the number of rows held until preceding rows are written
+	 */
+	public synchronized int getNumPending() {
+		return pending.size();
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		writer.flush();
+	}
+
+	/**
+	 * Closes this writer.
+	 * @throws IOException
+	 * @throws IllegalStateException if rows are still pending, after closing the
+	 * underlying writer
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		writer.close();
+		Preconditions.checkState(pending.isEmpty(),
+				"%s rows not written, missing row %s", pending.size(), nextRow);
+	}
+
+}
@@ -634,7 +634,9 @@ public class Container2DImpl<T> implements Container2D<T>, Serializable, Named {
 		@SuppressWarnings("unchecked")
 		public T next() throws NoSuchElementException {
 			try {
-				T object = (T)data[pinnedRow * numCols + cursor];
+				// use get so that subclasses with alternative storage work
+//				T object = (T)data[pinnedRow * numCols + cursor];
+				T object = get(pinnedRow, cursor);
 				lastRet = cursor++;
 				return object;
 			} catch ( IndexOutOfBoundsException e ) {
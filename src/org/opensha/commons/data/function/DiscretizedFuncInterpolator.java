@@ -0,0 +1,138 @@
+package org.opensha.commons.data.function;
+
+import org.opensha.commons.exceptions.InvalidRangeException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Immutable, primitive array backed interpolator for a {@link DiscretizedFunc}, intended for tight loops
+ * (e.g. hazard curve calculations) where the same function is interpolated many times. Like
+ * {@link LightFixedXFunc}, values are copied into primitive arrays on construction; additionally, the
+ * logarithms of the x and/or y values (if interpolating in log space) and the slope of each interval are
+ * precomputed. Each interpolation then requires a single branch free binary search, and no allocation.
+ * <br><br>
+ * Results are the same as {@link DiscretizedFunc#getInterpolatedY(double)} (or the log domain variants) to
+ * within floating point rounding, including the handling of values within tolerance of the function range and of
+ * intervals where both y values are zero. Changes to the original function after construction are not reflected.
+ * Instances are thread safe.
+ */
+public class DiscretizedFuncInterpolator {
+
+	private final boolean logX, logY;
+	private final double tolerance;
+	private final int size;
+
+	// original x values, used for searching
+	private final double[] xVals;
+	// original y values, returned at the edges and used to detect zero intervals
+	private final double[] yVals;
+	// x values and y values in the interpolation domain
+	private final double[] interpX, interpY;
+	// slope of each interval in the interpolation domain
+	private final double[] slopes;
+
+	/**
+	 * Creates an interpolator equivalent to {@link DiscretizedFunc#getInterpolatedY(double)}
+	 * @param func
+	 * @return
+	 */
+	public static DiscretizedFuncInterpolator getLinear(DiscretizedFunc func) {
+		return new DiscretizedFuncInterpolator(func, false, false);
+	}
+
+	/**
+	 * Creates an interpolator equivalent to {@link DiscretizedFunc#getInterpolatedY_inLogXLogYDomain(double)}
+	 * @param func
+	 * @return
+	 */
+	public static DiscretizedFuncInterpolator getLogXLogY(DiscretizedFunc func) {
+		return new DiscretizedFuncInterpolator(func, true, true);
+	}
+
+	/**
+	 * @param func function to interpolate, which must have at least one point
+	 * @param logX if true, interpolate in the log x domain
+	 * @param logY if true, interpolate in the log y domain
+	 */
+	public DiscretizedFuncInterpolator(DiscretizedFunc func, boolean logX, boolean logY) {
+		Preconditions.checkArgument(func.size() > 0, "Function must have at least one point");
+		this.logX = logX;
+		this.logY = logY;
+		this.tolerance = func.getTolerance();
+		size = func.size();
+		xVals = new double[size];
+		yVals = new double[size];
+		interpX = new double[size];
+		interpY = new double[size];
+		for (int i=0; i<size; i++) {
+			double x = func.getX(i);
+			double y = func.getY(i);
+			xVals[i] = x;
+			yVals[i] = y;
+			interpX[i] = logX ? Math.log(x) : x;
+			interpY[i] = logY ? Math.log(y) : y;
+		}
+		slopes = new double[Math.max(0, size-1)];
+		for (int i=0; i<slopes.length; i++)
+			slopes[i] = (interpY[i+1] - interpY[i])/(interpX[i+1] - interpX[i]);
+	}
+
+	public boolean isLogX() {
+		return logX;
+	}
+
+	public boolean isLogY() {
+		return logY;
+	}
+
+	/**
+	 * @return number of points in the function
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param x
+	 * @return interpolated y value at the given x value
+	 * @throws InvalidRangeException if x is outside of the function range (plus tolerance)
+	 */
+	public double interpolate(double x) {
+		double minX = xVals[0];
+		double maxX = xVals[size-1];
+		if (x > maxX+tolerance || x < minX-tolerance)
+			throw new InvalidRangeException("x Value ("+x+") must be within the range: "+minX+" and "+maxX);
+		if (x >= maxX)
+			return yVals[size-1];
+		if (x <= minX)
+			return yVals[0];
+
+		// index of the last x value that is less than x
+		int i = 0;
+		int n = size;
+		while (n > 1) {
+			int half = n >>> 1;
+			i = xVals[i+half] < x ? i+half : i;
+			n -= half;
+		}
+
+		if (yVals[i] == 0d && yVals[i+1] == 0d)
+			return 0d;
+
+		double y = interpY[i] + ((logX ? Math.log(x) : x) - interpX[i])*slopes[i];
+		return logY ? Math.exp(y) : y;
+	}
+
+	/**
+	 * Interpolates each of the given x values
+	 * @param xs x values
+	 * @param out array to store the interpolated y values, must be at least as long as xs
+	 * @throws InvalidRangeException if any x is outside of the function range (plus tolerance)
+	 */
+	public void interpolate(double[] xs, double[] out) {
+		Preconditions.checkArgument(out.length >= xs.length, "Output array is too short");
+		for (int i=0; i<xs.length; i++)
+			out[i] = interpolate(xs[i]);
+	}
+
+}
@@ -0,0 +1,71 @@
+package org.opensha.commons.data.function;
+
+import java.util.Random;
+
+/**
+ * Rough benchmark of log-log interpolation of a hazard curve with {@link DiscretizedFuncInterpolator}
+ * compared to {@link DiscretizedFunc#getInterpolatedY_inLogXLogYDomain(double)} on an
+ * {@link ArbitrarilyDiscretizedFunc} and a {@link LightFixedXFunc}. Each method is run for a number of
+ * warmup rounds before timing.
+ * <br><br>
+ * Usage: DiscretizedFuncInterpolatorBenchmark [numPoints [numInterpolations]]
+ */
+public class DiscretizedFuncInterpolatorBenchmark {
+	
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int TIMED_ROUNDS = 5;
+	
+	private interface Interpolator {
+		public double interpolate(double x);
+	}
+	
+	private static double benchmark(String name, Interpolator interp, double[] xs) {
+		double sum = 0d;
+		for (int r=0; r<WARMUP_ROUNDS; r++)
+			for (double x : xs)
+				sum += interp.interpolate(x);
+		long start = System.nanoTime();
+		for (int r=0; r<TIMED_ROUNDS; r++)
+			for (double x : xs)
+				sum += interp.interpolate(x);
+		double nanosPer = (double)(System.nanoTime() - start)/(TIMED_ROUNDS*(double)xs.length);
+		System.out.println(name+": "+(float)nanosPer+" ns/interpolation");
+		return sum;
+	}
+	
+	public static void main(String[] args) {
+		int numPoints = args.length > 0 ? Integer.parseInt(args[0]) : 51;
+		int numInterps = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		
+		ArbitrarilyDiscretizedFunc func = new ArbitrarilyDiscretizedFunc();
+		for (int i=0; i<numPoints; i++)
+			func.set(0.0001*Math.pow(10, 4d*i/(numPoints-1)), Math.exp(-0.2*i));
+		LightFixedXFunc lightFunc = new LightFixedXFunc(func);
+		DiscretizedFuncInterpolator interp = DiscretizedFuncInterpolator.getLogXLogY(func);
+		
+		Random r = new Random(numPoints);
+		double logMin = Math.log(func.getMinX());
+		double logMax = Math.log(func.getMaxX());
+		double[] xs = new double[numInterps];
+		for (int i=0; i<numInterps; i++)
+			xs[i] = Math.min(func.getMaxX(), Math.exp(logMin + r.nextDouble()*(logMax - logMin)));
+		
+		System.out.println("Interpolating "+numInterps+" values on a function with "+numPoints+" points");
+		double sum = 0d;
+		sum += benchmark("ArbitrarilyDiscretizedFunc", func::getInterpolatedY_inLogXLogYDomain, xs);
+		sum += benchmark("LightFixedXFunc", lightFunc::getInterpolatedY_inLogXLogYDomain, xs);
+		sum += benchmark("DiscretizedFuncInterpolator", interp::interpolate, xs);
+		
+		double[] out = new double[xs.length];
+		for (int r2=0; r2<WARMUP_ROUNDS; r2++)
+			interp.interpolate(xs, out);
+		long start = System.nanoTime();
+		for (int r2=0; r2<TIMED_ROUNDS; r2++)
+			interp.interpolate(xs, out);
+		double nanosPer = (double)(System.nanoTime() - start)/(TIMED_ROUNDS*(double)xs.length);
+		System.out.println("DiscretizedFuncInterpolator (batch): "+(float)nanosPer+" ns/interpolation");
+		// print the checksum so that the work can't be optimized away
+		System.out.println("checksum: "+(sum+out[0]));
+	}
+
+}
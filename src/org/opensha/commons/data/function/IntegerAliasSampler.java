@@ -0,0 +1,394 @@
+package org.opensha.commons.data.function;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Samples integers in the range [0, size) according to their relative weights in constant time, using
+ * Walker's alias method (as constructed by Vose). This is an alternative to {@link IntegerPDF_FunctionSampler}
+ * (which performs a binary search of the cumulative distribution for each sample) for cases where the same
+ * distribution is sampled a very large number of times.
+ * <br><br>
+ * Indexes are grouped into blocks, each with their own alias table, and blocks are chosen with a top level
+ * alias table over the block sums. Each draw therefore costs two table lookups, but changing a weight through
+ * {@link #set(int, double)} only rebuilds the table for the block containing that index, and the top level
+ * table (roughly the square root of the size, in each case). Tables are rebuilt lazily on the next draw, so
+ * many weights can be updated at once for the cost of a single rebuild.
+ * <br><br>
+ * Draws are thread safe and lock free. For reproducible results, pass in a {@link SplittableRandom}, with one
+ * instance (obtained via {@link SplittableRandom#split()}) per thread, or use {@link #samples(SplittableRandom, long)},
+ * which gives the same sequence whether or not the stream is processed in parallel.
+ * <br><br>
+ * Note that unlike {@link IntegerPDF_FunctionSampler#getInt(double)}, the mapping from a random value to
+ * an index in {@link #getInt(double)} is not monotonic: it is a valid sample for a uniformly distributed
+ * input, but cannot be used as an inverse cumulative distribution.
+ */
+public class IntegerAliasSampler {
+
+	private static final int MIN_BLOCK_SIZE = 32;
+	private static final int STREAM_CHUNK_SIZE = 1 << 16;
+
+	private final int size;
+	private final int blockShift;
+	private final int blockMask;
+	private final int numBlocks;
+
+	private final double[] weights;
+	private final double[] blockSums;
+	// blocks whose tables need to be rebuilt
+	private final BitSet dirtyBlocks;
+
+	// most recently built tables, guarded by this
+	private Tables lastTables;
+	// published tables for lock free draws, null if an update is pending
+	private volatile Tables tables;
+
+	/*
+	 * Immutable snapshot of the alias tables. Arrays for unchanged blocks are shared between snapshots.
+	 */
+	private static class Tables {
+		private final double[] topProbs;
+		private final int[] topAliases;
+		private final double[][] blockProbs;
+		private final int[][] blockAliases;
+		private final double sum;
+
+		private Tables(double[] topProbs, int[] topAliases, double[][] blockProbs,
+				int[][] blockAliases, double sum) {
+			this.topProbs = topProbs;
+			this.topAliases = topAliases;
+			this.blockProbs = blockProbs;
+			this.blockAliases = blockAliases;
+			this.sum = sum;
+		}
+	}
+
+	/**
+	 * @param weights relative weights for each integer, which must be >= 0 with at least one non zero value.
+	 * The array is copied.
+	 */
+	public IntegerAliasSampler(double[] weights) {
+		this(weights, defaultBlockSize(weights.length));
+	}
+
+	/**
+	 * @param xyDataSet contains relative weights for each integer in the y values
+	 */
+	public IntegerAliasSampler(XY_DataSet xyDataSet) {
+		this(getYVals(xyDataSet));
+	}
+
+	/**
+	 * @param weights relative weights for each integer, which must be >= 0 with at least one non zero value.
+	 * The array is copied.
+	 * @param blockSize number of indexes in each block, will be rounded up to a power of two. Smaller blocks
+	 * make updates to individual weights cheaper, but increase the size of the top level table.
+	 */
+	public IntegerAliasSampler(double[] weights, int blockSize) {
+		Preconditions.checkArgument(weights.length > 0, "must have at least one weight");
+		Preconditions.checkArgument(blockSize > 0, "block size must be positive");
+		this.size = weights.length;
+		this.weights = Arrays.copyOf(weights, size);
+		for (double weight : weights)
+			checkWeight(weight);
+		blockShift = 32 - Integer.numberOfLeadingZeros(Math.max(1, blockSize - 1));
+		blockMask = (1 << blockShift) - 1;
+		numBlocks = (int)(((long)size + blockMask) >> blockShift);
+		blockSums = new double[numBlocks];
+		dirtyBlocks = new BitSet(numBlocks);
+		dirtyBlocks.set(0, numBlocks);
+		lastTables = rebuild(null);
+		tables = lastTables;
+	}
+
+	private static int defaultBlockSize(int size) {
+		return Integer.max(MIN_BLOCK_SIZE, (int)Math.ceil(Math.sqrt(size)));
+	}
+
+	private static double[] getYVals(XY_DataSet xyDataSet) {
+		double[] vals = new double[xyDataSet.size()];
+		for (int i=0; i<vals.length; i++)
+			vals[i] = xyDataSet.getY(i);
+		return vals;
+	}
+
+	private static void checkWeight(double weight) {
+		Preconditions.checkArgument(weight >= 0d && Double.isFinite(weight),
+				"weights must be finite and >= 0: %s", weight);
+	}
+
+	/**
+	 * @return the number of integers
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param index
+	 * @return the weight for the given index
+	 */
+	public synchronized double getY(int index) {
+		return weights[index];
+	}
+
+	/**
+	 * @return the sum of all weights
+	 */
+	public double getSumOfY_vals() {
+		return getTables().sum;
+	}
+
+	/**
+	 * Sets the weight of the given index. Alias tables are updated on the next draw.
+	 * @param index
+	 * @param weight must be >= 0
+	 */
+	public synchronized void set(int index, double weight) {
+		checkWeight(weight);
+		Preconditions.checkElementIndex(index, size);
+		weights[index] = weight;
+		dirtyBlocks.set(index >> blockShift);
+		tables = null;
+	}
+
+	private Tables getTables() {
+		Tables tables = this.tables;
+		if (tables == null) {
+			synchronized (this) {
+				tables = this.tables;
+				if (tables == null) {
+					lastTables = rebuild(lastTables);
+					tables = lastTables;
+					this.tables = tables;
+				}
+			}
+		}
+		return tables;
+	}
+
+	/*
+	 * Builds new tables, reusing any block tables from the previous tables that are unchanged. Callers
+	 * must hold the lock (or be in the constructor).
+	 */
+	private Tables rebuild(Tables prev) {
+		double[][] blockProbs = prev == null ? new double[numBlocks][] : prev.blockProbs.clone();
+		int[][] blockAliases = prev == null ? new int[numBlocks][] : prev.blockAliases.clone();
+		for (int b = dirtyBlocks.nextSetBit(0); b >= 0; b = dirtyBlocks.nextSetBit(b+1)) {
+			int start = b << blockShift;
+			int end = Integer.min(size, start + blockMask + 1);
+			double[] blockWeights = Arrays.copyOfRange(weights, start, end);
+			double sum = 0d;
+			for (double weight : blockWeights)
+				sum += weight;
+			blockSums[b] = sum;
+			double[] probs = new double[blockWeights.length];
+			int[] aliases = new int[blockWeights.length];
+			if (sum > 0d)
+				buildAliasTable(blockWeights, sum, probs, aliases);
+			blockProbs[b] = probs;
+			blockAliases[b] = aliases;
+		}
+		dirtyBlocks.clear();
+		double sum = 0d;
+		for (double blockSum : blockSums)
+			sum += blockSum;
+		Preconditions.checkState(sum > 0d, "must be at least one non zero weight");
+		double[] topProbs = new double[numBlocks];
+		int[] topAliases = new int[numBlocks];
+		buildAliasTable(blockSums, sum, topProbs, topAliases);
+		return new Tables(topProbs, topAliases, blockProbs, blockAliases, sum);
+	}
+
+	/*
+	 * Vose's alias method. Entries with zero weight are never selected.
+	 */
+	private static void buildAliasTable(double[] weights, double sum, double[] probs, int[] aliases) {
+		int n = weights.length;
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int numSmall = 0, numLarge = 0;
+		int maxIndex = 0;
+		for (int i=0; i<n; i++) {
+			scaled[i] = weights[i]*n/sum;
+			if (scaled[i] < 1d)
+				small[numSmall++] = i;
+			else
+				large[numLarge++] = i;
+			if (weights[i] > weights[maxIndex])
+				maxIndex = i;
+		}
+		while (numSmall > 0 && numLarge > 0) {
+			int s = small[--numSmall];
+			int l = large[--numLarge];
+			probs[s] = scaled[s];
+			aliases[s] = l;
+			scaled[l] = (scaled[l] + scaled[s]) - 1d;
+			if (scaled[l] < 1d)
+				small[numSmall++] = l;
+			else
+				large[numLarge++] = l;
+		}
+		// remaining entries are (within rounding) exactly 1
+		while (numLarge > 0) {
+			int l = large[--numLarge];
+			probs[l] = 1d;
+			aliases[l] = l;
+		}
+		while (numSmall > 0) {
+			int s = small[--numSmall];
+			if (weights[s] == 0d) {
+				probs[s] = 0d;
+				aliases[s] = maxIndex;
+			} else {
+				probs[s] = 1d;
+				aliases[s] = s;
+			}
+		}
+	}
+
+	/**
+	 * Returns an integer for the given uniformly distributed random value. The value is first used to select a
+	 * block and then rescaled to select an index within that block, so the full precision of the value is used.
+	 * @param randDouble a value between 0 (inclusive) and 1 (exclusive)
+	 * @return
+	 */
+	public int getInt(double randDouble) {
+		Preconditions.checkArgument(randDouble >= 0d && randDouble < 1d,
+				"random value must be in the range [0, 1): %s", randDouble);
+		Tables tables = getTables();
+
+		double x = randDouble*numBlocks;
+		int block = Integer.min((int)x, numBlocks-1);
+		double u = x - block;
+		double p = tables.topProbs[block];
+		if (u < p) {
+			u = u/p;
+		} else {
+			u = (u - p)/(1d - p);
+			block = tables.topAliases[block];
+		}
+
+		double[] probs = tables.blockProbs[block];
+		int blockSize = probs.length;
+		x = u*blockSize;
+		int index = Integer.min((int)x, blockSize-1);
+		if (x - index >= probs[index])
+			index = tables.blockAliases[block][index];
+		return (block << blockShift) + index;
+	}
+
+	/**
+	 * @return a random integer, using {@link ThreadLocalRandom}
+	 */
+	public int getRandomInt() {
+		return getInt(ThreadLocalRandom.current().nextDouble());
+	}
+
+	/**
+	 * @param r random number generator, which must not be shared between threads
+	 * @return a random integer
+	 */
+	public int getRandomInt(SplittableRandom r) {
+		return getInt(r.nextDouble());
+	}
+
+	/**
+	 * Fills the first n values of the given array with random integers, using {@link ThreadLocalRandom}
+	 * @param n
+	 * @param out
+	 */
+	public void sample(int n, int[] out) {
+		ThreadLocalRandom r = ThreadLocalRandom.current();
+		Preconditions.checkArgument(n <= out.length, "output array is too short");
+		for (int i=0; i<n; i++)
+			out[i] = getInt(r.nextDouble());
+	}
+
+	/**
+	 * Fills the first n values of the given array with random integers
+	 * @param r random number generator, which must not be shared between threads
+	 * @param n
+	 * @param out
+	 */
+	public void sample(SplittableRandom r, int n, int[] out) {
+		Preconditions.checkArgument(n <= out.length, "output array is too short");
+		for (int i=0; i<n; i++)
+			out[i] = getInt(r.nextDouble());
+	}
+
+	/**
+	 * Returns a stream of random integers. The sequence depends only on the state of the given random number
+	 * generator, and is the same whether or not the stream is processed in parallel.
+	 * @param r
+	 * @param n number of samples
+	 * @return
+	 */
+	public IntStream samples(SplittableRandom r, long n) {
+		Preconditions.checkArgument(n >= 0, "number of samples must be >= 0");
+		// split a generator for each fixed size chunk up front, so that the sequence doesn't depend on how
+		// the stream is split
+		int numChunks = (int)((n + STREAM_CHUNK_SIZE - 1)/STREAM_CHUNK_SIZE);
+		SplittableRandom[] chunkRands = new SplittableRandom[numChunks];
+		for (int c=0; c<numChunks; c++)
+			chunkRands[c] = r.split();
+		return IntStream.range(0, numChunks).flatMap(c -> {
+			long chunkSize = Long.min(STREAM_CHUNK_SIZE, n - (long)c*STREAM_CHUNK_SIZE);
+			SplittableRandom chunkRand = chunkRands[c];
+			return IntStream.range(0, (int)chunkSize).map(i -> getInt(chunkRand.nextDouble()));
+		});
+	}
+
+	public static void main(String[] args) {
+		int numVals = args.length > 0 ? Integer.parseInt(args[0]) : 250000;
+		int numSamples = args.length > 1 ? Integer.parseInt(args[1]) : 100000000;
+		double[] testVals = new double[numVals];
+		SplittableRandom r = new SplittableRandom(numVals);
+		for (int i=0; i<testVals.length; i++)
+			testVals[i] = r.nextDouble();
+		IntegerPDF_FunctionSampler binarySampler = new IntegerPDF_FunctionSampler(testVals);
+		IntegerAliasSampler aliasSampler = new IntegerAliasSampler(testVals);
+		System.out.println("Benchmarking "+numSamples+" samples from "+numVals+" values...");
+
+		for (int round=0; round<2; round++) {
+			r = new SplittableRandom(round);
+			long st = System.currentTimeMillis();
+			long sum = 0;
+			for (int i=0; i<numSamples; i++)
+				sum += binarySampler.getInt(r.nextDouble());
+			long elapsed = System.currentTimeMillis() - st;
+			System.out.println("IntegerPDF_FunctionSampler: sum of "+sum+" after "+elapsed+" ms");
+
+			r = new SplittableRandom(round);
+			st = System.currentTimeMillis();
+			sum = 0;
+			for (int i=0; i<numSamples; i++)
+				sum += aliasSampler.getRandomInt(r);
+			elapsed = System.currentTimeMillis() - st;
+			System.out.println("IntegerAliasSampler: sum of "+sum+" after "+elapsed+" ms");
+
+			st = System.currentTimeMillis();
+			sum = aliasSampler.samples(new SplittableRandom(round), numSamples).parallel().asLongStream().sum();
+			elapsed = System.currentTimeMillis() - st;
+			System.out.println("IntegerAliasSampler (parallel stream): sum of "+sum+" after "+elapsed+" ms");
+		}
+
+		// cost of updating a single weight
+		int numUpdates = 10000;
+		long st = System.currentTimeMillis();
+		for (int i=0; i<numUpdates; i++) {
+			int index = r.nextInt(numVals);
+			aliasSampler.set(index, r.nextDouble());
+			aliasSampler.getInt(0.5);
+		}
+		long elapsed = System.currentTimeMillis() - st;
+		System.out.println("IntegerAliasSampler: "+numUpdates+" single weight updates in "+elapsed+" ms");
+	}
+
+}
@@ -3,10 +3,7 @@ package org.opensha.commons.data.siteData;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
 import java.util.ArrayList;
 
 import org.opensha.commons.data.siteData.servlet.SiteDataServletAccessor;
@@ -15,10 +12,20 @@ import org.opensha.commons.geo.LocationList;
 import org.opensha.commons.geo.Region;
 import org.opensha.commons.util.binFile.BinaryMesh2DCalculator.DataType;
 import org.opensha.commons.util.binFile.GeolocatedRectangularBinaryMesh2DCalculator;
+import org.opensha.commons.util.binFile.MappedFloatFileReader;
 
 import com.google.common.base.Preconditions;
 
-public abstract class AbstractBinarySiteDataLoader extends AbstractSiteData<Double> {
+/**
+ * Abstract site data class for little endian binary float meshes described by a
+ * {@link GeolocatedRectangularBinaryMesh2DCalculator}. Local files are read through a {@link MappedFloatFileReader},
+ * so lookups are thread safe and bulk lookups through {@link #getValues(LocationList)} are served in order of file
+ * position.
+ * 
+ * @author kevin
+ *
+ */
+public abstract class AbstractBinarySiteDataLoader extends AbstractSiteData<Double> implements MeshSiteData<Double> {
 	
 	protected static final String s = File.separator;
 	
@@ -35,9 +42,7 @@ public abstract class AbstractBinarySiteDataLoader extends AbstractSiteData<Doub
 	
 	protected GeolocatedRectangularBinaryMesh2DCalculator calc;
 	private SiteDataServletAccessor<Double> servlet = null;
-	private RandomAccessFile file;
-	private byte[] recordBuffer;
-	private FloatBuffer floatBuff;
+	private volatile MappedFloatFileReader reader;
 	
 	protected long maxFilePos;
 	
@@ -56,7 +61,7 @@ public abstract class AbstractBinarySiteDataLoader extends AbstractSiteData<Doub
 		this.type = type;
 		this.useServlet = useServlet;
 		
-		maxFilePos = (nx*ny - 1) * 4;
+		maxFilePos = (nx*(long)ny - 1) * 4;
 		
 		calc = new GeolocatedRectangularBinaryMesh2DCalculator(
 				DataType.FLOAT, nx, ny, minLat, minLon, gridSpacing);
@@ -68,16 +73,10 @@ public abstract class AbstractBinarySiteDataLoader extends AbstractSiteData<Doub
 				dataFile = getDefaultFile(type);
 			}
 			
-			file = new RandomAccessFile(dataFile, "r");
+			reader = openReader(dataFile);
 			
 			calc.setStartBottom(startBottom);
 			calc.setStartLeft(startLeft);
-			
-			recordBuffer = new byte[4];
-			ByteBuffer record = ByteBuffer.wrap(recordBuffer);
-			record.order(ByteOrder.LITTLE_ENDIAN);
-			
-			floatBuff = record.asFloatBuffer();
 		}
 		if (isBasinDepth()) {
 			initDefaultBasinParams();
@@ -92,6 +91,20 @@ public abstract class AbstractBinarySiteDataLoader extends AbstractSiteData<Doub
 		return getDataType().equals(TYPE_DEPTH_TO_1_0) || getDataType().equals(TYPE_DEPTH_TO_2_5);
 	}
 	
+	private static MappedFloatFileReader openReader(File dataFile) throws FileNotFoundException {
+		if (!dataFile.exists())
+			throw new FileNotFoundException(dataFile.getAbsolutePath()+" doesn't exist!");
+		try {
+			return MappedFloatFileReader.open(dataFile, ByteOrder.LITTLE_ENDIAN);
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			FileNotFoundException fnfe = new FileNotFoundException("Couldn't open "+dataFile.getAbsolutePath());
+			fnfe.initCause(e);
+			throw fnfe;
+		}
+	}
+	
 	protected abstract File getDefaultFile(String type);
 	
 	protected abstract String getServletURL(String type);
@@ -106,13 +119,17 @@ public abstract class AbstractBinarySiteDataLoader extends AbstractSiteData<Doub
 		Preconditions.checkArgument(dataFile.exists(), dataFile.getAbsolutePath()+" doesn't exist!");
 //		System.out.println("Set data file to: "+dataFile.getAbsolutePath());
 		this.dataFile = dataFile;
-		file = new RandomAccessFile(dataFile, "r");
+		reader = openReader(dataFile);
 	}
 	
 	public final Region getApplicableRegion() {
 		return calc.getApplicableRegion();
 	}
 
+	public final GeolocatedRectangularBinaryMesh2DCalculator getMeshCalculator() {
+		return calc;
+	}
+
 	public final Location getClosestDataLocation(Location loc) {
 		return calc.calcClosestLocation(loc);
 	}
@@ -144,12 +161,11 @@ public abstract class AbstractBinarySiteDataLoader extends AbstractSiteData<Doub
 		if (pos > maxFilePos || pos < 0)
 			return Double.NaN;
 		
-		file.seek(pos);
-		file.read(recordBuffer);
-		
+		return convertValue(reader.getFloat(pos));
+	}
+	
+	private Double convertValue(double val) {
 		// this is in meters
-		double val = floatBuff.get(0);
-		
 		if (isBasinDepth()) {
 			if (val < 0)
 				return Double.NaN;
@@ -170,7 +186,21 @@ public abstract class AbstractBinarySiteDataLoader extends AbstractSiteData<Doub
 			}
 			return vals;
 		} else {
-			return super.getValues(locs);
+			long[] positions = new long[locs.size()];
+			for (int i=0; i<positions.length; i++) {
+				long pos = calc.calcClosestLocationFileIndex(locs.get(i));
+				positions[i] = (pos > maxFilePos) ? -1 : pos;
+			}
+			float[] floats = new float[positions.length];
+			reader.getFloats(positions, floats);
+			ArrayList<Double> vals = new ArrayList<Double>(positions.length);
+			for (int i=0; i<positions.length; i++) {
+				if (positions[i] < 0)
+					vals.add(Double.NaN);
+				else
+					vals.add(convertValue(floats[i]));
+			}
+			return vals;
 		}
 	}
 
@@ -269,10 +269,24 @@ public abstract class AbstractSiteData<Element> implements ServletEnabledSiteDat
 	}
 
 	public org.dom4j.Element toXMLMetadata(org.dom4j.Element root, int cacheSize) {
+		return toXMLMetadata(root, cacheSize, false);
+	}
+	
+	/**
+	 * Writes XML metadata for this provider wrapped in a cache
+	 * 
+	 * @param root
+	 * @param cacheSize cache size, or -1 if not cached
+	 * @param quantize true if cache keys are quantized (see {@link CachedSiteDataWrapper#isQuantized()})
+	 * @return
+	 */
+	public org.dom4j.Element toXMLMetadata(org.dom4j.Element root, int cacheSize, boolean quantize) {
 		org.dom4j.Element el = root.addElement(XML_METADATA_NAME);
 		el.addAttribute("Name", getName());
 		el.addAttribute("Ref_ClassName", this.getClass().getName());
 		el.addAttribute("CacheSize", cacheSize + "");
+		if (quantize)
+			el.addAttribute("Quantize", quantize + "");
 		
 		org.dom4j.Element paramsEl = el.addElement("DataParameters");
 		addXMLParameters(paramsEl);
@@ -290,6 +304,7 @@ public abstract class AbstractSiteData<Element> implements ServletEnabledSiteDat
 	public static SiteData<?> fromXMLMetadata(org.dom4j.Element dataElem) throws IOException {
 		String name = dataElem.attributeValue("Name");
 		int cacheSize = Integer.parseInt(dataElem.attributeValue("CacheSize"));
+		boolean quantize = Boolean.parseBoolean(dataElem.attributeValue("Quantize"));
 		
 		org.dom4j.Element paramsEl = dataElem.element("DataParameters");
 		
@@ -335,7 +350,7 @@ public abstract class AbstractSiteData<Element> implements ServletEnabledSiteDat
 		}
 		
 		if (cacheSize > 0) {
-			return new CachedSiteDataWrapper(provider);
+			return new CachedSiteDataWrapper(provider, cacheSize, quantize);
 		}
 		
 		return provider;
@@ -21,6 +21,10 @@ package org.opensha.commons.data.siteData;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 
 import org.opensha.commons.geo.Location;
 import org.opensha.commons.geo.LocationList;
@@ -30,10 +34,24 @@ import org.opensha.commons.param.ParameterList;
 import org.opensha.commons.param.editor.impl.ParameterListEditor;
 import org.opensha.commons.param.event.ParameterChangeEvent;
 import org.opensha.commons.param.event.ParameterChangeListener;
+import org.opensha.commons.util.binFile.GeolocatedRectangularBinaryMesh2DCalculator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 
 /**
  * This is a class that takes and SiteDataAPI class and wraps it to add a cache for faster retrieval
  * of data in situations where the same location may be requested often.
+ * <br><br>
+ * The cache is thread safe and size bounded, evicting the least recently used entries once full. Entries
+ * are keyed either on the exact location, or optionally on the quantized location. For providers that
+ * implement {@link MeshSiteData}, quantized keys are the index of the closest mesh point, so all sites which
+ * share a data point share one cached value (sites outside of the mesh are keyed on the exact location).
+ * For other providers, quantized keys are the location rounded to multiples of the provider's resolution
+ * (see {@link #getResolution()}), which should only be used if the provider's data points fall on multiples
+ * of its resolution. Hit, miss and eviction counts are available from {@link #getStats()}.
  * 
  * @author Kevin Milner
  *
@@ -49,27 +67,106 @@ public class CachedSiteDataWrapper<Element> implements SiteData<Element>, Parame
 	/** If true print out debug statements. */
 	protected final static boolean D = false;
 	
+	/** Default maximum number of cached values */
+	public static final int DEFAULT_CACHE_SIZE = 1000;
+	
 	private int cacheSize;
-	private int cacheSizeMinusOne;
+	private boolean quantize;
 	private SiteData<Element> provider;
+	// mesh used to quantize locations, if the provider has one
+	private GeolocatedRectangularBinaryMesh2DCalculator mesh;
 	
-	private ArrayList<Location> locsCache = new ArrayList<Location>();
-	private ArrayList<Element> dataCache = new ArrayList<Element>();
+	private Cache<Object, Optional<Element>> cache;
 	
 	public CachedSiteDataWrapper(SiteData<Element> provider) {
-		this(provider, 5);
+		this(provider, DEFAULT_CACHE_SIZE);
 	}
 	
 	public CachedSiteDataWrapper(SiteData<Element> provider, int cacheSize) {
+		this(provider, cacheSize, false);
+	}
+	
+	/**
+	 * @param provider site data provider to wrap
+	 * @param cacheSize maximum number of cached values
+	 * @param quantize if true, locations are quantized to the provider's mesh (see {@link MeshSiteData}), or
+	 * to multiples of its resolution if it doesn't have a mesh, before caching
+	 */
+	public CachedSiteDataWrapper(SiteData<Element> provider, int cacheSize, boolean quantize) {
+		Preconditions.checkArgument(cacheSize > 0, "Cache size must be positive");
 		this.cacheSize = cacheSize;
-		cacheSizeMinusOne = cacheSize - 1;
+		this.quantize = quantize;
 		this.provider = provider;
+		this.mesh = getMeshCalculator(provider);
+		this.cache = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats().build();
 		ParameterList params = this.provider.getAdjustableParameterList();
 		for (Parameter<?> param : params) {
 			param.addParameterChangeListener(this);
 		}
 	}
 	
+	/**
+	 * @return the underlying site data provider
+	 */
+	public SiteData<Element> getProvider() {
+		return provider;
+	}
+	
+	/**
+	 * @return maximum number of cached values
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+	
+	/**
+	 * @return true if locations are quantized before caching
+	 */
+	public boolean isQuantized() {
+		return quantize;
+	}
+	
+	/**
+	 * @return cache statistics (hit, miss and eviction counts). Counts are not reset by {@link #clearCache()}.
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+	
+	/**
+	 * @param provider
+	 * @return the mesh calculator of the given provider if it implements {@link MeshSiteData}, otherwise null
+	 */
+	public static GeolocatedRectangularBinaryMesh2DCalculator getMeshCalculator(SiteData<?> provider) {
+		if (provider instanceof MeshSiteData)
+			return ((MeshSiteData<?>)provider).getMeshCalculator();
+		return null;
+	}
+	
+	/*
+	 * Cache key for the given location, either the location itself, the index of the closest point of the
+	 * provider's mesh, or the indices of the location quantized at the provider's resolution packed into a
+	 * single long
+	 */
+	private Object getKey(Location loc) {
+		if (quantize) {
+			if (mesh != null) {
+				long[] pt = mesh.calcClosestLocationIndices(loc);
+				if (pt == null)
+					// outside of the mesh
+					return loc;
+				return mesh.calcMeshIndex(pt[0], pt[1]);
+			}
+			double res = provider.getResolution();
+			if (res > 0 && !Double.isInfinite(res)) {
+				long latIndex = Math.round(loc.getLatitude()/res);
+				long lonIndex = Math.round(loc.getLongitude()/res);
+				return (latIndex << 32) ^ (lonIndex & 0xFFFFFFFFl);
+			}
+		}
+		return loc;
+	}
+	
 	public SiteDataValue<Element> getAnnotatedValue(Location loc) throws IOException {
 		Element val = this.getValue(loc);
 		return new SiteDataValue<Element>(provider.getDataType(), provider.getDataMeasurementType(), val, provider.getName());
@@ -80,47 +177,60 @@ public class CachedSiteDataWrapper<Element> implements SiteData<Element>, Parame
 	 * the cache. If the value is already in the cache, then just use that value.
 	 */
 	public Element getValue(Location loc) throws IOException {
-		int size = locsCache.size();
-		// first we see if its in the cache
-		for (int i=0; i<size; i++) {
-			Location dataLoc = locsCache.get(i);
-			if (loc.equals(dataLoc)) {
-				if (i > 0) {
-					// move it up to the front of the cache
-					Element data = dataCache.remove(i);
-					locsCache.remove(i);
-					dataCache.add(i, data);
-					locsCache.add(i, dataLoc);
-					return data;
-				}
-				return dataCache.get(i);
-			}
+		try {
+			return cache.get(getKey(loc), () -> Optional.ofNullable(provider.getValue(loc))).orElse(null);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			throw new IOException(e.getCause());
 		}
-		// if we made it this far, then its not in the cache
-		Element data = provider.getValue(loc);
-		
-		// if we need, make room
-		if (size == cacheSize) {
-			locsCache.remove(cacheSizeMinusOne);
-			dataCache.remove(cacheSizeMinusOne);
-		}
-		
-		locsCache.add(0, loc);
-		dataCache.add(0, data);
-		
-		return data;
 	}
 	
 	/**
 	 * Clear the cache. This is called if parameters are updated.
 	 */
 	public void clearCache() {
-		this.locsCache.clear();
-		this.dataCache.clear();
+		cache.invalidateAll();
 	}
 
+	/**
+	 * Returns values for each location, using cached values where available. All locations which aren't
+	 * cached are retrieved from the underlying provider with a single call to its getValues method.
+	 */
 	public ArrayList<Element> getValues(LocationList locs) throws IOException {
-		return provider.getValues(locs);
+		ArrayList<Element> vals = new ArrayList<Element>(locs.size());
+		Object[] keys = new Object[locs.size()];
+		// unique keys which weren't in the cache, mapped to their index in the miss list
+		Map<Object, Integer> missIndexes = new HashMap<Object, Integer>();
+		LocationList missLocs = new LocationList();
+		for (int i=0; i<locs.size(); i++) {
+			Location loc = locs.get(i);
+			Object key = getKey(loc);
+			keys[i] = key;
+			Optional<Element> val = cache.getIfPresent(key);
+			if (val == null) {
+				if (!missIndexes.containsKey(key)) {
+					missIndexes.put(key, missLocs.size());
+					missLocs.add(loc);
+				}
+				vals.add(null);
+			} else {
+				vals.add(val.orElse(null));
+			}
+		}
+		if (missLocs.isEmpty())
+			return vals;
+		ArrayList<Element> missVals = provider.getValues(missLocs);
+		Preconditions.checkState(missVals.size() == missLocs.size(),
+				"Provider returned %s values for %s locations", missVals.size(), missLocs.size());
+		for (Map.Entry<Object, Integer> entry : missIndexes.entrySet())
+			cache.put(entry.getKey(), Optional.ofNullable(missVals.get(entry.getValue())));
+		for (int i=0; i<keys.length; i++) {
+			Integer missIndex = missIndexes.get(keys[i]);
+			if (missIndex != null)
+				vals.set(i, missVals.get(missIndex));
+		}
+		return vals;
 	}
 
 	public ParameterList getAdjustableParameterList() {
@@ -172,12 +282,16 @@ public class CachedSiteDataWrapper<Element> implements SiteData<Element>, Parame
 	}
 
 	public org.dom4j.Element toXMLMetadata(org.dom4j.Element root) {
+		if (provider instanceof AbstractSiteData)
+			return ((AbstractSiteData<Element>)provider).toXMLMetadata(root, cacheSize, quantize);
 		return provider.toXMLMetadata(root);
 	}
 
 	public SiteDataValueList<Element> getAnnotatedValues(LocationList locs)
 			throws IOException {
-		return provider.getAnnotatedValues(locs);
+		ArrayList<Element> vals = this.getValues(locs);
+		return new SiteDataValueList<Element>(provider.getDataType(), provider.getDataMeasurementType(),
+				vals, provider.getName());
 	}
 
 	public void parameterChange(ParameterChangeEvent event) {
@@ -0,0 +1,17 @@
+package org.opensha.commons.data.siteData;
+
+import org.opensha.commons.util.binFile.GeolocatedRectangularBinaryMesh2DCalculator;
+
+/**
+ * Site data provider whose values come from a regular lat/lon mesh, where each location is assigned the
+ * value of its closest mesh point as computed by a {@link GeolocatedRectangularBinaryMesh2DCalculator}.
+ * This allows callers (e.g. {@link CachedSiteDataWrapper}) to identify which locations share a data value.
+ */
+public interface MeshSiteData<Element> extends SiteData<Element> {
+
+	/**
+	 * @return the calculator used to find the closest mesh point of each location, which must not be
+	 * modified, or null if values aren't looked up on a mesh
+	 */
+	public GeolocatedRectangularBinaryMesh2DCalculator getMeshCalculator();
+}
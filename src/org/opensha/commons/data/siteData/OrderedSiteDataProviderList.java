@@ -571,14 +571,40 @@ public class OrderedSiteDataProviderList implements Iterable<SiteData<?>>, XMLSa
 	 * @return
 	 */
 	public static OrderedSiteDataProviderList createCachedSiteDataProviderDefaults() {
+		return createCachedSiteDataProviderDefaults(CachedSiteDataWrapper.DEFAULT_CACHE_SIZE, false);
+	}
+	
+	/**
+	 * Same as createSiteDataProviderDefaults, but returns a cached version of each one
+	 * 
+	 * @param cacheSize maximum number of cached values for each provider
+	 * @param quantize if true, locations are quantized to the mesh of each provider that has one before
+	 * caching (see {@link #wrapWithCache(int, boolean)})
+	 * @return
+	 */
+	public static OrderedSiteDataProviderList createCachedSiteDataProviderDefaults(int cacheSize, boolean quantize) {
 		OrderedSiteDataProviderList list = createSiteDataProviderDefaults();
-		for (int i=0; i<list.size(); i++) {
-			CachedSiteDataWrapper<?> cached = new CachedSiteDataWrapper(list.getProvider(i));
-			list.set(i, cached);
-		}
+		list.wrapWithCache(cacheSize, quantize);
 		return list;
 	}
 	
+	/**
+	 * Wraps each provider in this list which isn't already cached in a {@link CachedSiteDataWrapper}
+	 * 
+	 * @param cacheSize maximum number of cached values for each provider
+	 * @param quantize if true, locations are quantized to the mesh of each provider that implements
+	 * {@link MeshSiteData} before caching. Providers that don't expose a mesh are keyed on exact locations.
+	 */
+	public void wrapWithCache(int cacheSize, boolean quantize) {
+		for (int i=0; i<size(); i++) {
+			SiteData<?> provider = getProvider(i);
+			if (provider instanceof CachedSiteDataWrapper)
+				continue;
+			boolean quantizeProv = quantize && CachedSiteDataWrapper.getMeshCalculator(provider) != null;
+			set(i, new CachedSiteDataWrapper(provider, cacheSize, quantizeProv));
+		}
+	}
+	
 	/**
 	 * Creates a list with just Vs30 from Wills and Depth to 2.5 for compatibility with the old
 	 * pieces of code which were hardcoded to only use those 2. 
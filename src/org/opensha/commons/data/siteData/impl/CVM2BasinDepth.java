@@ -29,6 +29,7 @@ import java.util.ArrayList;
 
 import org.dom4j.Element;
 import org.opensha.commons.data.siteData.AbstractSiteData;
+import org.opensha.commons.data.siteData.MeshSiteData;
 import org.opensha.commons.data.siteData.SiteDataToXYZ;
 import org.opensha.commons.data.siteData.servlet.SiteDataServletAccessor;
 import org.opensha.commons.geo.Location;
@@ -40,7 +41,7 @@ import org.opensha.commons.util.binFile.BinaryMesh2DCalculator;
 import org.opensha.commons.util.binFile.GeolocatedRectangularBinaryMesh2DCalculator;
 import org.opensha.commons.util.binFile.BinaryMesh2DCalculator.DataType;
 
-public class CVM2BasinDepth extends AbstractSiteData<Double> {
+public class CVM2BasinDepth extends AbstractSiteData<Double> implements MeshSiteData<Double> {
 	
 	public static final String NAME = "SCEC Community Velocity Model Version 2 Basin Depth";
 	public static final String SHORT_NAME = "CVM2";
@@ -110,6 +111,10 @@ public class CVM2BasinDepth extends AbstractSiteData<Double> {
 		return calc.getApplicableRegion();
 	}
 
+	public GeolocatedRectangularBinaryMesh2DCalculator getMeshCalculator() {
+		return calc;
+	}
+
 	public Location getClosestDataLocation(Location loc) throws IOException {
 		if (useServlet)
 			return servlet.getClosestLocation(loc);
@@ -28,6 +28,7 @@ import java.nio.FloatBuffer;
 import java.util.ArrayList;
 
 import org.opensha.commons.data.siteData.AbstractSiteData;
+import org.opensha.commons.data.siteData.MeshSiteData;
 import org.opensha.commons.data.siteData.servlet.SiteDataServletAccessor;
 import org.opensha.commons.geo.GeoTools;
 import org.opensha.commons.geo.GriddedRegion;
@@ -39,7 +40,7 @@ import org.opensha.commons.util.binFile.BinaryMesh2DCalculator;
 import org.opensha.commons.util.binFile.GeolocatedRectangularBinaryMesh2DCalculator;
 import org.opensha.commons.util.binFile.BinaryMesh2DCalculator.DataType;
 
-public class SRTM30PlusTopoSlope extends AbstractSiteData<Double> {
+public class SRTM30PlusTopoSlope extends AbstractSiteData<Double> implements MeshSiteData<Double> {
 	
 	public static final String NAME = "SRTM30 Plus Topographic Slope";
 	public static final String SHORT_NAME = "SRTM30_Plus_Slope";
@@ -102,6 +103,10 @@ public class SRTM30PlusTopoSlope extends AbstractSiteData<Double> {
 		return region;
 	}
 
+	public GeolocatedRectangularBinaryMesh2DCalculator getMeshCalculator() {
+		return calc;
+	}
+
 	public Location getClosestDataLocation(Location loc) throws IOException {
 		return calc.calcClosestLocation(loc);
 	}
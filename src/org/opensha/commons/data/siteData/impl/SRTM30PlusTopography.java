@@ -28,6 +28,7 @@ import java.nio.ShortBuffer;
 import java.util.ArrayList;
 
 import org.opensha.commons.data.siteData.AbstractSiteData;
+import org.opensha.commons.data.siteData.MeshSiteData;
 import org.opensha.commons.data.siteData.servlet.SiteDataServletAccessor;
 import org.opensha.commons.geo.GeoTools;
 import org.opensha.commons.geo.Location;
@@ -38,7 +39,7 @@ import org.opensha.commons.util.binFile.BinaryMesh2DCalculator;
 import org.opensha.commons.util.binFile.GeolocatedRectangularBinaryMesh2DCalculator;
 import org.opensha.commons.util.binFile.BinaryMesh2DCalculator.DataType;
 
-public class SRTM30PlusTopography extends AbstractSiteData<Double> {
+public class SRTM30PlusTopography extends AbstractSiteData<Double> implements MeshSiteData<Double> {
 	
 	public static final String NAME = "SRTM30 Plus Topography/Bathymetry";
 	public static final String SHORT_NAME = "SRTM30_Plus";
@@ -101,6 +102,10 @@ public class SRTM30PlusTopography extends AbstractSiteData<Double> {
 		return region;
 	}
 
+	public GeolocatedRectangularBinaryMesh2DCalculator getMeshCalculator() {
+		return calc;
+	}
+
 	public Location getClosestDataLocation(Location loc) throws IOException {
 		return calc.calcClosestLocation(loc);
 	}
@@ -29,6 +29,7 @@ import java.util.ArrayList;
 
 import org.dom4j.Element;
 import org.opensha.commons.data.siteData.AbstractSiteData;
+import org.opensha.commons.data.siteData.MeshSiteData;
 import org.opensha.commons.data.siteData.SiteDataToXYZ;
 import org.opensha.commons.data.siteData.servlet.SiteDataServletAccessor;
 import org.opensha.commons.geo.Location;
@@ -39,7 +40,7 @@ import org.opensha.commons.util.binFile.BinaryMesh2DCalculator;
 import org.opensha.commons.util.binFile.GeolocatedRectangularBinaryMesh2DCalculator;
 import org.opensha.commons.util.binFile.BinaryMesh2DCalculator.DataType;
 
-public class USGSBayAreaBasinDepth extends AbstractSiteData<Double> {
+public class USGSBayAreaBasinDepth extends AbstractSiteData<Double> implements MeshSiteData<Double> {
 	
 	public static final String NAME = "USGS Bay Area Velocity Model Release 8.3.0";
 	public static final String SHORT_NAME = "USGSBayAreaBasin";
@@ -128,6 +129,10 @@ public class USGSBayAreaBasinDepth extends AbstractSiteData<Double> {
 		return calc.getApplicableRegion();
 	}
 
+	public GeolocatedRectangularBinaryMesh2DCalculator getMeshCalculator() {
+		return calc;
+	}
+
 	public Location getClosestDataLocation(Location loc) {
 		return calc.calcClosestLocation(loc);
 	}
@@ -29,6 +29,7 @@ import java.nio.ShortBuffer;
 import java.util.ArrayList;
 
 import org.opensha.commons.data.siteData.AbstractSiteData;
+import org.opensha.commons.data.siteData.MeshSiteData;
 import org.opensha.commons.data.siteData.servlet.SiteDataServletAccessor;
 import org.opensha.commons.geo.GeoTools;
 import org.opensha.commons.geo.Location;
@@ -40,7 +41,7 @@ import org.opensha.commons.util.binFile.BinaryMesh2DCalculator;
 import org.opensha.commons.util.binFile.GeolocatedRectangularBinaryMesh2DCalculator;
 import org.opensha.commons.util.binFile.BinaryMesh2DCalculator.DataType;
 
-public class US_3secTopography extends AbstractSiteData<Double> {
+public class US_3secTopography extends AbstractSiteData<Double> implements MeshSiteData<Double> {
 	
 	public static final String NAME = "US 3 Sec Topography from USGS NED";
 	public static final String SHORT_NAME = "US3secNED";
@@ -109,6 +110,10 @@ public class US_3secTopography extends AbstractSiteData<Double> {
 		return region;
 	}
 
+	public GeolocatedRectangularBinaryMesh2DCalculator getMeshCalculator() {
+		return calc;
+	}
+
 	public Location getClosestDataLocation(Location loc) throws IOException {
 		return calc.calcClosestLocation(loc);
 	}
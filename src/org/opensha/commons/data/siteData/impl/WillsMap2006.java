@@ -29,6 +29,7 @@ import java.util.ArrayList;
 
 import org.dom4j.Element;
 import org.opensha.commons.data.siteData.AbstractSiteData;
+import org.opensha.commons.data.siteData.MeshSiteData;
 import org.opensha.commons.data.siteData.servlet.SiteDataServletAccessor;
 import org.opensha.commons.geo.GriddedRegion;
 import org.opensha.commons.geo.Location;
@@ -39,7 +40,7 @@ import org.opensha.commons.util.binFile.BinaryMesh2DCalculator;
 import org.opensha.commons.util.binFile.BinaryMesh2DCalculator.DataType;
 import org.opensha.commons.util.binFile.GeolocatedRectangularBinaryMesh2DCalculator;
 
-public class WillsMap2006 extends AbstractSiteData<Double> {
+public class WillsMap2006 extends AbstractSiteData<Double> implements MeshSiteData<Double> {
 	
 	public static final int nx = 49867;
 	public static final int ny = 44016;
@@ -112,6 +113,10 @@ public class WillsMap2006 extends AbstractSiteData<Double> {
 		return applicableRegion;
 	}
 
+	public GeolocatedRectangularBinaryMesh2DCalculator getMeshCalculator() {
+		return calc;
+	}
+
 	public Location getClosestDataLocation(Location loc) {
 		return calc.calcClosestLocation(loc);
 	}
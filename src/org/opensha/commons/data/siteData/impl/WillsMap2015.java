@@ -29,6 +29,7 @@ import java.util.ArrayList;
 
 import org.dom4j.Element;
 import org.opensha.commons.data.siteData.AbstractSiteData;
+import org.opensha.commons.data.siteData.MeshSiteData;
 import org.opensha.commons.data.siteData.servlet.SiteDataServletAccessor;
 import org.opensha.commons.geo.GriddedRegion;
 import org.opensha.commons.geo.Location;
@@ -40,7 +41,7 @@ import org.opensha.commons.util.binFile.GeolocatedRectangularBinaryMesh2DCalcula
 
 import com.google.common.base.Preconditions;
 
-public class WillsMap2015 extends AbstractSiteData<Double> {
+public class WillsMap2015 extends AbstractSiteData<Double> implements MeshSiteData<Double> {
 	
 	public static final int nx = 41104;	// NCOLS
 	public static final int ny = 37900;	// NROWS
@@ -127,6 +128,10 @@ public class WillsMap2015 extends AbstractSiteData<Double> {
 		return applicableRegion;
 	}
 
+	public GeolocatedRectangularBinaryMesh2DCalculator getMeshCalculator() {
+		return calc;
+	}
+
 	public Location getClosestDataLocation(Location loc) {
 		return calc.calcClosestLocation(loc);
 	}
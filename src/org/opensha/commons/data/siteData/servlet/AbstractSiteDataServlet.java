@@ -19,6 +19,10 @@
 
 package org.opensha.commons.data.siteData.servlet;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -27,6 +31,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -41,21 +46,82 @@ import org.opensha.commons.param.Parameter;
 import org.opensha.commons.param.ParameterList;
 import org.opensha.commons.util.ServerPrefUtils;
 
+import com.google.common.base.Preconditions;
+
+/**
+ * Servlet that serves values from a {@link ServletEnabledSiteData} provider to
+ * {@link SiteDataServletAccessor}s.<br>
+ * <br>
+ * Requests are handled concurrently when the provider allows it: either a single thread safe provider is
+ * shared by all requests (see {@link #AbstractSiteDataServlet(ServletEnabledSiteData, boolean)}), or each
+ * request uses its own provider from a pool filled by a {@link SiteDataFactory} (see
+ * {@link #AbstractSiteDataServlet(SiteDataFactory)}). Shared providers that aren't thread safe, or that
+ * have server side parameters which are set for each request, are locked for the duration of each
+ * request.<br>
+ * <br>
+ * Bulk value requests may use the compact binary format of {@link SiteDataBinaryProtocol}, identified by
+ * the request content type; all other requests use serialized objects.
+ */
 public abstract class AbstractSiteDataServlet<Element> extends HttpServlet {
 	
 //	public static DateFormat df = new SimpleDateFormat("EEE MMM dd HH:mm:ss z yyyy");
 	
 	public static String OP_GET_CLOSEST = "Get Closest Location";
 	
+	/**
+	 * Builds a new provider instance, for use by a single request at a time
+	 */
+	public interface SiteDataFactory<Element> {
+		public ServletEnabledSiteData<Element> build() throws IOException;
+	}
+	
 	private ServletEnabledSiteData<Element> data;
+	private boolean threadSafe;
+	
+	// factory and idle providers, if a factory was supplied. Each request takes an idle provider (or builds
+	// one if none are idle) and returns it when done, so the pool never exceeds the peak number of
+	// concurrent requests
+	private SiteDataFactory<Element> factory;
+	private ConcurrentLinkedDeque<ServletEnabledSiteData<Element>> idleData;
 	
 	private String debugName;
 	
+	/**
+	 * Creates a servlet with a single provider that is not thread safe, so requests are handled one at a time
+	 * @param data
+	 */
 	public AbstractSiteDataServlet(ServletEnabledSiteData<Element> data) {
+		this(data, false);
+	}
+	
+	/**
+	 * Creates a servlet with a single provider shared by all requests.
+	 * @param data
+	 * @param threadSafe if true, the provider's getValue(s) methods may be called concurrently. Requests
+	 * are still handled one at a time if the provider has server side parameters.
+	 */
+	public AbstractSiteDataServlet(ServletEnabledSiteData<Element> data, boolean threadSafe) {
 		super();
 		
-		this.data = data;
+		setData(data, threadSafe);
+	}
+	
+	/**
+	 * Creates a servlet where each request uses its own provider, taken from a pool of idle providers
+	 * built by the given factory. New providers are only built when all others are in use. One provider is
+	 * built immediately so that any errors are encountered when the servlet is created.
+	 * @param factory
+	 * @throws IOException
+	 */
+	public AbstractSiteDataServlet(SiteDataFactory<Element> factory) throws IOException {
+		super();
+		
+		this.data = factory.build();
+		this.threadSafe = true;
 		this.debugName = data.getShortName() + " servlet";
+		this.factory = factory;
+		this.idleData = new ConcurrentLinkedDeque<ServletEnabledSiteData<Element>>();
+		idleData.push(data);
 	}
 	
 	public AbstractSiteDataServlet() {
@@ -63,10 +129,70 @@ public abstract class AbstractSiteDataServlet<Element> extends HttpServlet {
 	}
 	
 	public void setData(ServletEnabledSiteData<Element> data) {
+		setData(data, false);
+	}
+	
+	/**
+	 * Sets a single provider shared by all requests
+	 * @param data
+	 * @param threadSafe if true, the provider's getValue(s) methods may be called concurrently
+	 */
+	public void setData(ServletEnabledSiteData<Element> data, boolean threadSafe) {
 		this.data = data;
+		this.threadSafe = threadSafe;
+		this.factory = null;
+		this.idleData = null;
 		this.debugName = data.getShortName() + " servlet";
 	}
 	
+	/*
+	 * Returns the provider to be used for a single request, which must be passed to releaseData(...) once
+	 * the request has been handled
+	 */
+	private ServletEnabledSiteData<Element> acquireData() throws IOException {
+		ConcurrentLinkedDeque<ServletEnabledSiteData<Element>> idleData = this.idleData;
+		if (idleData == null)
+			return data;
+		// most recently used first
+		ServletEnabledSiteData<Element> data = idleData.poll();
+		if (data == null)
+			data = factory.build();
+		return data;
+	}
+	
+	private void releaseData(ServletEnabledSiteData<Element> data) {
+		ConcurrentLinkedDeque<ServletEnabledSiteData<Element>> idleData = this.idleData;
+		if (idleData != null)
+			idleData.push(data);
+	}
+	
+	/**
+	 * Releases all idle providers built by the factory. New providers will be built if the servlet handles
+	 * any further requests.
+	 */
+	@Override
+	public void destroy() {
+		ConcurrentLinkedDeque<ServletEnabledSiteData<Element>> idleData = this.idleData;
+		if (idleData != null)
+			idleData.clear();
+		super.destroy();
+	}
+	
+	/*
+	 * Returns the object that must be locked while handling a request with the given provider, or null
+	 * if no lock is needed
+	 */
+	private Object getLock(ServletEnabledSiteData<Element> data) {
+		if (idleData != null)
+			return null;
+		if (threadSafe) {
+			ParameterList serverParams = data.getServerSideParams();
+			if (serverParams == null || serverParams.size() == 0)
+				return null;
+		}
+		return data;
+	}
+	
 	//Process the HTTP Post request
 	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		// call the doGet method
@@ -84,9 +210,64 @@ public abstract class AbstractSiteDataServlet<Element> extends HttpServlet {
 	}
 	
 	// Process the HTTP Get request
-	public synchronized void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		debug("Handling GET");
 		
+		ServletEnabledSiteData<Element> data = acquireData();
+		try {
+			Object lock = getLock(data);
+			String contentType = request.getContentType();
+			boolean binary = contentType != null && contentType.startsWith(SiteDataBinaryProtocol.CONTENT_TYPE);
+			if (lock == null) {
+				if (binary)
+					handleBinary(data, request, response);
+				else
+					handleObjects(data, request, response);
+			} else {
+				synchronized (lock) {
+					if (binary)
+						handleBinary(data, request, response);
+					else
+						handleObjects(data, request, response);
+				}
+			}
+		} finally {
+			releaseData(data);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void setServerParams(ServletEnabledSiteData<Element> data, List<Object> paramVals) {
+		ParameterList serverParams = data.getServerSideParams();
+		int numParams = serverParams == null ? 0 : serverParams.size();
+		Preconditions.checkState(paramVals.size() == numParams,
+				"%s requires %s parameters, %s given", data.getShortName(), numParams, paramVals.size());
+		for (int i=0; i<numParams; i++)
+			serverParams.getByIndex(i).setValue(paramVals.get(i));
+	}
+	
+	private void handleBinary(ServletEnabledSiteData<Element> data, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		response.setContentType(SiteDataBinaryProtocol.CONTENT_TYPE);
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(response.getOutputStream(), 1 << 16));
+		try {
+			DataInputStream in = new DataInputStream(
+					new BufferedInputStream(request.getInputStream(), 1 << 16));
+			SiteDataBinaryProtocol.ValuesRequest valsRequest = SiteDataBinaryProtocol.readValuesRequest(in);
+			setServerParams(data, valsRequest.paramValues);
+			ArrayList<Element> vals = data.getValues(valsRequest.locs);
+			SiteDataBinaryProtocol.writeValues(out, vals);
+		} catch (Exception e) {
+			e.printStackTrace(System.out);
+			debug("Failing: " + e.getMessage());
+			SiteDataBinaryProtocol.writeFailure(out, "Servlet Exception: " + e.getMessage());
+		}
+		out.close();
+	}
+	
+	private void handleObjects(ServletEnabledSiteData<Element> data, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
 		// get an input stream from the applet
 		ObjectInputStream in = new ObjectInputStream(request.getInputStream());
 		ObjectOutputStream out = new ObjectOutputStream(response.getOutputStream());
@@ -98,11 +279,15 @@ public abstract class AbstractSiteDataServlet<Element> extends HttpServlet {
 			ParameterList serverParams = data.getServerSideParams();
 			if (serverParams != null && serverParams.size() > 0) {
 				// this site data has parameters
-				if (!(obj instanceof List))
+				if (!(obj instanceof List)) {
 					fail(out, data.getShortName()+" requires "+serverParams.size()+", none given");
+					return;
+				}
 				List<Object> incomingParamVals = (List<Object>)obj;
-				if (incomingParamVals.size() != serverParams.size())
+				if (incomingParamVals.size() != serverParams.size()) {
 					fail(out, data.getShortName()+" requires "+serverParams.size()+", "+incomingParamVals.size()+" given");
+					return;
+				}
 				
 				for (int i=0; i<serverParams.size(); i++)
 					serverParams.getByIndex(i).setValue(incomingParamVals.get(i));
@@ -124,8 +309,10 @@ public abstract class AbstractSiteDataServlet<Element> extends HttpServlet {
 			} else if (obj instanceof double[]) {
 				// this is a single location request
 				Location loc = getLocation((double[])obj);
-				if (loc == null)
+				if (loc == null) {
 					fail(out, "Invalid location!");
+					return;
+				}
 				Element e = data.getValue(loc);
 				out.writeObject(e);
 			} else if (obj instanceof List) {
@@ -134,8 +321,10 @@ public abstract class AbstractSiteDataServlet<Element> extends HttpServlet {
 				LocationList locs = new LocationList();
 				for (double[] pt : pts) {
 					Location loc = getLocation(pt);
-					if (loc == null)
+					if (loc == null) {
 						fail(out, "Invalid location!");
+						return;
+					}
 					locs.add(loc);
 				}
 				ArrayList<Element> e = data.getValues(locs);
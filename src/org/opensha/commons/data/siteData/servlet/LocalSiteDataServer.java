@@ -0,0 +1,224 @@
+package org.opensha.commons.data.siteData.servlet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.base.Preconditions;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal embedded stand-in for a servlet container, used to test and benchmark site data servlets
+ * without deploying them. A single servlet is served on a local port by the JDK's built in HTTP server,
+ * with requests handled concurrently by a fixed size thread pool.<br>
+ * <br>
+ * Only the parts of the servlet API used by {@link AbstractSiteDataServlet} are supported: the request
+ * method, headers, content type and input stream, and the response content type, status and output stream.
+ * The servlet is not initialized with a servlet config.
+ */
+public class LocalSiteDataServer implements Closeable {
+
+	private final HttpServer server;
+	private final ExecutorService exec;
+	private final AtomicLong numRequests = new AtomicLong();
+
+	/**
+	 * Starts serving the given servlet on an ephemeral port of the loopback address
+	 * @param servlet
+	 * @param numThreads number of request handling threads
+	 * @throws IOException
+	 */
+	public LocalSiteDataServer(HttpServlet servlet, int numThreads) throws IOException {
+		Preconditions.checkArgument(numThreads > 0, "Must have at least one thread");
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		exec = Executors.newFixedThreadPool(numThreads);
+		server.setExecutor(exec);
+		server.createContext("/", exchange -> {
+			numRequests.incrementAndGet();
+			try {
+				servlet.service(buildRequest(exchange), buildResponse(exchange));
+			} catch (ServletException | IOException | RuntimeException e) {
+				// respond with an internal server error, as a container would
+				e.printStackTrace();
+				if (exchange.getResponseCode() < 0)
+					exchange.sendResponseHeaders(500, -1);
+			} finally {
+				exchange.close();
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * @return the URL of the servlet
+	 */
+	public String getURL() {
+		InetSocketAddress address = server.getAddress();
+		return "http://"+address.getHostString()+":"+address.getPort()+"/";
+	}
+
+	/**
+	 * @return the number of requests received so far
+	 */
+	public long getNumRequests() {
+		return numRequests.get();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		exec.shutdown();
+		try {
+			exec.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static HttpServletRequest buildRequest(HttpExchange exchange) {
+		ServletInputStream in = new ServletInputStream() {
+
+			private final InputStream is = exchange.getRequestBody();
+			private boolean finished = false;
+
+			@Override
+			public int read() throws IOException {
+				int b = is.read();
+				finished = b < 0;
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = is.read(b, off, len);
+				finished = read < 0;
+				return read;
+			}
+
+			@Override
+			public boolean isFinished() {
+				return finished;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setReadListener(ReadListener listener) {
+				throw new UnsupportedOperationException();
+			}
+		};
+		InvocationHandler handler = (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getMethod":
+				return exchange.getRequestMethod();
+			case "getHeader":
+				return exchange.getRequestHeaders().getFirst((String)args[0]);
+			case "getContentType":
+				return exchange.getRequestHeaders().getFirst("Content-Type");
+			case "getInputStream":
+				return in;
+			case "getProtocol":
+				return exchange.getProtocol();
+			case "getDateHeader":
+				return -1l;
+			case "toString":
+				return "Request "+exchange.getRequestURI();
+			default:
+				throw new UnsupportedOperationException("Request."+method.getName()+" is not supported");
+			}
+		};
+		return (HttpServletRequest)Proxy.newProxyInstance(LocalSiteDataServer.class.getClassLoader(),
+				new Class<?>[] { HttpServletRequest.class }, handler);
+	}
+
+	private static HttpServletResponse buildResponse(HttpExchange exchange) {
+		int[] status = { 200 };
+		ServletOutputStream out = new ServletOutputStream() {
+
+			private OutputStream os;
+
+			// headers are sent, with a chunked body, on the first write
+			private OutputStream stream() throws IOException {
+				if (os == null) {
+					exchange.sendResponseHeaders(status[0], 0);
+					os = exchange.getResponseBody();
+				}
+				return os;
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				stream().write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				stream().write(b, off, len);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				stream().flush();
+			}
+
+			@Override
+			public void close() throws IOException {
+				stream().close();
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener listener) {
+				throw new UnsupportedOperationException();
+			}
+		};
+		InvocationHandler handler = (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "setContentType":
+				exchange.getResponseHeaders().set("Content-Type", (String)args[0]);
+				return null;
+			case "setHeader":
+				exchange.getResponseHeaders().set((String)args[0], (String)args[1]);
+				return null;
+			case "setStatus":
+				status[0] = (Integer)args[0];
+				return null;
+			case "getOutputStream":
+				return out;
+			case "toString":
+				return "Response "+exchange.getRequestURI();
+			default:
+				throw new UnsupportedOperationException("Response."+method.getName()+" is not supported");
+			}
+		};
+		return (HttpServletResponse)Proxy.newProxyInstance(LocalSiteDataServer.class.getClassLoader(),
+				new Class<?>[] { HttpServletResponse.class }, handler);
+	}
+
+}
@@ -0,0 +1,239 @@
+package org.opensha.commons.data.siteData.servlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Compact binary wire format used by {@link SiteDataServletAccessor} and {@link AbstractSiteDataServlet}
+ * for bulk value requests, in place of serialized {@link LocationList}s and value lists.<br>
+ * <br>
+ * A request consists of a header, the server side parameter values (if any), and then the number of
+ * locations followed by packed latitude/longitude pairs (depths are not sent). The response is a status
+ * byte, followed either by a failure message or by the values. Lists of non null {@link Double} values are
+ * sent as packed doubles, lists of strings as nullable UTF strings, and anything else as individually
+ * typed values. All numbers are big endian, as written by {@link DataOutputStream}.
+ */
+class SiteDataBinaryProtocol {
+
+	/**
+	 * Content type of binary requests and responses. Servers that don't support the binary protocol
+	 * respond with a different content type.
+	 */
+	static final String CONTENT_TYPE = "application/x-opensha-site-data";
+
+	private static final int MAGIC = 0x4F534431; // "OSD1"
+
+	private static final byte OP_GET_VALUES = 1;
+
+	private static final byte STATUS_OK = 0;
+	private static final byte STATUS_FAIL = 1;
+
+	// individually typed values
+	private static final byte TYPE_NULL = 0;
+	private static final byte TYPE_DOUBLE = 1;
+	private static final byte TYPE_FLOAT = 2;
+	private static final byte TYPE_INT = 3;
+	private static final byte TYPE_LONG = 4;
+	private static final byte TYPE_BOOLEAN = 5;
+	private static final byte TYPE_STRING = 6;
+
+	// value list encodings
+	private static final byte VALUES_DOUBLE = 1;
+	private static final byte VALUES_STRING = 2;
+	private static final byte VALUES_TYPED = 3;
+
+	private SiteDataBinaryProtocol() {}
+
+	/**
+	 * Bulk value request, as read by the server
+	 */
+	static class ValuesRequest {
+		final List<Object> paramValues;
+		final LocationList locs;
+
+		private ValuesRequest(List<Object> paramValues, LocationList locs) {
+			this.paramValues = paramValues;
+			this.locs = locs;
+		}
+	}
+
+	/**
+	 * @param value
+	 * @return true if the given value can be sent as an individually typed value
+	 */
+	static boolean isSupported(Object value) {
+		return value == null || value instanceof Double || value instanceof Float || value instanceof Integer
+				|| value instanceof Long || value instanceof Boolean || value instanceof String;
+	}
+
+	static void writeValuesRequest(DataOutputStream out, List<?> paramValues, LocationList locs)
+			throws IOException {
+		out.writeInt(MAGIC);
+		out.writeByte(OP_GET_VALUES);
+		out.writeInt(paramValues.size());
+		for (Object value : paramValues)
+			writeTyped(out, value);
+		out.writeInt(locs.size());
+		for (Location loc : locs) {
+			out.writeDouble(loc.getLatitude());
+			out.writeDouble(loc.getLongitude());
+		}
+	}
+
+	static ValuesRequest readValuesRequest(DataInputStream in) throws IOException {
+		int magic = in.readInt();
+		Preconditions.checkState(magic == MAGIC, "Bad site data request header: %s", magic);
+		byte op = in.readByte();
+		Preconditions.checkState(op == OP_GET_VALUES, "Unknown site data operation: %s", op);
+		int numParams = in.readInt();
+		Preconditions.checkState(numParams >= 0, "Bad parameter count: %s", numParams);
+		List<Object> paramValues = new ArrayList<Object>(numParams);
+		for (int i=0; i<numParams; i++)
+			paramValues.add(readTyped(in));
+		int numLocs = in.readInt();
+		Preconditions.checkState(numLocs >= 0, "Bad location count: %s", numLocs);
+		LocationList locs = new LocationList();
+		for (int i=0; i<numLocs; i++) {
+			double lat = in.readDouble();
+			double lon = in.readDouble();
+			locs.add(new Location(lat, lon));
+		}
+		return new ValuesRequest(paramValues, locs);
+	}
+
+	/**
+	 * Writes a successful response. The encoding is chosen, and unsupported values are detected, before
+	 * anything is written.
+	 * @param out
+	 * @param values
+	 * @throws IOException
+	 * @throws IllegalArgumentException if any value can't be sent as a typed value
+	 */
+	static void writeValues(DataOutputStream out, List<?> values) throws IOException {
+		boolean allDoubles = true;
+		boolean allStrings = true;
+		for (Object value : values) {
+			Preconditions.checkArgument(isSupported(value),
+					"Values of type %s can't be sent in binary form", value == null ? null : value.getClass());
+			allDoubles = allDoubles && value instanceof Double;
+			allStrings = allStrings && (value == null || value instanceof String);
+		}
+		out.writeByte(STATUS_OK);
+		if (allDoubles) {
+			out.writeByte(VALUES_DOUBLE);
+			out.writeInt(values.size());
+			for (Object value : values)
+				out.writeDouble((Double)value);
+		} else if (allStrings) {
+			out.writeByte(VALUES_STRING);
+			out.writeInt(values.size());
+			for (Object value : values) {
+				out.writeBoolean(value != null);
+				if (value != null)
+					out.writeUTF((String)value);
+			}
+		} else {
+			out.writeByte(VALUES_TYPED);
+			out.writeInt(values.size());
+			for (Object value : values)
+				writeTyped(out, value);
+		}
+	}
+
+	static void writeFailure(DataOutputStream out, String message) throws IOException {
+		out.writeByte(STATUS_FAIL);
+		out.writeUTF(message == null ? "" : message);
+	}
+
+	/**
+	 * Reads a response written by {@link #writeValues(DataOutputStream, List)}
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 * @throws RuntimeException if the server reported a failure
+	 */
+	static ArrayList<Object> readValues(DataInputStream in) throws IOException {
+		byte status = in.readByte();
+		if (status == STATUS_FAIL)
+			throw new RuntimeException("Status Request Failed: " + in.readUTF());
+		Preconditions.checkState(status == STATUS_OK, "Bad response status: %s", status);
+		byte encoding = in.readByte();
+		int num = in.readInt();
+		Preconditions.checkState(num >= 0, "Bad value count: %s", num);
+		ArrayList<Object> values = new ArrayList<Object>(num);
+		switch (encoding) {
+		case VALUES_DOUBLE:
+			for (int i=0; i<num; i++)
+				values.add(in.readDouble());
+			break;
+		case VALUES_STRING:
+			for (int i=0; i<num; i++)
+				values.add(in.readBoolean() ? in.readUTF() : null);
+			break;
+		case VALUES_TYPED:
+			for (int i=0; i<num; i++)
+				values.add(readTyped(in));
+			break;
+		default:
+			throw new IllegalStateException("Unknown value encoding: " + encoding);
+		}
+		return values;
+	}
+
+	private static void writeTyped(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(TYPE_NULL);
+		} else if (value instanceof Double) {
+			out.writeByte(TYPE_DOUBLE);
+			out.writeDouble((Double)value);
+		} else if (value instanceof Float) {
+			out.writeByte(TYPE_FLOAT);
+			out.writeFloat((Float)value);
+		} else if (value instanceof Integer) {
+			out.writeByte(TYPE_INT);
+			out.writeInt((Integer)value);
+		} else if (value instanceof Long) {
+			out.writeByte(TYPE_LONG);
+			out.writeLong((Long)value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(TYPE_BOOLEAN);
+			out.writeBoolean((Boolean)value);
+		} else if (value instanceof String) {
+			out.writeByte(TYPE_STRING);
+			out.writeUTF((String)value);
+		} else {
+			throw new IllegalArgumentException("Values of type "+value.getClass()+" can't be sent in binary form");
+		}
+	}
+
+	private static Object readTyped(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case TYPE_NULL:
+			return null;
+		case TYPE_DOUBLE:
+			return in.readDouble();
+		case TYPE_FLOAT:
+			return in.readFloat();
+		case TYPE_INT:
+			return in.readInt();
+		case TYPE_LONG:
+			return in.readLong();
+		case TYPE_BOOLEAN:
+			return in.readBoolean();
+		case TYPE_STRING:
+			return in.readUTF();
+		default:
+			throw new IllegalStateException("Unknown value type: " + type);
+		}
+	}
+
+}
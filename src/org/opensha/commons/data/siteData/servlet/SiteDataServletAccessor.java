@@ -19,13 +19,25 @@
 
 package org.opensha.commons.data.siteData.servlet;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.opensha.commons.data.siteData.ServletEnabledSiteData;
 import org.opensha.commons.geo.Location;
@@ -33,14 +45,43 @@ import org.opensha.commons.geo.LocationList;
 import org.opensha.commons.param.Parameter;
 import org.opensha.commons.param.ParameterList;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+/**
+ * Client side accessor for site data served by an {@link AbstractSiteDataServlet}.<br>
+ * <br>
+ * Bulk requests through {@link #getValues(LocationList)} are split into chunks of at most
+ * {@link #getMaxLocsPerRequest()} locations, which are requested in parallel on up to
+ * {@link #getMaxConcurrentRequests()} connections, using threads shared by all bulk requests from this
+ * accessor (which time out when idle). Bulk requests use the compact binary format of
+ * {@link SiteDataBinaryProtocol} unless the server doesn't support it (detected from the response content
+ * type), in which case this accessor reverts to serialized objects.
+ */
 public class SiteDataServletAccessor<Element> {
 	
+	/**
+	 * Default maximum number of simultaneous requests made by {@link #getValues(LocationList)}
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+	
+	/**
+	 * Minimum number of locations in each chunk when a bulk request is split up to be requested in parallel
+	 */
+	private static final int MIN_PARALLEL_CHUNK_SIZE = 5000;
+	
 	private String url;
 	private ServletEnabledSiteData<Element> data;
 	
 	private int maxLocsPerRequest = 100000;
+	private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+	private boolean useBinary = true;
+	// cleared if the server is found not to support the binary protocol
+	private volatile boolean binarySupported = true;
+	
+	// shared by all bulk requests, created on first use
+	private ThreadPoolExecutor exec;
 	
 	public SiteDataServletAccessor(ServletEnabledSiteData<Element> data, String servletURL) {
 		this.url = servletURL;
@@ -63,26 +104,160 @@ public class SiteDataServletAccessor<Element> {
 		return (Location)getResult(loc, AbstractSiteDataServlet.OP_GET_CLOSEST);
 	}
 	
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	/**
+	 * Sets the maximum number of simultaneous requests made by {@link #getValues(LocationList)}
+	 * @param maxConcurrentRequests
+	 */
+	public synchronized void setMaxConcurrentRequests(int maxConcurrentRequests) {
+		Preconditions.checkArgument(maxConcurrentRequests > 0, "Must allow at least one request");
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		if (exec != null) {
+			// core size can't exceed max size
+			if (maxConcurrentRequests > exec.getMaximumPoolSize()) {
+				exec.setMaximumPoolSize(maxConcurrentRequests);
+				exec.setCorePoolSize(maxConcurrentRequests);
+			} else {
+				exec.setCorePoolSize(maxConcurrentRequests);
+				exec.setMaximumPoolSize(maxConcurrentRequests);
+			}
+		}
+	}
+	
+	/*
+	 * Executor with one thread for each concurrent request, shared by all bulk requests so that the total
+	 * number of requests is bounded. Threads are daemons and time out when idle.
+	 */
+	private synchronized ExecutorService getExecutor() {
+		if (exec == null) {
+			exec = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactoryBuilder().setDaemon(true).setNameFormat("site-data-request-%d").build());
+			exec.allowCoreThreadTimeOut(true);
+		}
+		return exec;
+	}
+
+	public boolean isUseBinary() {
+		return useBinary;
+	}
+
+	/**
+	 * Sets whether bulk requests should use the binary protocol (if supported by the server), or
+	 * serialized objects
+	 * @param useBinary
+	 */
+	public void setUseBinary(boolean useBinary) {
+		this.useBinary = useBinary;
+	}
+
 	public ArrayList<Element> getValues(LocationList locs) throws IOException {
-		ArrayList<Element> result = null;
+		int chunkSize = locs.size();
+		if (maxLocsPerRequest > 0)
+			chunkSize = Integer.min(chunkSize, maxLocsPerRequest);
+		if (maxConcurrentRequests > 1 && locs.size() >= 2*MIN_PARALLEL_CHUNK_SIZE)
+			// split into enough chunks to use each connection
+			chunkSize = Integer.min(chunkSize, Integer.max(MIN_PARALLEL_CHUNK_SIZE,
+					(locs.size() + maxConcurrentRequests - 1)/maxConcurrentRequests));
+		if (chunkSize >= locs.size())
+			return getChunkValues(locs);
 		
-		if (maxLocsPerRequest > 0 && locs.size() > maxLocsPerRequest) {
-			result = new ArrayList<Element>();
-			
-			int done = 0;
-			int tot = locs.size();
-			for (LocationList partialLocs : locs.split(maxLocsPerRequest)) {
-				float frac = (float)done / (float)tot * 100f;
-//				System.out.println("Requesting " + partialLocs.size() + " values (" + frac + " % done)");
-				result.addAll((ArrayList<Element>)getResult(partialLocs));
-				done += partialLocs.size();
+		List<LocationList> chunks = locs.split(chunkSize);
+		int numThreads = Integer.min(maxConcurrentRequests, chunks.size());
+		if (numThreads == 1) {
+			ArrayList<Element> result = new ArrayList<Element>(locs.size());
+			for (LocationList chunk : chunks)
+				result.addAll(getChunkValues(chunk));
+			return result;
+		}
+		ExecutorService exec = getExecutor();
+		List<Future<ArrayList<Element>>> futures = new ArrayList<Future<ArrayList<Element>>>();
+		try {
+			for (LocationList chunk : chunks)
+				futures.add(exec.submit(() -> getChunkValues(chunk)));
+			ArrayList<Element> result = new ArrayList<Element>(locs.size());
+			for (Future<ArrayList<Element>> future : futures)
+				result.addAll(future.get());
+			return result;
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while waiting for site data", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw new RuntimeException(cause);
+		} finally {
+			// cancel any remaining chunks if we failed
+			for (Future<ArrayList<Element>> future : futures)
+				future.cancel(true);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private ArrayList<Element> getChunkValues(LocationList locs) throws IOException {
+		if (useBinary && binarySupported) {
+			ArrayList<Element> result = getBinaryValues(locs);
+			if (result != null)
+				return result;
+		}
+		return (ArrayList<Element>)getResult(locs);
+	}
+	
+	/*
+	 * Requests values with the binary protocol, returning null if the server parameters can't be sent in
+	 * binary form or if the server doesn't support it
+	 */
+	@SuppressWarnings("unchecked")
+	private ArrayList<Element> getBinaryValues(LocationList locs) throws IOException {
+		List<Object> paramVals = Lists.newArrayList();
+		ParameterList serverParams = data.getServerSideParams();
+		if (serverParams != null) {
+			for (Parameter<?> param : serverParams) {
+				Object value = param.getValue();
+				if (!SiteDataBinaryProtocol.isSupported(value))
+					return null;
+				paramVals.add(value);
 			}
-		} else {
-//			System.out.println("Requesting " + locs.size() + " values");
-			result = (ArrayList<Element>)getResult(locs);
 		}
 		
-		return result;
+		URLConnection servletConnection = this.openServletConnection();
+		servletConnection.setRequestProperty("Content-Type", SiteDataBinaryProtocol.CONTENT_TYPE);
+		
+		DataOutputStream outputToServlet = new DataOutputStream(
+				new BufferedOutputStream(servletConnection.getOutputStream(), 1 << 16));
+		SiteDataBinaryProtocol.writeValuesRequest(outputToServlet, paramVals, locs);
+		outputToServlet.flush();
+		
+		InputStream is;
+		try {
+			is = servletConnection.getInputStream();
+		} catch (IOException e) {
+			// servers without binary support fail to read the request as serialized objects
+			if (servletConnection instanceof HttpURLConnection
+					&& ((HttpURLConnection)servletConnection).getResponseCode() >= 400) {
+				binarySupported = false;
+				return null;
+			}
+			throw e;
+		}
+		try {
+			String contentType = servletConnection.getContentType();
+			if (contentType == null || !contentType.startsWith(SiteDataBinaryProtocol.CONTENT_TYPE)) {
+				// server doesn't support the binary protocol (and reported the failure as a serialized
+				// object), revert to serialized objects
+				binarySupported = false;
+				return null;
+			}
+			DataInputStream inputFromServlet = new DataInputStream(new BufferedInputStream(is, 1 << 16));
+			return (ArrayList<Element>)(ArrayList<?>)SiteDataBinaryProtocol.readValues(inputFromServlet);
+		} finally {
+			is.close();
+		}
 	}
 	
 	private Object getResult(Object request) throws IOException {
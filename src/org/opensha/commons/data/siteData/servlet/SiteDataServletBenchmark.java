@@ -0,0 +1,116 @@
+package org.opensha.commons.data.siteData.servlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.opensha.commons.data.siteData.impl.ConstantValueDataProvider;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Benchmarks site data servlet throughput and latency under load with a {@link LocalSiteDataServer}.
+ * Several clients concurrently request values for batches of locations from a synthetic provider with
+ * a simulated lookup cost per location. The legacy path (provider locked per request, serialized objects,
+ * sequential chunks) is compared with the concurrent path (thread safe provider, binary protocol,
+ * parallel chunks).
+ * <br><br>
+ * Usage: SiteDataServletBenchmark [numClients] [locsPerBatch] [batchesPerClient] [nanosPerLoc]
+ */
+public class SiteDataServletBenchmark {
+
+	private static class SyntheticProvider extends ConstantValueDataProvider<Double> {
+
+		private final long nanosPerLoc;
+
+		public SyntheticProvider(long nanosPerLoc) {
+			super(TYPE_VS30, TYPE_FLAG_INFERRED, 0d, "Synthetic Provider", "Synthetic");
+			this.nanosPerLoc = nanosPerLoc;
+		}
+
+		@Override
+		public Double getValue(Location loc) throws IOException {
+			// simulated lookup cost
+			long end = System.nanoTime() + nanosPerLoc;
+			while (System.nanoTime() < end);
+			return 200d + loc.getLatitude() + loc.getLongitude();
+		}
+	}
+
+	private static class SyntheticServlet extends AbstractSiteDataServlet<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		public SyntheticServlet(long nanosPerLoc, boolean threadSafe) {
+			super(new SyntheticProvider(nanosPerLoc), threadSafe);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int numClients = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int locsPerBatch = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		int batchesPerClient = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		long nanosPerLoc = args.length > 3 ? Long.parseLong(args[3]) : 500;
+
+		LocationList locs = new LocationList();
+		for (int i=0; i<locsPerBatch; i++)
+			locs.add(new Location(32 + 10d*i/locsPerBatch, -124 + (i % 1000)*0.01));
+
+		System.out.println("Threads: "+Runtime.getRuntime().availableProcessors()+", clients: "+numClients
+				+", locs/batch: "+locsPerBatch+", batches/client: "+batchesPerClient+", ns/loc: "+nanosPerLoc);
+		System.out.println("mode\trequests\tlocsPerSec\tmeanMS\tmedianMS\tmaxMS");
+		for (boolean concurrent : new boolean[] {false, true}) {
+			// warm up, then time
+			run(concurrent, numClients, locs, 1, nanosPerLoc);
+			run(concurrent, numClients, locs, batchesPerClient, nanosPerLoc);
+		}
+	}
+
+	private static void run(boolean concurrent, int numClients, LocationList locs, int batchesPerClient,
+			long nanosPerLoc) throws IOException, InterruptedException, ExecutionException {
+		SyntheticServlet servlet = new SyntheticServlet(nanosPerLoc, concurrent);
+		try (LocalSiteDataServer server = new LocalSiteDataServer(servlet, 2*numClients)) {
+			ExecutorService exec = Executors.newFixedThreadPool(numClients);
+			List<Future<double[]>> futures = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int c=0; c<numClients; c++) {
+				futures.add(exec.submit(() -> {
+					SiteDataServletAccessor<Double> accessor = new SiteDataServletAccessor<Double>(
+							new SyntheticProvider(nanosPerLoc), server.getURL());
+					accessor.setUseBinary(concurrent);
+					if (!concurrent)
+						accessor.setMaxConcurrentRequests(1);
+					double[] latencies = new double[batchesPerClient];
+					for (int b=0; b<batchesPerClient; b++) {
+						long batchStart = System.nanoTime();
+						ArrayList<Double> vals = accessor.getValues(locs);
+						latencies[b] = (System.nanoTime() - batchStart)/1e6;
+						Preconditions.checkState(vals.size() == locs.size());
+					}
+					return latencies;
+				}));
+			}
+			double[] latencies = new double[numClients*batchesPerClient];
+			int index = 0;
+			for (Future<double[]> future : futures)
+				for (double latency : future.get())
+					latencies[index++] = latency;
+			double secs = (System.nanoTime() - start)/1e9;
+			exec.shutdown();
+
+			Arrays.sort(latencies);
+			double mean = Arrays.stream(latencies).average().getAsDouble();
+			System.out.println((concurrent ? "concurrent" : "legacy")+"\t"+server.getNumRequests()
+					+"\t"+(float)(latencies.length*locs.size()/secs)+"\t"+(float)mean
+					+"\t"+(float)latencies[latencies.length/2]+"\t"+(float)latencies[latencies.length-1]);
+		}
+	}
+
+}
@@ -34,6 +34,6 @@ public class CS_Study18_8_BasinDepthTo1_0_Servlet extends
 			CS_Study18_8_BasinDepth.DEPTH_1_0_FILE);
 	
 	public CS_Study18_8_BasinDepthTo1_0_Servlet() throws IOException {
-		super(new CS_Study18_8_BasinDepth(SiteData.TYPE_DEPTH_TO_1_0, FILE, false));
+		super(new CS_Study18_8_BasinDepth(SiteData.TYPE_DEPTH_TO_1_0, FILE, false), true);
 	}
 }
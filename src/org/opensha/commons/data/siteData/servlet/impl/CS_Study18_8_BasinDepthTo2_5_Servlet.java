@@ -34,6 +34,6 @@ public class CS_Study18_8_BasinDepthTo2_5_Servlet extends
 			CS_Study18_8_BasinDepth.DEPTH_2_5_FILE);
 	
 	public CS_Study18_8_BasinDepthTo2_5_Servlet() throws IOException {
-		super(new CS_Study18_8_BasinDepth(SiteData.TYPE_DEPTH_TO_2_5, FILE, false));
+		super(new CS_Study18_8_BasinDepth(SiteData.TYPE_DEPTH_TO_2_5, FILE, false), true);
 	}
 }
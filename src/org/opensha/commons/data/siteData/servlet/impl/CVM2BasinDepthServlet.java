@@ -32,6 +32,6 @@ public class CVM2BasinDepthServlet extends AbstractSiteDataServlet<Double> {
 			+File.separator+CVM2BasinDepth.FILE_NAME;
 	
 	public CVM2BasinDepthServlet() throws IOException {
-		super(new CVM2BasinDepth(FILE));
+		super(() -> new CVM2BasinDepth(FILE));
 	}
 }
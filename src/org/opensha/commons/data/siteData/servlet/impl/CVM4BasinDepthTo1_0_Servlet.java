@@ -34,6 +34,6 @@ public class CVM4BasinDepthTo1_0_Servlet extends
 										CVM4BasinDepth.DEPTH_1_0_FILE);
 	
 	public CVM4BasinDepthTo1_0_Servlet() throws IOException {
-		super(new CVM4BasinDepth(SiteData.TYPE_DEPTH_TO_1_0, FILE, false));
+		super(new CVM4BasinDepth(SiteData.TYPE_DEPTH_TO_1_0, FILE, false), true);
 	}
 }
@@ -34,6 +34,6 @@ public class CVM4BasinDepthTo2_5_Servlet extends
 										CVM4BasinDepth.DEPTH_2_5_FILE);
 	
 	public CVM4BasinDepthTo2_5_Servlet() throws IOException {
-		super(new CVM4BasinDepth(SiteData.TYPE_DEPTH_TO_2_5, FILE, false));
+		super(new CVM4BasinDepth(SiteData.TYPE_DEPTH_TO_2_5, FILE, false), true);
 	}
 }
@@ -34,6 +34,6 @@ public class CVM4i26BasinDepthTo1_0_Servlet extends
 										CVM4i26BasinDepth.DEPTH_1_0_FILE);
 	
 	public CVM4i26BasinDepthTo1_0_Servlet() throws IOException {
-		super(new CVM4i26BasinDepth(SiteData.TYPE_DEPTH_TO_1_0, FILE, false));
+		super(new CVM4i26BasinDepth(SiteData.TYPE_DEPTH_TO_1_0, FILE, false), true);
 	}
 }
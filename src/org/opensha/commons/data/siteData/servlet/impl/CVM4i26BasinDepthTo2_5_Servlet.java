@@ -34,6 +34,6 @@ public class CVM4i26BasinDepthTo2_5_Servlet extends
 										CVM4i26BasinDepth.DEPTH_2_5_FILE);
 	
 	public CVM4i26BasinDepthTo2_5_Servlet() throws IOException {
-		super(new CVM4i26BasinDepth(SiteData.TYPE_DEPTH_TO_2_5, FILE, false));
+		super(new CVM4i26BasinDepth(SiteData.TYPE_DEPTH_TO_2_5, FILE, false), true);
 	}
 }
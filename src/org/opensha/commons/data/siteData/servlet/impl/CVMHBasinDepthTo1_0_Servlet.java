@@ -34,6 +34,6 @@ public class CVMHBasinDepthTo1_0_Servlet extends
 										CVMHBasinDepth.DEFAULT_DATA_DIR);
 	
 	public CVMHBasinDepthTo1_0_Servlet() throws IOException {
-		super(new CVMHBasinDepth(SiteData.TYPE_DEPTH_TO_1_0, DIR, false));
+		super(() -> new CVMHBasinDepth(SiteData.TYPE_DEPTH_TO_1_0, DIR, false));
 	}
 }
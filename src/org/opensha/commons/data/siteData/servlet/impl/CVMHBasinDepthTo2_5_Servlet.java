@@ -34,6 +34,6 @@ public class CVMHBasinDepthTo2_5_Servlet extends
 										CVMHBasinDepth.DEFAULT_DATA_DIR);
 	
 	public CVMHBasinDepthTo2_5_Servlet() throws IOException {
-		super(new CVMHBasinDepth(SiteData.TYPE_DEPTH_TO_2_5, DIR, false));
+		super(() -> new CVMHBasinDepth(SiteData.TYPE_DEPTH_TO_2_5, DIR, false));
 	}
 }
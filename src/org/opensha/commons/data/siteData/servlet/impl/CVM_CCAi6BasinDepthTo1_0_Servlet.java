@@ -35,6 +35,6 @@ public class CVM_CCAi6BasinDepthTo1_0_Servlet extends
 			CVM_CCAi6BasinDepth.DEPTH_1_0_FILE);
 	
 	public CVM_CCAi6BasinDepthTo1_0_Servlet() throws IOException {
-		super(new CVM_CCAi6BasinDepth(SiteData.TYPE_DEPTH_TO_1_0, FILE, false));
+		super(new CVM_CCAi6BasinDepth(SiteData.TYPE_DEPTH_TO_1_0, FILE, false), true);
 	}
 }
@@ -35,6 +35,6 @@ public class CVM_CCAi6BasinDepthTo2_5_Servlet extends
 			CVM_CCAi6BasinDepth.DEPTH_2_5_FILE);
 	
 	public CVM_CCAi6BasinDepthTo2_5_Servlet() throws IOException {
-		super(new CVM_CCAi6BasinDepth(SiteData.TYPE_DEPTH_TO_2_5, FILE, false));
+		super(new CVM_CCAi6BasinDepth(SiteData.TYPE_DEPTH_TO_2_5, FILE, false), true);
 	}
 }
@@ -34,6 +34,6 @@ public class CVM_Vs30_Servlet extends
 										CVM_Vs30.DEFAULT_RESOURCE_DIR);
 	
 	public CVM_Vs30_Servlet() throws IOException {
-		super(new CVM_Vs30(DIR, CVM_Vs30.CVM_DEFAULT, false));
+		super(() -> new CVM_Vs30(DIR, CVM_Vs30.CVM_DEFAULT, false));
 	}
 }
@@ -32,6 +32,6 @@ public class SRTM30PlusTopoSlopeServlet extends AbstractSiteDataServlet<Double>
 			+File.separator+"siteData"+File.separator+"wald_allen_vs30"+File.separator+"srtm30_plus_v5.0_grad.bin";
 	
 	public SRTM30PlusTopoSlopeServlet() throws IOException {
-		super(new SRTM30PlusTopoSlope(FILE_NAME));
+		super(() -> new SRTM30PlusTopoSlope(FILE_NAME));
 	}
 }
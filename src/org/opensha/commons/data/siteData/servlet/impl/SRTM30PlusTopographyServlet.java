@@ -32,6 +32,6 @@ public class SRTM30PlusTopographyServlet extends AbstractSiteDataServlet<Double>
 			+File.separator+"siteData"+File.separator+"srtm30_plus_v5.0";
 	
 	public SRTM30PlusTopographyServlet() throws IOException {
-		super(new SRTM30PlusTopography(FILE_NAME));
+		super(() -> new SRTM30PlusTopography(FILE_NAME));
 	}
 }
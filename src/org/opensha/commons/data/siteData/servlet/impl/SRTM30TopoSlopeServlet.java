@@ -32,6 +32,6 @@ public class SRTM30TopoSlopeServlet extends AbstractSiteDataServlet<Double> {
 			+File.separator+"siteData"+File.separator+"wald_allen_vs30"+File.separator+"srtm30_v2.0_grad.bin";
 	
 	public SRTM30TopoSlopeServlet() throws IOException {
-		super(new SRTM30TopoSlope(FILE_NAME));
+		super(() -> new SRTM30TopoSlope(FILE_NAME));
 	}
 }
@@ -32,6 +32,6 @@ public class SRTM30TopographyServlet extends AbstractSiteDataServlet<Double> {
 			+File.separator+"siteData"+File.separator+"srtm30_v2.0";
 	
 	public SRTM30TopographyServlet() throws IOException {
-		super(new SRTM30Topography(FILE_NAME));
+		super(() -> new SRTM30Topography(FILE_NAME));
 	}
 }
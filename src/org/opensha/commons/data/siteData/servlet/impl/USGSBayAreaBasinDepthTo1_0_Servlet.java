@@ -34,6 +34,6 @@ public class USGSBayAreaBasinDepthTo1_0_Servlet extends
 										+File.separator+USGSBayAreaBasinDepth.DEPTH_1_0_FILE;
 	
 	public USGSBayAreaBasinDepthTo1_0_Servlet() throws IOException {
-		super(new USGSBayAreaBasinDepth(SiteData.TYPE_DEPTH_TO_1_0, FILE, false));
+		super(() -> new USGSBayAreaBasinDepth(SiteData.TYPE_DEPTH_TO_1_0, FILE, false));
 	}
 }
@@ -34,6 +34,6 @@ public class USGSBayAreaBasinDepthTo2_5_Servlet extends
 											+File.separator+USGSBayAreaBasinDepth.DEPTH_2_5_FILE;
 	
 	public USGSBayAreaBasinDepthTo2_5_Servlet() throws IOException {
-		super(new USGSBayAreaBasinDepth(SiteData.TYPE_DEPTH_TO_2_5, FILE, false));
+		super(() -> new USGSBayAreaBasinDepth(SiteData.TYPE_DEPTH_TO_2_5, FILE, false));
 	}
 }
@@ -31,6 +31,6 @@ public class US_3secTopographyServlet extends AbstractSiteDataServlet<Double> {
 	public static final String FILE_NAME = "/home/scec-01/opensha/ned_usa/us_dem_3sec.flt";
 	
 	public US_3secTopographyServlet() throws IOException {
-		super(new US_3secTopography(new File(FILE_NAME)));
+		super(() -> new US_3secTopography(new File(FILE_NAME)));
 	}
 }
@@ -27,7 +27,7 @@ import org.opensha.commons.data.siteData.servlet.AbstractSiteDataServlet;
 public class WillsMap2006Servlet extends AbstractSiteDataServlet<Double> {
 	
 	public WillsMap2006Servlet() throws IOException {
-		super(new WillsMap2006(WillsMap2006.SERVER_BIN_FILE));
+		super(() -> new WillsMap2006(WillsMap2006.SERVER_BIN_FILE));
 	}
 	
 }
@@ -30,6 +30,11 @@ public class ArbDiscrGeoDataSet extends AbstractGeoDataSet {
 	// mapping of poitns to values
 	private HashMap<Location, Double> map;
 	
+	// datasets at least this large use a hash lookup in indexOf rather than a linear search
+	private static final int INDEX_MAP_THRESHOLD = 100;
+	// lazily built mapping of points to their index, see indexOf
+	private transient volatile HashMap<Location, Integer> indexMap;
+	
 	public ArbDiscrGeoDataSet(boolean latitudeX) {
 		super(latitudeX);
 		points = new LocationList();
@@ -40,8 +45,12 @@ public class ArbDiscrGeoDataSet extends AbstractGeoDataSet {
 	public void set(Location loc, double value) {
 		if (loc == null)
 			throw new NullPointerException("Location cannot be null");
-		if (!contains(loc))
+		if (!contains(loc)) {
 			points.add(loc);
+			HashMap<Location, Integer> indexMap = this.indexMap;
+			if (indexMap != null)
+				indexMap.put(loc, points.size()-1);
+		}
 		map.put(loc, value);
 	}
 
@@ -52,7 +61,17 @@ public class ArbDiscrGeoDataSet extends AbstractGeoDataSet {
 
 	@Override
 	public int indexOf(Location loc) {
-		return points.indexOf(loc);
+		if (points.size() < INDEX_MAP_THRESHOLD)
+			return points.indexOf(loc);
+		HashMap<Location, Integer> indexMap = this.indexMap;
+		if (indexMap == null) {
+			indexMap = new HashMap<Location, Integer>(points.size()*2);
+			for (int i=0; i<points.size(); i++)
+				indexMap.put(points.get(i), i);
+			this.indexMap = indexMap;
+		}
+		Integer index = indexMap.get(loc);
+		return index == null ? -1 : index;
 	}
 
 	@Override
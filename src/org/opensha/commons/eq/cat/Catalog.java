@@ -23,9 +23,6 @@ public interface Catalog {
 	// If new magnitude or event types are added, update:
 	// -- valueForMagnitudeType or valueForEventType in AbstractReader
 
-	/** Maximum size of a catalog; currently set to 800,000 events. */
-	public static final int MAX_SIZE = 800000;
-
 	/**
 	 * Adds an array of data of the specified type to this catalog. The first
 	 * call to this method sets the catalog size based on the supplied array.
@@ -39,8 +36,8 @@ public interface Catalog {
 	 * @throws IllegalArgumentException if (1) <code>type</code> already exists
 	 *         in catalog, (2) <code>data</code> is not an array, (3)
 	 *         <code>data</code> is not of the class specified by
-	 *         {@link DataType#clazz()}, (4) <code>data</code> is longer than
-	 *         MAX_SIZE, (5) <code>data</code> is not the first array being
+	 *         {@link DataType#clazz()}, (4) <code>data</code> is empty, (5)
+	 *         <code>data</code> is not the first array being
 	 *         added and <code>data.length != size()</code>, or (6)
 	 *         <code>type</code> is <code>DataType.TIME</code> and
 	 *         <code>data</code> is not sorted ascending
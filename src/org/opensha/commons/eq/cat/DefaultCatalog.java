@@ -18,9 +18,13 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.lang.reflect.Array;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
@@ -32,6 +36,7 @@ import org.dom4j.Element;
 import org.dom4j.tree.DefaultElement;
 import org.opensha.commons.eq.cat.io.CatalogReader;
 import org.opensha.commons.eq.cat.io.CatalogWriter;
+import org.opensha.commons.eq.cat.io.ColumnarCatalogFile;
 import org.opensha.commons.eq.cat.util.DataType;
 import org.opensha.commons.geo.GeoTools;
 import org.opensha.commons.util.DataUtils;
@@ -57,7 +62,11 @@ import com.google.common.primitives.Doubles;
  * metadata element created when saving as a binary file. The bounds data is
  * provided so that a catalog does not have to be loaded to retrieve min/max
  * data. However, this data is not used to reset internal min/max fields; they
- * are set each time a catalog is initialized/loaded.
+ * are set each time a catalog is initialized/loaded.<br/>
+ * <br/>
+ * Catalogs may also be saved in, and memory mapped from, a columnar binary
+ * format (see {@link ColumnarCatalogFile}) that loads without parsing or
+ * copying data.
  * 
  * @author Peter Powers
  * @version $Id: DefaultCatalog.java 8980 2012-05-22 17:23:51Z pmpowers $
@@ -66,6 +75,8 @@ import com.google.common.primitives.Doubles;
 public class DefaultCatalog implements Catalog {
 
 	private Map<DataType, Object> dataMap;
+	// source of columns not yet copied into dataMap
+	private ColumnarCatalogFile columnarFile;
 	private boolean readable = false;
 	private int size = -1;
 
@@ -128,7 +139,7 @@ public class DefaultCatalog implements Catalog {
 	public Object clone() {
 		DefaultCatalog clone = new DefaultCatalog();
 		for (DataType type : dataMap.keySet()) {
-			clone.addData(type, duplicateArray(dataMap.get(type)));
+			clone.addData(type, duplicateArray(data(type)));
 		}
 		return clone;
 	}
@@ -163,8 +174,6 @@ public class DefaultCatalog implements Catalog {
 			"Supplied data array class is not of the required type");
 		checkArgument(Array.getLength(data) != 0,
 			"Supplied data array is empty");
-		checkArgument(Array.getLength(data) <= MAX_SIZE,
-			"Supplied data array exceeds catalog size limit");
 		if (size != -1) { // only if this is not the first 'add'
 			checkArgument(Array.getLength(data) == size,
 				"Supplied data array size does not match catalog size");
@@ -185,7 +194,96 @@ public class DefaultCatalog implements Catalog {
 
 	@Override
 	public Object getData(DataType type) {
-		return (readable) ? dataMap.get(type) : copyData(type);
+		return (readable) ? data(type) : copyData(type);
+	}
+
+	/*
+	 * Returns the internal data array for the supplied type, copying it from
+	 * a mapped columnar file on first access. Columns read from a file are
+	 * held as null until copied, so the whole lookup is synchronized.
+	 */
+	private synchronized Object data(DataType type) {
+		Object data = dataMap.get(type);
+		if (data == null && columnarFile != null &&
+			columnarFile.contains(type)) {
+			data = columnarFile.getData(type);
+			dataMap.put(type, data);
+		}
+		return data;
+	}
+
+	/*
+	 * Returns whether the data array for the supplied type has been added or
+	 * copied from a mapped columnar file.
+	 */
+	private synchronized boolean copied(DataType type) {
+		return dataMap.get(type) != null;
+	}
+
+	/**
+	 * Returns a read-only <code>double</code> buffer view of the requested
+	 * data type or <code>null</code> if the type does not exist in this
+	 * catalog. If this catalog was loaded from a columnar file and the data
+	 * has not been accessed as an array, the buffer is backed directly by the
+	 * mapped file.
+	 * 
+	 * @param type requested; must be <code>double</code> valued
+	 * @return a buffer view of the data
+	 * @throws IllegalArgumentException if <code>type</code> is not
+	 *         <code>double</code> valued
+	 * @see #readColumnar(File)
+	 */
+	public DoubleBuffer getDoubleBuffer(DataType type) {
+		checkBufferType(type, double[].class);
+		if (!contains(type)) return null;
+		if (!copied(type)) {
+			return columnarFile.getDoubleBuffer(type);
+		}
+		return DoubleBuffer.wrap((double[]) data(type)).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns a read-only <code>long</code> buffer view of the requested data
+	 * type or <code>null</code> if the type does not exist in this catalog.
+	 * 
+	 * @param type requested; must be <code>long</code> valued
+	 * @return a buffer view of the data
+	 * @throws IllegalArgumentException if <code>type</code> is not
+	 *         <code>long</code> valued
+	 * @see #getDoubleBuffer(DataType)
+	 */
+	public LongBuffer getLongBuffer(DataType type) {
+		checkBufferType(type, long[].class);
+		if (!contains(type)) return null;
+		if (!copied(type)) {
+			return columnarFile.getLongBuffer(type);
+		}
+		return LongBuffer.wrap((long[]) data(type)).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns a read-only <code>int</code> buffer view of the requested data
+	 * type or <code>null</code> if the type does not exist in this catalog.
+	 * 
+	 * @param type requested; must be <code>int</code> valued
+	 * @return a buffer view of the data
+	 * @throws IllegalArgumentException if <code>type</code> is not
+	 *         <code>int</code> valued
+	 * @see #getDoubleBuffer(DataType)
+	 */
+	public IntBuffer getIntBuffer(DataType type) {
+		checkBufferType(type, int[].class);
+		if (!contains(type)) return null;
+		if (!copied(type)) {
+			return columnarFile.getIntBuffer(type);
+		}
+		return IntBuffer.wrap((int[]) data(type)).asReadOnlyBuffer();
+	}
+
+	private static void checkBufferType(DataType type, Class<?> clazz) {
+		checkNotNull(type, "Data type is null");
+		checkArgument(type.clazz() == clazz, "%s data is not of type %s",
+			type, clazz.getComponentType());
 	}
 
 	/**
@@ -196,7 +294,7 @@ public class DefaultCatalog implements Catalog {
 	 * @return a deep copy of the requested type
 	 */
 	public Object copyData(DataType type) {
-		return duplicateArray(dataMap.get(type));
+		return duplicateArray(data(type));
 	}
 
 	/**
@@ -223,7 +321,7 @@ public class DefaultCatalog implements Catalog {
 	 */
 	public Object deriveData(DataType type, int[] indices) {
 		if (!contains(type)) return null;
-		return DataUtils.arraySelect(dataMap.get(type), indices);
+		return DataUtils.arraySelect(data(type), indices);
 	}
 
 	/**
@@ -287,7 +385,7 @@ public class DefaultCatalog implements Catalog {
 				field.addAttribute("id", type.name());
 				fields.add(field);
 				// write object
-				out.writeObject(dataMap.get(type));
+				out.writeObject(data(type));
 			}
 			catData.add(createBoundsData());
 		} finally {
@@ -330,6 +428,91 @@ public class DefaultCatalog implements Catalog {
 		}
 	}
 
+	/**
+	 * Writes this catalog as a columnar binary file using the default block
+	 * size. Unlike {@link #writeCatalog(File)}, no separate metadata is
+	 * required to read the file back.
+	 * 
+	 * @param file to write to
+	 * @throws NullPointerException if supplied file is <code>null</code>
+	 * @throws IllegalStateException if this catalog is empty
+	 * @throws IOException if there is a problem writing the file
+	 * @see ColumnarCatalogFile
+	 */
+	public void writeColumnar(File file) throws IOException {
+		writeColumnar(file, ColumnarCatalogFile.DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Writes this catalog as a columnar binary file.
+	 * 
+	 * @param file to write to
+	 * @param blockSize number of events per block of min/max statistics
+	 * @throws NullPointerException if supplied file is <code>null</code>
+	 * @throws IllegalStateException if this catalog is empty
+	 * @throws IOException if there is a problem writing the file
+	 * @see ColumnarCatalogFile
+	 */
+	public void writeColumnar(File file, int blockSize) throws IOException {
+		checkNotNull(file, "Supplied file is null");
+		checkState(size != -1, "Catalog is empty");
+		Map<DataType, Object> data = new EnumMap<DataType, Object>(
+			DataType.class);
+		for (DataType type : dataMap.keySet()) {
+			data.put(type, data(type));
+		}
+		ColumnarCatalogFile.write(file, data, blockSize);
+	}
+
+	/**
+	 * Loads this catalog from a columnar binary file. The file is memory
+	 * mapped and only its header and block statistics are read; catalog
+	 * bounds are taken from the block statistics. Data is exposed without
+	 * copying through the buffer accessors (e.g.
+	 * {@link #getDoubleBuffer(DataType)}) and is copied into arrays on first
+	 * array access (e.g. via <code>getData()</code> or
+	 * <code>getValue()</code>).
+	 * 
+	 * @param file to read
+	 * @throws NullPointerException if supplied file is <code>null</code>
+	 * @throws IllegalStateException if this catalog already contains data
+	 * @throws IllegalArgumentException if the file contains no events, event
+	 *         times are not sorted ascending, or [LONGITUDE, LATITUDE, DEPTH,
+	 *         MAGNITUDE] values are out of range
+	 * @throws IOException if there is an IO problem reading the file or it is
+	 *         not a columnar catalog file
+	 */
+	public void readColumnar(File file) throws IOException {
+		checkNotNull(file, "Supplied file is null");
+		checkState(size == -1, "Catalog already contains data");
+		ColumnarCatalogFile cf = ColumnarCatalogFile.open(file);
+		checkArgument(cf.size() > 0, "Catalog file is empty");
+		if (cf.contains(DataType.TIME)) {
+			checkArgument(cf.isTimeSorted(),
+				"Event times are not sorted ascending");
+			LongBuffer times = cf.getLongBuffer(DataType.TIME);
+			minDate = new Date(times.get(0));
+			maxDate = new Date(times.get(cf.size() - 1));
+		}
+		for (DataType type : minMaxTypes) {
+			if (!cf.contains(type)) continue;
+			double min = cf.getMin(type);
+			double max = cf.getMax(type);
+			double[] bounds = { min, max };
+			if (type == LONGITUDE) GeoTools.validateLons(bounds);
+			if (type == LATITUDE) GeoTools.validateLats(bounds);
+			if (type == DEPTH) GeoTools.validateDepths(bounds);
+			if (type == MAGNITUDE) CatTools.validateMags(bounds);
+			minVals.put(type, min);
+			maxVals.put(type, max);
+		}
+		for (DataType type : cf.getDataTypes()) {
+			dataMap.put(type, null);
+		}
+		columnarFile = cf;
+		size = cf.size();
+	}
+
 	@Override
 	public String getEventString(int index) {
 		return ("(M " + getValue(MAGNITUDE, index) + ")   " + eventSDF
@@ -344,15 +527,15 @@ public class DefaultCatalog implements Catalog {
 	@Override
 	public int getEventID(int index) {
 		checkPositionIndex(index, size, "Requested index");
-		checkState(dataMap.get(DataType.EVENT_ID) != null,
+		checkState(contains(DataType.EVENT_ID),
 			"Catalog is missing event ID values");
-		return ((int[]) dataMap.get(DataType.EVENT_ID))[index];
+		return ((int[]) data(DataType.EVENT_ID))[index];
 	}
 
 	@Override
 	public long getTime(int index) {
 		checkPositionIndex(index, size, "Requested index");
-		return ((long[]) dataMap.get(DataType.TIME))[index];
+		return ((long[]) data(DataType.TIME))[index];
 	}
 
 	@Override
@@ -375,17 +558,15 @@ public class DefaultCatalog implements Catalog {
 		checkNotNull(type, "Data type is null");
 		checkArgument(minMaxTypes.contains(type), "Invalid data type");
 		checkPositionIndex(index, size, "Requested index");
-		checkState(dataMap.get(type) != null, "Catalog is missing %s values",
-			type);
-		return ((double[]) dataMap.get(type))[index];
+		checkState(contains(type), "Catalog is missing %s values", type);
+		return ((double[]) data(type))[index];
 	}
 
 	@Override
 	public double minForType(DataType type) {
 		checkNotNull(type, "Data type is null");
 		checkArgument(minMaxTypes.contains(type), "Invalid data type");
-		checkState(dataMap.get(type) != null, "Catalog is missing %s values",
-			type);
+		checkState(contains(type), "Catalog is missing %s values", type);
 		return minVals.get(type);
 	}
 
@@ -393,8 +574,7 @@ public class DefaultCatalog implements Catalog {
 	public double maxForType(DataType type) {
 		checkNotNull(type, "Data type is null");
 		checkArgument(minMaxTypes.contains(type), "Invalid data type");
-		checkState(dataMap.get(type) != null, "Catalog is missing %s values",
-			type);
+		checkState(contains(type), "Catalog is missing %s values", type);
 		return maxVals.get(type);
 	}
 
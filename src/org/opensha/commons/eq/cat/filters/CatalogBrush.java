@@ -8,12 +8,12 @@ import static org.opensha.commons.eq.cat.filters.CatalogBrush.SelectionChange.*;
 
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Map;
 
 import org.opensha.commons.eq.cat.MutableCatalog;
 import org.opensha.commons.eq.cat.util.DataType;
-import org.opensha.commons.util.DataUtils;
 
 /**
  * This class may be used to efficiently brush catalog data. Specifically, the
@@ -21,22 +21,23 @@ import org.opensha.commons.util.DataUtils;
  * <code>[ TIME, LATITUDE,LONGITUDE, DEPTH, MAGNITUDE ]</code> For large
  * catalogs it has a significant memory footprint once instantiated because it
  * internally manages index arrays and sorted copies of catalog source data
- * arrays.
+ * arrays (see {@link CatalogIndex}).
  * 
  * @author Peter Powers
  * @version $Id: CatalogBrush.java 7478 2011-02-15 04:56:25Z pmpowers $
  */
 public class CatalogBrush {
 
-	private MutableCatalog catalog;
+	private CatalogIndex index;
 	private EnumSet<DataType> brushables = EnumSet.of(TIME, LATITUDE,
 		LONGITUDE, DEPTH, MAGNITUDE);
 
-	private Map<DataType, double[]> sortedSources;
-	private Map<DataType, int[]> sourceIndices;
 	private Map<DataType, Integer> minCarets; // inclusive
 	private Map<DataType, Integer> maxCarets; // exclusive
 
+	// number of brushed types that exclude each event
+	private byte[] failCounts;
+
 	private BitSet selectionChange;
 	private BitSet selection;
 
@@ -46,11 +47,26 @@ public class CatalogBrush {
 	 * @param catalog
 	 */
 	public CatalogBrush(MutableCatalog catalog) {
-		this.catalog = catalog;
-		brushables.retainAll(catalog.getDataTypes());
-		selectionChange = new BitSet(catalog.size());
-		selection = new BitSet(catalog.size());
-		selection.set(0, selection.length());
+		this(new CatalogIndex(catalog));
+	}
+
+	/**
+	 * Initializes a new data brush with the supplied catalog index. The sorted
+	 * data of the index is shared, so an index used for {@link CatalogQuery}s
+	 * may be brushed without additional memory overhead.
+	 * 
+	 * @param index of catalog to brush
+	 */
+	public CatalogBrush(CatalogIndex index) {
+		this.index = index;
+		int size = index.size();
+		for (DataType type : CatalogIndex.INDEXED_TYPES) {
+			if (!index.contains(type)) brushables.remove(type);
+		}
+		failCounts = new byte[size];
+		selectionChange = new BitSet(size);
+		selection = new BitSet(size);
+		selection.set(0, size);
 		initMaps();
 	}
 
@@ -72,9 +88,17 @@ public class CatalogBrush {
 		return selectionChange;
 	}
 
-	
+	/**
+	 * Adjusts the time limits of the catalog selection and returns a flag
+	 * describing the change.
+	 * 
+	 * @param key to adjust - min or max limit
+	 * @param value for limit (in milliseconds)
+	 * @return the selection change
+	 * @see #adjust(DataType, LimitKey, double)
+	 */
 	public SelectionChange adjust(LimitKey key, long value) {
-		return NONE;
+		return adjust(TIME, key, value);
 	}
 
 	/**
@@ -85,13 +109,14 @@ public class CatalogBrush {
 	 * <code>SelectionChange.NONE</code> is returned. Otherwise method returns
 	 * <code>SelectionChange.ADD</code> or <code>SelectionChange.REMOVE</code>.
 	 * Once method returns, the <code>BitSet</code> returned by
-	 * {@link #selectionChange()} represents the change.
+	 * {@link #selectionChange()} represents the change. Only events between
+	 * the old and new limit are visited, so small limit changes are fast
+	 * regardless of catalog size.
 	 * 
 	 * @param type of data to adjust
 	 * @param key to adjust - min or max limit
 	 * @param newValue for limit
-	 * @return <code>true</code> if catalog selection has changed,
-	 *         <code>false</code> otherwise
+	 * @return the selection change
 	 */
 	public SelectionChange adjust(DataType type, LimitKey key, double newValue) {
 		// reset change tracker
@@ -106,6 +131,7 @@ public class CatalogBrush {
 		} else {
 			change = adjustMax(type, newValue);
 		}
+		if (change == NONE || selectionChange.isEmpty()) return NONE;
 		// update selection
 		if (change == ADD) {
 			selection.or(selectionChange);
@@ -119,34 +145,38 @@ public class CatalogBrush {
 	 * Performs an update to a min limit change.
 	 */
 	private SelectionChange adjustMin(DataType type, double newValue) {
-		double[] source = sortedSources.get(type);
+		double[] source = index.sortedValues(type);
 		int minCaret = minCarets.get(type);
 		int maxCaret = maxCarets.get(type);
 		double oldValue = source[minCaret];
 		int idx = calcMinCaret(source, minCaret, maxCaret, oldValue, newValue);
 		if (idx == -1) return NONE;
-		int minSelect = (idx < minCaret) ? idx : minCaret;
-		int maxSelect = (idx < minCaret) ? minCaret : idx;
 		minCarets.put(type, idx);
-		updateSelection(type, minSelect, maxSelect);
-		return (idx < minCaret || idx > maxCaret) ? ADD : REMOVE;
+		if (idx < minCaret) {
+			include(type, idx, minCaret);
+			return ADD;
+		}
+		exclude(type, minCaret, idx);
+		return REMOVE;
 	}
 
 	/*
 	 * Performs an update to a max limit change.
 	 */
 	private SelectionChange adjustMax(DataType type, double newValue) {
-		double[] source = sortedSources.get(type);
+		double[] source = index.sortedValues(type);
 		int minCaret = minCarets.get(type);
 		int maxCaret = maxCarets.get(type);
-		double oldValue = source[maxCaret];
+		double oldValue = source[maxCaret - 1];
 		int idx = calcMaxCaret(source, minCaret, maxCaret, oldValue, newValue);
 		if (idx == -1) return NONE;
-		int minSelect = (idx < maxCaret) ? idx : maxCaret;
-		int maxSelect = (idx < maxCaret) ? maxCaret : idx;
-		minCarets.put(type, idx);
-		updateSelection(type, minSelect, maxSelect);
-		return (idx < minCaret || idx > maxCaret) ? ADD : REMOVE;
+		maxCarets.put(type, idx);
+		if (idx > maxCaret) {
+			include(type, maxCaret, idx);
+			return ADD;
+		}
+		exclude(type, idx, maxCaret);
+		return REMOVE;
 	}
 
 	/*
@@ -191,26 +221,37 @@ public class CatalogBrush {
 	}
 
 	/*
-	 * Flips the required bits. 'adjustor' has always been cleared prior to
-	 * calliong this methd
+	 * Marks events at sorted positions [min, max) of the supplied type as
+	 * within its limits; events no longer excluded by any type are recorded
+	 * in 'selectionChange', which has always been cleared prior to calling
+	 * this method.
+	 */
+	private void include(DataType type, int min, int max) {
+		for (int i = min; i < max; i++) {
+			int event = index.event(type, i);
+			if (--failCounts[event] == 0) selectionChange.set(event);
+		}
+	}
+
+	/*
+	 * Marks events at sorted positions [min, max) of the supplied type as
+	 * outside its limits; newly excluded events are recorded in
+	 * 'selectionChange'.
 	 */
-	private void updateSelection(DataType type, int min, int max) {
-		int[] indices = sourceIndices.get(type);
+	private void exclude(DataType type, int min, int max) {
 		for (int i = min; i < max; i++) {
-			selectionChange.flip(indices[i]);
+			int event = index.event(type, i);
+			if (failCounts[event]++ == 0) selectionChange.set(event);
 		}
 	}
 
 	/* initialize all data tracking maps */
 	private void initMaps() {
+		minCarets = new EnumMap<DataType, Integer>(DataType.class);
+		maxCarets = new EnumMap<DataType, Integer>(DataType.class);
 		for (DataType type : brushables) {
-			// retainAll in constructor already filtered out
-			// data type missing from catalog
-			double[] source = (double[]) catalog.copyData(type);
-			sourceIndices.put(type, DataUtils.indexAndSort(source));
-			sortedSources.put(type, source);
 			minCarets.put(type, 0);
-			maxCarets.put(type, catalog.size());
+			maxCarets.put(type, index.size());
 		}
 	}
 
@@ -220,12 +261,18 @@ public class CatalogBrush {
 			switch (type) {
 				case LATITUDE:
 					validateLat(value);
+					break;
 				case LONGITUDE:
 					validateLon(value);
+					break;
 				case DEPTH:
 					validateDepth(value);
+					break;
 				case MAGNITUDE:
 					validateMag(value);
+					break;
+				default:
+					break;
 			}
 		} catch (IllegalArgumentException iae) {
 			return false;
@@ -0,0 +1,376 @@
+package org.opensha.commons.eq.cat.filters;
+
+import static com.google.common.base.Preconditions.*;
+import static org.opensha.commons.eq.cat.util.DataType.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.opensha.commons.eq.cat.Catalog;
+import org.opensha.commons.eq.cat.util.DataType;
+
+/**
+ * Reusable index over the data of a {@link Catalog} for repeated filtering.
+ * For each of <code>[ TIME, LATITUDE, LONGITUDE, DEPTH, MAGNITUDE ]</code>
+ * present in the catalog, the index keeps the values in event order and
+ * sorted, with the event index of each sorted value, so that events within a
+ * value range are found by binary search. Because catalogs are sorted by time,
+ * time ranges map to contiguous event ranges without a separate sort. A
+ * coarse lat-lon grid of events is built on first use by spatial queries.<br/>
+ * <br/>
+ * Values are ordered as by {@link Double#compare(double, double)}; ranges are
+ * inclusive and never match <code>NaN</code>. Times are held as
+ * <code>double</code> values, which is exact for millisecond times within
+ * roughly 285,000 years of 1970. The index does not track later changes to
+ * catalog data. Instances are thread safe.
+ *
+ * @see CatalogQuery
+ * @see CatalogBrush
+ */
+public class CatalogIndex {
+
+	/** Data types that are indexed, if present in a catalog. */
+	public static final Set<DataType> INDEXED_TYPES = Collections
+		.unmodifiableSet(EnumSet.of(TIME, LATITUDE, LONGITUDE, DEPTH,
+			MAGNITUDE));
+
+	// target mean number of events per spatial grid cell
+	private static final int EVENTS_PER_CELL = 16;
+
+	private final int size;
+	private final Map<DataType, Column> columns;
+	private volatile Grid grid;
+
+	/* Values of one data type in event and sorted order. */
+	private static class Column {
+		private final double[] values; // event order
+		private final double[] sorted;
+		private final int[] order; // event of each sorted value; null=identity
+		private final int count; // number of non-NaN values
+
+		private Column(double[] values) {
+			this.values = values;
+			if (isSorted(values)) {
+				sorted = values;
+				order = null;
+			} else {
+				order = sortOrder(values);
+				sorted = new double[values.length];
+				for (int i = 0; i < order.length; i++) {
+					sorted[i] = values[order[i]];
+				}
+			}
+			int n = sorted.length;
+			while (n > 0 && Double.isNaN(sorted[n - 1])) n--;
+			count = n;
+		}
+	}
+
+	/**
+	 * Creates a new index of the supplied catalog. If the catalog is
+	 * {@link Catalog#readable() readable}, <code>double</code> valued data
+	 * arrays are referenced rather than copied.
+	 *
+	 * @param catalog to index
+	 * @throws NullPointerException if <code>catalog</code> is
+	 *         <code>null</code>
+	 * @throws IllegalArgumentException if <code>catalog</code> is empty
+	 */
+	public CatalogIndex(Catalog catalog) {
+		checkNotNull(catalog, "Supplied catalog is null");
+		checkArgument(catalog.size() > 0, "Supplied catalog is empty");
+		size = catalog.size();
+		List<DataType> types = new ArrayList<DataType>();
+		for (DataType type : INDEXED_TYPES) {
+			if (catalog.contains(type)) types.add(type);
+		}
+		final Catalog cat = catalog;
+		final Map<DataType, Column> cols = Collections
+			.synchronizedMap(new EnumMap<DataType, Column>(DataType.class));
+		types.parallelStream().forEach(type -> {
+			double[] values;
+			if (type == TIME) {
+				long[] times = (long[]) cat.getData(TIME);
+				values = new double[times.length];
+				for (int i = 0; i < times.length; i++) {
+					values[i] = times[i];
+				}
+			} else {
+				values = (double[]) cat.getData(type);
+			}
+			cols.put(type, new Column(values));
+		});
+		columns = new EnumMap<DataType, Column>(cols);
+	}
+
+	/**
+	 * Returns the number of events in the indexed catalog.
+	 *
+	 * @return the event count
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns whether the supplied data type is indexed.
+	 *
+	 * @param type to look for
+	 * @return whether <code>type</code> is indexed
+	 */
+	public boolean contains(DataType type) {
+		return columns.containsKey(type);
+	}
+
+	private Column column(DataType type) {
+		checkNotNull(type, "Data type is null");
+		Column col = columns.get(type);
+		checkArgument(col != null, "%s data is not indexed", type);
+		return col;
+	}
+
+	/**
+	 * Returns the value of the supplied type for an event.
+	 *
+	 * @param type of data
+	 * @param event index
+	 * @return the event value
+	 * @throws IllegalArgumentException if <code>type</code> is not indexed
+	 */
+	public double value(DataType type, int event) {
+		return column(type).values[event];
+	}
+
+	/**
+	 * Returns the range <code>[from, to)</code> of sorted positions of values
+	 * of the supplied type that fall within <code>[min, max]</code>.
+	 *
+	 * @param type of data
+	 * @param min inclusive minimum value
+	 * @param max inclusive maximum value
+	 * @return a two element array of sorted positions
+	 * @throws IllegalArgumentException if <code>type</code> is not indexed
+	 * @see #event(DataType, int)
+	 */
+	public int[] range(DataType type, double min, double max) {
+		Column col = column(type);
+		int from = lowerBound(col.sorted, col.count, min);
+		int to = Math.max(from, upperBound(col.sorted, col.count, max));
+		return new int[] { from, to };
+	}
+
+	/**
+	 * Returns the index of the event at the supplied sorted position for a
+	 * data type.
+	 *
+	 * @param type of data
+	 * @param position in sorted order
+	 * @return the event index
+	 * @throws IllegalArgumentException if <code>type</code> is not indexed
+	 */
+	public int event(DataType type, int position) {
+		int[] order = column(type).order;
+		return (order == null) ? position : order[position];
+	}
+
+	/*
+	 * Returns whether the values of the supplied type are already sorted in
+	 * event order, such that sorted positions and event indices are the same.
+	 */
+	boolean isEventOrdered(DataType type) {
+		return column(type).order == null;
+	}
+
+	/*
+	 * Returns a reference to the sorted values of the supplied type. Package
+	 * private for use by CatalogBrush; callers must not modify the array.
+	 */
+	double[] sortedValues(DataType type) {
+		return column(type).sorted;
+	}
+
+	/* Returns whether a value falls in the inclusive range [min, max]. */
+	static boolean inRange(double value, double min, double max) {
+		return Double.compare(value, min) >= 0 &&
+			Double.compare(value, max) <= 0;
+	}
+
+	/* first position in [0, n) with value >= v */
+	private static int lowerBound(double[] data, int n, double v) {
+		int lo = 0, hi = n;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (Double.compare(data[mid], v) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/* first position in [0, n) with value > v */
+	private static int upperBound(double[] data, int n, double v) {
+		int lo = 0, hi = n;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (Double.compare(data[mid], v) <= 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private static boolean isSorted(double[] values) {
+		for (int i = 1; i < values.length; i++) {
+			if (Double.compare(values[i - 1], values[i]) > 0) return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Returns the indices of the supplied values in sorted order. The sort is
+	 * a stable bottom-up merge sort on primitive indices.
+	 */
+	static int[] sortOrder(double[] values) {
+		int n = values.length;
+		int[] order = new int[n];
+		int[] buf = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		// insertion sort small runs
+		final int run = 32;
+		for (int start = 0; start < n; start += run) {
+			int end = Math.min(n, start + run);
+			for (int i = start + 1; i < end; i++) {
+				int idx = order[i];
+				double v = values[idx];
+				int j = i - 1;
+				while (j >= start && Double.compare(values[order[j]], v) > 0) {
+					order[j + 1] = order[j];
+					j--;
+				}
+				order[j + 1] = idx;
+			}
+		}
+		for (int width = run; width < n; width *= 2) {
+			for (int lo = 0; lo < n; lo += 2 * width) {
+				int mid = Math.min(n, lo + width);
+				int hi = Math.min(n, lo + 2 * width);
+				int i = lo, j = mid, k = lo;
+				while (i < mid && j < hi) {
+					if (Double.compare(values[order[j]], values[order[i]]) < 0) {
+						buf[k++] = order[j++];
+					} else {
+						buf[k++] = order[i++];
+					}
+				}
+				while (i < mid) buf[k++] = order[i++];
+				while (j < hi) buf[k++] = order[j++];
+			}
+			int[] tmp = order;
+			order = buf;
+			buf = tmp;
+		}
+		return order;
+	}
+
+	/*
+	 * Returns the spatial grid of events, building it on first use. Returns
+	 * null if the catalog lacks latitude or longitude data.
+	 */
+	Grid grid() {
+		Grid g = grid;
+		if (g == null && contains(LATITUDE) && contains(LONGITUDE)) {
+			synchronized (this) {
+				g = grid;
+				if (g == null) {
+					g = new Grid(column(LATITUDE), column(LONGITUDE));
+					grid = g;
+				}
+			}
+		}
+		return g;
+	}
+
+	/*
+	 * Regular lat-lon grid of event indices in compressed row form; the
+	 * events in cell c are cellEvents[cellStart[c] .. cellStart[c+1]).
+	 */
+	static class Grid {
+		final double minLat, minLon, cellSize;
+		final int numLat, numLon;
+		final int[] cellStart;
+		final int[] cellEvents;
+
+		private Grid(Column lats, Column lons) {
+			boolean empty = lats.count == 0 || lons.count == 0;
+			minLat = empty ? 0 : lats.sorted[0];
+			minLon = empty ? 0 : lons.sorted[0];
+			double latSpan = empty ? 0 : lats.sorted[lats.count - 1] - minLat;
+			double lonSpan = empty ? 0 : lons.sorted[lons.count - 1] - minLon;
+			int n = lats.values.length;
+			double cells = Math.max(1d, (double) n / EVENTS_PER_CELL);
+			double size = Math.sqrt(Math.max(latSpan, 1e-6) *
+				Math.max(lonSpan, 1e-6) / cells);
+			// bound the cell count for very spread out or clustered data
+			cellSize = Math.max(size, Math.max(latSpan, lonSpan) / 4096);
+			numLat = (int) (latSpan / cellSize) + 1;
+			numLon = (int) (lonSpan / cellSize) + 1;
+			int numCells = numLat * numLon;
+			int[] cellOf = new int[n];
+			cellStart = new int[numCells + 1];
+			for (int i = 0; i < n; i++) {
+				double lat = lats.values[i], lon = lons.values[i];
+				if (Double.isNaN(lat) || Double.isNaN(lon)) {
+					cellOf[i] = -1;
+					continue;
+				}
+				int c = latCell(lat) * numLon + lonCell(lon);
+				cellOf[i] = c;
+				cellStart[c + 1]++;
+			}
+			for (int c = 0; c < numCells; c++) {
+				cellStart[c + 1] += cellStart[c];
+			}
+			cellEvents = new int[cellStart[numCells]];
+			int[] fill = new int[numCells];
+			for (int i = 0; i < n; i++) {
+				int c = cellOf[i];
+				if (c < 0) continue;
+				cellEvents[cellStart[c] + fill[c]++] = i;
+			}
+		}
+
+		int latCell(double lat) {
+			int c = (int) Math.floor((lat - minLat) / cellSize);
+			return Math.max(0, Math.min(numLat - 1, c));
+		}
+
+		int lonCell(double lon) {
+			int c = (int) Math.floor((lon - minLon) / cellSize);
+			return Math.max(0, Math.min(numLon - 1, c));
+		}
+
+		/* number of events in cells overlapping the supplied box */
+		int count(double latMin, double latMax, double lonMin, double lonMax) {
+			if (latMax < minLat || lonMax < minLon) return 0;
+			int count = 0;
+			for (int r = latCell(latMin); r <= latCell(latMax); r++) {
+				int c0 = r * numLon;
+				count += cellStart[c0 + lonCell(lonMax) + 1] -
+					cellStart[c0 + lonCell(lonMin)];
+			}
+			return count;
+		}
+	}
+
+}
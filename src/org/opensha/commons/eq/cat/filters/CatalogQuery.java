@@ -0,0 +1,564 @@
+package org.opensha.commons.eq.cat.filters;
+
+import static com.google.common.base.Preconditions.*;
+import static org.opensha.commons.eq.cat.util.DataType.*;
+import static org.opensha.commons.geo.GeoTools.*;
+
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.opensha.commons.eq.cat.util.DataType;
+import org.opensha.commons.geo.GeoTools;
+import org.opensha.commons.geo.Location;
+
+import com.google.common.primitives.Doubles;
+
+/**
+ * Composable event selection over a {@link CatalogIndex}. Queries are built
+ * from value range, polygon and radial predicates and combined with
+ * {@link #and(CatalogQuery...)}, {@link #or(CatalogQuery...)} and
+ * {@link #not()}. A query is immutable and may be run against any number of
+ * indices, for instance:
+ *
+ * <pre>
+ * CatalogIndex index = new CatalogIndex(catalog);
+ * CatalogQuery query = CatalogQuery.radial(center, 50)
+ * 	.and(CatalogQuery.range(MAGNITUDE, 4.0, 10.0));
+ * BitSet selection = query.select(index);
+ * </pre>
+ *
+ * Each predicate first narrows candidate events using the index (binary search
+ * of sorted values, or the spatial grid), then tests only the events that may
+ * match. Conjunctions are evaluated most selective first; once the running
+ * selection is small, remaining predicates are tested only against selected
+ * events, in parallel across blocks of 64-event words. Results match those of
+ * {@link ExtentsFilter}, {@link PolygonFilter} and {@link RadialFilter},
+ * except that <code>NaN</code> values never match a range.
+ *
+ * @see CatalogIndex
+ */
+public abstract class CatalogQuery {
+
+	// number of 64-bit words per parallel block
+	private static final int BLOCK_WORDS = 256;
+
+	// selection size, relative to the estimate of the next predicate in
+	// a conjunction, below which the predicate is tested per event
+	private static final int TEST_RATIO = 4;
+
+	CatalogQuery() {}
+
+	/*
+	 * Returns an upper bound on the number of events matched by this query,
+	 * used for planning.
+	 */
+	abstract int estimate(CatalogIndex index);
+
+	/* Returns a new BitSet of the events matched by this query. */
+	abstract BitSet evaluate(CatalogIndex index);
+
+	/* Returns whether a single event is matched by this query. */
+	abstract boolean test(CatalogIndex index, int event);
+
+	/**
+	 * Returns the events in the supplied index that match this query.
+	 *
+	 * @param index to query
+	 * @return a new <code>BitSet</code> of matching event indices
+	 * @throws NullPointerException if <code>index</code> is <code>null</code>
+	 * @throws IllegalArgumentException if the query requires data that is not
+	 *         indexed
+	 */
+	public BitSet select(CatalogIndex index) {
+		checkNotNull(index, "Supplied index is null");
+		return evaluate(index);
+	}
+
+	/**
+	 * Returns the indices of the events in the supplied index that match this
+	 * query, in ascending order. As with {@link CatalogFilter}s, returns
+	 * <code>null</code> if no events match.
+	 *
+	 * @param index to query
+	 * @return an array of matching event indices
+	 * @throws NullPointerException if <code>index</code> is <code>null</code>
+	 * @throws IllegalArgumentException if the query requires data that is not
+	 *         indexed
+	 */
+	public int[] indices(CatalogIndex index) {
+		BitSet bits = select(index);
+		return bits.isEmpty() ? null : bits.stream().toArray();
+	}
+
+	/**
+	 * Returns a query that matches events matched by this and all supplied
+	 * queries.
+	 *
+	 * @param queries to combine with this query
+	 * @return the conjunction of queries
+	 */
+	public CatalogQuery and(CatalogQuery... queries) {
+		return new And(combine(this, queries));
+	}
+
+	/**
+	 * Returns a query that matches events matched by this or any supplied
+	 * query.
+	 *
+	 * @param queries to combine with this query
+	 * @return the disjunction of queries
+	 */
+	public CatalogQuery or(CatalogQuery... queries) {
+		return new Or(combine(this, queries));
+	}
+
+	/**
+	 * Returns a query that matches events not matched by this query.
+	 *
+	 * @return the negation of this query
+	 */
+	public CatalogQuery not() {
+		return new Not(this);
+	}
+
+	private static CatalogQuery[] combine(CatalogQuery first,
+			CatalogQuery... others) {
+		CatalogQuery[] all = new CatalogQuery[others.length + 1];
+		all[0] = first;
+		for (int i = 0; i < others.length; i++) {
+			all[i + 1] = checkNotNull(others[i], "Supplied query is null");
+		}
+		return all;
+	}
+
+	/**
+	 * Returns a query that matches all events.
+	 *
+	 * @return a query matching all events
+	 */
+	public static CatalogQuery all() {
+		return new All();
+	}
+
+	/**
+	 * Returns a query that matches events with a value of the supplied type in
+	 * the range <code>[min, max]</code>.
+	 *
+	 * @param type of data; one of {@link CatalogIndex#INDEXED_TYPES}
+	 * @param min inclusive minimum value
+	 * @param max inclusive maximum value
+	 * @return a value range query
+	 * @throws IllegalArgumentException if <code>type</code> can not be
+	 *         indexed
+	 */
+	public static CatalogQuery range(DataType type, double min, double max) {
+		checkArgument(CatalogIndex.INDEXED_TYPES.contains(type),
+			"%s data can not be queried", type);
+		return new Range(type, min, max);
+	}
+
+	/**
+	 * Returns a query that matches events that occur in the time range
+	 * <code>[start, end]</code>.
+	 *
+	 * @param start inclusive start time (in milliseconds)
+	 * @param end inclusive end time (in milliseconds)
+	 * @return a time range query
+	 */
+	public static CatalogQuery timeRange(long start, long end) {
+		return new Range(TIME, start, end);
+	}
+
+	/**
+	 * Returns a query that matches events that fall within a polygon of
+	 * lat-lon points. As with {@link PolygonFilter}, results are unspecified
+	 * for polygons that span the International Date Line or a pole.
+	 *
+	 * @param lats latitude vertex values of the polygon
+	 * @param lons longitude vertex values of the polygon
+	 * @return a polygon query
+	 * @throws IllegalArgumentException if arrays are empty, different lengths
+	 *         or contain invalid values
+	 */
+	public static CatalogQuery polygon(double[] lats, double[] lons) {
+		checkArgument(lats.length > 0 && lats.length == lons.length,
+			"Vertex arrays must be non-empty and the same length");
+		validateLats(lats);
+		validateLons(lons);
+		return new Polygon(lats, lons);
+	}
+
+	/**
+	 * Returns a query that matches events within some distance of a point.
+	 * Distances are computed as by
+	 * {@link org.opensha.commons.geo.LocationUtils#horzDistanceFast(Location, Location)}
+	 * .
+	 *
+	 * @param center of search
+	 * @param radius of search (in km)
+	 * @return a radial query
+	 * @throws IllegalArgumentException if <code>radius</code> is not in the
+	 *         range <code>(0, {@link RadialFilter#MAX_SEARCH_RADIUS}]</code>
+	 */
+	public static CatalogQuery radial(Location center, double radius) {
+		checkNotNull(center, "Supplied center is null");
+		checkArgument(radius > 0 && radius <= RadialFilter.MAX_SEARCH_RADIUS,
+			"Radius must be in the range (0, %s] km",
+			RadialFilter.MAX_SEARCH_RADIUS);
+		return new Radial(center, radius);
+	}
+
+	/*
+	 * Returns the events of the supplied candidate set (or all events if
+	 * candidates is null) that match the supplied query. Testing is performed
+	 * in parallel over blocks of BitSet words.
+	 */
+	static BitSet scan(final CatalogIndex index, BitSet candidates,
+			final CatalogQuery query) {
+		final int size = index.size();
+		final int numWords = (size + 63) >>> 6;
+		final long[] words;
+		if (candidates == null) {
+			words = new long[numWords];
+			for (int i = 0; i < numWords; i++) {
+				words[i] = -1L;
+			}
+			if ((size & 63) != 0) words[numWords - 1] = (1L << size) - 1;
+		} else {
+			words = Arrays.copyOf(candidates.toLongArray(), numWords);
+		}
+		int numBlocks = (numWords + BLOCK_WORDS - 1) / BLOCK_WORDS;
+		IntStream.range(0, numBlocks).parallel().forEach(block -> {
+			int end = Math.min(numWords, (block + 1) * BLOCK_WORDS);
+			for (int w = block * BLOCK_WORDS; w < end; w++) {
+				long word = words[w];
+				long result = word;
+				while (word != 0) {
+					long bit = Long.lowestOneBit(word);
+					int event = (w << 6) + Long.numberOfTrailingZeros(bit);
+					if (!query.test(index, event)) result &= ~bit;
+					word &= ~bit;
+				}
+				words[w] = result;
+			}
+		});
+		return BitSet.valueOf(words);
+	}
+
+	/* Matches all events. */
+	private static class All extends CatalogQuery {
+
+		@Override
+		int estimate(CatalogIndex index) {
+			return index.size();
+		}
+
+		@Override
+		BitSet evaluate(CatalogIndex index) {
+			BitSet bits = new BitSet(index.size());
+			bits.set(0, index.size());
+			return bits;
+		}
+
+		@Override
+		boolean test(CatalogIndex index, int event) {
+			return true;
+		}
+	}
+
+	/* Inclusive value range of a single data type. */
+	private static class Range extends CatalogQuery {
+
+		private final DataType type;
+		private final double min;
+		private final double max;
+
+		private Range(DataType type, double min, double max) {
+			this.type = type;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		int estimate(CatalogIndex index) {
+			int[] range = index.range(type, min, max);
+			return range[1] - range[0];
+		}
+
+		@Override
+		BitSet evaluate(CatalogIndex index) {
+			int[] range = index.range(type, min, max);
+			int from = range[0], to = range[1];
+			// contiguous events; always the case for time in sorted catalogs
+			if (from == to || index.isEventOrdered(type)) {
+				BitSet bits = new BitSet(index.size());
+				bits.set(from, to);
+				return bits;
+			}
+			// wide ranges of scattered events are cheaper to scan
+			if ((to - from) * TEST_RATIO > index.size()) {
+				return scan(index, null, this);
+			}
+			BitSet bits = new BitSet(index.size());
+			for (int i = from; i < to; i++) {
+				bits.set(index.event(type, i));
+			}
+			return bits;
+		}
+
+		@Override
+		boolean test(CatalogIndex index, int event) {
+			return CatalogIndex.inRange(index.value(type, event), min, max);
+		}
+	}
+
+	/* Abstract lat-lon bounded predicate evaluated using the spatial grid. */
+	private static abstract class Spatial extends CatalogQuery {
+
+		final double latMin, latMax, lonMin, lonMax;
+
+		Spatial(double latMin, double latMax, double lonMin, double lonMax) {
+			this.latMin = latMin;
+			this.latMax = latMax;
+			this.lonMin = lonMin;
+			this.lonMax = lonMax;
+		}
+
+		/* whether a point inside the bounding box matches */
+		abstract boolean contains(double lat, double lon);
+
+		/* whether every point of a grid cell matches; may return false */
+		boolean containsCell(double lat0, double lon0, double size) {
+			return false;
+		}
+
+		private CatalogIndex.Grid grid(CatalogIndex index) {
+			CatalogIndex.Grid grid = index.grid();
+			checkArgument(grid != null, "Lat-lon data is not indexed");
+			return grid;
+		}
+
+		@Override
+		int estimate(CatalogIndex index) {
+			return grid(index).count(latMin, latMax, lonMin, lonMax);
+		}
+
+		@Override
+		BitSet evaluate(CatalogIndex index) {
+			CatalogIndex.Grid grid = grid(index);
+			BitSet bits = new BitSet(index.size());
+			if (latMax < grid.minLat || lonMax < grid.minLon) return bits;
+			int r0 = grid.latCell(latMin), r1 = grid.latCell(latMax);
+			int c0 = grid.lonCell(lonMin), c1 = grid.lonCell(lonMax);
+			for (int r = r0; r <= r1; r++) {
+				double lat0 = grid.minLat + r * grid.cellSize;
+				for (int c = c0; c <= c1; c++) {
+					int cell = r * grid.numLon + c;
+					int start = grid.cellStart[cell];
+					int end = grid.cellStart[cell + 1];
+					if (start == end) continue;
+					// cells on the grid edge may hold clamped events
+					boolean inner = r > 0 && c > 0 && r < grid.numLat - 1 &&
+						c < grid.numLon - 1;
+					double lon0 = grid.minLon + c * grid.cellSize;
+					if (inner && containsCell(lat0, lon0, grid.cellSize)) {
+						for (int i = start; i < end; i++) {
+							bits.set(grid.cellEvents[i]);
+						}
+						continue;
+					}
+					for (int i = start; i < end; i++) {
+						int event = grid.cellEvents[i];
+						if (test(index, event)) bits.set(event);
+					}
+				}
+			}
+			return bits;
+		}
+
+		@Override
+		boolean test(CatalogIndex index, int event) {
+			double lat = index.value(LATITUDE, event);
+			double lon = index.value(LONGITUDE, event);
+			return lat >= latMin && lat <= latMax && lon >= lonMin &&
+				lon <= lonMax && contains(lat, lon);
+		}
+	}
+
+	/* Lat-lon polygon. */
+	private static class Polygon extends Spatial {
+
+		private final Path2D poly;
+
+		private Polygon(double[] lats, double[] lons) {
+			super(Doubles.min(lats), Doubles.max(lats), Doubles.min(lons),
+				Doubles.max(lons));
+			poly = new Path2D.Double(Path2D.WIND_EVEN_ODD, lats.length);
+			poly.moveTo(lons[0], lats[0]);
+			for (int i = 1; i < lats.length; i++) {
+				poly.lineTo(lons[i], lats[i]);
+			}
+			poly.closePath();
+		}
+
+		@Override
+		boolean contains(double lat, double lon) {
+			return poly.contains(lon, lat);
+		}
+
+		@Override
+		boolean containsCell(double lat0, double lon0, double size) {
+			// pad cell to guard against rounding of event cell assignment
+			double pad = size * 1e-6;
+			return lat0 - pad >= latMin && lat0 + size + pad <= latMax &&
+				lon0 - pad >= lonMin && lon0 + size + pad <= lonMax &&
+				poly.contains(lon0 - pad, lat0 - pad, size + 2 * pad, size +
+					2 * pad);
+		}
+	}
+
+	/* Circle about a point using the fast distance approximation. */
+	private static class Radial extends Spatial {
+
+		private final double latRad;
+		private final double lonRad;
+		private final double radius;
+
+		private Radial(Location center, double radius) {
+			super(center.getLatitude() - degreesLatPerKm(center) * radius,
+				center.getLatitude() + degreesLatPerKm(center) * radius,
+				center.getLongitude() - degreesLonPerKm(center) * radius,
+				center.getLongitude() + degreesLonPerKm(center) * radius);
+			latRad = center.getLatRad();
+			lonRad = center.getLonRad();
+			this.radius = radius;
+		}
+
+		@Override
+		boolean contains(double lat, double lon) {
+			// as LocationUtils.horzDistanceFast without Location creation
+			double lat2 = lat * GeoTools.TO_RAD;
+			double dLat = latRad - lat2;
+			double dLon = (lonRad - lon * GeoTools.TO_RAD) *
+				Math.cos((latRad + lat2) * 0.5);
+			return EARTH_RADIUS_MEAN * Math.sqrt(dLat * dLat + dLon * dLon) <= radius;
+		}
+	}
+
+	/* Conjunction, evaluated most selective predicate first. */
+	private static class And extends CatalogQuery {
+
+		private final CatalogQuery[] queries;
+
+		private And(CatalogQuery[] queries) {
+			this.queries = queries;
+		}
+
+		@Override
+		int estimate(CatalogIndex index) {
+			int min = index.size();
+			for (CatalogQuery q : queries) {
+				min = Math.min(min, q.estimate(index));
+			}
+			return min;
+		}
+
+		@Override
+		BitSet evaluate(final CatalogIndex index) {
+			final int[] estimates = new int[queries.length];
+			List<Integer> plan = new ArrayList<Integer>();
+			for (int i = 0; i < queries.length; i++) {
+				estimates[i] = queries[i].estimate(index);
+				plan.add(i);
+			}
+			plan.sort(Comparator.comparingInt(i -> estimates[i]));
+			BitSet bits = queries[plan.get(0)].evaluate(index);
+			for (int i = 1; i < plan.size() && !bits.isEmpty(); i++) {
+				int q = plan.get(i);
+				if ((long) bits.cardinality() * TEST_RATIO < estimates[q]) {
+					bits = scan(index, bits, queries[q]);
+				} else {
+					bits.and(queries[q].evaluate(index));
+				}
+			}
+			return bits;
+		}
+
+		@Override
+		boolean test(CatalogIndex index, int event) {
+			for (CatalogQuery q : queries) {
+				if (!q.test(index, event)) return false;
+			}
+			return true;
+		}
+	}
+
+	/* Disjunction. */
+	private static class Or extends CatalogQuery {
+
+		private final CatalogQuery[] queries;
+
+		private Or(CatalogQuery[] queries) {
+			this.queries = queries;
+		}
+
+		@Override
+		int estimate(CatalogIndex index) {
+			long sum = 0;
+			for (CatalogQuery q : queries) {
+				sum += q.estimate(index);
+			}
+			return (int) Math.min(index.size(), sum);
+		}
+
+		@Override
+		BitSet evaluate(CatalogIndex index) {
+			BitSet bits = queries[0].evaluate(index);
+			for (int i = 1; i < queries.length; i++) {
+				bits.or(queries[i].evaluate(index));
+			}
+			return bits;
+		}
+
+		@Override
+		boolean test(CatalogIndex index, int event) {
+			for (CatalogQuery q : queries) {
+				if (q.test(index, event)) return true;
+			}
+			return false;
+		}
+	}
+
+	/* Negation. */
+	private static class Not extends CatalogQuery {
+
+		private final CatalogQuery query;
+
+		private Not(CatalogQuery query) {
+			this.query = query;
+		}
+
+		@Override
+		int estimate(CatalogIndex index) {
+			return index.size();
+		}
+
+		@Override
+		BitSet evaluate(CatalogIndex index) {
+			BitSet bits = query.evaluate(index);
+			bits.flip(0, index.size());
+			return bits;
+		}
+
+		@Override
+		boolean test(CatalogIndex index, int event) {
+			return !query.test(index, event);
+		}
+	}
+
+}
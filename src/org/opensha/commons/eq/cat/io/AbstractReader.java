@@ -2,64 +2,78 @@ package org.opensha.commons.eq.cat.io;
 
 import static com.google.common.base.Preconditions.*;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.TimeZone;
 
-import org.apache.commons.io.IOUtils;
 import org.opensha.commons.eq.cat.Catalog;
+import org.opensha.commons.eq.cat.io.DataColumns.DoubleColumn;
+import org.opensha.commons.eq.cat.io.DataColumns.IntColumn;
+import org.opensha.commons.eq.cat.io.DataColumns.LongColumn;
+import org.opensha.commons.util.threads.ForkJoinTaskComputer;
+import org.opensha.commons.util.threads.Task;
 
 /**
  * Class provides basic functionality for catalog file reading. Subclass
  * constructors should initialize arrays as necessary and must implement
  * <code>parseLine()</code>. This reader assumes that all event dates are UTC
- * and should be converted first if they are not.
+ * and should be converted first if they are not. Files are memory mapped and
+ * large files are split into chunks at line boundaries that are parsed in
+ * parallel into growable primitive data stores (see {@link DataColumns}).
  * 
  * @author Peter Powers
  * @version $Id: AbstractReader.java 8980 2012-05-22 17:23:51Z pmpowers $
  */
-public abstract class AbstractReader implements CatalogReader {
+public abstract class AbstractReader implements CatalogReader, Cloneable {
 
 	private String name = "Unnamed reader";
 	private String desc = "No description for reader";
 
 	/** EventID data store. */
-	protected List<Integer> dat_eventIDs;
+	protected IntColumn dat_eventIDs;
 	/** Event dates data store. */
-	protected List<Long> dat_dates;
+	protected LongColumn dat_dates;
 	/** Event longitudes data store. */
-	protected List<Double> dat_longitudes;
+	protected DoubleColumn dat_longitudes;
 	/** Event longitudes data store. */
-	protected List<Double> dat_latitudes;
+	protected DoubleColumn dat_latitudes;
 	/** Event depths data store. */
-	protected List<Double> dat_depths;
+	protected DoubleColumn dat_depths;
 	/** Event magnitudes data store. */
-	protected List<Double> dat_magnitudes;
+	protected DoubleColumn dat_magnitudes;
 	/** Event magnitudeTypes data store. */
-	protected List<Integer> dat_magnitudeTypes;
+	protected IntColumn dat_magnitudeTypes;
 	/** Event type data store. */
-	protected List<Integer> dat_eventTypes;
+	protected IntColumn dat_eventTypes;
 	/** Event quality data store. */
-	protected List<Integer> dat_eventQuality;
+	protected IntColumn dat_eventQuality;
 	/** Event xy errors data store. */
-	protected List<Double> dat_xyErrors;
+	protected DoubleColumn dat_xyErrors;
 	/** Event z errors data store. */
-	protected List<Double> dat_zErrors;
+	protected DoubleColumn dat_zErrors;
 	/** Event fault plane strikes data store. */
-	protected List<Integer> dat_fpStrikes;
+	protected IntColumn dat_fpStrikes;
 	/** Event fault plane dips data store. */
-	protected List<Integer> dat_fpDips;
+	protected IntColumn dat_fpDips;
 	/** Event fault plane rakes data store. */
-	protected List<Integer> dat_fpRakes;
+	protected IntColumn dat_fpRakes;
 
 	/**
 	 * Utility calendar preset to UTC time for manipulating date/time values.
+	 * Each chunk reader receives its own instance.
 	 */
-	protected final GregorianCalendar cal = new GregorianCalendar(
+	protected GregorianCalendar cal = new GregorianCalendar(
 		TimeZone.getTimeZone("UTC"));
 
 	/** Catalog to receive data. */
@@ -68,6 +82,12 @@ public abstract class AbstractReader implements CatalogReader {
 	/** Initial size of data import arrays. */
 	protected int size;
 
+	/** Default size of file chunks parsed in parallel; 16 MB. */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 24;
+
+	private boolean parallel = true;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
 	/**
 	 * Constructs a new catalog file reader that will use the supplied size to
 	 * initialize internal data arrays. Although not required, it is best that
@@ -78,14 +98,11 @@ public abstract class AbstractReader implements CatalogReader {
 	 * @param name of the reader
 	 * @param desc brief description of the reader, for use in tooltips
 	 * @param size to use when initializing internal data arrays
-	 * @throws IllegalArgumentException if <code>size</code> is less than 1 or
-	 *         greater than {@link Catalog#MAX_SIZE};
+	 * @throws IllegalArgumentException if <code>size</code> is less than 1
 	 * 
 	 */
 	public AbstractReader(String name, String desc, int size) {
 		checkArgument(size > 0, "Supplied size must be positive");
-		checkArgument(size <= Catalog.MAX_SIZE,
-			"Supplied size is too large");
 		this.size = size;
 		this.name = (name != null) ? name : this.name;
 		this.desc = (desc != null) ? desc : this.desc;
@@ -97,7 +114,9 @@ public abstract class AbstractReader implements CatalogReader {
 	public abstract void initReader();
 
 	/**
-	 * Parse a line of text into values for data arrays.
+	 * Parse a line of text into values for data arrays. When a file is read in
+	 * parallel, this method is called on a separate copy of this reader (see
+	 * {@link #copy()}) for each chunk of the file.
 	 * 
 	 * @param line to parse
 	 * @throws IllegalArgumentException if a parsing problem occurs
@@ -112,21 +131,288 @@ public abstract class AbstractReader implements CatalogReader {
 	 */
 	public abstract void loadData();
 
+	/**
+	 * Sets whether files larger than the chunk size are parsed in parallel
+	 * (the default).
+	 * 
+	 * @param parallel whether to parse chunks in parallel
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Sets the approximate size of the chunks (in bytes) into which a catalog
+	 * file is split. Chunks always end at a line boundary.
+	 * 
+	 * @param chunkSize in bytes
+	 * @throws IllegalArgumentException if <code>chunkSize</code> is less
+	 *         than 1
+	 */
+	public void setChunkSize(int chunkSize) {
+		checkArgument(chunkSize > 0, "Chunk size must be positive");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Returns a copy of this reader that is used to parse one chunk of a file
+	 * in parallel with other chunks. The copy has its own data stores
+	 * (initialized via {@link #initReader()} after this method returns) and
+	 * its own calendar. Subclasses that keep other mutable parsing state
+	 * should override this method to give the copy its own instance.
+	 * 
+	 * @return a copy of this reader
+	 */
+	protected AbstractReader copy() {
+		try {
+			AbstractReader copy = (AbstractReader) clone();
+			copy.cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+			copy.catalog = null;
+			return copy;
+		} catch (CloneNotSupportedException cnse) {
+			throw new IllegalStateException(cnse);
+		}
+	}
+
+	/**
+	 * Reads the supplied file, which is memory mapped and split into chunks at
+	 * line boundaries. If parallel parsing is enabled and there is more than
+	 * one chunk, each chunk is parsed by a separate copy of this reader and
+	 * the resulting data stores are merged in file order before
+	 * <code>loadData()</code> is called.
+	 */
 	@Override
 	public void process(File file, Catalog catalog) throws IOException {
 		checkNotNull(file, "Supplied file is null");
 		checkNotNull(catalog, "Supplied catalog is null");
 		this.catalog = catalog;
-		BufferedReader br = null;
 		initReader();
-		br = new BufferedReader(new FileReader(file));
-		String line;
-		while ((line = br.readLine()) != null) {
-			parseLine(line);
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ)) {
+			long[] bounds = chunkBounds(channel, chunkSize);
+			int numChunks = bounds.length - 1;
+			if (!parallel || numChunks < 2) {
+				try {
+					for (int i = 0; i < numChunks; i++) {
+						parseChunk(this, channel, bounds[i], bounds[i + 1]);
+					}
+				} catch (ChunkException ce) {
+					// this reader has counted all lines, so its message stands
+					throw ce.cause;
+				}
+			} else {
+				processParallel(channel, bounds);
+			}
 		}
 		loadData();
 		clearArrays();
-		IOUtils.closeQuietly(br);
+	}
+
+	/*
+	 * Parses each chunk with a copy of this reader and merges the results
+	 * into this reader's data stores.
+	 */
+	private void processParallel(FileChannel channel, long[] bounds)
+			throws IOException {
+		int numChunks = bounds.length - 1;
+		List<ChunkTask> tasks = new ArrayList<ChunkTask>(numChunks);
+		for (int i = 0; i < numChunks; i++) {
+			AbstractReader reader = copy();
+			// average catalog lines are longer than 64 bytes
+			long estimate = (bounds[i + 1] - bounds[i]) / 64 + 1;
+			reader.size = (int) Math.min(size, estimate);
+			reader.initReader();
+			tasks.add(new ChunkTask(reader, channel, bounds[i], bounds[i + 1]));
+		}
+		ForkJoinTaskComputer comp = new ForkJoinTaskComputer(tasks);
+		comp.setChunkSize(1);
+		try {
+			comp.computeThreaded();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Catalog read interrupted");
+		}
+
+		// report the first failure, with its line number in the whole file
+		long lineOffset = 0;
+		for (ChunkTask task : tasks) {
+			if (task.ioe != null) throw task.ioe;
+			if (task.error != null) {
+				throw new IllegalArgumentException(
+					"Error reading catalog file format at line: " +
+						(lineOffset + task.lines), task.error);
+			}
+			lineOffset += task.lines;
+		}
+		for (ChunkTask task : tasks) {
+			merge(task.reader);
+		}
+	}
+
+	private static class ChunkTask implements Task {
+
+		private final AbstractReader reader;
+		private final FileChannel channel;
+		private final long start, end;
+
+		private int lines;
+		private RuntimeException error;
+		private IOException ioe;
+
+		private ChunkTask(AbstractReader reader, FileChannel channel,
+			long start, long end) {
+			this.reader = reader;
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public void compute() {
+			try {
+				lines = parseChunk(reader, channel, start, end);
+			} catch (ChunkException ce) {
+				lines = ce.line;
+				error = ce.cause;
+			} catch (IOException e) {
+				ioe = e;
+			}
+		}
+	}
+
+	/* Carries the chunk line number of a parsing failure. */
+	private static class ChunkException extends Exception {
+		private static final long serialVersionUID = 1L;
+		private final int line;
+		private final RuntimeException cause;
+
+		private ChunkException(int line, RuntimeException cause) {
+			super(cause);
+			this.line = line;
+			this.cause = cause;
+		}
+	}
+
+	/*
+	 * Returns chunk boundaries, each of which (other than the first and last)
+	 * immediately follows a newline. A file of zero length has no chunks.
+	 */
+	private static long[] chunkBounds(FileChannel channel, int chunkSize)
+			throws IOException {
+		long length = channel.size();
+		List<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		ByteBuffer buf = ByteBuffer.allocate(8192);
+		long pos = chunkSize;
+		while (pos < length) {
+			// scan forward from the target position to the next newline
+			long next = -1;
+			while (next < 0 && pos < length) {
+				buf.clear();
+				int read = channel.read(buf, pos);
+				if (read <= 0) break;
+				for (int i = 0; i < read; i++) {
+					if (buf.get(i) == '\n') {
+						next = pos + i + 1;
+						break;
+					}
+				}
+				if (next < 0) pos += read;
+			}
+			if (next < 0 || next >= length) break;
+			bounds.add(next);
+			pos = next + chunkSize;
+		}
+		if (length > 0) bounds.add(length);
+		long[] array = new long[bounds.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = bounds.get(i);
+		}
+		return array;
+	}
+
+	/*
+	 * Parses the lines in the specified region of the file. Lines are
+	 * terminated as for BufferedReader.readLine(): by '\n', '\r' or "\r\n".
+	 * Returns the number of lines parsed. Reader failures are wrapped in a
+	 * ChunkException that records the line number within the chunk.
+	 */
+	private static int parseChunk(AbstractReader reader, FileChannel channel,
+			long start, long end) throws IOException, ChunkException {
+		if (end <= start) return 0;
+		MappedByteBuffer map = channel.map(MapMode.READ_ONLY, start, end -
+			start);
+		Charset charset = Charset.defaultCharset();
+		byte[] line = new byte[256];
+		int len = 0;
+		int lines = 0;
+		boolean skipNewline = false;
+		while (map.hasRemaining()) {
+			byte b = map.get();
+			if (skipNewline) {
+				skipNewline = false;
+				if (b == '\n') continue;
+			}
+			if (b == '\n' || b == '\r') {
+				skipNewline = b == '\r';
+				lines++;
+				parseLine(reader, new String(line, 0, len, charset), lines);
+				len = 0;
+				continue;
+			}
+			if (len == line.length) line = Arrays.copyOf(line, len * 2);
+			line[len++] = b;
+		}
+		if (len > 0) {
+			lines++;
+			parseLine(reader, new String(line, 0, len, charset), lines);
+		}
+		return lines;
+	}
+
+	private static void parseLine(AbstractReader reader, String line,
+			int lineNumber) throws ChunkException {
+		try {
+			reader.parseLine(line);
+		} catch (RuntimeException re) {
+			throw new ChunkException(lineNumber, re);
+		}
+	}
+
+	/*
+	 * Appends the data stores of the supplied chunk reader to those of this
+	 * reader.
+	 */
+	private void merge(AbstractReader chunk) {
+		dat_eventIDs = merge(dat_eventIDs, chunk.dat_eventIDs);
+		dat_dates = merge(dat_dates, chunk.dat_dates);
+		dat_longitudes = merge(dat_longitudes, chunk.dat_longitudes);
+		dat_latitudes = merge(dat_latitudes, chunk.dat_latitudes);
+		dat_depths = merge(dat_depths, chunk.dat_depths);
+		dat_magnitudes = merge(dat_magnitudes, chunk.dat_magnitudes);
+		dat_magnitudeTypes = merge(dat_magnitudeTypes, chunk.dat_magnitudeTypes);
+		dat_eventTypes = merge(dat_eventTypes, chunk.dat_eventTypes);
+		dat_eventQuality = merge(dat_eventQuality, chunk.dat_eventQuality);
+		dat_xyErrors = merge(dat_xyErrors, chunk.dat_xyErrors);
+		dat_zErrors = merge(dat_zErrors, chunk.dat_zErrors);
+		dat_fpStrikes = merge(dat_fpStrikes, chunk.dat_fpStrikes);
+		dat_fpDips = merge(dat_fpDips, chunk.dat_fpDips);
+		dat_fpRakes = merge(dat_fpRakes, chunk.dat_fpRakes);
+	}
+
+	private static IntColumn merge(IntColumn to, IntColumn from) {
+		if (to != null && from != null) to.addAll(from);
+		return to;
+	}
+
+	private static LongColumn merge(LongColumn to, LongColumn from) {
+		if (to != null && from != null) to.addAll(from);
+		return to;
+	}
+
+	private static DoubleColumn merge(DoubleColumn to, DoubleColumn from) {
+		if (to != null && from != null) to.addAll(from);
+		return to;
 	}
 
 	/**
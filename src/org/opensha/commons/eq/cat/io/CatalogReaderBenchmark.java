@@ -0,0 +1,173 @@
+package org.opensha.commons.eq.cat.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.List;
+
+import org.opensha.commons.eq.cat.Catalog;
+import org.opensha.commons.eq.cat.util.DataType;
+
+/**
+ * Rough throughput benchmark of each catalog reader format, comparing
+ * sequential and parallel chunked parsing. For each format, the lines of a
+ * sample catalog file are repeated to build a large temporary catalog, which is
+ * then read into a catalog that discards the data (so that event time ordering
+ * and value range checks are not part of the timing).
+ * <br><br>
+ * Usage: CatalogReaderBenchmark [sampleDir [numLines]]<br>
+ * where <code>sampleDir</code> contains the sample catalogs used by the reader
+ * tests (default: test/org/opensha/commons/eq/cat/io/cats).
+ */
+public class CatalogReaderBenchmark {
+
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) throws IOException {
+		File dir = new File(args.length > 0 ? args[0]
+			: "test/org/opensha/commons/eq/cat/io/cats");
+		int numLines = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+		AbstractReader[] readers = { new Reader_Basic(numLines),
+			new Reader_ANSS(numLines), new Reader_LSH(numLines),
+			new Reader_NC_PARK(numLines), new Reader_NC_USGS(numLines),
+			new Reader_NC_WALDHAUSER(numLines), new Reader_NCEDC(numLines),
+			new Reader_SCEDC(numLines), new Reader_SCSN(numLines),
+			new Reader_SHLK(numLines), new Reader_TW_RELOC(numLines) };
+		String[] samples = { "Basic.cat", "ANSS.cat", "LSH.cat",
+			"NC_PARK.cat", "NC_USGS.cat", "NC_WALDHAUSER.cat", "NCEDC.cat",
+			"SCEDC.cat", "SCSN.cat", "SHLK.cat", "TW_RELOC.cat" };
+
+		System.out.println("Threads: " +
+			Runtime.getRuntime().availableProcessors() + ", lines: " +
+			numLines);
+		for (int i = 0; i < readers.length; i++) {
+			File file = buildCatalog(new File(dir, samples[i]), numLines);
+			try {
+				double mb = file.length() / (1024d * 1024d);
+				AbstractReader reader = readers[i];
+				for (int round = 0; round < ROUNDS; round++) {
+					reader.setParallel(false);
+					double seqSecs = time(reader, file);
+					reader.setParallel(true);
+					double parSecs = time(reader, file);
+					System.out.println(reader.getClass().getSimpleName() + ", round " + round +
+						": sequential " + (float) (numLines / seqSecs) +
+						" lines/s (" + (float) (mb / seqSecs) +
+						" MB/s), parallel " + (float) (numLines / parSecs) +
+						" lines/s (" + (float) (mb / parSecs) + " MB/s)");
+				}
+			} finally {
+				file.delete();
+			}
+		}
+	}
+
+	private static double time(AbstractReader reader, File file)
+			throws IOException {
+		long start = System.nanoTime();
+		reader.process(file, new SinkCatalog());
+		return (System.nanoTime() - start) / 1e9;
+	}
+
+	private static File buildCatalog(File sample, int numLines)
+			throws IOException {
+		List<String> lines = Files.readAllLines(sample.toPath(),
+			Charset.defaultCharset());
+		File file = File.createTempFile("catalog", ".cat");
+		try (BufferedWriter out = Files.newBufferedWriter(file.toPath(),
+			Charset.defaultCharset())) {
+			for (int i = 0; i < numLines; i++) {
+				out.write(lines.get(i % lines.size()));
+				out.newLine();
+			}
+		}
+		return file;
+	}
+
+	/* Catalog that only records its size. */
+	private static class SinkCatalog implements Catalog {
+
+		private int size = -1;
+
+		@Override
+		public void addData(DataType type, Object data) {
+			size = Array.getLength(data);
+		}
+
+		@Override
+		public Object getData(DataType type) {
+			return null;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(DataType type) {
+			return false;
+		}
+
+		@Override
+		public boolean readable() {
+			return false;
+		}
+
+		@Override
+		public String getEventString(int index) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getEventStringWithID(int index) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int getEventID(int index) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long getTime(int index) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Date getDate(int index) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Date minDate() {
+			return null;
+		}
+
+		@Override
+		public Date maxDate() {
+			return null;
+		}
+
+		@Override
+		public double getValue(DataType type, int index) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public double minForType(DataType type) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public double maxForType(DataType type) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
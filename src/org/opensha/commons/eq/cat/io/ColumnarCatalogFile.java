@@ -0,0 +1,589 @@
+package org.opensha.commons.eq.cat.io;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.opensha.commons.eq.cat.util.DataType;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Versioned, columnar binary catalog file format. Each {@link DataType} is
+ * stored as a contiguous little-endian column of primitive values (aligned to
+ * 64 bytes) followed by the minimum and maximum value of each fixed size block
+ * of events. Opening a file only reads its header and block statistics; columns
+ * are memory mapped and exposed as read-only primitive buffers without copying.
+ * Primitive arrays are copied out of the mapped columns on request.<br/>
+ * <br/>
+ * Catalogs are sorted ascending by time, so an event time index is not
+ * stored separately; the block statistics of the TIME column act as a sparse
+ * index for {@link #getTimeIndexRange(long, long)}. File layout (version 1):
+ *
+ * <pre>
+ * int     magic ("OSCF")
+ * int     version
+ * int     event count
+ * int     block size
+ * int     column count
+ * int     flags (bit 0: TIME column present and sorted)
+ * column count * {
+ *   byte[32] data type name (ASCII, zero padded)
+ *   long     column data offset
+ *   long     block statistics offset
+ * }
+ * column data and block statistics (min, max pairs stored as doubles)
+ * </pre>
+ *
+ * Instances are immutable and thread safe.
+ */
+public class ColumnarCatalogFile {
+
+	/** Current file format version. */
+	public static final int VERSION = 1;
+	/** Default number of events per statistics block. */
+	public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+	private static final int MAGIC = 0x4F534346; // "OSCF"
+	private static final int HEADER_SIZE = 24;
+	private static final int NAME_LENGTH = 32;
+	private static final int ENTRY_SIZE = NAME_LENGTH + 16;
+	private static final int ALIGN = 64;
+	private static final int FLAG_TIME_SORTED = 1;
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	private final int size;
+	private final int blockSize;
+	private final int numBlocks;
+	private final boolean timeSorted;
+	private final Map<DataType, Column> columns;
+
+	private static class Column {
+		private final ByteBuffer data;
+		private final double[] blockMins;
+		private final double[] blockMaxs;
+		private final double min;
+		private final double max;
+
+		private Column(ByteBuffer data, double[] blockMins, double[] blockMaxs) {
+			this.data = data;
+			this.blockMins = blockMins;
+			this.blockMaxs = blockMaxs;
+			double min = Double.NaN, max = Double.NaN;
+			for (int i = 0; i < blockMins.length; i++) {
+				double bMin = blockMins[i], bMax = blockMaxs[i];
+				if (!Double.isNaN(bMin) && (Double.isNaN(min) || bMin < min))
+					min = bMin;
+				if (!Double.isNaN(bMax) && (Double.isNaN(max) || bMax > max))
+					max = bMax;
+			}
+			this.min = min;
+			this.max = max;
+		}
+	}
+
+	private ColumnarCatalogFile(int size, int blockSize, boolean timeSorted,
+		Map<DataType, Column> columns) {
+		this.size = size;
+		this.blockSize = blockSize;
+		this.numBlocks = numBlocks(size, blockSize);
+		this.timeSorted = timeSorted;
+		this.columns = columns;
+	}
+
+	private static int numBlocks(int size, int blockSize) {
+		return (int) (((long) size + blockSize - 1) / blockSize);
+	}
+
+	private static int width(DataType type) {
+		return (type.clazz() == int[].class) ? 4 : 8;
+	}
+
+	private static long align(long offset) {
+		return (offset + ALIGN - 1) / ALIGN * ALIGN;
+	}
+
+	/**
+	 * Writes the supplied catalog data arrays to a file using the default
+	 * block size.
+	 *
+	 * @param file to write to
+	 * @param data arrays keyed by type
+	 * @throws IOException if there is a problem writing the file
+	 * @see #write(File, Map, int)
+	 */
+	public static void write(File file, Map<DataType, ?> data)
+			throws IOException {
+		write(file, data, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Writes the supplied catalog data arrays to a file.
+	 *
+	 * @param file to write to
+	 * @param data arrays keyed by type
+	 * @param blockSize number of events per statistics block
+	 * @throws NullPointerException if <code>file</code> or <code>data</code>
+	 *         are <code>null</code>
+	 * @throws IllegalArgumentException if <code>data</code> is empty, arrays
+	 *         are not of the class specified by {@link DataType#clazz()},
+	 *         arrays differ in length, or <code>blockSize</code> is less
+	 *         than 1
+	 * @throws IOException if there is a problem writing the file
+	 */
+	public static void write(File file, Map<DataType, ?> data, int blockSize)
+			throws IOException {
+		checkNotNull(file, "Supplied file is null");
+		checkNotNull(data, "Supplied data is null");
+		checkArgument(!data.isEmpty(), "Supplied data is empty");
+		checkArgument(blockSize > 0, "Block size must be positive");
+		int size = -1;
+		for (DataType type : data.keySet()) {
+			Object array = data.get(type);
+			checkArgument(array != null &&
+				type.clazz().equals(array.getClass()),
+				"Data for %s is not of the required type", type);
+			int length = Array.getLength(array);
+			checkArgument(size == -1 || length == size,
+				"Data array sizes do not match");
+			size = length;
+		}
+		int numBlocks = numBlocks(size, blockSize);
+		long[] times = (long[]) data.get(DataType.TIME);
+		boolean timeSorted = times != null && isSorted(times);
+
+		// layout
+		int numCols = data.size();
+		DataType[] types = data.keySet().toArray(new DataType[numCols]);
+		long[] dataOffsets = new long[numCols];
+		long[] statsOffsets = new long[numCols];
+		long offset = align(HEADER_SIZE + (long) numCols * ENTRY_SIZE);
+		for (int i = 0; i < numCols; i++) {
+			dataOffsets[i] = offset;
+			long length = (long) size * width(types[i]);
+			checkArgument(length <= Integer.MAX_VALUE,
+				"Column %s is too large", types[i]);
+			statsOffsets[i] = align(offset + length);
+			offset = align(statsOffsets[i] + numBlocks * 16L);
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buf = ByteBuffer.allocate(1 << 20).order(ORDER);
+			buf.putInt(MAGIC);
+			buf.putInt(VERSION);
+			buf.putInt(size);
+			buf.putInt(blockSize);
+			buf.putInt(numCols);
+			buf.putInt(timeSorted ? FLAG_TIME_SORTED : 0);
+			for (int i = 0; i < numCols; i++) {
+				byte[] name = types[i].name().getBytes(
+					StandardCharsets.US_ASCII);
+				checkState(name.length <= NAME_LENGTH);
+				buf.put(name);
+				buf.put(new byte[NAME_LENGTH - name.length]);
+				buf.putLong(dataOffsets[i]);
+				buf.putLong(statsOffsets[i]);
+			}
+			writeFully(channel, buf, 0);
+			for (int i = 0; i < numCols; i++) {
+				Object array = data.get(types[i]);
+				writeColumn(channel, buf, dataOffsets[i], array);
+				writeStats(channel, buf, statsOffsets[i], array, size,
+					blockSize);
+			}
+			// pad to full length in case the last region was empty
+			if (channel.size() < offset) {
+				buf.clear();
+				buf.put((byte) 0);
+				writeFully(channel, buf, offset - 1);
+			}
+		}
+	}
+
+	private static boolean isSorted(long[] times) {
+		for (int i = 1; i < times.length; i++) {
+			if (times[i] < times[i - 1]) return false;
+		}
+		return true;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf,
+			long position) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			position += channel.write(buf, position);
+		}
+		buf.clear();
+	}
+
+	private static void writeColumn(FileChannel channel, ByteBuffer buf,
+			long position, Object array) throws IOException {
+		int length = Array.getLength(array);
+		int width = (array instanceof int[]) ? 4 : 8;
+		int perBuf = buf.capacity() / width;
+		for (int start = 0; start < length; start += perBuf) {
+			int count = Math.min(perBuf, length - start);
+			if (array instanceof int[]) {
+				buf.asIntBuffer().put((int[]) array, start, count);
+			} else if (array instanceof long[]) {
+				buf.asLongBuffer().put((long[]) array, start, count);
+			} else {
+				buf.asDoubleBuffer().put((double[]) array, start, count);
+			}
+			buf.position(count * width);
+			writeFully(channel, buf, position);
+			position += (long) count * width;
+		}
+	}
+
+	private static void writeStats(FileChannel channel, ByteBuffer buf,
+			long position, Object array, int size, int blockSize)
+			throws IOException {
+		for (int start = 0; start < size; start += blockSize) {
+			int end = Math.min(size, start + blockSize);
+			double min = Double.NaN, max = Double.NaN;
+			for (int i = start; i < end; i++) {
+				double v = value(array, i);
+				if (Double.isNaN(v)) continue;
+				if (Double.isNaN(min) || v < min) min = v;
+				if (Double.isNaN(max) || v > max) max = v;
+			}
+			if (buf.remaining() < 16) {
+				long count = buf.position();
+				writeFully(channel, buf, position);
+				position += count;
+			}
+			buf.putDouble(min);
+			buf.putDouble(max);
+		}
+		writeFully(channel, buf, position);
+	}
+
+	private static double value(Object array, int index) {
+		if (array instanceof int[]) return ((int[]) array)[index];
+		if (array instanceof long[]) return ((long[]) array)[index];
+		return ((double[]) array)[index];
+	}
+
+	/**
+	 * Opens and memory maps a columnar catalog file.
+	 *
+	 * @param file to open
+	 * @return the opened file
+	 * @throws NullPointerException if <code>file</code> is <code>null</code>
+	 * @throws IOException if the file can not be read, is not a columnar
+	 *         catalog file, or is of an unsupported version
+	 */
+	public static ColumnarCatalogFile open(File file) throws IOException {
+		checkNotNull(file, "Supplied file is null");
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.READ)) {
+			long fileLength = channel.size();
+			ByteBuffer header = read(channel, 0, HEADER_SIZE, fileLength);
+			if (header.getInt() != MAGIC) {
+				throw new IOException("Not a columnar catalog file: " + file);
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported columnar catalog version: " +
+					version);
+			}
+			int size = header.getInt();
+			int blockSize = header.getInt();
+			int numCols = header.getInt();
+			int flags = header.getInt();
+			if (size < 0 || blockSize < 1 || numCols < 0) {
+				throw new IOException("Corrupt columnar catalog header");
+			}
+			int numBlocks = numBlocks(size, blockSize);
+			ByteBuffer dir = read(channel, HEADER_SIZE, (long) numCols *
+				ENTRY_SIZE, fileLength);
+			Map<DataType, Column> columns = new EnumMap<DataType, Column>(
+				DataType.class);
+			byte[] nameBytes = new byte[NAME_LENGTH];
+			for (int i = 0; i < numCols; i++) {
+				dir.get(nameBytes);
+				int len = 0;
+				while (len < NAME_LENGTH && nameBytes[len] != 0) len++;
+				String name = new String(nameBytes, 0, len,
+					StandardCharsets.US_ASCII);
+				DataType type;
+				try {
+					type = DataType.valueOf(name);
+				} catch (IllegalArgumentException iae) {
+					throw new IOException("Unknown data type: " + name);
+				}
+				long dataOffset = dir.getLong();
+				long statsOffset = dir.getLong();
+				long dataLength = (long) size * width(type);
+				if (dataOffset < 0 || dataOffset + dataLength > fileLength) {
+					throw new IOException("Corrupt column offset for " + type);
+				}
+				ByteBuffer data = channel.map(MapMode.READ_ONLY, dataOffset,
+					dataLength).order(ORDER);
+				ByteBuffer stats = read(channel, statsOffset, numBlocks * 16L,
+					fileLength);
+				double[] mins = new double[numBlocks];
+				double[] maxs = new double[numBlocks];
+				for (int b = 0; b < numBlocks; b++) {
+					mins[b] = stats.getDouble();
+					maxs[b] = stats.getDouble();
+				}
+				columns.put(type, new Column(data, mins, maxs));
+			}
+			boolean timeSorted = (flags & FLAG_TIME_SORTED) != 0 &&
+				columns.containsKey(DataType.TIME);
+			return new ColumnarCatalogFile(size, blockSize, timeSorted,
+				columns);
+		}
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position,
+			long length, long fileLength) throws IOException {
+		if (position < 0 || position + length > fileLength ||
+			length > Integer.MAX_VALUE) {
+			throw new IOException("Columnar catalog file is truncated");
+		}
+		ByteBuffer buf = ByteBuffer.allocate((int) length).order(ORDER);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, position + buf.position()) < 0) {
+				throw new IOException("Columnar catalog file is truncated");
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/**
+	 * Returns the number of events in this file.
+	 * @return the event count
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of events per statistics block.
+	 * @return the block size
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Returns the number of statistics blocks.
+	 * @return the block count
+	 */
+	public int getNumBlocks() {
+		return numBlocks;
+	}
+
+	/**
+	 * Returns the data types stored in this file.
+	 * @return an immutable set of data types
+	 */
+	public Set<DataType> getDataTypes() {
+		return ImmutableSet.copyOf(columns.keySet());
+	}
+
+	/**
+	 * Returns whether this file contains data of the supplied type.
+	 * @param type to look for
+	 * @return whether the type is present
+	 */
+	public boolean contains(DataType type) {
+		return columns.containsKey(type);
+	}
+
+	private Column column(DataType type, Class<?> clazz) {
+		checkNotNull(type, "Data type is null");
+		Column col = columns.get(type);
+		checkArgument(col != null, "File does not contain %s data", type);
+		checkArgument(type.clazz() == clazz, "%s data is not of type %s",
+			type, clazz.getComponentType());
+		return col;
+	}
+
+	/**
+	 * Returns a read-only view of a <code>double</code> valued column that is
+	 * backed directly by the mapped file.
+	 *
+	 * @param type of data
+	 * @return a buffer view of the column
+	 * @throws IllegalArgumentException if the type is not present or not
+	 *         <code>double</code> valued
+	 */
+	public DoubleBuffer getDoubleBuffer(DataType type) {
+		return column(type, double[].class).data.duplicate().order(ORDER)
+			.asDoubleBuffer();
+	}
+
+	/**
+	 * Returns a read-only view of a <code>long</code> valued column that is
+	 * backed directly by the mapped file.
+	 *
+	 * @param type of data
+	 * @return a buffer view of the column
+	 * @throws IllegalArgumentException if the type is not present or not
+	 *         <code>long</code> valued
+	 */
+	public LongBuffer getLongBuffer(DataType type) {
+		return column(type, long[].class).data.duplicate().order(ORDER)
+			.asLongBuffer();
+	}
+
+	/**
+	 * Returns a read-only view of an <code>int</code> valued column that is
+	 * backed directly by the mapped file.
+	 *
+	 * @param type of data
+	 * @return a buffer view of the column
+	 * @throws IllegalArgumentException if the type is not present or not
+	 *         <code>int</code> valued
+	 */
+	public IntBuffer getIntBuffer(DataType type) {
+		return column(type, int[].class).data.duplicate().order(ORDER)
+			.asIntBuffer();
+	}
+
+	/**
+	 * Returns a primitive array copy of the requested column, of the class
+	 * specified by {@link DataType#clazz()}.
+	 *
+	 * @param type of data
+	 * @return a copy of the column data
+	 * @throws IllegalArgumentException if the type is not present
+	 */
+	public Object getData(DataType type) {
+		checkNotNull(type, "Data type is null");
+		checkArgument(contains(type), "File does not contain %s data", type);
+		if (type.clazz() == int[].class) {
+			int[] out = new int[size];
+			getIntBuffer(type).get(out);
+			return out;
+		} else if (type.clazz() == long[].class) {
+			long[] out = new long[size];
+			getLongBuffer(type).get(out);
+			return out;
+		}
+		double[] out = new double[size];
+		getDoubleBuffer(type).get(out);
+		return out;
+	}
+
+	/**
+	 * Returns the minimum (non-NaN) value of the requested column, or NaN if
+	 * there are no values.
+	 * @param type of data
+	 * @return the minimum value
+	 */
+	public double getMin(DataType type) {
+		return column(type, type.clazz()).min;
+	}
+
+	/**
+	 * Returns the maximum (non-NaN) value of the requested column, or NaN if
+	 * there are no values.
+	 * @param type of data
+	 * @return the maximum value
+	 */
+	public double getMax(DataType type) {
+		return column(type, type.clazz()).max;
+	}
+
+	/**
+	 * Returns the minimum (non-NaN) value of the requested column within a
+	 * block, or NaN if the block has no values.
+	 * @param type of data
+	 * @param block index
+	 * @return the minimum value in the block
+	 */
+	public double getBlockMin(DataType type, int block) {
+		checkElementIndex(block, numBlocks);
+		return column(type, type.clazz()).blockMins[block];
+	}
+
+	/**
+	 * Returns the maximum (non-NaN) value of the requested column within a
+	 * block, or NaN if the block has no values.
+	 * @param type of data
+	 * @param block index
+	 * @return the maximum value in the block
+	 */
+	public double getBlockMax(DataType type, int block) {
+		checkElementIndex(block, numBlocks);
+		return column(type, type.clazz()).blockMaxs[block];
+	}
+
+	/**
+	 * Returns whether this file has a TIME column that is sorted ascending,
+	 * as is required for {@link #getTimeIndexRange(long, long)}.
+	 * @return whether event times are indexed
+	 */
+	public boolean isTimeSorted() {
+		return timeSorted;
+	}
+
+	/**
+	 * Returns the range of event indices <code>[from, to)</code> with times
+	 * in the range <code>[minTime, maxTime)</code>. Block statistics are used
+	 * to locate the first block to search, so only a few mapped pages are
+	 * touched.
+	 *
+	 * @param minTime inclusive minimum time in milliseconds
+	 * @param maxTime exclusive maximum time in milliseconds
+	 * @return a two element array of the first and (exclusive) last index
+	 * @throws IllegalStateException if this file does not have a sorted TIME
+	 *         column
+	 */
+	public int[] getTimeIndexRange(long minTime, long maxTime) {
+		checkState(timeSorted, "File does not contain sorted event times");
+		LongBuffer times = getLongBuffer(DataType.TIME);
+		int from = lowerBound(times, minTime);
+		int to = Math.max(from, lowerBound(times, maxTime));
+		return new int[] { from, to };
+	}
+
+	/* index of the first time >= t, using block maxima to pick the block */
+	private int lowerBound(LongBuffer times, long t) {
+		double[] maxs = columns.get(DataType.TIME).blockMaxs;
+		int lo = 0, hi = numBlocks;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (maxs[mid] < t) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		if (lo == numBlocks) return size;
+		int start = lo * blockSize;
+		int end = Math.min(size, start + blockSize);
+		while (start < end) {
+			int mid = (start + end) >>> 1;
+			if (times.get(mid) < t) {
+				start = mid + 1;
+			} else {
+				end = mid;
+			}
+		}
+		return start;
+	}
+
+}
@@ -0,0 +1,241 @@
+package org.opensha.commons.eq.cat.io;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Arrays;
+
+/**
+ * Growable primitive data stores used by catalog readers to accumulate event
+ * data. These avoid the boxing overhead of <code>List</code> based stores and
+ * are not limited in size (other than by the maximum array length). Columns
+ * are not thread safe; parallel readers fill one set of columns per chunk and
+ * merge them once parsing is complete.
+ */
+public class DataColumns {
+
+	// some VMs reserve header words in arrays
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	private DataColumns() {}
+
+	private static int grow(int capacity, int minCapacity) {
+		checkState(minCapacity >= 0 && minCapacity <= MAX_ARRAY_SIZE,
+			"Column size limit exceeded");
+		long newCapacity = Math.max(16, capacity + (capacity >> 1));
+		return (int) Math.max(minCapacity, Math.min(newCapacity, MAX_ARRAY_SIZE));
+	}
+
+	/** Growable <code>int</code> data store. */
+	public static class IntColumn {
+
+		private int[] data;
+		private int size;
+
+		/**
+		 * Creates a new column.
+		 * @param capacity initial capacity
+		 */
+		public IntColumn(int capacity) {
+			checkArgument(capacity >= 0, "Capacity must be non-negative");
+			data = new int[capacity];
+		}
+
+		/**
+		 * Appends a value to this column.
+		 * @param value to add
+		 */
+		public void add(int value) {
+			if (size == data.length) ensureCapacity(size + 1);
+			data[size++] = value;
+		}
+
+		/**
+		 * Appends all values in the supplied column to this column.
+		 * @param column to add
+		 */
+		public void addAll(IntColumn column) {
+			ensureCapacity(size + column.size);
+			System.arraycopy(column.data, 0, data, size, column.size);
+			size += column.size;
+		}
+
+		/**
+		 * Returns the value at the specified index.
+		 * @param index of value
+		 * @return the value
+		 */
+		public int get(int index) {
+			checkElementIndex(index, size);
+			return data[index];
+		}
+
+		/**
+		 * Returns the number of values in this column.
+		 * @return the column size
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Ensures that this column can hold at least the specified number of
+		 * values without resizing.
+		 * @param capacity minimum capacity
+		 */
+		public void ensureCapacity(int capacity) {
+			if (capacity > data.length)
+				data = Arrays.copyOf(data, grow(data.length, capacity));
+		}
+
+		/**
+		 * Returns a copy of the values in this column.
+		 * @return an array of values
+		 */
+		public int[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+	}
+
+	/** Growable <code>long</code> data store. */
+	public static class LongColumn {
+
+		private long[] data;
+		private int size;
+
+		/**
+		 * Creates a new column.
+		 * @param capacity initial capacity
+		 */
+		public LongColumn(int capacity) {
+			checkArgument(capacity >= 0, "Capacity must be non-negative");
+			data = new long[capacity];
+		}
+
+		/**
+		 * Appends a value to this column.
+		 * @param value to add
+		 */
+		public void add(long value) {
+			if (size == data.length) ensureCapacity(size + 1);
+			data[size++] = value;
+		}
+
+		/**
+		 * Appends all values in the supplied column to this column.
+		 * @param column to add
+		 */
+		public void addAll(LongColumn column) {
+			ensureCapacity(size + column.size);
+			System.arraycopy(column.data, 0, data, size, column.size);
+			size += column.size;
+		}
+
+		/**
+		 * Returns the value at the specified index.
+		 * @param index of value
+		 * @return the value
+		 */
+		public long get(int index) {
+			checkElementIndex(index, size);
+			return data[index];
+		}
+
+		/**
+		 * Returns the number of values in this column.
+		 * @return the column size
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Ensures that this column can hold at least the specified number of
+		 * values without resizing.
+		 * @param capacity minimum capacity
+		 */
+		public void ensureCapacity(int capacity) {
+			if (capacity > data.length)
+				data = Arrays.copyOf(data, grow(data.length, capacity));
+		}
+
+		/**
+		 * Returns a copy of the values in this column.
+		 * @return an array of values
+		 */
+		public long[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+	}
+
+	/** Growable <code>double</code> data store. */
+	public static class DoubleColumn {
+
+		private double[] data;
+		private int size;
+
+		/**
+		 * Creates a new column.
+		 * @param capacity initial capacity
+		 */
+		public DoubleColumn(int capacity) {
+			checkArgument(capacity >= 0, "Capacity must be non-negative");
+			data = new double[capacity];
+		}
+
+		/**
+		 * Appends a value to this column.
+		 * @param value to add
+		 */
+		public void add(double value) {
+			if (size == data.length) ensureCapacity(size + 1);
+			data[size++] = value;
+		}
+
+		/**
+		 * Appends all values in the supplied column to this column.
+		 * @param column to add
+		 */
+		public void addAll(DoubleColumn column) {
+			ensureCapacity(size + column.size);
+			System.arraycopy(column.data, 0, data, size, column.size);
+			size += column.size;
+		}
+
+		/**
+		 * Returns the value at the specified index.
+		 * @param index of value
+		 * @return the value
+		 */
+		public double get(int index) {
+			checkElementIndex(index, size);
+			return data[index];
+		}
+
+		/**
+		 * Returns the number of values in this column.
+		 * @return the column size
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Ensures that this column can hold at least the specified number of
+		 * values without resizing.
+		 * @param capacity minimum capacity
+		 */
+		public void ensureCapacity(int capacity) {
+			if (capacity > data.length)
+				data = Arrays.copyOf(data, grow(data.length, capacity));
+		}
+
+		/**
+		 * Returns a copy of the values in this column.
+		 * @return an array of values
+		 */
+		public double[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+	}
+
+}
@@ -7,12 +7,11 @@ import static org.opensha.commons.eq.cat.util.DataType.LONGITUDE;
 import static org.opensha.commons.eq.cat.util.DataType.MAGNITUDE;
 import static org.opensha.commons.eq.cat.util.DataType.TIME;
 
-import java.util.ArrayList;
 import java.util.Calendar;
 
-import com.google.common.primitives.Doubles;
-import com.google.common.primitives.Ints;
-import com.google.common.primitives.Longs;
+import org.opensha.commons.eq.cat.io.DataColumns.DoubleColumn;
+import org.opensha.commons.eq.cat.io.DataColumns.IntColumn;
+import org.opensha.commons.eq.cat.io.DataColumns.LongColumn;
 
 /**
  * Reader class for lines from an Advanced National Seismic System catalog as
@@ -55,22 +54,22 @@ public class Reader_ANSS extends AbstractReader {
 	@Override
 	public void initReader() {
 		count = 0;
-		dat_eventIDs       = new ArrayList<Integer>(size);
-		dat_dates          = new ArrayList<Long>(size);
-		dat_longitudes     = new ArrayList<Double>(size);
-		dat_latitudes      = new ArrayList<Double>(size);
-		dat_depths         = new ArrayList<Double>(size);
-		dat_magnitudes     = new ArrayList<Double>(size);
+		dat_eventIDs       = new IntColumn(size);
+		dat_dates          = new LongColumn(size);
+		dat_longitudes     = new DoubleColumn(size);
+		dat_latitudes      = new DoubleColumn(size);
+		dat_depths         = new DoubleColumn(size);
+		dat_magnitudes     = new DoubleColumn(size);
 	}
 
 	@Override
 	public void loadData() {
-		catalog.addData(EVENT_ID, Ints.toArray(dat_eventIDs));
-		catalog.addData(TIME, Longs.toArray(dat_dates));
-		catalog.addData(LONGITUDE, Doubles.toArray(dat_longitudes));
-		catalog.addData(LATITUDE, Doubles.toArray(dat_latitudes));
-		catalog.addData(DEPTH, Doubles.toArray(dat_depths));
-		catalog.addData(MAGNITUDE, Doubles.toArray(dat_magnitudes));
+		catalog.addData(EVENT_ID, dat_eventIDs.toArray());
+		catalog.addData(TIME, dat_dates.toArray());
+		catalog.addData(LONGITUDE, dat_longitudes.toArray());
+		catalog.addData(LATITUDE, dat_latitudes.toArray());
+		catalog.addData(DEPTH, dat_depths.toArray());
+		catalog.addData(MAGNITUDE, dat_magnitudes.toArray());
 	}
 
 	@Override
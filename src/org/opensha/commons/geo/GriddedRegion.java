@@ -662,17 +662,41 @@ public class GriddedRegion extends Region implements Iterable<Location> {
 
 	}
 
-	/* Brute force approach does intersect test for all region node polys */
+	/*
+	 * Does intersect test for region node polys; only nodes whose lat-lon
+	 * indices fall within (one node of) the rectangle are considered.
+	 */
 	private List<Integer> indexLookupSlow(Rectangle2D rect) {
 //		System.out.println("Sloooooooow");
 		List<Integer> indices = Lists.newArrayList();
-		for (int i = 0; i < nodeCount; i++) {
-			Area area = areaForIndex(i);
-			if (area.intersects(rect)) indices.add(i);
+		if (nodeCount == 0) return indices;
+		int minLatIdx = candidateIndex(latNodeCenters, rect.getMinY(), latSpacing, -1);
+		int maxLatIdx = candidateIndex(latNodeCenters, rect.getMaxY(), latSpacing, 1);
+		int minLonIdx = candidateIndex(lonNodeCenters, rect.getMinX(), lonSpacing, -1);
+		int maxLonIdx = candidateIndex(lonNodeCenters, rect.getMaxX(), lonSpacing, 1);
+		// rows then columns, so indices remain in ascending order
+		for (int latIdx = minLatIdx; latIdx <= maxLatIdx; latIdx++) {
+			for (int lonIdx = minLonIdx; lonIdx <= maxLonIdx; lonIdx++) {
+				int i = gridIndices[latIdx * numLonNodes + lonIdx];
+				if (i == -1) continue;
+				Area area = areaForIndex(i);
+				if (area.intersects(rect)) indices.add(i);
+			}
 		}
 		return indices;
 	}
 
+	/*
+	 * Returns the node index nearest the value, padded by one node in the
+	 * supplied direction and clamped to the valid range.
+	 */
+	private static int candidateIndex(double[] nodes, double value,
+			double spacing, int pad) {
+		double iVal = (value - nodes[0]) / spacing;
+		iVal = ((pad < 0) ? Math.floor(iVal) : Math.ceil(iVal)) + pad;
+		return (iVal < 0) ? 0 : (iVal >= nodes.length) ? nodes.length - 1 : (int) iVal;
+	}
+
 	/* Adds an inclusive range of ints to a list */
 	private static void addRange(List<Integer> ints, int start, int num) {
 		for (int i = start; i < start + num; i++) {
@@ -18,6 +18,10 @@
 
 package org.opensha.commons.geo;
 
+import static org.opensha.commons.geo.GeoTools.LAT_MAX;
+import static org.opensha.commons.geo.GeoTools.LAT_MIN;
+import static org.opensha.commons.geo.GeoTools.LON_MAX;
+import static org.opensha.commons.geo.GeoTools.LON_MIN;
 import static org.opensha.commons.geo.GeoTools.TO_DEG;
 import static org.opensha.commons.geo.GeoTools.TO_RAD;
 
@@ -25,6 +29,7 @@ import java.io.Serializable;
 
 import org.dom4j.Element;
 import org.opensha.commons.metadata.XMLSaveable;
+import org.opensha.commons.util.DataUtils;
 
 /**
  * A <code>Location</code> represents a point with reference to the earth's
@@ -93,6 +98,32 @@ public class Location implements
 		this.depth = depth;
 	}
 
+	/**
+	 * Constructs a new <code>Location</code> directly from latitude and
+	 * longitude values in radians, as returned by {@link #getLatRad()} and
+	 * {@link #getLonRad()}. Unlike converting back to decimal degrees and
+	 * using a constructor, this is guaranteed to exactly recreate a
+	 * <code>Location</code> from its stored values.
+	 * 
+	 * @param latRad latitude in radians
+	 * @param lonRad longitude in radians
+	 * @param depth in km (positive down)
+	 * @return a new <code>Location</code>
+	 * @throws IllegalArgumentException if any supplied values are out of range
+	 */
+	public static Location fromRadians(double latRad, double lonRad, double depth) {
+		// validate in radians, as converting to degrees may push values at the
+		// limits out of range
+		DataUtils.validate(LAT_MIN * TO_RAD, LAT_MAX * TO_RAD, latRad);
+		DataUtils.validate(LON_MIN * TO_RAD, LON_MAX * TO_RAD, lonRad);
+		GeoTools.validateDepth(depth);
+		Location loc = new Location();
+		loc.lat = latRad;
+		loc.lon = lonRad;
+		loc.depth = depth;
+		return loc;
+	}
+
 	/**
 	 * Returns the depth of this <code>Location</code>.
 	 * 
@@ -0,0 +1,362 @@
+package org.opensha.commons.geo;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.opensha.commons.geo.GeoTools.EARTH_RADIUS_MEAN;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * Immutable k-d tree for nearest neighbor searches over a fixed list of
+ * {@code Location}s. Locations are stored as points on the unit sphere
+ * (earth-centered x, y, z), so searches are exact in terms of great circle
+ * distance, are valid anywhere on the globe (including across the dateline and
+ * near the poles), and don't depend on any flat-earth approximation. Depths are
+ * ignored.<br/>
+ * <br/>
+ * Queries return indices into the list supplied on construction. Building the
+ * tree is O(n log n), after which nearest neighbor queries are typically
+ * O(log n). Instances are immutable and may be queried concurrently.
+ *
+ * @see LocationUtils#horzDistance(Location, Location)
+ */
+public class LocationKDTree {
+
+	private final int size;
+
+	// unit sphere coordinates, in tree order
+	private final double[] xs, ys, zs;
+	// original list index of each tree point
+	private final int[] indices;
+	// split dimension of the node at each tree position
+	private final byte[] dims;
+
+	/**
+	 * Builds a tree over the supplied locations.
+	 *
+	 * @param locs to index
+	 * @throws NullPointerException if {@code locs} or any location is null
+	 */
+	public LocationKDTree(List<Location> locs) {
+		size = locs.size();
+		xs = new double[size];
+		ys = new double[size];
+		zs = new double[size];
+		indices = new int[size];
+		dims = new byte[size];
+		for (int i = 0; i < size; i++) {
+			Location loc = locs.get(i);
+			double cosLat = Math.cos(loc.getLatRad());
+			xs[i] = cosLat * Math.cos(loc.getLonRad());
+			ys[i] = cosLat * Math.sin(loc.getLonRad());
+			zs[i] = Math.sin(loc.getLatRad());
+			indices[i] = i;
+		}
+		build(0, size);
+	}
+
+	/* recursively arranges [lo, hi) so that the median of the widest
+	 * dimension is at the mid point */
+	private void build(int lo, int hi) {
+		if (hi - lo <= 1) return;
+		int mid = (lo + hi) >>> 1;
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		double minZ = Double.POSITIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+		for (int i = lo; i < hi; i++) {
+			minX = Math.min(minX, xs[i]);
+			maxX = Math.max(maxX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxY = Math.max(maxY, ys[i]);
+			minZ = Math.min(minZ, zs[i]);
+			maxZ = Math.max(maxZ, zs[i]);
+		}
+		double dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+		byte dim = (dx >= dy && dx >= dz) ? (byte) 0 : (dy >= dz) ? (byte) 1 : (byte) 2;
+		select(lo, hi - 1, mid, dim);
+		dims[mid] = dim;
+		build(lo, mid);
+		build(mid + 1, hi);
+	}
+
+	private double coord(int i, int dim) {
+		return (dim == 0) ? xs[i] : (dim == 1) ? ys[i] : zs[i];
+	}
+
+	/*
+	 * Quickselect: partially sorts [lo, hi] such that k holds its sorted value.
+	 * Uses a three way partition as gridded data has many duplicate values.
+	 */
+	private void select(int lo, int hi, int k, int dim) {
+		while (hi > lo) {
+			double pivot = coord((lo + hi) >>> 1, dim);
+			int lt = lo, gt = hi, i = lo;
+			while (i <= gt) {
+				double c = coord(i, dim);
+				if (c < pivot) swap(lt++, i++);
+				else if (c > pivot) swap(i, gt--);
+				else i++;
+			}
+			if (k < lt) hi = lt - 1;
+			else if (k > gt) lo = gt + 1;
+			else return;
+		}
+	}
+
+	private void swap(int i, int j) {
+		if (i == j) return;
+		double tx = xs[i]; xs[i] = xs[j]; xs[j] = tx;
+		double ty = ys[i]; ys[i] = ys[j]; ys[j] = ty;
+		double tz = zs[i]; zs[i] = zs[j]; zs[j] = tz;
+		int ti = indices[i]; indices[i] = indices[j]; indices[j] = ti;
+	}
+
+	/**
+	 * @return the number of locations in this tree
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the index of the location closest to the supplied location, or
+	 * -1 if the tree is empty.
+	 *
+	 * @param loc to search for
+	 * @return the index of the closest location
+	 */
+	public int nearest(Location loc) {
+		return nearest(loc, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Returns the index of the location closest to the supplied location, or
+	 * -1 if no location lies within {@code maxDistance} (exclusive).
+	 *
+	 * @param loc to search for
+	 * @param maxDistance in km
+	 * @return the index of the closest location within range
+	 */
+	public int nearest(Location loc, double maxDistance) {
+		if (size == 0) return -1;
+		Search search = new Search(loc, 1, chordSq(maxDistance));
+		search.nearest(0, size);
+		return (search.count == 0) ? -1 : search.found[0];
+	}
+
+	/**
+	 * Returns the indices of the {@code k} locations closest to the supplied
+	 * location, sorted by increasing distance. Fewer than {@code k} indices are
+	 * returned if the tree contains fewer than {@code k} locations.
+	 *
+	 * @param loc to search for
+	 * @param k number of neighbors
+	 * @return the indices of the closest locations
+	 */
+	public int[] nearest(Location loc, int k) {
+		checkArgument(k >= 0, "k must be >= 0");
+		if (size == 0 || k == 0) return new int[0];
+		Search search = new Search(loc, Math.min(k, size), Double.POSITIVE_INFINITY);
+		search.nearest(0, size);
+		return search.sortedResults();
+	}
+
+	/**
+	 * Returns the indices of all locations within {@code radius} (inclusive)
+	 * of the supplied location, sorted by increasing distance.
+	 *
+	 * @param loc to search for
+	 * @param radius in km
+	 * @return the indices of all locations within range
+	 */
+	public int[] withinRadius(Location loc, double radius) {
+		double maxChordSq = chordSq(radius);
+		double[] p = toPoint(loc);
+		RangeResults results = new RangeResults();
+		withinRadius(0, size, p[0], p[1], p[2], maxChordSq, results);
+		return results.sorted();
+	}
+
+	/**
+	 * Returns the index of the closest location for each of the supplied
+	 * locations.
+	 *
+	 * @param locs to search for
+	 * @return array of closest indices, or -1 for each location where the tree
+	 *         is empty
+	 */
+	public int[] nearest(List<Location> locs) {
+		int[] ret = new int[locs.size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = nearest(locs.get(i));
+		}
+		return ret;
+	}
+
+	/* squared unit sphere chord length for the given great circle distance */
+	private static double chordSq(double distance) {
+		if (Double.isInfinite(distance) || distance >= Math.PI * EARTH_RADIUS_MEAN)
+			return Double.POSITIVE_INFINITY;
+		double chord = 2d * Math.sin(0.5 * distance / EARTH_RADIUS_MEAN);
+		return chord * chord;
+	}
+
+	private static double[] toPoint(Location loc) {
+		double cosLat = Math.cos(loc.getLatRad());
+		return new double[] { cosLat * Math.cos(loc.getLonRad()),
+			cosLat * Math.sin(loc.getLonRad()), Math.sin(loc.getLatRad()) };
+	}
+
+	private double distSq(int i, double x, double y, double z) {
+		double dx = xs[i] - x, dy = ys[i] - y, dz = zs[i] - z;
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private void withinRadius(int lo, int hi, double x, double y, double z,
+			double maxChordSq, RangeResults results) {
+		if (hi <= lo) return;
+		int mid = (lo + hi) >>> 1;
+		double d = distSq(mid, x, y, z);
+		if (d <= maxChordSq) results.add(indices[mid], d);
+		if (hi - lo == 1) return;
+		int dim = dims[mid];
+		double diff = ((dim == 0) ? x : (dim == 1) ? y : z) - coord(mid, dim);
+		if (diff <= 0 || diff * diff <= maxChordSq)
+			withinRadius(lo, mid, x, y, z, maxChordSq, results);
+		if (diff >= 0 || diff * diff <= maxChordSq)
+			withinRadius(mid + 1, hi, x, y, z, maxChordSq, results);
+	}
+
+	/*
+	 * State for a k nearest neighbor search; results are kept as a max heap
+	 * ordered by distance and then by index, such that ties are resolved in
+	 * favor of the lowest index (as with a linear scan).
+	 */
+	private class Search {
+		private final double x, y, z;
+		private final int k;
+		private final int[] found;
+		private final double[] dists;
+		private final double maxDistSq;
+		private int count = 0;
+
+		private Search(Location loc, int k, double maxDistSq) {
+			double[] p = toPoint(loc);
+			x = p[0];
+			y = p[1];
+			z = p[2];
+			this.k = k;
+			found = new int[k];
+			dists = new double[k];
+			this.maxDistSq = maxDistSq;
+		}
+
+		/* current pruning distance */
+		private double bound() {
+			return (count < k) ? maxDistSq : dists[0];
+		}
+
+		private void nearest(int lo, int hi) {
+			if (hi <= lo) return;
+			int mid = (lo + hi) >>> 1;
+			double d = distSq(mid, x, y, z);
+			if (count < k) {
+				if (d < maxDistSq) offer(indices[mid], d);
+			} else if (after(dists[0], found[0], d, indices[mid])) {
+				offer(indices[mid], d);
+			}
+			if (hi - lo == 1) return;
+			int dim = dims[mid];
+			double diff = ((dim == 0) ? x : (dim == 1) ? y : z) - coord(mid, dim);
+			// search the near side first
+			if (diff < 0) {
+				nearest(lo, mid);
+				if (diff * diff <= bound()) nearest(mid + 1, hi);
+			} else {
+				nearest(mid + 1, hi);
+				if (diff * diff <= bound()) nearest(lo, mid);
+			}
+		}
+
+		private void offer(int index, double d) {
+			if (count < k) {
+				// sift up
+				int i = count++;
+				while (i > 0) {
+					int parent = (i - 1) >>> 1;
+					if (!after(d, index, dists[parent], found[parent])) break;
+					found[i] = found[parent];
+					dists[i] = dists[parent];
+					i = parent;
+				}
+				found[i] = index;
+				dists[i] = d;
+			} else {
+				// replace root and sift down
+				int i = 0;
+				while (true) {
+					int child = 2 * i + 1;
+					if (child >= count) break;
+					if (child + 1 < count && after(dists[child + 1], found[child + 1],
+							dists[child], found[child]))
+						child++;
+					if (!after(dists[child], found[child], d, index)) break;
+					found[i] = found[child];
+					dists[i] = dists[child];
+					i = child;
+				}
+				found[i] = index;
+				dists[i] = d;
+			}
+		}
+
+		private int[] sortedResults() {
+			return sortByDist(Arrays.copyOf(found, count), Arrays.copyOf(dists, count));
+		}
+	}
+
+	/* true if (d1, i1) sorts after (d2, i2) */
+	private static boolean after(double d1, int i1, double d2, int i2) {
+		return d1 > d2 || (d1 == d2 && i1 > i2);
+	}
+
+	/* growable result list for radius searches */
+	private static class RangeResults {
+		private int[] found = new int[16];
+		private double[] dists = new double[16];
+		private int count = 0;
+
+		private void add(int index, double d) {
+			if (count == found.length) {
+				found = Arrays.copyOf(found, count * 2);
+				dists = Arrays.copyOf(dists, count * 2);
+			}
+			found[count] = index;
+			dists[count++] = d;
+		}
+
+		private int[] sorted() {
+			return sortByDist(Arrays.copyOf(found, count), Arrays.copyOf(dists, count));
+		}
+	}
+
+	/* sorts indices by distance, ties broken by index */
+	private static int[] sortByDist(int[] found, double[] dists) {
+		Integer[] order = new Integer[found.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> {
+			int cmp = Double.compare(dists[a], dists[b]);
+			return (cmp != 0) ? cmp : Ints.compare(found[a], found[b]);
+		});
+		int[] ret = new int[found.length];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = found[order[i]];
+		}
+		return ret;
+	}
+
+}
@@ -95,6 +95,20 @@ public class Region implements Serializable, XMLSaveable, Named {
 	// Internal representation of region
 	Area area;
 
+	// lazily built contains() acceleration structure; null if not yet built
+	// or not warranted for the region, see getIndex()
+	private transient volatile RegionIndex index;
+	private transient volatile boolean indexChecked = false;
+
+	/**
+	 * System property that may be set to {@code false} to disable the spatial
+	 * index used to speed up {@link Region#contains(Location)} for regions
+	 * with complex borders.
+	 */
+	public static final String SPATIAL_INDEX_PROP = "region.spatial.index";
+	private static boolean spatialIndex =
+		!"false".equalsIgnoreCase(System.getProperty(SPATIAL_INDEX_PROP));
+
 	// Default angle used to subdivide a circular region: 10 deg
 	private static final double WEDGE_WIDTH = 10;
 
@@ -235,6 +249,9 @@ public class Region implements Serializable, XMLSaveable, Named {
 		this.name = region.name;
 		this.border = region.border.clone();
 		this.area = (Area) region.area.clone();
+		// index is immutable and may be shared
+		this.index = region.index;
+		this.indexChecked = region.indexChecked;
 		// internal regions
 		if (region.interiors != null) {
 			interiors = new ArrayList<LocationList>();
@@ -256,6 +273,12 @@ public class Region implements Serializable, XMLSaveable, Named {
 	 * initially defined as 40.0&#176;, the internal {@code Area} may return
 	 * 40.0000000000001 on a call to {@code getMinLat()} and calls to
 	 * {@code contains(new Location(40,*))} will return false. <br/>
+	 * <br/>
+	 * For regions with complex borders, an immutable spatial index over the
+	 * border edges is built on the first call to this method. The index
+	 * returns results identical to those of the internal {@code Area}, but
+	 * only tests the few edges near the supplied {@code Location}, and may be
+	 * used concurrently by multiple threads. See {@link #SPATIAL_INDEX_PROP}.
 	 * 
 	 * @param loc the {@code Location} to test
 	 * @return {@code true} if the {@code Location} is inside the Region,
@@ -263,9 +286,60 @@ public class Region implements Serializable, XMLSaveable, Named {
 	 * @see java.awt.Shape
 	 */
 	public boolean contains(Location loc) {
+		RegionIndex index = getIndex();
+		if (index != null)
+			return index.contains(loc.getLongitude(), loc.getLatitude());
 		return area.contains(loc.getLongitude(), loc.getLatitude());
 	}
 
+	/*
+	 * Returns the spatial index for this region, building it if necessary, or
+	 * null if indexing is disabled or the border is too simple to benefit.
+	 */
+	private RegionIndex getIndex() {
+		if (!spatialIndex) return null;
+		if (!indexChecked) {
+			synchronized (this) {
+				if (!indexChecked) {
+					index = RegionIndex.build(area);
+					indexChecked = true;
+				}
+			}
+		}
+		return index;
+	}
+
+	/* Discards the spatial index; must be called whenever the area changes */
+	private void clearIndex() {
+		synchronized (this) {
+			index = null;
+			indexChecked = false;
+		}
+	}
+
+	/**
+	 * Sets whether a spatial index is used to speed up
+	 * {@link #contains(Location)} for regions with complex borders. The
+	 * default is {@code true} unless the {@link #SPATIAL_INDEX_PROP} system
+	 * property is set to {@code false}.
+	 * 
+	 * @param enabled {@code true} to enable the spatial index
+	 */
+	public static void setSpatialIndexEnabled(boolean enabled) {
+		spatialIndex = enabled;
+	}
+
+	/**
+	 * Returns whether a spatial index is used to speed up
+	 * {@link #contains(Location)}.
+	 * 
+	 * @return {@code true} if spatial indexing is enabled
+	 * @see #setSpatialIndexEnabled(boolean)
+	 */
+	public static boolean isSpatialIndexEnabled() {
+		return spatialIndex;
+	}
+
 	/**
 	 * Tests whether another {@code Region} is entirely contained within this
 	 * {@code Region}.
@@ -331,6 +405,7 @@ public class Region implements Serializable, XMLSaveable, Named {
 
 		interiors.add(newInterior.unmodifiableList());
 		area.subtract(region.area);
+		clearIndex();
 	}
 
 	/**
@@ -0,0 +1,281 @@
+package org.opensha.commons.geo;
+
+import java.awt.geom.Area;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * Immutable spatial index used to accelerate {@link Region#contains(Location)}
+ * for regions with complex borders, and other repeated point in polygon tests
+ * against a fixed {@link Area}. The bounds of the region are divided into
+ * a grid of cells, each of which is classified as entirely inside, entirely
+ * outside, or crossed by the border. Only locations that fall in a border cell
+ * require an insidedness test, and that test only considers the border edges
+ * that span the row of cells containing the location.<br/>
+ * <br/>
+ * Edges are read from the path of the {@link Area} backing the region and the
+ * crossing test mirrors the one used internally by {@link Area#contains(double,
+ * double)}, so results are identical to those of the {@code Area}, including
+ * the rules of insidedness for locations that lie exactly on the border.<br/>
+ * <br/>
+ * Instances are immutable and are therefore safe to use from multiple threads.
+ *
+ * @see Region#contains(Location)
+ */
+public final class RegionIndex {
+
+	/* minimum number of border edges for which an index will be built */
+	static final int MIN_EDGES = 16;
+
+	/* max number of cells in each dimension */
+	private static final int MAX_DIM = 512;
+
+	/*
+	 * Fraction of a cell by which cells and rows are padded when assigning
+	 * edges; guards against rounding when computing cell indices.
+	 */
+	private static final double PAD = 1e-6;
+
+	private static final byte OUTSIDE = 0;
+	private static final byte INSIDE = 1;
+	private static final byte BORDER = 2;
+
+	private final Rectangle2D bounds;
+	private final double minX, minY;
+	private final double xScale, yScale;
+	private final int numRows, numCols;
+
+	// non-horizontal edges, oriented such that y0 < y1
+	private final double[] x0s, y0s, x1s, y1s, xMins, xMaxs;
+
+	// indices of the edges that span each row
+	private final int[][] rowEdges;
+
+	// cell states, row major
+	private final byte[] cells;
+
+	private RegionIndex(Rectangle2D bounds, double[] segments, int numSegs) {
+		this.bounds = bounds;
+		minX = bounds.getMinX();
+		minY = bounds.getMinY();
+		double width = bounds.getWidth();
+		double height = bounds.getHeight();
+
+		// aim for ~4 edges per row and square(ish) cells
+		int dim = (int) Math.ceil(Math.sqrt(numSegs)) * 2;
+		dim = Math.max(1, Math.min(MAX_DIM, dim));
+		if (width >= height) {
+			numCols = dim;
+			numRows = Math.max(1, (int) Math.ceil(dim * height / width));
+		} else {
+			numRows = dim;
+			numCols = Math.max(1, (int) Math.ceil(dim * width / height));
+		}
+		double cellWidth = width / numCols;
+		double cellHeight = height / numRows;
+		xScale = 1d / cellWidth;
+		yScale = 1d / cellHeight;
+
+		// store non-horizontal edges and flag border cells
+		int numEdges = 0;
+		double[] x0s = new double[numSegs];
+		double[] y0s = new double[numSegs];
+		double[] x1s = new double[numSegs];
+		double[] y1s = new double[numSegs];
+		cells = new byte[numRows * numCols];
+		int[] rowCounts = new int[numRows];
+		for (int i = 0; i < numSegs; i++) {
+			double xa = segments[4 * i];
+			double ya = segments[4 * i + 1];
+			double xb = segments[4 * i + 2];
+			double yb = segments[4 * i + 3];
+			// any edge, horizontal ones included, marks the cells it spans
+			int r0 = rowFloor(Math.min(ya, yb) - PAD * cellHeight);
+			int r1 = rowFloor(Math.max(ya, yb) + PAD * cellHeight);
+			int c0 = colFloor(Math.min(xa, xb) - PAD * cellWidth);
+			int c1 = colFloor(Math.max(xa, xb) + PAD * cellWidth);
+			for (int r = r0; r <= r1; r++) {
+				Arrays.fill(cells, r * numCols + c0, r * numCols + c1 + 1, BORDER);
+			}
+			if (ya == yb) continue;
+			if (ya < yb) {
+				x0s[numEdges] = xa;
+				y0s[numEdges] = ya;
+				x1s[numEdges] = xb;
+				y1s[numEdges] = yb;
+			} else {
+				x0s[numEdges] = xb;
+				y0s[numEdges] = yb;
+				x1s[numEdges] = xa;
+				y1s[numEdges] = ya;
+			}
+			for (int r = r0; r <= r1; r++) {
+				rowCounts[r]++;
+			}
+			numEdges++;
+		}
+		this.x0s = Arrays.copyOf(x0s, numEdges);
+		this.y0s = Arrays.copyOf(y0s, numEdges);
+		this.x1s = Arrays.copyOf(x1s, numEdges);
+		this.y1s = Arrays.copyOf(y1s, numEdges);
+		xMins = new double[numEdges];
+		xMaxs = new double[numEdges];
+		for (int i = 0; i < numEdges; i++) {
+			xMins[i] = Math.min(x0s[i], x1s[i]);
+			xMaxs[i] = Math.max(x0s[i], x1s[i]);
+		}
+
+		// assign edges to rows
+		rowEdges = new int[numRows][];
+		for (int r = 0; r < numRows; r++) {
+			rowEdges[r] = new int[rowCounts[r]];
+		}
+		int[] rowFill = new int[numRows];
+		for (int i = 0; i < numEdges; i++) {
+			int r0 = rowFloor(y0s[i] - PAD * cellHeight);
+			int r1 = rowFloor(y1s[i] + PAD * cellHeight);
+			for (int r = r0; r <= r1; r++) {
+				rowEdges[r][rowFill[r]++] = i;
+			}
+		}
+
+		// classify remaining cells by testing their centers; no edge passes
+		// through these cells so the result holds for the whole cell
+		for (int r = 0; r < numRows; r++) {
+			double y = minY + (r + 0.5) * cellHeight;
+			for (int c = 0; c < numCols; c++) {
+				int idx = r * numCols + c;
+				if (cells[idx] == BORDER) continue;
+				double x = minX + (c + 0.5) * cellWidth;
+				cells[idx] = crossingsContain(r, x, y) ? INSIDE : OUTSIDE;
+			}
+		}
+	}
+
+	/**
+	 * Builds an index for the supplied {@code Area}. Returns {@code null} if
+	 * the {@code Area} has fewer than {@link #MIN_EDGES} edges (in which case
+	 * an index offers no benefit), or if its path contains anything other than
+	 * straight line segments.
+	 *
+	 * @param area to index
+	 * @return the index or {@code null}
+	 */
+	static RegionIndex build(Area area) {
+		return build(area, MIN_EDGES);
+	}
+
+	/**
+	 * Builds an index for the supplied {@code Area}. Returns {@code null} if
+	 * the {@code Area} is empty, has fewer than {@code minEdges} edges, or if
+	 * its path contains anything other than straight line segments.
+	 *
+	 * @param area to index
+	 * @param minEdges minimum number of edges for which an index is built
+	 * @return the index or {@code null}
+	 */
+	public static RegionIndex build(Area area, int minEdges) {
+		Rectangle2D bounds = area.getBounds2D();
+		if (bounds.isEmpty()) return null;
+		double[] segments = new double[64];
+		int numSegs = 0;
+		double[] coords = new double[6];
+		double startX = Double.NaN, startY = Double.NaN;
+		double prevX = Double.NaN, prevY = Double.NaN;
+		for (PathIterator pi = area.getPathIterator(null); !pi.isDone(); pi.next()) {
+			int type = pi.currentSegment(coords);
+			double x, y;
+			switch (type) {
+				case PathIterator.SEG_MOVETO:
+					startX = prevX = coords[0];
+					startY = prevY = coords[1];
+					continue;
+				case PathIterator.SEG_LINETO:
+					x = coords[0];
+					y = coords[1];
+					break;
+				case PathIterator.SEG_CLOSE:
+					x = startX;
+					y = startY;
+					break;
+				default:
+					return null;
+			}
+			if (x != prevX || y != prevY) {
+				if (4 * numSegs + 4 > segments.length) {
+					segments = Arrays.copyOf(segments, segments.length * 2);
+				}
+				segments[4 * numSegs] = prevX;
+				segments[4 * numSegs + 1] = prevY;
+				segments[4 * numSegs + 2] = x;
+				segments[4 * numSegs + 3] = y;
+				numSegs++;
+			}
+			prevX = x;
+			prevY = y;
+		}
+		if (numSegs < minEdges) return null;
+		return new RegionIndex(bounds, segments, numSegs);
+	}
+
+	/**
+	 * Returns whether the supplied point is inside the indexed {@code Area}.
+	 *
+	 * @param x coordinate (longitude)
+	 * @param y coordinate (latitude)
+	 * @return {@code true} if the point is inside, {@code false} otherwise
+	 */
+	public boolean contains(double x, double y) {
+		if (!bounds.contains(x, y)) return false;
+		int r = rowFloor(y);
+		int c = colFloor(x);
+		byte state = cells[r * numCols + c];
+		if (state == BORDER) return crossingsContain(r, x, y);
+		return state == INSIDE;
+	}
+
+	/* number of cells in the index */
+	int getNumCells() {
+		return cells.length;
+	}
+
+	/*
+	 * Even-odd crossing test against the edges of a row. Follows the same
+	 * half-open conventions as java.awt.geom.Curve#crossingsFor(x, y) for
+	 * linear curves.
+	 */
+	private boolean crossingsContain(int row, double x, double y) {
+		int crossings = 0;
+		for (int i : rowEdges[row]) {
+			double y0 = y0s[i];
+			double y1 = y1s[i];
+			if (y < y0 || y >= y1) continue;
+			if (x >= xMaxs[i]) continue;
+			if (x < xMins[i] || x < xForY(i, y)) crossings++;
+		}
+		return (crossings & 1) == 1;
+	}
+
+	/* mirrors java.awt.geom.Order1#XforY(y) */
+	private double xForY(int i, double y) {
+		double x0 = x0s[i];
+		double x1 = x1s[i];
+		double y0 = y0s[i];
+		double y1 = y1s[i];
+		if (x0 == x1 || y <= y0) return x0;
+		if (y >= y1) return x1;
+		return (x0 + (y - y0) * (x1 - x0) / (y1 - y0));
+	}
+
+	private int rowFloor(double y) {
+		int r = (int) Math.floor((y - minY) * yScale);
+		return (r < 0) ? 0 : (r >= numRows) ? numRows - 1 : r;
+	}
+
+	private int colFloor(double x) {
+		int c = (int) Math.floor((x - minX) * xScale);
+		return (c < 0) ? 0 : (c >= numCols) ? numCols - 1 : c;
+	}
+
+}
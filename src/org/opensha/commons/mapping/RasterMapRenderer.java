@@ -0,0 +1,622 @@
+package org.opensha.commons.mapping;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+
+import org.opensha.commons.data.function.XY_DataSet;
+import org.opensha.commons.data.xyz.GeoDataSet;
+import org.opensha.commons.exceptions.GMT_MapException;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.Region;
+import org.opensha.commons.mapping.gmt.GMT_Map;
+import org.opensha.commons.mapping.gmt.GMT_MapGenerator;
+import org.opensha.commons.mapping.gmt.elements.CoastAttributes;
+import org.opensha.commons.mapping.gmt.elements.GMT_CPT_Files;
+import org.opensha.commons.mapping.gmt.elements.PSText;
+import org.opensha.commons.mapping.gmt.elements.PSXYElement;
+import org.opensha.commons.mapping.gmt.elements.PSXYPolygon;
+import org.opensha.commons.mapping.gmt.elements.PSXYSymbol;
+import org.opensha.commons.mapping.gmt.elements.PSXYSymbolSet;
+import org.opensha.commons.util.cpt.CPT;
+import org.opensha.commons.util.cpt.CPTLookupTable;
+
+/**
+ * Renders a {@link GMT_Map} to a raster image in process, as an alternative to {@link GMT_MapGenerator}
+ * for batch map production without external GMT, Ghostscript and ImageMagick processes. Renderers hold no
+ * per-map state, so a single renderer can be used to make many maps concurrently.<br>
+ * <br>
+ * The page layout, Mercator projection, color scale limits, CPT rescaling, gridding of the data (as with
+ * xyz2grd, with unset nodes colored with the CPT NaN color) and masking of non-rectangular regions follow
+ * the GMT script. The gridded data is colorized with a {@link CPTLookupTable} in tiles of rows, in parallel
+ * if a pool is supplied. Polygons, symbols, symbol sets and text are then drawn along with the map frame,
+ * annotations and color bar.<br>
+ * <br>
+ * Coastlines and political boundaries are drawn from the outlines bundled in {@link PoliticalBoundariesData}
+ * (currently California and New Zealand), so coastlines elsewhere and the coast fill color are not drawn.
+ * Topographic shading, GMT smoothing, contours, highways, the km scale and KML files are also not supported,
+ * and are ignored. Interpolated scatter data and custom GRD files are not supported.
+ */
+public class RasterMapRenderer {
+
+	// page layout, matching the GMT script (in inches)
+	private static final double DEFAULT_PLOT_WIDTH = 6.5;
+	private static final double DEFAULT_IMAGE_WIDTH = 6.5;
+	private static final double MAX_PLOT_HEIGHT = 7.625;
+	private static final double PAGE_WIDTH = 8.5;
+	private static final double TOP_MARGIN = 0.5;
+	private static final double BOTTOM_MARGIN = 2d;
+	private static final double TICK_LENGTH = 0.08;
+	private static final double CBAR_OFFSET = 0.35;
+	private static final double CBAR_HEIGHT = 0.3;
+
+	// font sizes, in points
+	private static final int DEFAULT_ANNOTATION_SIZE = 14;
+	private static final int DEFAULT_LABEL_SIZE = 18;
+
+	private static final int TILE_ROWS = 32;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Renderer which rasterizes tiles in parallel on the common pool
+	 */
+	public RasterMapRenderer() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool pool used to rasterize tiles in parallel, or null to use the calling thread only
+	 */
+	public RasterMapRenderer(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Map geometry: plot area location within the image, and projection from geographic to pixel
+	 * coordinates
+	 */
+	static class Projection {
+
+		final double minLat, maxLat, minLon, maxLon;
+		final int dpi;
+		final double plotWidth, plotHeight;
+		final int imageWidth, imageHeight;
+		final int x0, y0, width, height;
+		private final double minMerc, maxMerc;
+
+		Projection(double minLat, double maxLat, double minLon, double maxLon, int dpi) {
+			this.minLat = minLat;
+			this.maxLat = maxLat;
+			this.minLon = minLon;
+			this.maxLon = maxLon;
+			this.dpi = dpi;
+			minMerc = merc(minLat);
+			maxMerc = merc(maxLat);
+			double aspect = (maxMerc - minMerc)/Math.toRadians(maxLon - minLon);
+			double plotWidth = DEFAULT_PLOT_WIDTH;
+			double plotHeight = plotWidth*aspect;
+			if (plotHeight > MAX_PLOT_HEIGHT) {
+				plotHeight = MAX_PLOT_HEIGHT;
+				plotWidth = plotHeight/aspect;
+			}
+			this.plotWidth = plotWidth;
+			this.plotHeight = plotHeight;
+			width = pixels(plotWidth);
+			height = pixels(plotHeight);
+			x0 = pixels(0.5*(PAGE_WIDTH - plotWidth));
+			y0 = pixels(TOP_MARGIN);
+			imageWidth = pixels(PAGE_WIDTH);
+			imageHeight = y0 + height + pixels(BOTTOM_MARGIN);
+		}
+
+		private static double merc(double lat) {
+			return Math.log(Math.tan(0.25*Math.PI + 0.5*Math.toRadians(lat)));
+		}
+
+		int pixels(double inches) {
+			return (int)Math.round(inches*dpi);
+		}
+
+		float points(double points) {
+			return (float)(points*dpi/72d);
+		}
+
+		double x(double lon) {
+			return x0 + width*(lon - minLon)/(maxLon - minLon);
+		}
+
+		double y(double lat) {
+			return y0 + height*(maxMerc - merc(lat))/(maxMerc - minMerc);
+		}
+
+		/**
+		 * @return longitude at the center of the given column of the plot area
+		 */
+		double lon(int column) {
+			return minLon + (column + 0.5)*(maxLon - minLon)/width;
+		}
+
+		/**
+		 * @return latitude at the center of the given row of the plot area
+		 */
+		double lat(int row) {
+			double merc = maxMerc - (row + 0.5)*(maxMerc - minMerc)/height;
+			return Math.toDegrees(Math.atan(Math.sinh(merc)));
+		}
+	}
+
+	static Projection buildProjection(GMT_Map map) {
+		Region region = map.getRegion();
+		double minLat = region.getMinLat();
+		double minLon = region.getMinLon();
+		double maxLat = region.getMaxLat();
+		double maxLon = region.getMaxLon();
+		double gridSpacing = map.getGriddedDataInc();
+		if (gridSpacing > 0) {
+			// adjust the max lat and lon to be an exact increment, as for GMT
+			maxLat = Math.rint((maxLat-minLat)/gridSpacing)*gridSpacing + minLat;
+			maxLon = Math.rint((maxLon-minLon)/gridSpacing)*gridSpacing + minLon;
+		}
+		return new Projection(minLat, maxLat, minLon, maxLon, map.getDpi());
+	}
+
+	/**
+	 * Renders the map and writes it as a PNG file
+	 * @param map
+	 * @param dir output directory
+	 * @return the PNG file, named with {@link GMT_Map#getPNGFileName()}
+	 * @throws GMT_MapException
+	 * @throws IOException
+	 */
+	public File makeMap(GMT_Map map, File dir) throws GMT_MapException, IOException {
+		String pngFileName = map.getPNGFileName();
+		if (pngFileName == null)
+			pngFileName = GMT_MapGenerator.DEFAULT_PNG_FILE_NAME;
+		File pngFile = new File(dir, pngFileName);
+		ImageIO.write(render(map), "png", pngFile);
+		return pngFile;
+	}
+
+	/**
+	 * Renders the map
+	 * @param map
+	 * @return RGB image of the map
+	 * @throws GMT_MapException if the map uses unsupported features or can't be rendered
+	 */
+	public BufferedImage render(GMT_Map map) throws GMT_MapException {
+		GeoDataSet griddedData = map.getGriddedData();
+		if (griddedData == null && map.getCustomGRDPath() != null)
+			throw new GMT_MapException("Custom GRD files are not supported");
+		if (griddedData != null && map.getInterpSettings() != null)
+			throw new GMT_MapException("Interpolation of scatter data is not supported");
+
+		Projection proj = buildProjection(map);
+
+		// get color scale limits
+		double colorScaleMin = Double.NaN, colorScaleMax = Double.NaN;
+		if (map.isCustomScale()) {
+			colorScaleMin = map.getCustomScaleMin();
+			colorScaleMax = map.getCustomScaleMax();
+			if (colorScaleMin >= colorScaleMax)
+				throw new RuntimeException("Error: Color-Scale Min must be less than the Max");
+		} else if (griddedData != null) {
+			colorScaleMin = griddedData.getMinZ();
+			colorScaleMax = griddedData.getMaxZ();
+			if (colorScaleMin == colorScaleMax)
+				throw new RuntimeException("Can't make the image plot because all Z values in the XYZ dataset have the same value ");
+		}
+		boolean hasScale = !Double.isNaN(colorScaleMin);
+		CPTLookupTable lookup = null;
+		if (hasScale) {
+			CPT cpt = getCPT(map);
+			if (map.isRescaleCPT())
+				cpt = cpt.rescale(colorScaleMin, colorScaleMax);
+			lookup = new CPTLookupTable(cpt);
+		}
+
+		BufferedImage image = new BufferedImage(proj.imageWidth, proj.imageHeight, BufferedImage.TYPE_INT_RGB);
+		Color foreground = map.isBlackBackground() ? Color.WHITE : Color.BLACK;
+		Graphics2D g = image.createGraphics();
+		g.setColor(map.isBlackBackground() ? Color.BLACK : Color.WHITE);
+		g.fillRect(0, 0, proj.imageWidth, proj.imageHeight);
+
+		if (griddedData != null)
+			rasterize(map, proj, lookup, ((DataBufferInt)image.getRaster().getDataBuffer()).getData());
+
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+
+		g.setClip(proj.x0, proj.y0, proj.width, proj.height);
+		drawCoast(g, map.getCoast(), proj);
+		drawPolygons(g, map.getPolys(), proj);
+		drawSymbols(g, map, proj);
+		drawText(g, map.getText(), proj);
+		g.setClip(null);
+
+		int annotationSize = map.getLabelTickSize() != null && map.getLabelTickSize() > 0
+				? map.getLabelTickSize() : DEFAULT_ANNOTATION_SIZE;
+		int labelSize = map.getLabelSize() != null && map.getLabelSize() > 0
+				? map.getLabelSize() : DEFAULT_LABEL_SIZE;
+		drawFrame(g, proj, foreground, annotationSize);
+		if (hasScale && !map.isHideColorbar())
+			drawColorbar(g, map, proj, lookup, colorScaleMin, colorScaleMax, foreground, annotationSize, labelSize);
+		g.dispose();
+
+		if (map.getImageWidth() != DEFAULT_IMAGE_WIDTH) {
+			// the GMT output is also resized to the image width
+			int width = (int)(map.getImageWidth()*proj.dpi);
+			int height = (int)Math.round((double)proj.imageHeight*width/proj.imageWidth);
+			BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D sg = scaled.createGraphics();
+			sg.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+			sg.drawImage(image, 0, 0, width, height, null);
+			sg.dispose();
+			image = scaled;
+		}
+		return image;
+	}
+
+	private static CPT getCPT(GMT_Map map) throws GMT_MapException {
+		if (map.getCpt() != null)
+			return map.getCpt();
+		String cptFile = map.getCptFile();
+		for (GMT_CPT_Files file : GMT_CPT_Files.values()) {
+			if (file.getFileName().equals(cptFile)) {
+				try {
+					return file.instance();
+				} catch (IOException e) {
+					throw new GMT_MapException("Could not load CPT file: "+cptFile, e);
+				}
+			}
+		}
+		throw new GMT_MapException("Unknown CPT file: "+cptFile);
+	}
+
+	/**
+	 * Grids the data at nodes of the map region, as xyz2grd would, with NaN for nodes without data
+	 */
+	static double[] buildGrid(GMT_Map map, Projection proj, int nx, int ny) {
+		double gridSpacing = map.getGriddedDataInc();
+		double[] grid = new double[nx*ny];
+		for (int i=0; i<grid.length; i++)
+			grid[i] = Double.NaN;
+		GeoDataSet data = map.getGriddedData();
+		for (int i=0; i<data.size(); i++) {
+			Location loc = data.getLocation(i);
+			int x = (int)Math.rint((loc.getLongitude() - proj.minLon)/gridSpacing);
+			int y = (int)Math.rint((loc.getLatitude() - proj.minLat)/gridSpacing);
+			if (x >= 0 && x < nx && y >= 0 && y < ny)
+				grid[y*nx + x] = data.get(i);
+		}
+		Region region = map.getRegion();
+		if (map.isMaskIfNotRectangular() && !region.isRectangular()) {
+			for (int y=0; y<ny; y++) {
+				double lat = proj.minLat + y*gridSpacing;
+				for (int x=0; x<nx; x++)
+					if (!region.contains(new Location(lat, proj.minLon + x*gridSpacing)))
+						grid[y*nx + x] = Double.NaN;
+			}
+		}
+		return grid;
+	}
+
+	private void rasterize(GMT_Map map, Projection proj, CPTLookupTable lookup, int[] pixels) {
+		double gridSpacing = map.getGriddedDataInc();
+		int nx = (int)Math.rint((proj.maxLon - proj.minLon)/gridSpacing) + 1;
+		int ny = (int)Math.rint((proj.maxLat - proj.minLat)/gridSpacing) + 1;
+		double[] grid = buildGrid(map, proj, nx, ny);
+
+		// nearest grid node for each column and row of the plot area
+		int[] columnNodes = new int[proj.width];
+		for (int x=0; x<proj.width; x++)
+			columnNodes[x] = nearestNode(proj.lon(x), proj.minLon, gridSpacing, nx);
+		int[] rowOffsets = new int[proj.height];
+		for (int y=0; y<proj.height; y++)
+			rowOffsets[y] = nearestNode(proj.lat(y), proj.minLat, gridSpacing, ny)*nx;
+
+		int numTiles = (proj.height + TILE_ROWS - 1)/TILE_ROWS;
+		run(numTiles, tile -> {
+			int endRow = Math.min(proj.height, (tile+1)*TILE_ROWS);
+			for (int y=tile*TILE_ROWS; y<endRow; y++) {
+				int pixelOffset = (proj.y0 + y)*proj.imageWidth + proj.x0;
+				int rowOffset = rowOffsets[y];
+				for (int x=0; x<proj.width; x++)
+					pixels[pixelOffset + x] = lookup.getARGB(grid[rowOffset + columnNodes[x]]);
+			}
+		});
+	}
+
+	private static int nearestNode(double val, double min, double spacing, int num) {
+		return Math.max(0, Math.min(num-1, (int)Math.rint((val - min)/spacing)));
+	}
+
+	private void run(int num, IntConsumer task) {
+		if (pool == null)
+			IntStream.range(0, num).forEach(task);
+		else
+			pool.submit(() -> IntStream.range(0, num).parallel().forEach(task)).join();
+	}
+
+	private static void drawCoast(Graphics2D g, CoastAttributes coast, Projection proj) throws GMT_MapException {
+		if (coast == null || coast.getLineColor() == null || coast.getLineSize() <= 0)
+			return;
+		List<XY_DataSet> outlines = new ArrayList<>();
+		try {
+			for (XY_DataSet outline : PoliticalBoundariesData.loadCAOutlines())
+				outlines.add(outline);
+			for (XY_DataSet outline : PoliticalBoundariesData.loadNZOutlines())
+				outlines.add(outline);
+		} catch (IOException e) {
+			throw new GMT_MapException("Could not load boundaries", e);
+		}
+		g.setColor(coast.getLineColor());
+		g.setStroke(new BasicStroke(proj.points(coast.getLineSize()), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+		for (XY_DataSet outline : outlines) {
+			if (outline.size() < 2 || outline.getMaxX() < proj.minLon || outline.getMinX() > proj.maxLon
+					|| outline.getMaxY() < proj.minLat || outline.getMinY() > proj.maxLat)
+				continue;
+			Path2D path = new Path2D.Double();
+			for (int i=0; i<outline.size(); i++) {
+				double x = proj.x(outline.getX(i));
+				double y = proj.y(outline.getY(i));
+				if (i == 0)
+					path.moveTo(x, y);
+				else
+					path.lineTo(x, y);
+			}
+			g.draw(path);
+		}
+	}
+
+	private static void drawPolygons(Graphics2D g, List<PSXYPolygon> polys, Projection proj)
+			throws GMT_MapException {
+		if (polys == null)
+			return;
+		for (PSXYPolygon poly : polys) {
+			if (!poly.isValid())
+				throw new GMT_MapException("Polygons must have at least 2 points");
+			Path2D path = new Path2D.Double();
+			List<Point2D> points = poly.getPoints();
+			for (int i=0; i<points.size(); i++) {
+				double x = proj.x(points.get(i).getX());
+				double y = proj.y(points.get(i).getY());
+				if (i == 0)
+					path.moveTo(x, y);
+				else
+					path.lineTo(x, y);
+			}
+			Color fill = poly.size() > 2 ? poly.getFillColor() : null;
+			if (fill != null)
+				path.closePath();
+			drawShape(g, path, fill, poly, proj);
+		}
+	}
+
+	private static void drawShape(Graphics2D g, Shape shape, Color fill, PSXYElement pen, Projection proj) {
+		if (fill != null) {
+			g.setColor(fill);
+			g.fill(shape);
+		}
+		if (pen.getPenColor() != null && pen.getPenWidth() > 0) {
+			g.setColor(pen.getPenColor());
+			g.setStroke(new BasicStroke(proj.points(pen.getPenWidth()), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+			g.draw(shape);
+		}
+	}
+
+	private static void drawSymbols(Graphics2D g, GMT_Map map, Projection proj) {
+		if (map.getSymbols() != null)
+			for (PSXYSymbol symbol : map.getSymbols())
+				drawShape(g, buildSymbol(symbol, proj), symbol.getFillColor(), symbol, proj);
+		PSXYSymbolSet symbolSet = map.getSymbolSet();
+		if (symbolSet != null) {
+			List<PSXYSymbol> symbols = symbolSet.getSymbols();
+			List<Double> vals = symbolSet.getVals();
+			for (int i=0; i<symbols.size(); i++) {
+				Color fill = symbolSet.getCpt().getColor(vals.get(i).floatValue());
+				drawShape(g, buildSymbol(symbols.get(i), proj), fill, symbolSet, proj);
+			}
+		}
+	}
+
+	/**
+	 * Symbol shape, with the size of the symbol as the diameter of its circumscribed circle, as with GMT
+	 */
+	static Shape buildSymbol(PSXYSymbol symbol, Projection proj) {
+		double x = proj.x(symbol.getPoint().getX());
+		double y = proj.y(symbol.getPoint().getY());
+		double size = symbol.getWidth()*proj.dpi;
+		double r = 0.5*size;
+		switch (symbol.getSymbol()) {
+		case SQUARE:
+			return new Rectangle2D.Double(x - r, y - r, size, size);
+		case CIRCLE:
+			return new Ellipse2D.Double(x - r, y - r, size, size);
+		case DIAMOND:
+			return regularPolygon(x, y, r, 4, 0d);
+		case PENTAGON:
+			return regularPolygon(x, y, r, 5, 0d);
+		case HEXAGON:
+			return regularPolygon(x, y, r, 6, Math.PI/6);
+		case OCTAGON:
+			return regularPolygon(x, y, r, 8, Math.PI/8);
+		case INVERTED_TRIANGLE:
+			return regularPolygon(x, y, r, 3, Math.PI);
+		case STAR:
+			Path2D star = new Path2D.Double();
+			for (int i=0; i<10; i++) {
+				double radius = i % 2 == 0 ? r : 0.382*r;
+				double angle = i*Math.PI/5;
+				if (i == 0)
+					star.moveTo(x, y - radius);
+				else
+					star.lineTo(x + radius*Math.sin(angle), y - radius*Math.cos(angle));
+			}
+			star.closePath();
+			return star;
+		case CROSS:
+			Path2D cross = new Path2D.Double();
+			cross.append(new Line2D.Double(x - r, y - r, x + r, y + r), false);
+			cross.append(new Line2D.Double(x - r, y + r, x + r, y - r), false);
+			return cross;
+		case Y_DASH:
+			return new Line2D.Double(x, y - r, x, y + r);
+		default:
+			throw new IllegalStateException("Unknown symbol: "+symbol.getSymbol());
+		}
+	}
+
+	/**
+	 * Regular polygon with a vertex at the top, rotated clockwise by the given angle
+	 */
+	private static Path2D regularPolygon(double x, double y, double r, int numSides, double rotation) {
+		Path2D path = new Path2D.Double();
+		for (int i=0; i<numSides; i++) {
+			double angle = rotation + 2*Math.PI*i/numSides;
+			double px = x + r*Math.sin(angle);
+			double py = y - r*Math.cos(angle);
+			if (i == 0)
+				path.moveTo(px, py);
+			else
+				path.lineTo(px, py);
+		}
+		path.closePath();
+		return path;
+	}
+
+	private static void drawText(Graphics2D g, List<PSText> texts, Projection proj) {
+		if (texts == null)
+			return;
+		for (PSText text : texts) {
+			g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, Math.round(proj.points(text.getFontSize()))));
+			g.setColor(text.getColor());
+			FontMetrics fm = g.getFontMetrics();
+			float x = (float)proj.x(text.getPoint().getX());
+			float y = (float)proj.y(text.getPoint().getY());
+			float width = fm.stringWidth(text.getText());
+			float ascent = fm.getAscent();
+			switch (text.getJustify()) {
+			case LEFT_TOP:
+				y += ascent;
+				break;
+			case LEFT:
+				y += 0.5f*ascent;
+				break;
+			case LEFT_BOTTOM:
+				break;
+			case RIGHT_TOP:
+				x -= width;
+				y += ascent;
+				break;
+			case RIGHT:
+				x -= width;
+				y += 0.5f*ascent;
+				break;
+			case RIGHT_BOTTOM:
+				x -= width;
+				break;
+			default:
+				x -= 0.5f*width;
+				y += 0.5f*ascent;
+				break;
+			}
+			g.drawString(text.getText(), x, y);
+		}
+	}
+
+	/**
+	 * Draws the map frame, with annotations on the west and north sides
+	 */
+	private static void drawFrame(Graphics2D g, Projection proj, Color foreground, int annotationSize) {
+		g.setColor(foreground);
+		g.setStroke(new BasicStroke(proj.points(1)));
+		g.drawRect(proj.x0, proj.y0, proj.width, proj.height);
+
+		double tick = GMT_MapGenerator.getNiceMapTickInterval(proj.minLat, proj.maxLat, proj.minLon, proj.maxLon);
+		DecimalFormat df = new DecimalFormat("0.###");
+		g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, Math.round(proj.points(annotationSize))));
+		FontMetrics fm = g.getFontMetrics();
+		int tickLength = proj.pixels(TICK_LENGTH);
+		for (double lon=Math.ceil(proj.minLon/tick)*tick; lon<=proj.maxLon; lon+=tick) {
+			float x = (float)proj.x(lon);
+			g.draw(new Line2D.Float(x, proj.y0, x, proj.y0 - tickLength));
+			String label = df.format(lon);
+			g.drawString(label, x - 0.5f*fm.stringWidth(label), proj.y0 - tickLength - fm.getDescent());
+		}
+		for (double lat=Math.ceil(proj.minLat/tick)*tick; lat<=proj.maxLat; lat+=tick) {
+			float y = (float)proj.y(lat);
+			g.draw(new Line2D.Float(proj.x0, y, proj.x0 - tickLength, y));
+			String label = df.format(lat);
+			g.drawString(label, proj.x0 - 2*tickLength - fm.stringWidth(label), y + 0.35f*fm.getAscent());
+		}
+	}
+
+	private static void drawColorbar(Graphics2D g, GMT_Map map, Projection proj, CPTLookupTable lookup,
+			double min, double max, Color foreground, int annotationSize, int labelSize) {
+		int width = proj.pixels(Math.max(1d, proj.plotWidth - 0.5));
+		int height = proj.pixels(CBAR_HEIGHT);
+		int x0 = proj.x0 + (proj.width - width)/2;
+		int y0 = proj.y0 + proj.height + proj.pixels(CBAR_OFFSET);
+		for (int x=0; x<width; x++) {
+			g.setColor(new Color(lookup.getARGB(min + (x + 0.5)*(max - min)/width)));
+			g.fillRect(x0 + x, y0, 1, height);
+		}
+		g.setColor(foreground);
+		g.setStroke(new BasicStroke(proj.points(1)));
+		g.drawRect(x0, y0, width, height);
+
+		// tick interval as for the GMT color scale
+		double tickInc;
+		if (map.getCPTCustomInterval() == null)
+			tickInc = Float.parseFloat(new DecimalFormat("0.E0").format((max-min)/4.0));
+		else
+			tickInc = map.getCPTCustomInterval();
+		g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, Math.round(proj.points(annotationSize))));
+		FontMetrics fm = g.getFontMetrics();
+		int tickLength = proj.pixels(TICK_LENGTH);
+		int labelY = y0 + height + tickLength + fm.getAscent();
+		if (tickInc > 0) {
+			DecimalFormat df = new DecimalFormat("0.####");
+			for (double val=Math.ceil(min/tickInc)*tickInc; val<=max + 1e-10*(max-min); val+=tickInc) {
+				float x = (float)(x0 + width*(val - min)/(max - min));
+				g.draw(new Line2D.Float(x, y0 + height, x, y0 + height + tickLength));
+				String label = df.format(Math.abs(val) < 1e-10*(max-min) ? 0d : val);
+				g.drawString(label, x - 0.5f*fm.stringWidth(label), labelY);
+			}
+		}
+
+		String label = map.getCustomLabel();
+		if (label != null) {
+			if (map.isLogPlot())
+				label = "Log10("+label+")";
+			labelY += fm.getDescent();
+			g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, Math.round(proj.points(labelSize))));
+			fm = g.getFontMetrics();
+			g.drawString(label, x0 + 0.5f*(width - fm.stringWidth(label)), labelY + fm.getAscent());
+		}
+	}
+
+}
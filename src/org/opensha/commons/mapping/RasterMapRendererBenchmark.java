@@ -0,0 +1,144 @@
+package org.opensha.commons.mapping;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.opensha.commons.data.xyz.GriddedGeoDataSet;
+import org.opensha.commons.geo.GriddedRegion;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.Region;
+import org.opensha.commons.mapping.gmt.GMT_Map;
+import org.opensha.commons.mapping.gmt.GMT_MapGenerator;
+import org.opensha.commons.mapping.gmt.elements.GMT_CPT_Files;
+import org.opensha.commons.mapping.gmt.elements.PSText;
+import org.opensha.commons.mapping.gmt.elements.PSXYPolygon;
+import org.opensha.commons.mapping.gmt.elements.PSXYSymbol;
+import org.opensha.commons.util.FileUtils;
+import org.opensha.commons.util.RunScript;
+import org.opensha.commons.util.cpt.CPT;
+
+/**
+ * Times batch production of synthetic California hazard maps with {@link RasterMapRenderer}: one map at
+ * a time with tiles rasterized on the calling thread and in parallel, and many maps concurrently. If GMT
+ * is installed, a few maps are also made with the {@link GMT_MapGenerator} script for comparison. Maps
+ * are written to the given directory, or a temporary directory that is deleted afterwards.
+ * <br><br>
+ * Usage: RasterMapRendererBenchmark [numMaps] [gridSpacing] [dpi] [outputDir]
+ */
+public class RasterMapRendererBenchmark {
+
+	private static final String GMT_EXECUTABLE = "/usr/bin/gmt";
+
+	private static GMT_Map buildMap(GriddedRegion gridded, int index, CPT cpt, int dpi) {
+		GriddedGeoDataSet data = new GriddedGeoDataSet(gridded, false);
+		double srcLat = 34 + 0.1*(index % 20);
+		double srcLon = -118 - 0.1*(index % 30);
+		for (int i=0; i<data.size(); i++) {
+			Location loc = data.getLocation(i);
+			double dLat = loc.getLatitude() - srcLat;
+			double dLon = loc.getLongitude() - srcLon;
+			double dist = Math.sqrt(dLat*dLat + dLon*dLon);
+			data.set(i, 0.05 + 1.5*Math.exp(-dist)
+					+ 0.1*(1 + Math.sin(3*loc.getLatitude())*Math.cos(2*loc.getLongitude())));
+		}
+		// as with GMT_MapGenerator, log plots expect log10 data
+		data.log10();
+		GMT_Map map = new GMT_Map(gridded, data, gridded.getSpacing(), cpt);
+		map.setDpi(dpi);
+		map.setUseGMTSmoothing(false);
+		map.setTopoResolution(null);
+		map.setLogPlot(true);
+		map.setCustomLabel("PGA (g)");
+		map.addSymbol(new PSXYSymbol(new Point2D.Double(srcLon, srcLat), PSXYSymbol.Symbol.STAR,
+				0.2, 1d, Color.BLACK, Color.WHITE));
+		map.addPolys(new PSXYPolygon(new Location(srcLat - 0.5, srcLon - 0.5), new Location(srcLat + 0.5, srcLon + 0.5)));
+		map.addText(new PSText(new Point2D.Double(srcLon, srcLat + 0.3), Color.BLACK, 12, "Map "+index,
+				PSText.Justify.CENTER));
+		map.setPNGFileName("map_"+index+".png");
+		return map;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int numMaps = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+		double gridSpacing = args.length > 1 ? Double.parseDouble(args[1]) : 0.02;
+		int dpi = args.length > 2 ? Integer.parseInt(args[2]) : 150;
+		boolean tempDir = args.length < 4;
+		File outputDir = tempDir ? FileUtils.createTempDir() : new File(args[3]);
+		outputDir.mkdirs();
+
+		GriddedRegion gridded = new GriddedRegion(new Region(new Location(32, -125), new Location(42.5, -114)),
+				gridSpacing, GriddedRegion.ANCHOR_0_0);
+		CPT cpt = GMT_CPT_Files.MAX_SPECTRUM.instance();
+		List<GMT_Map> maps = new ArrayList<>();
+		for (int i=0; i<numMaps; i++)
+			maps.add(buildMap(gridded, i, cpt, dpi));
+		int threads = Runtime.getRuntime().availableProcessors();
+		System.out.println("Threads: "+threads+", maps: "+numMaps+", nodes/map: "+gridded.getNodeCount()+", dpi: "+dpi);
+		System.out.println("method\tmaps\tsecs\tmsPerMap");
+
+		// warm up
+		new RasterMapRenderer(null).makeMap(maps.get(0), outputDir);
+
+		RasterMapRenderer serial = new RasterMapRenderer(null);
+		long start = System.nanoTime();
+		for (GMT_Map map : maps)
+			serial.makeMap(map, outputDir);
+		print("serial", numMaps, start);
+
+		RasterMapRenderer tiled = new RasterMapRenderer();
+		start = System.nanoTime();
+		for (GMT_Map map : maps)
+			tiled.makeMap(map, outputDir);
+		print("parallelTiles", numMaps, start);
+
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		start = System.nanoTime();
+		List<Future<File>> futures = new ArrayList<>();
+		for (GMT_Map map : maps)
+			futures.add(exec.submit(() -> serial.makeMap(map, outputDir)));
+		for (Future<File> future : futures)
+			future.get();
+		print("concurrentMaps", numMaps, start);
+		exec.shutdown();
+
+		if (new File(GMT_EXECUTABLE).exists()) {
+			GMT_MapGenerator gmt = new GMT_MapGenerator();
+			int numGMT = Math.min(numMaps, 5);
+			start = System.nanoTime();
+			for (int i=0; i<numGMT; i++) {
+				File mapDir = new File(outputDir, "gmt_"+i);
+				mapDir.mkdir();
+				File script = new File(mapDir, "gmt_script.txt");
+				writeScript(gmt.getGMT_ScriptLines(maps.get(i), mapDir.getAbsolutePath()), script);
+				RunScript.runScript(new String[] {"sh", "-c", "sh "+script.getAbsolutePath()});
+			}
+			print("gmt", numGMT, start);
+		} else {
+			System.out.println("GMT not found at "+GMT_EXECUTABLE+", skipping GMT comparison");
+		}
+
+		if (tempDir)
+			FileUtils.deleteRecursive(outputDir);
+	}
+
+	private static void writeScript(List<String> lines, File file) throws IOException {
+		FileWriter fw = new FileWriter(file);
+		for (String line : lines)
+			fw.write(line+"\n");
+		fw.close();
+	}
+
+	private static void print(String method, int numMaps, long start) {
+		double secs = (System.nanoTime() - start)/1e9;
+		System.out.println(method+"\t"+numMaps+"\t"+(float)secs+"\t"+(float)(1000d*secs/numMaps));
+	}
+
+}
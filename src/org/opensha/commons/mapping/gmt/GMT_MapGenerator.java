@@ -884,7 +884,7 @@ public class GMT_MapGenerator implements SecureMapGenerator, Serializable {
 	}
 
 	// this computes a nice map tick intervale
-	private double getNiceMapTickInterval(double minLat,double maxLat,double minLon,double maxLon) {
+	public static double getNiceMapTickInterval(double minLat,double maxLat,double minLon,double maxLon) {
 
 		double diff, niceTick=Double.NaN;
 
@@ -46,6 +46,18 @@ public class PSText implements Serializable {
 		return text;
 	}
 	
+	public Color getColor() {
+		return color;
+	}
+	
+	public int getFontSize() {
+		return fontSize;
+	}
+	
+	public Justify getJustify() {
+		return justify;
+	}
+	
 	public String getFontArg() {
 		return "-F+f"+fontSize+"p,Helvetica-Bold,"+GMT_MapGenerator.getGMTColorString(color)+justify.str;
 	}
@@ -3,14 +3,22 @@ package org.opensha.commons.util;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import org.opensha.commons.data.xyz.ArbDiscrXYZ_DataSet;
 import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
 import org.opensha.commons.geo.Region;
 
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
 import ucar.ma2.Array;
-import ucar.ma2.Index;
 import ucar.ma2.InvalidRangeException;
 import ucar.nc2.Dimension;
 import ucar.nc2.NetcdfFile;
@@ -21,13 +29,26 @@ import ucar.nc2.Variable;
  * 
  * X and Y values are pre-loaded, and Z values can either be cached (faster when there is ample memory
  * for the file and either a large chunk of the file will be used, or lots of random access) or loaded
- * on demand.
+ * on demand. On demand values are read in square tiles which are kept in a bounded LRU cache, so that
+ * memory use is limited for very large grids while nearby lookups are served from memory. Bulk lookups
+ * through {@link #getInterpolatedZ(LocationList)} are grouped by tile.
+ * <br><br>
+ * Z value access is thread safe in either mode.
  * 
  * @author kevin
  *
  */
 public class GMT_GrdFile {
 	
+	/**
+	 * Default tile width and height (in grid points) for on demand loading
+	 */
+	public static final int DEFAULT_TILE_SIZE = 256;
+	/**
+	 * Default maximum number of tiles kept in memory for on demand loading
+	 */
+	public static final int DEFAULT_MAX_TILES = 64;
+	
 	private NetcdfFile file;
 	
 	private int xDim, yDim;
@@ -35,11 +56,15 @@ public class GMT_GrdFile {
 	private Array xData;
 	private Array yData;
 	
-	private Array zData = null;
-	private Index zInd = null;
+	private volatile Array zData = null;
 	private Variable zVar;
+	// Z variable shape, as (y,x)
+	private int zRows, zCols;
 	
-	private static int singleShape[] = {1, 1};
+	// on demand tile cache
+	private int tileSize;
+	private int numTileCols;
+	private LoadingCache<Integer, double[]> tileCache;
 	
 	private Region region = null;
 	
@@ -75,7 +100,38 @@ public class GMT_GrdFile {
 		this(NetcdfFile.openInMemory(uri), true);
 	}
 	
+	/**
+	 * Load the given GRD file with Z values loaded on demand in tiles of the given size, keeping
+	 * at most maxTiles tiles in memory
+	 * 
+	 * @param fileName
+	 * @param tileSize tile width and height in grid points
+	 * @param maxTiles maximum number of tiles to cache
+	 * @throws IOException
+	 */
+	public GMT_GrdFile(String fileName, int tileSize, int maxTiles) throws IOException {
+		this(NetcdfFile.open(fileName), tileSize, maxTiles);
+	}
+	
 	public GMT_GrdFile(NetcdfFile file, boolean cacheZ) throws IOException {
+		this(file, DEFAULT_TILE_SIZE, DEFAULT_MAX_TILES);
+		if (cacheZ) {
+			cacheZData();
+		}
+	}
+	
+	/**
+	 * Load the given GRD file with Z values loaded on demand in tiles of the given size, keeping
+	 * at most maxTiles tiles in memory
+	 * 
+	 * @param file
+	 * @param tileSize tile width and height in grid points
+	 * @param maxTiles maximum number of tiles to cache
+	 * @throws IOException
+	 */
+	public GMT_GrdFile(NetcdfFile file, int tileSize, int maxTiles) throws IOException {
+		Preconditions.checkArgument(tileSize > 0, "tile size must be positive");
+		Preconditions.checkArgument(maxTiles > 0, "must cache at least one tile");
 		this.file = file;
 		List<Dimension> dims = file.getDimensions();
 		xDim = dims.get(0).getLength();
@@ -91,9 +147,43 @@ public class GMT_GrdFile {
 		ySpacing = calcSpacing(yData);
 		
 		zVar = vars.get(2);
-		if (cacheZ) {
-			cacheZData();
+		int[] shape = zVar.getShape();
+		zRows = shape[0];
+		zCols = shape[1];
+		
+		this.tileSize = tileSize;
+		numTileCols = (zCols + tileSize - 1) / tileSize;
+		tileCache = CacheBuilder.newBuilder().maximumSize(maxTiles).recordStats().build(
+				new CacheLoader<Integer, double[]>() {
+
+			@Override
+			public double[] load(Integer tile) throws Exception {
+				return readTile(tile);
+			}
+		});
+	}
+	
+	/*
+	 * Reads a tile of Z values. Tiles are stored in row major order with a row length of tileSize,
+	 * and are smaller along the upper grid edges.
+	 */
+	private double[] readTile(int tile) throws IOException, InvalidRangeException {
+		int y0 = (tile / numTileCols) * tileSize;
+		int x0 = (tile % numTileCols) * tileSize;
+		int rows = Math.min(tileSize, zRows - y0);
+		int cols = Math.min(tileSize, zCols - x0);
+		int[] origin = {y0, x0};
+		int[] shape = {rows, cols};
+		Array data;
+		// NetCDF files are not safe for concurrent reads
+		synchronized (zVar) {
+			data = zVar.read(origin, shape);
 		}
+		double[] values = new double[rows*tileSize];
+		for (int r=0; r<rows; r++)
+			for (int c=0; c<cols; c++)
+				values[r*tileSize + c] = data.getDouble(r*cols + c);
+		return values;
 	}
 	
 	private double calcSpacing(Array data) {
@@ -359,6 +449,36 @@ public class GMT_GrdFile {
 		return interp;
 	}
 
+	/**
+	 * Bilinear interpolation as in {@link #getInterpolatedZ(Location)} for each of the given locations.
+	 * Lookups are made in tile order, so when values are loaded on demand each tile is usually read only
+	 * once, regardless of the order of the locations.
+	 * 
+	 * @param locs
+	 * @return interpolated values in the order of the given locations
+	 * @throws IOException
+	 * @throws InvalidRangeException
+	 */
+	public double[] getInterpolatedZ(LocationList locs) throws IOException, InvalidRangeException {
+		int num = locs.size();
+		// sort keys of tile index in the upper bits, location index in the lower
+		long[] keys = new long[num];
+		for (int i=0; i<num; i++) {
+			double ind[] = getFloatIndexes(locs.get(i));
+			long y0 = Math.max(0, Math.min(zRows-1, (int)ind[0]));
+			long x0 = Math.max(0, Math.min(zCols-1, (int)ind[1]));
+			long tile = (y0 / tileSize)*numTileCols + x0 / tileSize;
+			keys[i] = tile << 32 | i;
+		}
+		Arrays.sort(keys);
+		double[] values = new double[num];
+		for (long key : keys) {
+			int i = (int)key;
+			values[i] = getInterpolatedZ(locs.get(i));
+		}
+		return values;
+	}
+
 	private static float interpolate(float s00, float s01,
 			float s10, float s11,
 			float xfrac, float yfrac) {
@@ -429,24 +549,53 @@ public class GMT_GrdFile {
 	 * @throws InvalidRangeException
 	 */
 	public double getZ(int pt[]) throws IOException, InvalidRangeException {
-		if (zData != null) {
-			zInd.set(pt);
-			return zData.getDouble(zInd);
-		} else {
-			Array data = zVar.read(pt, singleShape).reduce();
-			return data.getDouble(0);
+		int y = pt[0];
+		int x = pt[1];
+		if (y < 0 || y >= zRows || x < 0 || x >= zCols)
+			throw new InvalidRangeException("Point ("+y+","+x+") is outside of the "+zRows+"x"+zCols+" grid");
+		Array zData = this.zData;
+		if (zData != null)
+			return zData.getDouble(y*zCols + x);
+		int tile = (y / tileSize)*numTileCols + x / tileSize;
+		return getTile(tile)[(y % tileSize)*tileSize + x % tileSize];
+	}
+	
+	private double[] getTile(int tile) throws IOException, InvalidRangeException {
+		try {
+			return tileCache.get(tile);
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			if (cause instanceof InvalidRangeException)
+				throw (InvalidRangeException)cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw new IOException(cause);
 		}
 	}
 	
+	/**
+	 * @return the number of tiles read from the file since this GRD file was opened
+	 */
+	public long getNumTilesRead() {
+		return tileCache.stats().loadCount();
+	}
+	
 	/**
 	 * Load the entire Z data into memory if it hasn't already been loaded
 	 * 
 	 * @throws IOException
 	 */
-	public void cacheZData() throws IOException {
+	public synchronized void cacheZData() throws IOException {
 		if (zData == null) {
-			zData = zVar.read();
-			zInd = zData.getIndex();
+			Array data;
+			synchronized (zVar) {
+				data = zVar.read();
+			}
+			zData = data;
+			// tiles are no longer needed
+			tileCache.invalidateAll();
 		}
 	}
 	
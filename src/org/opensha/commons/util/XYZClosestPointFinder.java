@@ -26,19 +26,33 @@ import org.opensha.commons.data.xyz.ArbDiscrGeoDataSet;
 import org.opensha.commons.data.xyz.GeoDataSet;
 import org.opensha.commons.data.xyz.GriddedGeoDataSet;
 import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationKDTree;
 import org.opensha.commons.geo.LocationUtils;
 
 /**
  * This class takes the path to a Generic Mapping Tools style XYZ file and loads in all of the
  * locations and values. It then allows one to find the value from the file that is closest to
  * a given location.
+ * <br><br>
+ * Datasets with at least {@link #KD_TREE_THRESHOLD} points are searched with a {@link LocationKDTree},
+ * which is built on the first search and rebuilt if the number of points in the dataset changes. In that
+ * case the closest point is determined by great circle distance, otherwise it is determined with
+ * {@link LocationUtils#horzDistanceFast(Location, Location)}.
  * 
  * @author kevin
  *
  */
 public class XYZClosestPointFinder {
+	
+	/**
+	 * Minimum dataset size for which a {@link LocationKDTree} is used to find the closest point
+	 */
+	public static final int KD_TREE_THRESHOLD = 1000;
+	
 	private GeoDataSet dataset;
 	
+	private LocationKDTree tree;
+	
 	public XYZClosestPointFinder(GeoDataSet dataset){
 		this.dataset = dataset;
 	}
@@ -95,14 +109,20 @@ public class XYZClosestPointFinder {
 		double closest = Double.MAX_VALUE;
 		Location closestLoc = null;
 		
-		for (int i=0; i<dataset.size(); i++) {
-			Location pt2 = dataset.getLocation(i);
-//			double val = dataset.get(i);
-//			double dist = Math.pow(val[0] - lat, 2) + Math.pow(val[1] - lon, 2);
-			double dist = LocationUtils.horzDistanceFast(pt1, pt2);
-			if (dist < closest) {
-				closest = dist;
-				closestLoc = pt2;
+		if (dataset.size() >= KD_TREE_THRESHOLD) {
+			int index = getTree().nearest(pt1);
+			closestLoc = dataset.getLocation(index);
+			closest = LocationUtils.horzDistanceFast(pt1, closestLoc);
+		} else {
+			for (int i=0; i<dataset.size(); i++) {
+				Location pt2 = dataset.getLocation(i);
+//				double val = dataset.get(i);
+//				double dist = Math.pow(val[0] - lat, 2) + Math.pow(val[1] - lon, 2);
+				double dist = LocationUtils.horzDistanceFast(pt1, pt2);
+				if (dist < closest) {
+					closest = dist;
+					closestLoc = pt2;
+				}
 			}
 		}
 		
@@ -112,6 +132,12 @@ public class XYZClosestPointFinder {
 			return null;
 	}
 	
+	private synchronized LocationKDTree getTree() {
+		if (tree == null || tree.size() != dataset.size())
+			tree = new LocationKDTree(dataset.getLocationList());
+		return tree;
+	}
+	
 	/**
 	 * Returns the value at the closest location in the XYZ file within a given tolerance.
 	 * 
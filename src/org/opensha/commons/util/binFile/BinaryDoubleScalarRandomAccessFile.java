@@ -1,11 +1,7 @@
 package org.opensha.commons.util.binFile;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteOrder;
 import java.nio.DoubleBuffer;
 import java.nio.IntBuffer;
@@ -15,6 +11,9 @@ import com.google.common.base.Preconditions;
 /**
  * Class to write to/read from a binary file which contains an array of double values. Values can be written in random
  * order. Must initialize on one thread/process before use.
+ * <br><br>
+ * In memory mapped mode (see {@link BinaryRandomAccessFile}), writes and <code>isCalculated</code> checks
+ * are lock free.
  * @author kevin
  *
  */
@@ -28,7 +27,11 @@ public class BinaryDoubleScalarRandomAccessFile extends BinaryRandomAccessFile {
 	}
 	
 	public BinaryDoubleScalarRandomAccessFile(File file, ByteOrder byteOrder, int numVals) {
-		super(file, byteOrder, numVals);
+		this(file, byteOrder, numVals, false);
+	}
+	
+	public BinaryDoubleScalarRandomAccessFile(File file, ByteOrder byteOrder, int numVals, boolean memoryMapped) {
+		super(file, byteOrder, numVals, memoryMapped);
 		
 		singleDoubleBuffer = getDoubleBuffer(1);
 	}
@@ -37,9 +40,50 @@ public class BinaryDoubleScalarRandomAccessFile extends BinaryRandomAccessFile {
 		this.placeholder = placeholder;
 	}
 	
-	public synchronized void write(int index, double val) throws IOException {
-		singleDoubleBuffer.buffer.put(0, val);
-		writeRecord(index, cloneBytes(singleDoubleBuffer.getBytes()));
+	public void write(int index, double val) throws IOException {
+		if (isMemoryMapped()) {
+			putDouble(index, 0, val);
+			return;
+		}
+		synchronized (this) {
+			singleDoubleBuffer.buffer.put(0, val);
+			writeRecord(index, cloneBytes(singleDoubleBuffer.getBytes()));
+		}
+	}
+	
+	/**
+	 * Writes multiple values at once
+	 * @param indexes
+	 * @param vals
+	 * @throws IOException
+	 */
+	public void write(int[] indexes, double[] vals) throws IOException {
+		Preconditions.checkArgument(indexes.length == vals.length, "Index and value arrays must be the same size");
+		if (isMemoryMapped()) {
+			for (int i=0; i<indexes.length; i++)
+				putDouble(indexes[i], 0, vals[i]);
+			return;
+		}
+		synchronized (this) {
+			for (int i=0; i<indexes.length; i++)
+				write(indexes[i], vals[i]);
+		}
+	}
+	
+	/**
+	 * @param index
+	 * @return the value at the given index, or the placeholder if not yet calculated
+	 * @throws IOException
+	 */
+	public double read(int index) throws IOException {
+		if (isMemoryMapped())
+			return getDouble(index, 0);
+		synchronized (this) {
+			byte[] record = readRecord(index);
+			for (int i=0; i<record.length; i++)
+				singleDoubleBuffer.getBytes()[i] = record[i];
+			return singleDoubleBuffer.getBuffer().get(0);
+		}
 	}
 
 	@Override
@@ -65,40 +109,33 @@ public class BinaryDoubleScalarRandomAccessFile extends BinaryRandomAccessFile {
 		return cloneBytes(singleDoubleBuffer.bytes);
 	}
 	
-	public synchronized boolean isCalculated(int index) throws IOException {
-		byte[] record = readRecord(index);
-		for (int i=0; i<record.length; i++)
-			singleDoubleBuffer.getBytes()[i] = record[i];
-		double val = singleDoubleBuffer.getBuffer().get(0);
+	public boolean isCalculated(int index) throws IOException {
+		double val = read(index);
 		if (Double.isNaN(placeholder))
 			return !Double.isNaN(val);
 		return val != placeholder;
 	}
 	
 	public static double[] readFile(File file) throws IOException {
-		long length = file.length();
-
-		Preconditions.checkState(length > 0, "file is empty!");
-		Preconditions.checkState((length-4) % 8 == 0, "file size after header isn't evenly divisible by 8, " +
-		"thus not a sequence of double values.");
-		
-		InputStream is = new FileInputStream(file);
-
-		Preconditions.checkNotNull(is, "InputStream cannot be null!");
-		if (!(is instanceof BufferedInputStream))
-			is = new BufferedInputStream(is);
-		DataInputStream in = new DataInputStream(is);
-
-		int size = in.readInt();
-
-		double[] array = new double[size];
-
-		for (int i=0; i<size; i++)
-			array[i] = in.readDouble();
-
-		in.close();
-
+		return readFile(file, ByteOrder.BIG_ENDIAN);
+	}
+	
+	public static double[] readFile(File file, ByteOrder byteOrder) throws IOException {
+		DoubleBuffer buff = mapFile(file, byteOrder);
+		double[] array = new double[buff.remaining()];
+		buff.get(array);
 		return array;
 	}
+	
+	/**
+	 * Memory maps the given file, returning a read only view of the values without copying them
+	 * @param file
+	 * @param byteOrder
+	 * @return read only buffer of values
+	 * @throws IOException
+	 */
+	public static DoubleBuffer mapFile(File file, ByteOrder byteOrder) throws IOException {
+		return mapDoubles(file, byteOrder, 1);
+	}
 
 }
@@ -1,6 +1,5 @@
 package org.opensha.commons.util.binFile;
 
-import java.awt.geom.Point2D;
 import java.io.BufferedOutputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
@@ -8,9 +7,9 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
 
 import org.opensha.commons.data.xyz.ArbDiscrGeoDataSet;
-import org.opensha.commons.data.xyz.ArbDiscrXYZ_DataSet;
 import org.opensha.commons.data.xyz.GeoDataSet;
 import org.opensha.commons.geo.Location;
 
@@ -22,18 +21,23 @@ public class BinaryGeoDatasetRandomAccessFile extends BinaryXYZRandomAccessFile
 		super(file, byteOrder, numRecords);
 	}
 	
+	public BinaryGeoDatasetRandomAccessFile(File file, ByteOrder byteOrder, int numRecords, boolean memoryMapped) {
+		super(file, byteOrder, numRecords, memoryMapped);
+	}
+	
 	public void write(int index, Location loc, double val) throws IOException {
 		write(index, loc.getLongitude(), loc.getLatitude(), val);
 	}
 	
 	public static ArbDiscrGeoDataSet loadGeoDataset(File file) throws IOException {
-		ArbDiscrXYZ_DataSet xyz = loadXYZ(file);
+		return loadGeoDataset(file, ByteOrder.BIG_ENDIAN);
+	}
+	
+	public static ArbDiscrGeoDataSet loadGeoDataset(File file, ByteOrder byteOrder) throws IOException {
+		DoubleBuffer buff = mapXYZ(file, byteOrder);
 		ArbDiscrGeoDataSet geo = new ArbDiscrGeoDataSet(false);
-		for (int i=0; i<xyz.size(); i++) {
-			Point2D pt = xyz.getPoint(i);
-			double val = xyz.get(i);
-			geo.set(new Location(pt.getY(), pt.getX()), val);
-		}
+		for (int i=0; i<buff.limit(); i+=3)
+			geo.set(new Location(buff.get(i+1), buff.get(i)), buff.get(i+2));
 		return geo;
 	}
 	
@@ -10,12 +10,31 @@ import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 
+/**
+ * Base class for binary files of fixed length records which can be written in random order by multiple
+ * threads/processes.
+ * <br><br>
+ * By default the file is accessed through a {@link RandomAccessFile} in "rws" mode, so each write is
+ * synchronized and flushed to disk before returning. In memory mapped mode, the file is instead mapped
+ * with a {@link MappedByteBuffer}: writes are positional puts into the mapping which don't block each other
+ * (records must not be written concurrently by multiple threads), and are flushed to disk by the operating
+ * system or explicitly with {@link #force()}. Records are always initialized to a placeholder value, and the
+ * placeholder check in <code>isCalculated(index)</code> can be used to resume a partially completed
+ * calculation in either mode, but in memory mapped mode only records written before the last {@link #force()}
+ * (or {@link #close()}) are guaranteed to survive a system crash.
+ * @author kevin
+ *
+ */
 public abstract class BinaryRandomAccessFile {
 
 	private File file;
@@ -23,16 +42,38 @@ public abstract class BinaryRandomAccessFile {
 	private ByteOrder byteOrder;
 	
 	private int numRecords;
+	
+	private final boolean memoryMapped;
+	private FileChannel channel;
+	private volatile MappedByteBuffer mapped;
 
 	public BinaryRandomAccessFile(File file, ByteOrder byteOrder, int numRecords) {
+		this(file, byteOrder, numRecords, false);
+	}
+
+	/**
+	 * @param file
+	 * @param byteOrder
+	 * @param numRecords
+	 * @param memoryMapped if true, the file will be accessed through a {@link MappedByteBuffer}
+	 */
+	public BinaryRandomAccessFile(File file, ByteOrder byteOrder, int numRecords, boolean memoryMapped) {
 		this.file = file;
 		this.byteOrder = byteOrder;
 		this.numRecords = numRecords;
+		this.memoryMapped = memoryMapped;
 	}
 	
 	public int getNumRecords() {
 		return numRecords;
 	}
+	
+	/**
+	 * @return true if this file is accessed through a {@link MappedByteBuffer}
+	 */
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
 
 	private synchronized RandomAccessFile getRA() throws IOException {
 		if (ra == null) {
@@ -75,6 +116,12 @@ public abstract class BinaryRandomAccessFile {
 		Preconditions.checkState(!file.exists());
 		
 		Preconditions.checkState(expectedLen < Integer.MAX_VALUE);
+		
+		if (memoryMapped) {
+			initializeMapped((int)expectedLen);
+			return;
+		}
+		
 		byte[] bytes = new byte[(int)expectedLen];
 		
 		// write header
@@ -97,10 +144,89 @@ public abstract class BinaryRandomAccessFile {
 		ra.write(bytes);
 	}
 	
+	/* writes the header and blank records directly to a new mapping */
+	private synchronized void initializeMapped(int len) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer buff = channel.map(MapMode.READ_WRITE, 0, len);
+		byte[] header = getHeader();
+		Preconditions.checkState(header.length == getHeaderLen());
+		buff.put(header);
+		byte[] blank = getBlankRecord();
+		Preconditions.checkState(blank.length == getRecordLen());
+		while (buff.hasRemaining())
+			buff.put(blank);
+		buff.force();
+		buff.order(byteOrder);
+		mapped = buff;
+	}
+	
+	private synchronized MappedByteBuffer getMapped() throws IOException {
+		if (mapped == null) {
+			if (!file.exists()) {
+				// initialize everything, synchonized to this class
+				System.out.println("Warning, not initialized. Initializing with first archive");
+				initialize();
+			}
+			if (mapped == null) {
+				long len = calcFilePos(numRecords);
+				Preconditions.checkState(file.length() == len,
+						"Unexpected file length: %s != %s", file.length(), len);
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+				MappedByteBuffer buff = channel.map(MapMode.READ_WRITE, 0, len);
+				buff.order(byteOrder);
+				mapped = buff;
+			}
+		}
+		return mapped;
+	}
+	
+	/* lock free access to the mapping once initialized */
+	private MappedByteBuffer mapping() throws IOException {
+		MappedByteBuffer buff = mapped;
+		if (buff == null)
+			buff = getMapped();
+		return buff;
+	}
+	
+	/**
+	 * Writes a double value at the given byte offset within the given record, memory mapped mode only.
+	 * Doesn't lock, so different records can be written concurrently.
+	 * @param index record index
+	 * @param offset byte offset within the record
+	 * @param val
+	 * @throws IOException
+	 */
+	protected void putDouble(int index, int offset, double val) throws IOException {
+		Preconditions.checkState(memoryMapped, "Not memory mapped");
+		Preconditions.checkState(index >= 0 && index < numRecords);
+		mapping().putDouble((int)calcFilePos(index)+offset, val);
+	}
+	
+	/**
+	 * Reads a double value at the given byte offset within the given record, memory mapped mode only.
+	 * @param index record index
+	 * @param offset byte offset within the record
+	 * @return the value
+	 * @throws IOException
+	 */
+	protected double getDouble(int index, int offset) throws IOException {
+		Preconditions.checkState(memoryMapped, "Not memory mapped");
+		Preconditions.checkState(index >= 0 && index < numRecords);
+		return mapping().getDouble((int)calcFilePos(index)+offset);
+	}
+	
 	protected synchronized void writeRecord(int index, byte[] record) throws IOException {
 		Preconditions.checkState(index < numRecords);
 		Preconditions.checkState(record.length == getRecordLen());
 		
+		if (memoryMapped) {
+			ByteBuffer buff = mapping().duplicate();
+			buff.position((int)calcFilePos(index));
+			buff.put(record);
+			return;
+		}
+		
 		RandomAccessFile ra = getRA();
 		ra.seek(calcFilePos(index));
 		ra.write(record);
@@ -108,17 +234,76 @@ public abstract class BinaryRandomAccessFile {
 	
 	protected synchronized byte[] readRecord(int index) throws IOException {
 		byte[] record = new byte[getRecordLen()];
+		if (memoryMapped) {
+			ByteBuffer buff = mapping().duplicate();
+			buff.position((int)calcFilePos(index));
+			buff.get(record);
+			return record;
+		}
 		RandomAccessFile ra = getRA();
 		ra.seek(calcFilePos(index));
 		ra.readFully(record, 0, record.length);
 		return record;
 	}
 	
+	/**
+	 * Checkpoint: forces any changes to be written to disk. Only needed in memory mapped mode, as
+	 * each write is synchronous otherwise.
+	 * @throws IOException
+	 */
+	public void force() throws IOException {
+		if (memoryMapped)
+			mapping().force();
+	}
+	
 	public void close() throws IOException {
+		if (memoryMapped) {
+			synchronized (this) {
+				if (mapped != null)
+					mapped.force();
+				if (channel != null)
+					channel.close();
+				channel = null;
+				mapped = null;
+			}
+			return;
+		}
 		RandomAccessFile ra = getRA();
 		ra.close();
 	}
 	
+	/**
+	 * Maps an existing file read only, returning a view of the values after the integer record count header.
+	 * No data is copied.
+	 * @param file
+	 * @param byteOrder
+	 * @param valsPerRecord number of double values per record
+	 * @return read only view of record values
+	 * @throws IOException
+	 */
+	protected static DoubleBuffer mapDoubles(File file, ByteOrder byteOrder, int valsPerRecord)
+			throws IOException {
+		long length = file.length();
+
+		Preconditions.checkState(length > 0, "file is empty!");
+		Preconditions.checkState((length-4) % 8 == 0, "file size after header isn't evenly divisible by 8, " +
+		"thus not a sequence of double values.");
+		Preconditions.checkState(length < Integer.MAX_VALUE, "file too large to map");
+		
+		MappedByteBuffer buff;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buff = channel.map(MapMode.READ_ONLY, 0, length);
+		}
+		buff.order(byteOrder);
+		int size = buff.getInt(0);
+		long numVals = (long)size*valsPerRecord;
+		Preconditions.checkState(size >= 0 && 4 + 8*numVals <= length,
+				"header size (%s) inconsistent with file length (%s)", size, length);
+		buff.position(4);
+		buff.limit(4 + 8*(int)numVals);
+		return buff.slice().order(byteOrder).asDoubleBuffer();
+	}
+	
 	// Convencience methods
 	
 	protected static byte[] cloneBytes(byte[] in) {
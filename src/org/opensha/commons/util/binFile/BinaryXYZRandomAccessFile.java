@@ -1,11 +1,7 @@
 package org.opensha.commons.util.binFile;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteOrder;
 import java.nio.DoubleBuffer;
 import java.nio.IntBuffer;
@@ -20,7 +16,11 @@ public class BinaryXYZRandomAccessFile extends BinaryRandomAccessFile {
 	private BufferWrapper<DoubleBuffer> threeDoubleBuffer;
 
 	public BinaryXYZRandomAccessFile(File file, ByteOrder byteOrder, int numRecords) {
-		super(file, byteOrder, numRecords);
+		this(file, byteOrder, numRecords, false);
+	}
+
+	public BinaryXYZRandomAccessFile(File file, ByteOrder byteOrder, int numRecords, boolean memoryMapped) {
+		super(file, byteOrder, numRecords, memoryMapped);
 		
 		threeDoubleBuffer = getDoubleBuffer(3);
 	}
@@ -57,22 +57,62 @@ public class BinaryXYZRandomAccessFile extends BinaryRandomAccessFile {
 		return cloneBytes(threeDoubleBuffer.bytes);
 	}
 	
-	public synchronized void write(int index, double x, double y, double z) throws IOException {
-		threeDoubleBuffer.buffer.position(0);
-		threeDoubleBuffer.buffer.put(x);
-		threeDoubleBuffer.buffer.put(y);
-		threeDoubleBuffer.buffer.put(z);
-		writeRecord(index, cloneBytes(threeDoubleBuffer.getBytes()));
+	public void write(int index, double x, double y, double z) throws IOException {
+		if (isMemoryMapped()) {
+			// value written last, so that a partially written record is never considered calculated
+			putDouble(index, 0, x);
+			putDouble(index, 8, y);
+			putDouble(index, 16, z);
+			return;
+		}
+		synchronized (this) {
+			threeDoubleBuffer.buffer.position(0);
+			threeDoubleBuffer.buffer.put(x);
+			threeDoubleBuffer.buffer.put(y);
+			threeDoubleBuffer.buffer.put(z);
+			writeRecord(index, cloneBytes(threeDoubleBuffer.getBytes()));
+		}
 	}
 	
-	public synchronized boolean isCalculated(int index) throws IOException {
-		byte[] record = readRecord(index);
-		for (int i=0; i<record.length; i++)
-			threeDoubleBuffer.getBytes()[i] = record[i];
-		threeDoubleBuffer.getBuffer().position(0);
-		double x = threeDoubleBuffer.getBuffer().get();
-		double y = threeDoubleBuffer.getBuffer().get();
-		double z = threeDoubleBuffer.getBuffer().get();
+	/**
+	 * Writes multiple records at once
+	 * @param indexes
+	 * @param xs
+	 * @param ys
+	 * @param zs
+	 * @throws IOException
+	 */
+	public void write(int[] indexes, double[] xs, double[] ys, double[] zs) throws IOException {
+		Preconditions.checkArgument(indexes.length == xs.length && indexes.length == ys.length
+				&& indexes.length == zs.length, "Index and value arrays must be the same size");
+		if (isMemoryMapped()) {
+			for (int i=0; i<indexes.length; i++)
+				write(indexes[i], xs[i], ys[i], zs[i]);
+			return;
+		}
+		synchronized (this) {
+			for (int i=0; i<indexes.length; i++)
+				write(indexes[i], xs[i], ys[i], zs[i]);
+		}
+	}
+	
+	public boolean isCalculated(int index) throws IOException {
+		double x, y, z;
+		if (isMemoryMapped()) {
+			x = getDouble(index, 0);
+			y = getDouble(index, 8);
+			z = getDouble(index, 16);
+		} else {
+			synchronized (this) {
+				byte[] record = readRecord(index);
+				for (int i=0; i<record.length; i++)
+					threeDoubleBuffer.getBytes()[i] = record[i];
+				threeDoubleBuffer.getBuffer().position(0);
+				x = threeDoubleBuffer.getBuffer().get();
+				y = threeDoubleBuffer.getBuffer().get();
+				z = threeDoubleBuffer.getBuffer().get();
+			}
+		}
 		return !isPlaceholder(x) && !isPlaceholder(y) && !isPlaceholder(z);
 	}
 	
@@ -83,33 +123,30 @@ public class BinaryXYZRandomAccessFile extends BinaryRandomAccessFile {
 	}
 	
 	public static ArbDiscrXYZ_DataSet loadXYZ(File file) throws IOException {
-		long length = file.length();
-
-		Preconditions.checkState(length > 0, "file is empty!");
-		Preconditions.checkState((length-4) % 8 == 0, "file size after header isn't evenly divisible by 8, " +
-		"thus not a sequence of double values.");
-		
-		InputStream is = new FileInputStream(file);
-
-		Preconditions.checkNotNull(is, "InputStream cannot be null!");
-		if (!(is instanceof BufferedInputStream))
-			is = new BufferedInputStream(is);
-		DataInputStream in = new DataInputStream(is);
-
-		int size = in.readInt();
+		return loadXYZ(file, ByteOrder.BIG_ENDIAN);
+	}
+	
+	public static ArbDiscrXYZ_DataSet loadXYZ(File file, ByteOrder byteOrder) throws IOException {
+		DoubleBuffer buff = mapXYZ(file, byteOrder);
 		
 		ArbDiscrXYZ_DataSet xyz = new ArbDiscrXYZ_DataSet();
 
-		for (int i=0; i<size; i++) {
-			double x = in.readDouble();
-			double y = in.readDouble();
-			double z = in.readDouble();
-			xyz.set(x, y, z);
-		}
-
-		in.close();
+		for (int i=0; i<buff.limit(); i+=3)
+			xyz.set(buff.get(i), buff.get(i+1), buff.get(i+2));
 		
 		return xyz;
 	}
+	
+	/**
+	 * Memory maps the given file, returning a read only view of the x, y, z values (interleaved) without
+	 * copying them
+	 * @param file
+	 * @param byteOrder
+	 * @return read only buffer of values
+	 * @throws IOException
+	 */
+	public static DoubleBuffer mapXYZ(File file, ByteOrder byteOrder) throws IOException {
+		return mapDoubles(file, byteOrder, 3);
+	}
 
 }
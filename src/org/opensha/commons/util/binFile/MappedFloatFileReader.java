@@ -0,0 +1,273 @@
+package org.opensha.commons.util.binFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Read only, thread safe reader for binary files of float values, such as the meshes described by
+ * {@link GeolocatedRectangularBinaryMesh2DCalculator}. Values are addressed by their byte position in the file.
+ * <br><br>
+ * By default the file is memory mapped (in segments of up to 1 GB, so files larger than 2 GB are supported)
+ * and values are read directly from the mapping without any system calls or copying. Alternatively, the file
+ * can be read in fixed size blocks which are kept in a bounded LRU cache, which is useful when the file is
+ * too large to map into the available address space. {@link #open(File, ByteOrder)} will fall back to the block
+ * cache automatically if the file cannot be mapped, in which case the reason is available from
+ * {@link #getMapFailure()}.
+ * <br><br>
+ * Bulk lookups through {@link #getFloats(long[], float[])} are served in order of file position, which gives
+ * sequential access patterns (and with the block cache, at most one read per block) regardless of the order
+ * of the requests.
+ */
+public class MappedFloatFileReader {
+
+	private static final int SEGMENT_SIZE = 1 << 30;
+
+	/**
+	 * Default block size (in bytes) for the block cache
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+	/**
+	 * Default maximum number of blocks kept in the block cache
+	 */
+	public static final int DEFAULT_MAX_BLOCKS = 1024;
+
+	private final File file;
+	private final ByteOrder byteOrder;
+	private final long length;
+
+	private FileChannel channel;
+
+	// memory mapped mode
+	private int segmentSize;
+	private ByteBuffer[] segments;
+	// reason that the file couldn't be mapped, if it fell back to the block cache
+	private Throwable mapFailure;
+
+	// block cache mode
+	private int blockSize;
+	private LoadingCache<Long, ByteBuffer> blockCache;
+
+	/**
+	 * Opens the given file, memory mapped if possible and otherwise with a block cache. If the file couldn't
+	 * be mapped, the reason is available from {@link #getMapFailure()}.
+	 * @param file
+	 * @param byteOrder
+	 * @return reader
+	 * @throws IOException
+	 */
+	public static MappedFloatFileReader open(File file, ByteOrder byteOrder) throws IOException {
+		try {
+			return new MappedFloatFileReader(file, byteOrder);
+		} catch (IOException | OutOfMemoryError e) {
+			// "Map failed" when out of address space
+			MappedFloatFileReader reader = new MappedFloatFileReader(file, byteOrder,
+					DEFAULT_BLOCK_SIZE, DEFAULT_MAX_BLOCKS);
+			reader.mapFailure = e;
+			return reader;
+		}
+	}
+
+	/**
+	 * Opens the given file, memory mapped.
+	 * @param file
+	 * @param byteOrder
+	 * @throws IOException
+	 */
+	public MappedFloatFileReader(File file, ByteOrder byteOrder) throws IOException {
+		this(file, byteOrder, SEGMENT_SIZE);
+	}
+
+	/**
+	 * Opens the given file, memory mapped in segments of the given size (which need not be a multiple of 4)
+	 * @param file
+	 * @param byteOrder
+	 * @param segmentSize
+	 * @throws IOException
+	 */
+	MappedFloatFileReader(File file, ByteOrder byteOrder, int segmentSize) throws IOException {
+		Preconditions.checkArgument(segmentSize >= 4, "segment size must be at least 4");
+		this.file = file;
+		this.byteOrder = byteOrder;
+		this.segmentSize = segmentSize;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.length = channel.size();
+		try {
+			int numSegments = (int)((length + segmentSize - 1) / segmentSize);
+			segments = new ByteBuffer[numSegments];
+			for (int i=0; i<numSegments; i++) {
+				long start = (long)i*segmentSize;
+				long size = Math.min(segmentSize, length - start);
+				segments[i] = channel.map(MapMode.READ_ONLY, start, size).order(byteOrder);
+			}
+		} catch (IOException | RuntimeException | Error e) {
+			channel.close();
+			throw e;
+		}
+		// mappings remain valid after the channel is closed
+		channel.close();
+		channel = null;
+	}
+
+	/**
+	 * Opens the given file, read in blocks which are cached in memory.
+	 * @param file
+	 * @param byteOrder
+	 * @param blockSize block size in bytes, must be a multiple of 4
+	 * @param maxBlocks maximum number of blocks to cache
+	 * @throws IOException
+	 */
+	public MappedFloatFileReader(File file, ByteOrder byteOrder, int blockSize, int maxBlocks) throws IOException {
+		Preconditions.checkArgument(blockSize > 0 && blockSize % 4 == 0, "block size must be a positive multiple of 4");
+		Preconditions.checkArgument(maxBlocks > 0, "must cache at least one block");
+		this.file = file;
+		this.byteOrder = byteOrder;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.length = channel.size();
+		this.blockSize = blockSize;
+		blockCache = CacheBuilder.newBuilder().maximumSize(maxBlocks).build(new CacheLoader<Long, ByteBuffer>() {
+
+			@Override
+			public ByteBuffer load(Long block) throws Exception {
+				return readBlock(block);
+			}
+		});
+	}
+
+	private ByteBuffer readBlock(long block) throws IOException {
+		long start = block*blockSize;
+		int size = (int)Math.min(blockSize, length - start);
+		ByteBuffer buff = ByteBuffer.allocate(size);
+		// positional reads are safe for concurrent use
+		while (buff.hasRemaining()) {
+			int read = channel.read(buff, start + buff.position());
+			if (read < 0)
+				throw new IOException("Unexpected end of file: "+file.getAbsolutePath());
+		}
+		buff.order(byteOrder);
+		return buff;
+	}
+
+	/**
+	 * @return true if memory mapped, false if using the block cache
+	 */
+	public boolean isMemoryMapped() {
+		return segments != null;
+	}
+
+	/**
+	 * @return the error which prevented the file from being memory mapped if {@link #open(File, ByteOrder)}
+	 * fell back to the block cache, otherwise null
+	 */
+	public Throwable getMapFailure() {
+		return mapFailure;
+	}
+
+	/**
+	 * @return the file length in bytes
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @param pos byte position in the file
+	 * @return float value at the given position, or NaN if the position is outside of the file
+	 * @throws IOException
+	 */
+	public float getFloat(long pos) throws IOException {
+		if (pos < 0 || pos > length - 4)
+			return Float.NaN;
+		ByteBuffer buff;
+		int offset;
+		if (segments != null) {
+			buff = segments[(int)(pos / segmentSize)];
+			offset = (int)(pos % segmentSize);
+		} else {
+			buff = getBlock(pos / blockSize);
+			offset = (int)(pos % blockSize);
+		}
+		if (offset <= buff.limit() - 4)
+			return buff.getFloat(offset);
+		// value is split across two segments or blocks
+		int bits = 0;
+		for (int i=0; i<4; i++) {
+			int b = getByte(pos + i) & 0xFF;
+			if (byteOrder == ByteOrder.BIG_ENDIAN)
+				bits = (bits << 8) | b;
+			else
+				bits |= b << (8*i);
+		}
+		return Float.intBitsToFloat(bits);
+	}
+
+	private byte getByte(long pos) throws IOException {
+		if (segments != null)
+			return segments[(int)(pos / segmentSize)].get((int)(pos % segmentSize));
+		return getBlock(pos / blockSize).get((int)(pos % blockSize));
+	}
+
+	private ByteBuffer getBlock(long block) throws IOException {
+		try {
+			return blockCache.get(block);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Reads values at the given byte positions, which should be multiples of 4. Values are read in order of
+	 * file position. Any position outside of the file gives a value of NaN.
+	 * @param positions byte positions in the file
+	 * @param dest destination array, must be the same length as positions
+	 * @throws IOException
+	 */
+	public void getFloats(long[] positions, float[] dest) throws IOException {
+		Preconditions.checkArgument(positions.length == dest.length, "positions and dest must be the same length");
+		// sort by position, keeping track of the original index in the lower bits. positions are
+		// multiples of 4, so the record index fits in the upper bits for files up to 8 GB (beyond which
+		// values are still correct, but no longer read in order)
+		long[] keys = new long[positions.length];
+		int numKeys = 0;
+		for (int i=0; i<positions.length; i++) {
+			long pos = positions[i];
+			if (pos < 0 || pos > length - 4 || pos % 4 != 0) {
+				dest[i] = getFloat(pos);
+				continue;
+			}
+			keys[numKeys++] = ((pos >>> 2) << 32) | i;
+		}
+		Arrays.sort(keys, 0, numKeys);
+		for (int k=0; k<numKeys; k++) {
+			long key = keys[k];
+			int i = (int)(key & 0xFFFFFFFFl);
+			dest[i] = getFloat(positions[i]);
+		}
+	}
+
+	/**
+	 * Releases the file, after which no further reads can be made.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (blockCache != null)
+			blockCache.invalidateAll();
+		if (channel != null)
+			channel.close();
+		segments = null;
+	}
+
+}
@@ -252,7 +252,7 @@ public class CPT extends ArrayList<CPTVal> implements Named, Serializable, Clone
 
 	/**
 	 * This returns a color given a value for this specific CPT file or null if
-	 * the color is undefined
+	 * the color is undefined. For bulk colorization, see {@link CPTLookupTable}.
 	 *
 	 * @param value
 	 * @return Color corresponding to value
@@ -0,0 +1,323 @@
+package org.opensha.commons.util.cpt;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.stream.IntStream;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Compiled form of a {@link CPT} for colorizing large numbers of values. The range of the CPT is divided
+ * into a fixed number of bins, evenly spaced in either linear or log10 space, each of which stores the
+ * ARGB color (as returned by {@link Color#getRGB()}) of a representative value within the bin.<br>
+ * <br>
+ * Edges are preserved exactly: bins that contain the start or end of any {@link CPTVal} are flagged and
+ * values which fall in them, along with values outside of the CPT range and NaNs, are colored exactly as
+ * {@link CPT#getColor(float)} would color them. As a result, discrete CPTs are reproduced exactly at any
+ * resolution. Within all other bins the color varies linearly with value, and the error compared to the
+ * exact path is computed when the table is built, see {@link #getMaxColorError()}. Values are cast to
+ * float before lookup, as with {@link CPT#getColor(float)}.<br>
+ * <br>
+ * The table is a snapshot: subsequent changes to the CPT are not reflected. Lookups are allocation free
+ * for CPTs using a {@link LinearBlender}, and lookup tables are thread safe.
+ */
+public class CPTLookupTable {
+
+	/**
+	 * Default number of bins
+	 */
+	public static final int DEFAULT_RESOLUTION = 4096;
+
+	/**
+	 * Arrays at least this long are colorized in parallel
+	 */
+	public static final int MIN_PARALLEL_LENGTH = 1 << 16;
+	private static final int PARALLEL_CHUNK_SIZE = 1 << 14;
+
+	private final int resolution;
+	private final boolean log;
+
+	private final float min, max;
+	private final double indexMin, indexScale;
+
+	// color for each bin (the last bin only contains the maximum value)
+	private final int[] table;
+	private final boolean[] exact;
+
+	// CPT values for the exact path
+	private final float[] starts, ends;
+	private final int[] minColors, maxColors;
+	private final Color[] minColorObjs, maxColorObjs;
+	private final float firstStart, lastEnd;
+	private final int belowMinColor, aboveMaxColor, nanColor, gapColor;
+	private final Blender blender;
+
+	private final int maxColorError;
+
+	/**
+	 * Builds a linear lookup table with the default resolution
+	 * @param cpt
+	 */
+	public CPTLookupTable(CPT cpt) {
+		this(cpt, DEFAULT_RESOLUTION, false);
+	}
+
+	/**
+	 * Builds a lookup table
+	 * @param cpt
+	 * @param resolution number of bins
+	 * @param log if true, bins are evenly spaced in log10 space, which requires a positive minimum value
+	 */
+	public CPTLookupTable(CPT cpt, int resolution, boolean log) {
+		Preconditions.checkArgument(!cpt.isEmpty(), "CPT has no values");
+		Preconditions.checkArgument(resolution > 0, "Resolution must be positive");
+		this.resolution = resolution;
+		this.log = log;
+
+		int num = cpt.size();
+		starts = new float[num];
+		ends = new float[num];
+		minColors = new int[num];
+		maxColors = new int[num];
+		minColorObjs = new Color[num];
+		maxColorObjs = new Color[num];
+		for (int i=0; i<num; i++) {
+			CPTVal val = cpt.get(i);
+			starts[i] = val.start;
+			ends[i] = val.end;
+			minColorObjs[i] = val.minColor;
+			maxColorObjs[i] = val.maxColor;
+			minColors[i] = argb(val.minColor);
+			maxColors[i] = argb(val.maxColor);
+		}
+		firstStart = starts[0];
+		lastEnd = ends[num-1];
+		belowMinColor = argb(cpt.getBelowMinColor());
+		aboveMaxColor = argb(cpt.getAboveMaxColor());
+		nanColor = argb(cpt.getNaNColor());
+		gapColor = argb(cpt.getGapColor());
+		// the linear blender is replicated in integer arithmetic below
+		blender = cpt.getBlender() != null && cpt.getBlender().getClass() == LinearBlender.class
+				? null : cpt.getBlender();
+
+		min = cpt.getMinValue();
+		max = cpt.getMaxValue();
+		if (log) {
+			Preconditions.checkArgument(min > 0, "Log lookup tables require a positive minimum value");
+			indexMin = Math.log10(min);
+			indexScale = max > min ? resolution/(Math.log10(max) - indexMin) : 0d;
+		} else {
+			indexMin = min;
+			indexScale = max > min ? resolution/((double)max - indexMin) : 0d;
+		}
+
+		table = new int[resolution+1];
+		exact = new boolean[resolution+1];
+		// values on either side of an edge can only share the bin that contains the edge itself
+		for (int i=0; i<num; i++) {
+			exact[index(starts[i])] = true;
+			exact[index(ends[i])] = true;
+		}
+		exact[resolution] = true;
+
+		int maxError = 0;
+		for (int i=0; i<resolution; i++) {
+			if (exact[i])
+				continue;
+			float first = firstValue(i);
+			if (Float.isNaN(first)) {
+				// no float values fall in this bin
+				exact[i] = true;
+				continue;
+			}
+			float last = lastValue(i);
+			float mid = (float)(0.5*((double)first + (double)last));
+			if (index(mid) != i) {
+				exact[i] = true;
+				continue;
+			}
+			table[i] = exactARGB(mid);
+			// colors are monotonic with value within a bin, so the largest error is at one of the extremes
+			maxError = Math.max(maxError, channelDiff(table[i], exactARGB(first)));
+			maxError = Math.max(maxError, channelDiff(table[i], exactARGB(last)));
+		}
+		this.maxColorError = maxError;
+	}
+
+	private static int argb(Color color) {
+		// undefined colors are transparent
+		return color == null ? 0 : color.getRGB();
+	}
+
+	private int index(float value) {
+		double v = log ? Math.log10(value) : value;
+		int index = (int)((v - indexMin)*indexScale);
+		return Math.max(0, Math.min(resolution, index));
+	}
+
+	/*
+	 * smallest float value which falls in the given bin, or NaN if none
+	 */
+	private float firstValue(int bin) {
+		float f = Math.max(min, Math.min(max, (float)binStart(bin)));
+		while (f > min && index(Math.nextDown(f)) >= bin)
+			f = Math.nextDown(f);
+		while (f < max && index(f) < bin)
+			f = Math.nextUp(f);
+		return index(f) == bin ? f : Float.NaN;
+	}
+
+	/*
+	 * largest float value which falls in the given bin, assuming that it has at least one
+	 */
+	private float lastValue(int bin) {
+		float f = Math.max(min, Math.min(max, (float)binStart(bin+1)));
+		while (f > min && index(f) > bin)
+			f = Math.nextDown(f);
+		while (f < max && index(Math.nextUp(f)) <= bin)
+			f = Math.nextUp(f);
+		return f;
+	}
+
+	private double binStart(int bin) {
+		double v = indexMin + bin/indexScale;
+		return log ? Math.pow(10, v) : v;
+	}
+
+	private static int channelDiff(int argb1, int argb2) {
+		int diff = 0;
+		for (int shift=0; shift<32; shift+=8)
+			diff = Math.max(diff, Math.abs(((argb1 >>> shift) & 0xFF) - ((argb2 >>> shift) & 0xFF)));
+		return diff;
+	}
+
+	/**
+	 * Exact color, identical to {@link CPT#getColor(float)}
+	 */
+	private int exactARGB(float value) {
+		if (value >= min && value <= max) {
+			for (int i=0; i<starts.length; i++) {
+				float start = starts[i];
+				float end = ends[i];
+				if (start <= value && value <= end) {
+					if (value == start)
+						return minColors[i];
+					if (value == end)
+						return maxColors[i];
+					float bias = (value - start) / (end - start);
+					if (blender != null)
+						return argb(blender.blend(minColorObjs[i], maxColorObjs[i], bias));
+					return blendARGB(minColors[i], maxColors[i], bias);
+				}
+			}
+		}
+		if (value < firstStart)
+			return belowMinColor;
+		if (value > lastEnd)
+			return aboveMaxColor;
+		if (Float.isNaN(value))
+			return nanColor;
+		return gapColor;
+	}
+
+	/**
+	 * Same as {@link LinearBlender#blend(Color, Color, float)}
+	 */
+	private static int blendARGB(int small, int big, float bias) {
+		int argb = 0;
+		for (int shift=0; shift<32; shift+=8) {
+			float blend = (float)((big >>> shift) & 0xFF) * bias + (1f - bias) * (float)((small >>> shift) & 0xFF);
+			argb |= ((int)(blend + 0.5) & 0xFF) << shift;
+		}
+		return argb;
+	}
+
+	/**
+	 * @param value
+	 * @return ARGB color for the given value, as returned by {@link Color#getRGB()}, or 0 (transparent)
+	 * if the CPT returns a null color
+	 */
+	public int getARGB(double value) {
+		float v = (float)value;
+		if (v >= min && v <= max) {
+			int index = index(v);
+			if (!exact[index])
+				return table[index];
+		}
+		return exactARGB(v);
+	}
+
+	/**
+	 * Colorizes the given values, in parallel for arrays of at least {@link #MIN_PARALLEL_LENGTH}
+	 * values
+	 * @param values
+	 * @param argbOut ARGB colors are written here, must be at least as long as values
+	 */
+	public void colorize(double[] values, int[] argbOut) {
+		Preconditions.checkArgument(argbOut.length >= values.length, "Output array is too short");
+		if (values.length < MIN_PARALLEL_LENGTH) {
+			colorize(values, argbOut, 0, values.length);
+		} else {
+			int numChunks = (values.length + PARALLEL_CHUNK_SIZE - 1)/PARALLEL_CHUNK_SIZE;
+			IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+				int from = chunk*PARALLEL_CHUNK_SIZE;
+				colorize(values, argbOut, from, Math.min(values.length, from + PARALLEL_CHUNK_SIZE));
+			});
+		}
+	}
+
+	private void colorize(double[] values, int[] argbOut, int from, int to) {
+		for (int i=from; i<to; i++)
+			argbOut[i] = getARGB(values[i]);
+	}
+
+	/**
+	 * Colorizes the given values directly into the pixel buffer of an image
+	 * @param values one value per pixel in row-major order, starting with the top left pixel
+	 * @param image image of type {@link BufferedImage#TYPE_INT_ARGB} or {@link BufferedImage#TYPE_INT_RGB}
+	 * (in which case transparency is discarded) that isn't a sub-image
+	 */
+	public void colorize(double[] values, BufferedImage image) {
+		int type = image.getType();
+		Preconditions.checkArgument(type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB,
+				"Image must be of type TYPE_INT_ARGB or TYPE_INT_RGB");
+		WritableRaster raster = image.getRaster();
+		Preconditions.checkArgument(raster.getParent() == null
+				&& raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+				&& ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride() == image.getWidth(),
+				"Sub-images are not supported");
+		Preconditions.checkArgument(values.length == image.getWidth()*image.getHeight(),
+				"Expected %s values for a %sx%s image, have %s",
+				image.getWidth()*image.getHeight(), image.getWidth(), image.getHeight(), values.length);
+		int[] pixels = ((DataBufferInt)raster.getDataBuffer()).getData();
+		colorize(values, pixels);
+	}
+
+	/**
+	 * @return the maximum difference in any color channel (0-255, including alpha) between this table and
+	 * {@link CPT#getColor(float)}, over all float values. This is 0 for discrete CPTs and otherwise
+	 * decreases in proportion to the resolution. For non-linear blenders it assumes that each color
+	 * channel varies monotonically within a CPT value.
+	 */
+	public int getMaxColorError() {
+		return maxColorError;
+	}
+
+	/**
+	 * @return the number of bins
+	 */
+	public int getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * @return true if bins are evenly spaced in log10 space
+	 */
+	public boolean isLog() {
+		return log;
+	}
+
+}
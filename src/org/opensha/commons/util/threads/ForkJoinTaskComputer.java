@@ -0,0 +1,343 @@
+package org.opensha.commons.util.threads;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Class for calculating a {@link Collection} of embarassingly parallel {@link Task} items in parallel on a
+ * single machine using a {@link ForkJoinPool}. This is an alternative to {@link ThreadedTaskComputer} for
+ * large numbers of fine grained tasks.
+ * <br><br>
+ * Tasks are claimed in chunks of contiguous indexes, which are split recursively and balanced between threads
+ * by work stealing (so there is no shared lock). Computations return a {@link CompletableFuture} which completes
+ * when all tasks are done. If any task throws an exception, no further tasks are started, and the future
+ * completes exceptionally with the first exception. Cancelling the future also prevents any further tasks from
+ * being started (tasks which are already running are not interrupted, but can poll {@link #isStopped()}). A
+ * cancelled future completes immediately, so tasks may still be running; a new computation will not start until
+ * they have finished.
+ * <br><br>
+ * Progress is reported to {@link TaskProgressListener}s each time another <code>precentMod</code> percent of
+ * tasks have completed, along with {@link TaskTimingStats} for the tasks completed so far. Listeners are called
+ * from the thread that completed the task, and must be thread safe.
+ */
+public class ForkJoinTaskComputer {
+
+	// target number of chunks per thread when automatically choosing a chunk size
+	private static final int CHUNKS_PER_THREAD = 16;
+
+	private final List<? extends Task> tasks;
+
+	private int chunkSize = -1;
+
+	private List<TaskProgressListener> listeners = new ArrayList<>();
+	private int precentMod = 10;
+
+	// state for the current computation
+	private volatile Run run;
+
+	public ForkJoinTaskComputer(Collection<? extends Task> tasks) {
+		this(tasks, false);
+	}
+
+	/**
+	 * @param tasks
+	 * @param shuffle if true, tasks will be shuffled, which can help balance the load if expensive tasks
+	 * are adjacent
+	 */
+	public ForkJoinTaskComputer(Collection<? extends Task> tasks, boolean shuffle) {
+		List<Task> list = new ArrayList<>(tasks);
+		if (shuffle)
+			Collections.shuffle(list);
+		this.tasks = list;
+	}
+
+	/**
+	 * Sets the number of contiguous tasks claimed at once by a thread. By default, this is chosen such that each
+	 * thread will process around 16 chunks.
+	 * @param chunkSize chunk size, or -1 to choose automatically
+	 */
+	public void setChunkSize(int chunkSize) {
+		Preconditions.checkArgument(chunkSize > 0 || chunkSize == -1, "chunk size must be positive, or -1 for automatic");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Adds a progress listener which is notified each time another <code>precentMod</code> percent of
+	 * tasks are completed
+	 * @param listener
+	 * @param precentMod
+	 */
+	public void setProgressListener(TaskProgressListener listener, int precentMod) {
+		List<TaskProgressListener> listeners = new ArrayList<>();
+		listeners.add(listener);
+		setProgressListeners(listeners, precentMod);
+	}
+
+	public void setProgressListeners(List<TaskProgressListener> listeners, int precentMod) {
+		Preconditions.checkArgument(precentMod > 0 && precentMod <= 100, "precentMod must be in the range (0, 100]");
+		this.listeners = new ArrayList<>(listeners);
+		this.precentMod = precentMod;
+	}
+
+	/**
+	 * @return true if the current computation has been cancelled or has failed, in which case no more tasks
+	 * will be started
+	 */
+	public boolean isStopped() {
+		Run run = this.run;
+		return run != null && run.stop;
+	}
+
+	/**
+	 * @return timing statistics for the current (or most recent) computation, or null if no computation has
+	 * been started
+	 */
+	public TaskTimingStats getTimingStats() {
+		Run run = this.run;
+		return run == null ? null : run.getStats();
+	}
+
+	/**
+	 * Calculates all {@link Task}s in parallel with the number of available processors.
+	 *
+	 * This method will block until all tasks have completed
+	 *
+	 * @throws InterruptedException
+	 */
+	public void computeThreaded() throws InterruptedException {
+		computeThreaded(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Calculates all {@link Task}s in parallel with the given number of threads. A new pool is used, and shut down
+	 * when complete.
+	 *
+	 * This method will block until all tasks have completed. If any task throws an exception, it will be
+	 * rethrown here (after all running tasks have completed). If interrupted, no further tasks are started
+	 * and the {@link InterruptedException} is thrown once all running tasks have completed.
+	 *
+	 * @param numThreads
+	 * @throws InterruptedException
+	 */
+	public void computeThreaded(int numThreads) throws InterruptedException {
+		ForkJoinPool pool = new ForkJoinPool(Integer.max(1, numThreads));
+		try {
+			Run run = start(pool);
+			CompletableFuture<Void> future = run.future;
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				future.cancel(false);
+				// don't return while tasks are still running
+				run.awaitFinished();
+				throw e;
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				if (cause instanceof Error)
+					throw (Error)cause;
+				throw new RuntimeException(cause);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Starts computing all {@link Task}s in the given pool, which can be reused for other computations
+	 *
+	 * @param pool
+	 * @return future which completes when all tasks have completed, exceptionally with the first exception
+	 * thrown by any task. Cancelling the future stops any further tasks from being started.
+	 * @throws IllegalStateException if a computation is already in progress. If the previous computation was
+	 * cancelled but still has running tasks, this instead blocks until they have completed.
+	 */
+	public CompletableFuture<Void> submit(ForkJoinPool pool) {
+		return start(pool).future;
+	}
+
+	private synchronized Run start(ForkJoinPool pool) {
+		Run prev = this.run;
+		if (prev != null) {
+			Preconditions.checkState(prev.future.isDone(), "computation already in progress");
+			// a cancelled run can still have tasks running
+			prev.awaitFinished();
+		}
+		int numTasks = tasks.size();
+		int chunkSize = this.chunkSize;
+		if (chunkSize < 0)
+			chunkSize = Integer.max(1, numTasks/(pool.getParallelism()*CHUNKS_PER_THREAD));
+		Run run = new Run(numTasks, chunkSize);
+		this.run = run;
+		if (numTasks == 0) {
+			run.endNanos = run.startNanos;
+			run.notifyListeners(0);
+			run.finished.countDown();
+			run.future.complete(null);
+		} else {
+			pool.execute(run::computeAll);
+		}
+		return run;
+	}
+
+	/**
+	 * State for a single computation
+	 */
+	private class Run {
+
+		private final int numTasks;
+		private final int chunkSize;
+		private final long startNanos;
+		// set once all tasks have finished, -1 while running
+		private volatile long endNanos = -1;
+		// released once computeAll has returned from all tasks
+		private final CountDownLatch finished = new CountDownLatch(1);
+
+		// set if cancelled or failed, after which no further tasks are started
+		private volatile boolean stop;
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+		private final AtomicInteger numDone = new AtomicInteger();
+		private final AtomicInteger lastNotified = new AtomicInteger(-1);
+
+		// timing histogram
+		private final AtomicLongArray binCounts = new AtomicLongArray(TaskTimingStats.NUM_BINS);
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator minNanos = new LongAccumulator(Long::min, Long.MAX_VALUE);
+		private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0l);
+
+		private final CompletableFuture<Void> future = new CompletableFuture<Void>() {
+
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				stop = true;
+				return super.cancel(mayInterruptIfRunning);
+			}
+		};
+
+		private Run(int numTasks, int chunkSize) {
+			this.numTasks = numTasks;
+			this.chunkSize = chunkSize;
+			this.startNanos = System.nanoTime();
+		}
+
+		private void computeAll() {
+			try {
+				new ChunkAction(this, 0, numTasks).invoke();
+			} catch (Throwable t) {
+				fail(t);
+			}
+			endNanos = System.nanoTime();
+			finished.countDown();
+			Throwable t = failure.get();
+			if (t != null)
+				future.completeExceptionally(t);
+			else if (stop)
+				future.completeExceptionally(new CancellationException());
+			else
+				future.complete(null);
+		}
+
+		private void compute(int index) {
+			long start = System.nanoTime();
+			tasks.get(index).compute();
+			long nanos = System.nanoTime() - start;
+			binCounts.incrementAndGet(TaskTimingStats.getBin(nanos));
+			totalNanos.add(nanos);
+			minNanos.accumulate(nanos);
+			maxNanos.accumulate(nanos);
+
+			int done = numDone.incrementAndGet();
+			if (!listeners.isEmpty()) {
+				int bin = (int)(100l*done/numTasks)/precentMod;
+				int last = lastNotified.get();
+				if (bin > last && lastNotified.compareAndSet(last, bin))
+					notifyListeners(done);
+			}
+		}
+
+		private void notifyListeners(int done) {
+			TaskTimingStats stats = getStats();
+			for (TaskProgressListener listener : listeners) {
+				listener.taskProgressUpdate(done, numTasks-done, numTasks);
+				listener.taskTimingUpdate(stats);
+			}
+		}
+
+		private void awaitFinished() {
+			Uninterruptibles.awaitUninterruptibly(finished);
+		}
+
+		private void fail(Throwable t) {
+			failure.compareAndSet(null, t);
+			stop = true;
+		}
+
+		private TaskTimingStats getStats() {
+			long[] counts = new long[TaskTimingStats.NUM_BINS];
+			long count = 0;
+			for (int i=0; i<counts.length; i++) {
+				counts[i] = binCounts.get(i);
+				count += counts[i];
+			}
+			long end = endNanos;
+			if (end < 0)
+				end = System.nanoTime();
+			return new TaskTimingStats(counts, count, totalNanos.sum(), minNanos.get(), maxNanos.get(),
+					end - startNanos);
+		}
+	}
+
+	/**
+	 * Computes a contiguous range of tasks, splitting until the range is no larger than the chunk size
+	 */
+	private class ChunkAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Run run;
+		private final int start, end;
+
+		private ChunkAction(Run run, int start, int end) {
+			this.run = run;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (run.stop)
+				return;
+			if (end - start > run.chunkSize) {
+				int mid = (start + end) >>> 1;
+				invokeAll(new ChunkAction(run, start, mid), new ChunkAction(run, mid, end));
+				return;
+			}
+			for (int i=start; i<end && !run.stop; i++) {
+				try {
+					run.compute(i);
+				} catch (Throwable t) {
+					run.fail(t);
+					return;
+				}
+			}
+		}
+	}
+
+}
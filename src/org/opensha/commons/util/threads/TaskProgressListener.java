@@ -3,5 +3,12 @@ package org.opensha.commons.util.threads;
 public interface TaskProgressListener {
 	
 	public void taskProgressUpdate(int tasksDone, int tasksLeft, int totalTasks);
+	
+	/**
+	 * Called after each progress update by computers which track task timing (e.g. {@link ForkJoinTaskComputer}).
+	 * Default implementation does nothing.
+	 * @param stats timing statistics for the tasks completed so far
+	 */
+	public default void taskTimingUpdate(TaskTimingStats stats) {}
 
 }
@@ -0,0 +1,163 @@
+package org.opensha.commons.util.threads;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the timing of individual {@link Task}s computed by a {@link ForkJoinTaskComputer}, with
+ * a histogram of task durations and the overall throughput. Task durations are binned in powers of two
+ * nanoseconds, so percentiles are approximate (to within a factor of 2).
+ */
+public class TaskTimingStats {
+
+	/**
+	 * Number of histogram bins. Bin i contains tasks with durations in the range [2^(i-1), 2^i) nanoseconds
+	 * (bin 0 contains durations of zero).
+	 */
+	public static final int NUM_BINS = 64;
+
+	private final long[] binCounts;
+	private final long count;
+	private final long totalNanos;
+	private final long minNanos;
+	private final long maxNanos;
+	private final long elapsedNanos;
+
+	TaskTimingStats(long[] binCounts, long count, long totalNanos, long minNanos, long maxNanos,
+			long elapsedNanos) {
+		this.binCounts = binCounts;
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.minNanos = minNanos;
+		this.maxNanos = maxNanos;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	static int getBin(long nanos) {
+		return nanos <= 0 ? 0 : Math.min(NUM_BINS-1, 64 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	/**
+	 * @return number of tasks completed
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return sum of the durations of all completed tasks, in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return mean task duration in nanoseconds, or NaN if no tasks have completed
+	 */
+	public double getMeanNanos() {
+		return count == 0 ? Double.NaN : (double)totalNanos/(double)count;
+	}
+
+	/**
+	 * @return shortest task duration in nanoseconds, or 0 if no tasks have completed
+	 */
+	public long getMinNanos() {
+		return count == 0 ? 0 : minNanos;
+	}
+
+	/**
+	 * @return longest task duration in nanoseconds, or 0 if no tasks have completed
+	 */
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * @return wall clock time since the computation started, in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return number of tasks completed per second of wall clock time
+	 */
+	public double getThroughput() {
+		return elapsedNanos == 0 ? 0d : (double)count/((double)elapsedNanos*1e-9);
+	}
+
+	/**
+	 * @param bin
+	 * @return number of tasks in the given histogram bin
+	 */
+	public long getBinCount(int bin) {
+		return binCounts[bin];
+	}
+
+	/**
+	 * @param bin
+	 * @return the (exclusive) upper duration of the given histogram bin in nanoseconds
+	 */
+	public static long getBinUpperNanos(int bin) {
+		return bin >= 63 ? Long.MAX_VALUE : 1l << bin;
+	}
+
+	/**
+	 * @param fraction between 0 and 1
+	 * @return approximate duration (the upper end of the histogram bin) in nanoseconds below which the given
+	 * fraction of tasks completed
+	 */
+	public long getPercentileNanos(double fraction) {
+		if (count == 0)
+			return 0;
+		long target = (long)Math.ceil(fraction*count);
+		long sum = 0;
+		for (int bin=0; bin<NUM_BINS; bin++) {
+			sum += binCounts[bin];
+			if (sum >= target && sum > 0)
+				return Math.min(maxNanos, getBinUpperNanos(bin));
+		}
+		return maxNanos;
+	}
+
+	/**
+	 * @return copy of all histogram bin counts
+	 */
+	public long[] getBinCounts() {
+		return Arrays.copyOf(binCounts, binCounts.length);
+	}
+
+	private static String formatNanos(double nanos) {
+		if (nanos >= 1e9)
+			return (float)(nanos/1e9)+" s";
+		if (nanos >= 1e6)
+			return (float)(nanos/1e6)+" ms";
+		if (nanos >= 1e3)
+			return (float)(nanos/1e3)+" us";
+		return (float)nanos+" ns";
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		str.append(count).append(" tasks in ").append(formatNanos(elapsedNanos));
+		str.append(" (").append((float)getThroughput()).append(" tasks/s)");
+		if (count > 0) {
+			str.append(", mean=").append(formatNanos(getMeanNanos()));
+			str.append(", min=").append(formatNanos(minNanos));
+			str.append(", p50<").append(formatNanos(getPercentileNanos(0.5)));
+			str.append(", p99<").append(formatNanos(getPercentileNanos(0.99)));
+			str.append(", max=").append(formatNanos(maxNanos));
+		}
+		return str.toString();
+	}
+
+	/**
+	 * @param unit
+	 * @return wall clock time since the computation started in the given unit
+	 */
+	public long getElapsed(TimeUnit unit) {
+		return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+}
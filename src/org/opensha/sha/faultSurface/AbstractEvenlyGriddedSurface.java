@@ -20,8 +20,10 @@
 package org.opensha.sha.faultSurface;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
 
 import org.opensha.commons.data.Container2DImpl;
 import org.opensha.commons.geo.Location;
@@ -33,6 +35,7 @@ import org.opensha.sha.faultSurface.cache.CacheEnabledSurface;
 import org.opensha.sha.faultSurface.cache.SurfaceCachingPolicy;
 import org.opensha.sha.faultSurface.cache.SurfaceDistanceCache;
 import org.opensha.sha.faultSurface.cache.SurfaceDistances;
+import org.opensha.sha.faultSurface.utils.GriddedSurfaceTiles;
 import org.opensha.sha.faultSurface.utils.GriddedSurfaceUtils;
 
 import com.google.common.base.Preconditions;
@@ -72,6 +75,24 @@ implements EvenlyGriddedSurface, CacheEnabledSurface, Serializable {
 	// create cache using default caching policy
 	private SurfaceDistanceCache cache = SurfaceCachingPolicy.build(this);
 	
+	// bounding tiles used to speed up distance calculations, built lazily
+	private transient volatile GriddedSurfaceTiles tiles;
+	
+	/**
+	 * The <i>surface.storage.packed</i> property can be set to true to make new surfaces use packed
+	 * storage by default, see {@link #setPackedStorage(boolean)}.
+	 */
+	public static final String PACKED_STORAGE_PROP = "surface.storage.packed";
+	private static boolean packedStorageDefault = Boolean.getBoolean(PACKED_STORAGE_PROP);
+	
+	// if true, grid sizes set via setNumRowsAndNumCols will use packed storage
+	private boolean packed = packedStorageDefault;
+	// packed storage in row major order (lat/lon in radians), used instead of the data array when non null.
+	// unset nodes have NaN latitudes
+	private double[] packedLats;
+	private double[] packedLons;
+	private double[] packedDepths;
+	
 	// no argument constructor needed by subclasses
 	public AbstractEvenlyGriddedSurface() {}
 	
@@ -89,6 +110,8 @@ implements EvenlyGriddedSurface, CacheEnabledSurface, Serializable {
 		gridSpacingAlong = gridSpacing;
 		gridSpacingDown = gridSpacing;
 		sameGridSpacing = true;
+		if (packed)
+			setPackedStorage(true);
 	}
 	
 	/**
@@ -107,6 +130,122 @@ implements EvenlyGriddedSurface, CacheEnabledSurface, Serializable {
 			sameGridSpacing = true;
 		else
 			sameGridSpacing = false;
+		if (packed)
+			setPackedStorage(true);
+	}
+	
+	/**
+	 * Sets the default storage mode for surfaces created after this call. This can also be set via the
+	 * {@link #PACKED_STORAGE_PROP} property.
+	 * @param packed
+	 * @see #setPackedStorage(boolean)
+	 */
+	public static void setPackedStorageDefault(boolean packed) {
+		packedStorageDefault = packed;
+	}
+	
+	/**
+	 * @return the default storage mode for new surfaces
+	 */
+	public static boolean isPackedStorageDefault() {
+		return packedStorageDefault;
+	}
+	
+	/**
+	 * Sets the storage mode for this surface, converting any existing grid nodes. By default, each node is
+	 * stored as a separate {@link Location} object. With packed storage, node positions are instead stored in
+	 * flat primitive lat/lon/depth arrays (roughly halving memory use), and a new {@link Location} is created
+	 * each time a node is accessed. Locations returned by {@link #get(int, int)} will be equal, but not
+	 * identical, to those originally set.
+	 * <br><br>
+	 * This should not be called while the surface is being accessed by other threads.
+	 * @param packed
+	 */
+	public void setPackedStorage(boolean packed) {
+		this.packed = packed;
+		if (packed == isPackedStorage())
+			return;
+		int num = numRows*numCols;
+		if (packed) {
+			double[] lats = new double[num];
+			double[] lons = new double[num];
+			double[] depths = new double[num];
+			for (int i=0; i<num; i++) {
+				Location loc = data == null ? null : (Location)data[i];
+				if (loc == null) {
+					lats[i] = Double.NaN;
+				} else {
+					lats[i] = loc.getLatRad();
+					lons[i] = loc.getLonRad();
+					depths[i] = loc.getDepth();
+				}
+			}
+			packedLats = lats;
+			packedLons = lons;
+			packedDepths = depths;
+			data = null;
+		} else {
+			Object[] newData = new Object[num];
+			for (int i=0; i<num; i++)
+				newData[i] = getPacked(i);
+			data = newData;
+			packedLats = null;
+			packedLons = null;
+			packedDepths = null;
+		}
+	}
+	
+	/**
+	 * @return true if this surface is currently using packed storage
+	 * @see #setPackedStorage(boolean)
+	 */
+	public boolean isPackedStorage() {
+		return packedLats != null;
+	}
+	
+	private Location getPacked(int index) {
+		double lat = packedLats[index];
+		if (Double.isNaN(lat))
+			return null;
+		return Location.fromRadians(lat, packedLons[index], packedDepths[index]);
+	}
+	
+	@Override
+	protected void setNumRowsAndNumCols(int numRows, int numCols) {
+		if (packed) {
+			this.numRows = numRows;
+			this.numCols = numCols;
+			size = (long)numRows * (long)numCols;
+			data = null;
+			int num = numRows*numCols;
+			packedLats = new double[num];
+			Arrays.fill(packedLats, Double.NaN);
+			packedLons = new double[num];
+			packedDepths = new double[num];
+		} else {
+			super.setNumRowsAndNumCols(numRows, numCols);
+			packedLats = null;
+			packedLons = null;
+			packedDepths = null;
+		}
+		tiles = null;
+	}
+	
+	@Override
+	public Location get(int row, int column) {
+		if (packedLats == null)
+			return super.get(row, column);
+		checkBounds(row, column, C + ": get(): ");
+		return getPacked(row * numCols + column);
+	}
+	
+	@Override
+	public void clear() {
+		super.clear();
+		packedLats = null;
+		packedLons = null;
+		packedDepths = null;
+		tiles = null;
 	}
 
 
@@ -158,6 +297,25 @@ implements EvenlyGriddedSurface, CacheEnabledSurface, Serializable {
 		return getEvenlyDiscritizedPerimeter();
 	}
 
+	@Override
+	public void set(int row, int column, Location loc) throws ArrayIndexOutOfBoundsException {
+		if (packedLats == null) {
+			super.set(row, column, loc);
+		} else {
+			checkBounds(row, column, C + ": set(): ");
+			int index = row * numCols + column;
+			if (loc == null) {
+				packedLats[index] = Double.NaN;
+			} else {
+				packedLats[index] = loc.getLatRad();
+				packedLons[index] = loc.getLonRad();
+				packedDepths[index] = loc.getDepth();
+			}
+		}
+		// any existing distance tiles are now stale
+		tiles = null;
+	}
+
 	/**
 	 * gets the location from the 2D container
 	 * @param row
@@ -209,10 +367,48 @@ implements EvenlyGriddedSurface, CacheEnabledSurface, Serializable {
 	}
 	
 	public SurfaceDistances calcDistances(Location loc) {
-		double[] dCalc = GriddedSurfaceUtils.getPropagationDistances(this, loc);
+		double[] dCalc = GriddedSurfaceUtils.getPropagationDistances(this, getDistanceTiles(), loc);
 		return new SurfaceDistances(dCalc[0], dCalc[1], dCalc[2]);
 	}
 	
+	/**
+	 * Returns the {@link GriddedSurfaceTiles} for this surface, building them if needed. They are
+	 * reset by {@link #clearCache()}, along with the cached {@link GriddedSurfaceTiles#getSurfaceProjection()}.
+	 * @return
+	 */
+	public GriddedSurfaceTiles getDistanceTiles() {
+		GriddedSurfaceTiles tiles = this.tiles;
+		if (tiles == null) {
+			tiles = new GriddedSurfaceTiles(this);
+			this.tiles = tiles;
+		}
+		return tiles;
+	}
+	
+	@Override
+	public double getQuickDistanceLowerBound(Location siteLoc) {
+		return getDistanceTiles().getDistanceRupLowerBound(siteLoc);
+	}
+	
+	@Override
+	public double getQuickDistanceJBLowerBound(Location siteLoc) {
+		double horzDist = getDistanceTiles().getHorzDistanceLowerBound(siteLoc);
+		// distances less than the grid spacing can be set to zero
+		if (horzDist < getAveGridSpacing())
+			return 0d;
+		return horzDist;
+	}
+	
+	@Override
+	public void calcDistances(LocationList sites, double[] distRup, double[] distJB,
+			double[] distSeis, double[] distX, ForkJoinPool pool) {
+		if (distRup != null || distJB != null || distSeis != null)
+			GriddedSurfaceUtils.getPropagationDistances(this, getDistanceTiles(), sites,
+					distRup, distJB, distSeis, pool);
+		if (distX != null)
+			GriddedSurfaceUtils.getDistanceX(getEvenlyDiscritizedUpperEdge(), sites, distX, pool);
+	}
+	
 	/**
 	 * This returns rupture distance (kms to closest point on the 
 	 * rupture surface), assuming the location has zero depth (for numerical 
@@ -293,12 +489,8 @@ implements EvenlyGriddedSurface, CacheEnabledSurface, Serializable {
 
 	@Override
 	public double getFractionOfSurfaceInRegion(Region region) {
-		double numInside=0;
-		for(Location loc: this) {
-			if(region.contains(loc))
-				numInside += 1;
-		}
-		return numInside/size();
+		return GriddedSurfaceUtils.getFractionOfSurfaceInRegion(this,
+				getDistanceTiles().getSurfaceProjection(), region);
 	}
 
 
@@ -371,6 +563,7 @@ implements EvenlyGriddedSurface, CacheEnabledSurface, Serializable {
 	@Override
 	public AbstractEvenlyGriddedSurface copyShallow() {
 		AbstractEvenlyGriddedSurface o = getNewInstance();
+		o.setPackedStorage(isPackedStorage());
 		Preconditions.checkState(o.getNumCols() == getNumCols());
 		Preconditions.checkState(o.getNumRows() == getNumRows());
 		Preconditions.checkState(o.getGridSpacingAlongStrike() == getGridSpacingAlongStrike());
@@ -384,6 +577,7 @@ implements EvenlyGriddedSurface, CacheEnabledSurface, Serializable {
 	@Override
 	public void clearCache() {
 		cache.clearCache();
+		tiles = null;
 	}
 	
 }
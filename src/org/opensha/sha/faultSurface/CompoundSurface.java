@@ -1,8 +1,10 @@
 package org.opensha.sha.faultSurface;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
 
 import org.opensha.commons.geo.Location;
 import org.opensha.commons.geo.LocationList;
@@ -257,6 +259,13 @@ public class CompoundSurface implements RuptureSurface, CacheEnabledSurface {
 		int distXidx = -1;
 		for (int i=0; i<surfaces.size(); i++) {
 			RuptureSurface surf = surfaces.get(i);
+			if (i > 0) {
+				// skip this surface if it can't beat any of the current minimums
+				double jbBound = surf.getQuickDistanceJBLowerBound(loc);
+				if (jbBound > distanceJB && jbBound > distanceSeis
+						&& surf.getQuickDistanceLowerBound(loc) > distanceRup)
+					continue;
+			}
 			dist = surf.getDistanceJB(loc);
 			if (dist<distanceJB) distanceJB=dist;
 			dist = surf.getDistanceRup(loc);
@@ -269,6 +278,65 @@ public class CompoundSurface implements RuptureSurface, CacheEnabledSurface {
 		}
 		return new CompoundSurfaceDistances(distanceRup, distanceJB, distanceSeis, distXidx);
 	}
+	
+	/**
+	 * Batch distance calculation which combines the batch results of each sub surface. Distance X is
+	 * calculated from the sub surface with the smallest rupture distance to each site, as in
+	 * {@link #calcDistanceX(Location)}, with sites grouped so that each sub surface only does one
+	 * batch calculation.
+	 */
+	@Override
+	public void calcDistances(LocationList sites, double[] distRup, double[] distJB,
+			double[] distSeis, double[] distX, ForkJoinPool pool) {
+		int numSites = sites.size();
+		// rupture distance is always needed for distance X
+		double[] myDistRup = distRup == null && distX != null ? new double[numSites] : distRup;
+		double[] subDistRup = myDistRup == null ? null : new double[numSites];
+		double[] subDistJB = distJB == null ? null : new double[numSites];
+		double[] subDistSeis = distSeis == null ? null : new double[numSites];
+		int[] distXIndexes = distX == null ? null : new int[numSites];
+		
+		if (myDistRup != null)
+			Arrays.fill(myDistRup, 0, numSites, Double.MAX_VALUE);
+		if (distJB != null)
+			Arrays.fill(distJB, 0, numSites, Double.MAX_VALUE);
+		if (distSeis != null)
+			Arrays.fill(distSeis, 0, numSites, Double.MAX_VALUE);
+		
+		for (int i=0; i<surfaces.size(); i++) {
+			surfaces.get(i).calcDistances(sites, subDistRup, subDistJB, subDistSeis, null, pool);
+			for (int s=0; s<numSites; s++) {
+				if (myDistRup != null && subDistRup[s] < myDistRup[s]) {
+					myDistRup[s] = subDistRup[s];
+					if (distXIndexes != null)
+						distXIndexes[s] = i;
+				}
+				if (distJB != null && subDistJB[s] < distJB[s])
+					distJB[s] = subDistJB[s];
+				if (distSeis != null && subDistSeis[s] < distSeis[s])
+					distSeis[s] = subDistSeis[s];
+			}
+		}
+		
+		if (distX != null) {
+			for (int i=0; i<surfaces.size(); i++) {
+				LocationList subSites = new LocationList();
+				List<Integer> subIndexes = new ArrayList<>();
+				for (int s=0; s<numSites; s++) {
+					if (distXIndexes[s] == i) {
+						subSites.add(sites.get(s));
+						subIndexes.add(s);
+					}
+				}
+				if (subSites.isEmpty())
+					continue;
+				double[] subDistX = new double[subSites.size()];
+				surfaces.get(i).calcDistances(subSites, null, null, null, subDistX, pool);
+				for (int j=0; j<subDistX.length; j++)
+					distX[subIndexes.get(j)] = subDistX[j];
+			}
+		}
+	}
 
 
 	@Override
@@ -298,6 +366,22 @@ public class CompoundSurface implements RuptureSurface, CacheEnabledSurface {
 	}
 
 
+	@Override
+	public double getQuickDistanceLowerBound(Location siteLoc) {
+		double minDist = Double.POSITIVE_INFINITY;
+		for (RuptureSurface surf : surfaces)
+			minDist = Math.min(minDist, surf.getQuickDistanceLowerBound(siteLoc));
+		return minDist;
+	}
+
+	@Override
+	public double getQuickDistanceJBLowerBound(Location siteLoc) {
+		double minDist = Double.POSITIVE_INFINITY;
+		for (RuptureSurface surf : surfaces)
+			minDist = Math.min(minDist, surf.getQuickDistanceJBLowerBound(siteLoc));
+		return minDist;
+	}
+
 	@Override
 	public double calcQuickDistance(Location siteLoc) {
 		double minDist = Double.POSITIVE_INFINITY;
@@ -464,12 +548,16 @@ public class CompoundSurface implements RuptureSurface, CacheEnabledSurface {
 
 	@Override
 	public double getFractionOfSurfaceInRegion(Region region) {
-		LocationList locList = getEvenlyDiscritizedListOfLocsOnSurface();
+		// combine the fractions of each surface, which (for gridded surfaces) use their cached
+		// surface projections, rather than testing the combined location list
 		double numInside = 0;
-		for(Location loc: locList)
-			if(region.contains(loc))
-				numInside += 1;
-		return numInside/(double)locList.size();
+		int numLocs = 0;
+		for(RuptureSurface surf:surfaces) {
+			int myNum = surf.getEvenlyDiscretizedNumLocs();
+			numInside += Math.round(surf.getFractionOfSurfaceInRegion(region)*myNum);
+			numLocs += myNum;
+		}
+		return numInside/(double)numLocs;
 	}
 
 	@Override
@@ -1,5 +1,9 @@
 package org.opensha.sha.faultSurface;
 
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
 import org.opensha.commons.data.Container2D;
 import org.opensha.commons.geo.Location;
 import org.opensha.commons.geo.Region;
@@ -33,6 +37,50 @@ public interface EvenlyGriddedSurface extends Container2D<Location>, RuptureSurf
 	 */
 	public Location getLocation(int row, int col);
 	
+	/**
+	 * This returns the locations that are evenly spread over the rupture surface, in row-major order.
+	 * If materialize is true, this is the same as {@link #getEvenlyDiscritizedListOfLocsOnSurface()}.
+	 * Otherwise, a read-only view backed by this surface is returned in which locations are only
+	 * retrieved as they are accessed, avoiding building a full list (which can be expensive for surfaces
+	 * using packed storage).
+	 * @param materialize
+	 * @return
+	 */
+	public default List<Location> getEvenlyDiscritizedListOfLocsOnSurface(boolean materialize) {
+		if (materialize)
+			return getEvenlyDiscritizedListOfLocsOnSurface();
+		return new LocationListView(this);
+	}
+	
+	/**
+	 * Read-only list view of the locations on an {@link EvenlyGriddedSurface}
+	 */
+	static class LocationListView extends AbstractList<Location> implements RandomAccess {
+		
+		private final EvenlyGriddedSurface surf;
+		private final int numCols;
+		private final int size;
+		
+		private LocationListView(EvenlyGriddedSurface surf) {
+			this.surf = surf;
+			this.numCols = surf.getNumCols();
+			this.size = (int)surf.size();
+		}
+
+		@Override
+		public Location get(int index) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+			return surf.get(index / numCols, index % numCols);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+		
+	}
+	
 	/**
 	 * Gets a specified row as a fault trace
 	 * @param row
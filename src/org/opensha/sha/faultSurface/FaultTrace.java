@@ -24,6 +24,7 @@ import java.util.Iterator;
 
 import org.apache.commons.io.IOUtils;
 import org.opensha.commons.data.Named;
+import org.opensha.commons.geo.GeoTools;
 import org.opensha.commons.geo.Location;
 import org.opensha.commons.geo.LocationList;
 import org.opensha.commons.geo.LocationUtils;
@@ -156,7 +157,11 @@ public class FaultTrace extends LocationList implements Named {
 	 * Calculates  minimum distance of this faultTrace from the user provided fault trace,
 	 * where the latter is resampled at discrInterval (km) for computing distances.
 	 * Returns the distance in km.
-	 * 
+	 *
+	 * Segments of this trace that can't be closer than the current minimum are
+	 * skipped, using their lat/lon extents, so results are identical to taking
+	 * the minimum of minDistToLine(...) over every resampled location.
+	 *
 	 * @param faultTrace FaultTrace from where distance needs to be calculated
 	 * @param discrInterval resampling interval (km)
 	 */
@@ -166,13 +171,61 @@ public class FaultTrace extends LocationList implements Named {
 		double dist;
 		int num = (int)(faultTrace.getTraceLength()/discrInterval) + 1;
 		FaultTrace discrFaultTrace = FaultUtils.resampleTrace(faultTrace, num);
+		int numSegs = size()-1;
+		if (numSegs < 1) {
+			for(int i=0; i<discrFaultTrace.getNumLocations(); ++i) {
+				dist = minDistToLine(discrFaultTrace.get(i));
+				if(dist<minFaultTraceDist) minFaultTraceDist = dist;
+			}
+			return minFaultTraceDist;
+		}
+		// segment extents (radians), and max absolute latitude of this trace
+		double[] segMinLats = new double[numSegs];
+		double[] segMaxLats = new double[numSegs];
+		double[] segMinLons = new double[numSegs];
+		double[] segMaxLons = new double[numSegs];
+		double maxAbsLat = 0;
+		for (int s=0; s<numSegs; s++) {
+			Location loc1 = get(s);
+			Location loc2 = get(s+1);
+			segMinLats[s] = Math.min(loc1.getLatRad(), loc2.getLatRad());
+			segMaxLats[s] = Math.max(loc1.getLatRad(), loc2.getLatRad());
+			segMinLons[s] = Math.min(loc1.getLonRad(), loc2.getLonRad());
+			segMaxLons[s] = Math.max(loc1.getLonRad(), loc2.getLonRad());
+			maxAbsLat = Math.max(maxAbsLat, Math.max(Math.abs(segMinLats[s]), Math.abs(segMaxLats[s])));
+		}
 		for(int i=0; i<discrFaultTrace.getNumLocations(); ++i) {
-			dist = minDistToLine(discrFaultTrace.get(i));
-			if(dist<minFaultTraceDist) minFaultTraceDist = dist;
+			Location loc = discrFaultTrace.get(i);
+			double lat = loc.getLatRad();
+			double lon = loc.getLonRad();
+			// distanceToLineSegmentFast scales longitude by the cosine of a weighted mean latitude, which is
+			// at least the cosine of the max absolute latitude
+			double lonScale = Math.cos(Math.max(maxAbsLat, Math.abs(lat)));
+			for (int s=0; s<numSegs; s++) {
+				// lower bound of the distance to the segment, from the extents of its end points
+				double dLat = gap(lat, segMinLats[s], segMaxLats[s]);
+				double dLon = gap(lon, segMinLons[s], segMaxLons[s]) * lonScale;
+				double bound = MIN_DIST_BOUND_SCALAR * GeoTools.EARTH_RADIUS_MEAN * Math.max(dLat, dLon);
+				if (bound > minFaultTraceDist)
+					continue;
+				dist = Math.abs(LocationUtils.distanceToLineSegmentFast(get(s), get(s+1), loc));
+				if(dist<minFaultTraceDist) minFaultTraceDist = dist;
+			}
 		}
 		return minFaultTraceDist;
 	}
 
+	// lower bounds are reduced by this fraction to guard against floating point rounding errors
+	private static final double MIN_DIST_BOUND_SCALAR = 1d - 1e-10;
+
+	private static double gap(double val, double min, double max) {
+		if (val < min)
+			return min - val;
+		if (val > max)
+			return val - max;
+		return 0d;
+	}
+
 
 //	private final static String TAB = "  ";
 //	public String toString(){
@@ -22,6 +22,7 @@ package org.opensha.sha.faultSurface;
 import java.io.Serializable;
 import java.util.Iterator;
 import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
 
 import org.opensha.commons.data.ContainerSubset2D;
 import org.opensha.commons.data.Window2D;
@@ -35,6 +36,7 @@ import org.opensha.sha.faultSurface.cache.CacheEnabledSurface;
 import org.opensha.sha.faultSurface.cache.SurfaceCachingPolicy;
 import org.opensha.sha.faultSurface.cache.SurfaceDistanceCache;
 import org.opensha.sha.faultSurface.cache.SurfaceDistances;
+import org.opensha.sha.faultSurface.utils.GriddedSurfaceTiles;
 import org.opensha.sha.faultSurface.utils.GriddedSurfaceUtils;
 
 /**
@@ -63,6 +65,9 @@ public class GriddedSubsetSurface extends ContainerSubset2D<Location>  implement
 	// create cache using default caching policy
 	private SurfaceDistanceCache cache = SurfaceCachingPolicy.build(this);
 	
+	// bounding tiles used to speed up distance calculations, built lazily
+	private transient volatile GriddedSurfaceTiles tiles;
+	
 	EvenlyGriddedSurface parentSurface;
 
 
@@ -270,10 +275,48 @@ public class GriddedSubsetSurface extends ContainerSubset2D<Location>  implement
 	
 	@Override
 	public SurfaceDistances calcDistances(Location loc) {
-		double[] dCalc = GriddedSurfaceUtils.getPropagationDistances(this, loc);
+		double[] dCalc = GriddedSurfaceUtils.getPropagationDistances(this, getDistanceTiles(), loc);
 		return new SurfaceDistances(dCalc[0], dCalc[1], dCalc[2]);
 	}
 	
+	/**
+	 * Returns the {@link GriddedSurfaceTiles} for this surface, building them if needed. They are
+	 * reset by {@link #clearCache()}, along with the cached {@link GriddedSurfaceTiles#getSurfaceProjection()}.
+	 * @return
+	 */
+	public GriddedSurfaceTiles getDistanceTiles() {
+		GriddedSurfaceTiles tiles = this.tiles;
+		if (tiles == null) {
+			tiles = new GriddedSurfaceTiles(this);
+			this.tiles = tiles;
+		}
+		return tiles;
+	}
+	
+	@Override
+	public double getQuickDistanceLowerBound(Location siteLoc) {
+		return getDistanceTiles().getDistanceRupLowerBound(siteLoc);
+	}
+	
+	@Override
+	public double getQuickDistanceJBLowerBound(Location siteLoc) {
+		double horzDist = getDistanceTiles().getHorzDistanceLowerBound(siteLoc);
+		// distances less than the grid spacing can be set to zero
+		if (horzDist < getAveGridSpacing())
+			return 0d;
+		return horzDist;
+	}
+	
+	@Override
+	public void calcDistances(LocationList sites, double[] distRup, double[] distJB,
+			double[] distSeis, double[] distX, ForkJoinPool pool) {
+		if (distRup != null || distJB != null || distSeis != null)
+			GriddedSurfaceUtils.getPropagationDistances(this, getDistanceTiles(), sites,
+					distRup, distJB, distSeis, pool);
+		if (distX != null)
+			GriddedSurfaceUtils.getDistanceX(getEvenlyDiscritizedUpperEdge(), sites, distX, pool);
+	}
+	
 	@Override
 	public double getQuickDistance(Location siteLoc) {
 		return cache.getQuickDistance(siteLoc);
@@ -346,12 +389,8 @@ public class GriddedSubsetSurface extends ContainerSubset2D<Location>  implement
 
 	@Override
 	public double getFractionOfSurfaceInRegion(Region region) {
-		double numInside=0;
-		for(Location loc: this) {
-			if(region.contains(loc))
-				numInside += 1;
-		}
-		return numInside/size();
+		return GriddedSurfaceUtils.getFractionOfSurfaceInRegion(this,
+				getDistanceTiles().getSurfaceProjection(), region);
 	}
 	
 	@Override
@@ -398,6 +437,7 @@ public class GriddedSubsetSurface extends ContainerSubset2D<Location>  implement
 	@Override
 	public void clearCache() {
 		cache.clearCache();
+		tiles = null;
 	}
 
 }
@@ -1,10 +1,13 @@
 
 package org.opensha.sha.faultSurface;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.opensha.commons.geo.Location;
 import org.opensha.commons.geo.LocationList;
 import org.opensha.commons.geo.LocationVector;
 import org.opensha.commons.geo.Region;
+import org.opensha.sha.faultSurface.utils.GriddedSurfaceUtils;
 
 /**
  * This interface defines a rupture surfaces. This does not specify how a rupture 
@@ -140,6 +143,75 @@ public interface RuptureSurface extends Surface3D {
 	 * @return
 	 */
 	public double getDistanceX(Location siteLoc);
+	
+	/**
+	 * This returns a quick lower bound of the rupture distance (km) between the site location and this
+	 * surface, which is guaranteed never to exceed the value returned by {@link #getDistanceRup(Location)}.
+	 * This is useful for cheaply ruling out surfaces which are beyond a cutoff distance. The default
+	 * implementation returns zero.
+	 * @param siteLoc
+	 * @return
+	 */
+	public default double getQuickDistanceLowerBound(Location siteLoc) {
+		return 0d;
+	}
+	
+	/**
+	 * This returns a quick lower bound of distance JB (km) between the site location and this
+	 * surface, which is guaranteed never to exceed the value returned by {@link #getDistanceJB(Location)}
+	 * (or by {@link #getDistanceSeis(Location)}). The default implementation returns zero.
+	 * @param siteLoc
+	 * @return
+	 */
+	public default double getQuickDistanceJBLowerBound(Location siteLoc) {
+		return 0d;
+	}
+	
+	/**
+	 * Batch calculation of distances between this surface and each of the given sites. Each output
+	 * array can be null if that distance isn't needed, otherwise it must be at least as long as the
+	 * site list. Results are the same as calling {@link #getDistanceRup(Location)},
+	 * {@link #getDistanceJB(Location)}, {@link #getDistanceSeis(Location)} and
+	 * {@link #getDistanceX(Location)} for each site, but implementations may be much faster
+	 * for large site lists as any distance caches are bypassed.
+	 * @param sites
+	 * @param distRup
+	 * @param distJB
+	 * @param distSeis
+	 * @param distX
+	 */
+	public default void calcDistances(LocationList sites, double[] distRup, double[] distJB,
+			double[] distSeis, double[] distX) {
+		calcDistances(sites, distRup, distJB, distSeis, distX, null);
+	}
+	
+	/**
+	 * Same as {@link #calcDistances(LocationList, double[], double[], double[], double[])}, but sites
+	 * are split into parallel tasks in the given {@link ForkJoinPool}.
+	 * @param sites
+	 * @param distRup
+	 * @param distJB
+	 * @param distSeis
+	 * @param distX
+	 * @param pool pool used to split the sites into parallel tasks, or null to calculate in
+	 * the calling thread
+	 */
+	public default void calcDistances(LocationList sites, double[] distRup, double[] distJB,
+			double[] distSeis, double[] distX, ForkJoinPool pool) {
+		GriddedSurfaceUtils.calcSiteRanges(sites.size(), (startIndex, endIndex) -> {
+			for (int s=startIndex; s<endIndex; s++) {
+				Location site = sites.get(s);
+				if (distRup != null)
+					distRup[s] = getDistanceRup(site);
+				if (distJB != null)
+					distJB[s] = getDistanceJB(site);
+				if (distSeis != null)
+					distSeis[s] = getDistanceSeis(site);
+				if (distX != null)
+					distX[s] = getDistanceX(site);
+			}
+		}, pool);
+	}
 
 	/**
 	 * Average depth (km) to top of rupture (always a positive number)
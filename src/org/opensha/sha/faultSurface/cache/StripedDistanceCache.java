@@ -0,0 +1,244 @@
+package org.opensha.sha.faultSurface.cache;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.opensha.commons.geo.Location;
+
+/**
+ * Lock free {@link SurfaceDistanceCache} implementation intended for multithreaded calculations with many
+ * surfaces. Rather than keeping separate Guava caches for each distance type (as in {@link MultiDistanceCache}),
+ * this keeps a small fixed array of slots, each holding a single immutable record of all distances calculated
+ * so far for one site location. The slot for a location is chosen from its hash code (derived from the
+ * lat/lon/depth bits), so concurrent threads working on different sites will usually use different slots
+ * and never block each other.
+ * <br><br>
+ * Cache hits never allocate, and quick distance and distance X values are stored as primitives rather than
+ * boxed. A new record is allocated only on a miss (or the first request for a new distance type at an
+ * already cached location).
+ * <br><br>
+ * Hit/miss counts are kept for each cache and also globally across all instances, which can be used to
+ * tune the {@link SurfaceCachingPolicy#SIZE_PROP} property. See {@link #getGlobalStatsStr()}.
+ */
+public class StripedDistanceCache implements SurfaceDistanceCache {
+
+	private static final LongAdder globalHits = new LongAdder();
+	private static final LongAdder globalMisses = new LongAdder();
+
+	private CacheEnabledSurface surf;
+
+	private final AtomicReferenceArray<Entry> slots;
+	private final int mask;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Immutable record of all distances calculated for a single location. Any distance type that
+	 * hasn't been calculated yet for this location has its flag set to false.
+	 */
+	private static final class Entry {
+		private final Location loc;
+		private final SurfaceDistances dists;
+		private final boolean hasQuickDist;
+		private final double quickDist;
+		private final boolean hasDistX;
+		private final double distX;
+
+		private Entry(Location loc, SurfaceDistances dists, boolean hasQuickDist, double quickDist,
+				boolean hasDistX, double distX) {
+			this.loc = loc;
+			this.dists = dists;
+			this.hasQuickDist = hasQuickDist;
+			this.quickDist = quickDist;
+			this.hasDistX = hasDistX;
+			this.distX = distX;
+		}
+
+		private boolean matches(Location loc) {
+			return this.loc == loc || this.loc.equals(loc);
+		}
+	}
+
+	/**
+	 * Create cache with (num available processors)+5 stripes.
+	 *
+	 * @param surf
+	 */
+	public StripedDistanceCache(CacheEnabledSurface surf) {
+		this(surf, Runtime.getRuntime().availableProcessors()+5);
+	}
+
+	/**
+	 * Create cache with at least the given number of stripes. The actual number of stripes will be
+	 * rounded up to twice the next power of 2 in order to reduce collisions between threads.
+	 *
+	 * @param surf
+	 * @param size
+	 */
+	public StripedDistanceCache(CacheEnabledSurface surf, int size) {
+		this.surf = surf;
+		if (size < 1)
+			size = 1;
+		int numSlots = Integer.highestOneBit(size);
+		if (numSlots < size)
+			numSlots <<= 1;
+		numSlots <<= 1;
+		slots = new AtomicReferenceArray<>(numSlots);
+		mask = numSlots-1;
+	}
+
+	private int slotIndex(Location loc) {
+		int h = loc.hashCode();
+		// spread the bits, as lat/lon values on a regular grid often differ only in the upper bits
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h & mask;
+	}
+
+	private void hit() {
+		hits.increment();
+		globalHits.increment();
+	}
+
+	private void miss() {
+		misses.increment();
+		globalMisses.increment();
+	}
+
+	@Override
+	public SurfaceDistances getSurfaceDistances(Location loc) {
+		int index = slotIndex(loc);
+		Entry entry = slots.get(index);
+		if (entry != null && entry.dists != null && entry.matches(loc)) {
+			hit();
+			return entry.dists;
+		}
+		miss();
+		SurfaceDistances dists = surf.calcDistances(loc);
+		if (entry != null && entry.matches(loc))
+			slots.lazySet(index, new Entry(entry.loc, dists, entry.hasQuickDist, entry.quickDist,
+					entry.hasDistX, entry.distX));
+		else
+			slots.lazySet(index, new Entry(loc, dists, false, Double.NaN, false, Double.NaN));
+		return dists;
+	}
+
+	@Override
+	public double getQuickDistance(Location loc) {
+		int index = slotIndex(loc);
+		Entry entry = slots.get(index);
+		if (entry != null && entry.hasQuickDist && entry.matches(loc)) {
+			hit();
+			return entry.quickDist;
+		}
+		miss();
+		double quickDist = surf.calcQuickDistance(loc);
+		if (entry != null && entry.matches(loc))
+			slots.lazySet(index, new Entry(entry.loc, entry.dists, true, quickDist,
+					entry.hasDistX, entry.distX));
+		else
+			slots.lazySet(index, new Entry(loc, null, true, quickDist, false, Double.NaN));
+		return quickDist;
+	}
+
+	@Override
+	public double getDistanceX(Location loc) {
+		int index = slotIndex(loc);
+		Entry entry = slots.get(index);
+		if (entry != null && entry.hasDistX && entry.matches(loc)) {
+			hit();
+			return entry.distX;
+		}
+		miss();
+		double distX = surf.calcDistanceX(loc);
+		if (entry != null && entry.matches(loc))
+			slots.lazySet(index, new Entry(entry.loc, entry.dists, entry.hasQuickDist, entry.quickDist,
+					true, distX));
+		else
+			slots.lazySet(index, new Entry(loc, null, false, Double.NaN, true, distX));
+		return distX;
+	}
+
+	@Override
+	public void clearCache() {
+		for (int i=0; i<slots.length(); i++)
+			slots.set(i, null);
+	}
+
+	/**
+	 * @return number of stripes (slots) in this cache
+	 */
+	public int getNumStripes() {
+		return slots.length();
+	}
+
+	/**
+	 * @return number of cache hits for this cache
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of cache misses for this cache
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return fraction of requests to this cache which were hits, or NaN if no requests have been made
+	 */
+	public double getHitRate() {
+		return calcHitRate(getHitCount(), getMissCount());
+	}
+
+	/**
+	 * @return number of cache hits across all {@link StripedDistanceCache} instances
+	 */
+	public static long getGlobalHitCount() {
+		return globalHits.sum();
+	}
+
+	/**
+	 * @return number of cache misses across all {@link StripedDistanceCache} instances
+	 */
+	public static long getGlobalMissCount() {
+		return globalMisses.sum();
+	}
+
+	/**
+	 * @return fraction of requests across all {@link StripedDistanceCache} instances which were hits,
+	 * or NaN if no requests have been made
+	 */
+	public static double getGlobalHitRate() {
+		return calcHitRate(getGlobalHitCount(), getGlobalMissCount());
+	}
+
+	/**
+	 * Resets the global hit/miss counters.
+	 */
+	public static void resetGlobalStats() {
+		globalHits.reset();
+		globalMisses.reset();
+	}
+
+	/**
+	 * @return string representation of global hit/miss statistics
+	 */
+	public static String getGlobalStatsStr() {
+		long hits = getGlobalHitCount();
+		long misses = getGlobalMissCount();
+		return "hits="+hits+", misses="+misses+", hitRate="+(float)calcHitRate(hits, misses);
+	}
+
+	private static double calcHitRate(long hits, long misses) {
+		long tot = hits + misses;
+		if (tot == 0)
+			return Double.NaN;
+		return (double)hits/(double)tot;
+	}
+
+}
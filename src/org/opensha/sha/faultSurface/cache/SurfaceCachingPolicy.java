@@ -26,12 +26,15 @@ public final class SurfaceCachingPolicy {
 		SINGLE,
 		MULTI,
 		HYBRID,
+		STRIPED,
 		DISABLED
 	}
 	private static CacheTypes force = null;
 	
 	/**
 	 * This property sets the default cache size. It defaults to <i>Runtime.getRuntime().availableProcessors()+5</i>.
+	 * For {@link StripedDistanceCache}'s, this is the minimum number of stripes, and can be tuned using the
+	 * hit rate reported by {@link StripedDistanceCache#getGlobalStatsStr()}.
 	 */
 	public static final String SIZE_PROP = "dist.cache.size";
 	private static int size = Runtime.getRuntime().availableProcessors()+5;
@@ -88,6 +91,8 @@ public final class SurfaceCachingPolicy {
 				return new MultiDistanceCache(surf, size, expirationTime, expirationUnit);
 			case HYBRID:
 				return new HybridDistanceCache(surf, size, expirationTime, expirationUnit);
+			case STRIPED:
+				return new StripedDistanceCache(surf, size);
 			case DISABLED:
 				return new DisabledDistanceCache(surf);
 
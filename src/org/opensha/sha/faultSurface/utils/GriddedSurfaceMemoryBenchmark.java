@@ -0,0 +1,71 @@
+package org.opensha.sha.faultSurface.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opensha.commons.geo.Location;
+import org.opensha.sha.faultSurface.AbstractEvenlyGriddedSurface;
+import org.opensha.sha.faultSurface.FaultTrace;
+import org.opensha.sha.faultSurface.StirlingGriddedSurface;
+
+/**
+ * Rough benchmark of the memory used per grid node by {@link AbstractEvenlyGriddedSurface}'s with and
+ * without packed storage (see {@link AbstractEvenlyGriddedSurface#setPackedStorage(boolean)}). Heap
+ * usage is measured before and after building a large number of {@link StirlingGriddedSurface}'s.
+ * <br><br>
+ * Run with a fixed heap size and the serial collector (e.g. -Xms4G -Xmx4G -XX:+UseSerialGC) for more
+ * stable results.
+ */
+public class GriddedSurfaceMemoryBenchmark {
+
+	private static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		long min = Long.MAX_VALUE;
+		for (int i=0; i<5; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {}
+			min = Long.min(min, rt.totalMemory() - rt.freeMemory());
+		}
+		return min;
+	}
+
+	private static double benchmark(boolean packed, int numSurfs) {
+		AbstractEvenlyGriddedSurface.setPackedStorageDefault(packed);
+		List<StirlingGriddedSurface> surfs = new ArrayList<>();
+		long before = usedMemory();
+		long numNodes = 0;
+		for (int i=0; i<numSurfs; i++) {
+			double lat = 34 + 0.001*i;
+			FaultTrace trace = new FaultTrace("bench");
+			trace.add(new Location(lat, -118));
+			trace.add(new Location(lat+0.2, -117.7));
+			trace.add(new Location(lat+0.3, -117.3));
+			StirlingGriddedSurface surf = new StirlingGriddedSurface(trace, 60, 0, 15, 1d);
+			numNodes += surf.size();
+			surfs.add(surf);
+		}
+		long after = usedMemory();
+		double bytesPerNode = (double)(after - before)/(double)numNodes;
+		System.out.println((packed ? "Packed" : "Location objects")+": "+numSurfs+" surfaces, "
+				+numNodes+" nodes, "+(float)bytesPerNode+" bytes/node");
+		// keep the surfaces reachable until after measurement
+		if (surfs.size() != numSurfs)
+			throw new IllegalStateException();
+		return bytesPerNode;
+	}
+
+	public static void main(String[] args) {
+		int numSurfs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		boolean prevDefault = AbstractEvenlyGriddedSurface.isPackedStorageDefault();
+		// warm up
+		benchmark(false, 100);
+		benchmark(true, 100);
+		double unpacked = benchmark(false, numSurfs);
+		double packed = benchmark(true, numSurfs);
+		System.out.println("Packed storage uses "+(float)(100d*packed/unpacked)+" % of the memory per node");
+		AbstractEvenlyGriddedSurface.setPackedStorageDefault(prevDefault);
+	}
+
+}
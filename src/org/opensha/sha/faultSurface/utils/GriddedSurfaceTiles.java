@@ -0,0 +1,340 @@
+package org.opensha.sha.faultSurface.utils;
+
+import static org.opensha.commons.geo.GeoTools.EARTH_RADIUS_MEAN;
+import static org.opensha.sha.faultSurface.utils.GriddedSurfaceUtils.SEIS_DEPTH;
+
+import org.opensha.commons.geo.Location;
+import org.opensha.sha.faultSurface.EvenlyGriddedSurface;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+/**
+ * Bounding volume hierarchy over the grid nodes of an {@link EvenlyGriddedSurface}, used to speed up
+ * distance calculations. Nodes are grouped into rectangular row/column tiles, and the lat/lon/depth
+ * extents of each tile (and of the whole surface) are stored. A distance query first scans the tile with
+ * the smallest lower bound and then only scans other tiles that could possibly beat the current minimum,
+ * which makes calculations for sites that are far from the surface (or near only one part of it) much
+ * faster than a brute force scan over every node.
+ * <br><br>
+ * Node positions are stored in flat primitive arrays (in radians), ordered tile by tile. Distances are
+ * calculated with the same formulas as {@link GriddedSurfaceUtils#getPropagationDistances(EvenlyGriddedSurface,
+ * Location)} and tiles are only skipped when their lower bound is strictly greater than the current
+ * minimum, so results are identical to the brute force calculation. As with that method, only the top row
+ * is used for surfaces with dips greater than 89 degrees.
+ * <br><br>
+ * The {@link SurfaceProjection} used to check whether small distance JB values should be zero is also
+ * built lazily and cached here.
+ * <br><br>
+ * Instances are immutable and thread safe, but must be rebuilt if the surface is modified.
+ */
+public class GriddedSurfaceTiles {
+
+	/**
+	 * Default number of rows and columns in each tile
+	 */
+	public static final int DEFAULT_TILE_SIZE = 8;
+
+	// lower bounds are reduced by this fraction to guard against floating point rounding errors
+	private static final double LOWER_BOUND_SCALAR = 1d - 1e-10;
+
+	private final int numNodes;
+	private final double[] nodeLats;
+	private final double[] nodeLons;
+	private final double[] nodeDepths;
+	private final boolean[] nodeSeis;
+	private final boolean projectToDepth;
+
+	private final int numTiles;
+	// node index range for each tile is [tileStarts[i], tileStarts[i+1])
+	private final int[] tileStarts;
+	private final double[] tileMinLats, tileMaxLats;
+	private final double[] tileMinLons, tileMaxLons;
+	private final double[] tileMinDepths, tileMaxDepths;
+
+	private double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+	private double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+	private double minDepth = Double.POSITIVE_INFINITY, maxDepth = Double.NEGATIVE_INFINITY;
+
+	// surface projection, only built if needed
+	private final Supplier<SurfaceProjection> projection;
+
+	/**
+	 * Builds tiles with the default tile size
+	 * @param surface
+	 */
+	public GriddedSurfaceTiles(EvenlyGriddedSurface surface) {
+		this(surface, DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * Builds tiles with the given number of rows and columns in each tile
+	 * @param surface
+	 * @param tileSize
+	 */
+	public GriddedSurfaceTiles(EvenlyGriddedSurface surface, int tileSize) {
+		Preconditions.checkArgument(tileSize > 0, "Tile size must be positive");
+		int numRows = surface.getNumRows();
+		int numCols = surface.getNumCols();
+		Preconditions.checkState(numRows > 0 && numCols > 0, "Surface is empty");
+		projection = Suppliers.memoize(() -> new SurfaceProjection(surface));
+
+		// flag to project to seisDepth if only one row and depth is below seisDepth
+		boolean project = numRows == 1 && surface.getLocation(0,0).getDepth() < SEIS_DEPTH;
+
+		// only use the top row for vertical surfaces, as is done in GriddedSurfaceUtils
+		boolean topRowOnly;
+		try {
+			topRowOnly = surface.getAveDip() > 89;
+		} catch (RuntimeException e) {
+			// some surfaces can't compute dip, just use the full surface
+			topRowOnly = false;
+		}
+		if (topRowOnly) {
+			numRows = 1;
+			if (surface.getLocation(0,0).getDepth() < SEIS_DEPTH)
+				project = true;
+		}
+		this.projectToDepth = project;
+
+		numNodes = numRows*numCols;
+		nodeLats = new double[numNodes];
+		nodeLons = new double[numNodes];
+		nodeDepths = new double[numNodes];
+		nodeSeis = new boolean[numNodes];
+
+		int numTileRows = (numRows + tileSize - 1)/tileSize;
+		int numTileCols = (numCols + tileSize - 1)/tileSize;
+		numTiles = numTileRows*numTileCols;
+		tileStarts = new int[numTiles+1];
+		tileMinLats = new double[numTiles];
+		tileMaxLats = new double[numTiles];
+		tileMinLons = new double[numTiles];
+		tileMaxLons = new double[numTiles];
+		tileMinDepths = new double[numTiles];
+		tileMaxDepths = new double[numTiles];
+
+		int nodeIndex = 0;
+		int tileIndex = 0;
+		for (int tileRow=0; tileRow<numTileRows; tileRow++) {
+			int startRow = tileRow*tileSize;
+			int endRow = Integer.min(numRows, startRow+tileSize);
+			for (int tileCol=0; tileCol<numTileCols; tileCol++) {
+				int startCol = tileCol*tileSize;
+				int endCol = Integer.min(numCols, startCol+tileSize);
+				tileStarts[tileIndex] = nodeIndex;
+				double tMinLat = Double.POSITIVE_INFINITY, tMaxLat = Double.NEGATIVE_INFINITY;
+				double tMinLon = Double.POSITIVE_INFINITY, tMaxLon = Double.NEGATIVE_INFINITY;
+				double tMinDepth = Double.POSITIVE_INFINITY, tMaxDepth = Double.NEGATIVE_INFINITY;
+				for (int row=startRow; row<endRow; row++) {
+					for (int col=startCol; col<endCol; col++) {
+						Location loc = surface.get(row, col);
+						double lat = loc.getLatRad();
+						double lon = loc.getLonRad();
+						double depth = loc.getDepth();
+						nodeLats[nodeIndex] = lat;
+						nodeLons[nodeIndex] = lon;
+						nodeDepths[nodeIndex] = depth;
+						nodeSeis[nodeIndex] = depth >= SEIS_DEPTH;
+						nodeIndex++;
+						tMinLat = Math.min(tMinLat, lat);
+						tMaxLat = Math.max(tMaxLat, lat);
+						tMinLon = Math.min(tMinLon, lon);
+						tMaxLon = Math.max(tMaxLon, lon);
+						tMinDepth = Math.min(tMinDepth, depth);
+						tMaxDepth = Math.max(tMaxDepth, depth);
+					}
+				}
+				tileMinLats[tileIndex] = tMinLat;
+				tileMaxLats[tileIndex] = tMaxLat;
+				tileMinLons[tileIndex] = tMinLon;
+				tileMaxLons[tileIndex] = tMaxLon;
+				tileMinDepths[tileIndex] = tMinDepth;
+				tileMaxDepths[tileIndex] = tMaxDepth;
+				minLat = Math.min(minLat, tMinLat);
+				maxLat = Math.max(maxLat, tMaxLat);
+				minLon = Math.min(minLon, tMinLon);
+				maxLon = Math.max(maxLon, tMaxLon);
+				minDepth = Math.min(minDepth, tMinDepth);
+				maxDepth = Math.max(maxDepth, tMaxDepth);
+				tileIndex++;
+			}
+		}
+		tileStarts[numTiles] = nodeIndex;
+	}
+
+	/**
+	 * @return the number of tiles
+	 */
+	public int getNumTiles() {
+		return numTiles;
+	}
+
+	/**
+	 * @return the number of grid nodes used for distance calculations
+	 */
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	/**
+	 * Returns the {@link SurfaceProjection} of this surface, which is built on the first call and shared
+	 * by all threads
+	 * @return
+	 */
+	public SurfaceProjection getSurfaceProjection() {
+		return projection.get();
+	}
+
+	private static double intervalDist(double val, double min, double max) {
+		if (val < min)
+			return min - val;
+		if (val > max)
+			return val - max;
+		return 0d;
+	}
+
+	/*
+	 * Lower bound of LocationUtils.horzDistanceFast between the given site (lat/lon in radians) and any point
+	 * within the given extents. Latitude and longitude differences are each minimized independently, and the
+	 * longitude scale factor is the minimum cosine of the mean latitude, which (as cosine is concave over
+	 * [-pi/2, pi/2]) lies at one of the end points.
+	 */
+	private static double horzLowerBound(double lat, double lon, double minLat, double maxLat,
+			double minLon, double maxLon) {
+		double dLat = intervalDist(lat, minLat, maxLat);
+		double cos = Math.min(Math.cos((lat + minLat) * 0.5), Math.cos((lat + maxLat) * 0.5));
+		double dLon = intervalDist(lon, minLon, maxLon) * cos;
+		return LOWER_BOUND_SCALAR * EARTH_RADIUS_MEAN * Math.sqrt((dLat * dLat) + (dLon * dLon));
+	}
+
+	/**
+	 * Returns a lower bound of the horizontal distance (and thus also distance JB before any check for
+	 * sites within the surface projection) between the given site and this surface. This is very cheap to
+	 * compute and is guaranteed never to exceed the true value.
+	 * @param loc
+	 * @return
+	 */
+	public double getHorzDistanceLowerBound(Location loc) {
+		return horzLowerBound(loc.getLatRad(), loc.getLonRad(), minLat, maxLat, minLon, maxLon);
+	}
+
+	/**
+	 * Returns a lower bound of the rupture distance between the given site and this surface. This is very
+	 * cheap to compute and is guaranteed never to exceed the true value.
+	 * @param loc
+	 * @return
+	 */
+	public double getDistanceRupLowerBound(Location loc) {
+		double horz = getHorzDistanceLowerBound(loc);
+		double vert = LOWER_BOUND_SCALAR * intervalDist(loc.getDepth(), minDepth, maxDepth);
+		return Math.sqrt(horz * horz + vert * vert);
+	}
+
+	/**
+	 * Calculates rupture distance, the minimum horizontal distance, and seismogenic distance between the given
+	 * site and this surface, returned in elements 0, 1, and 2 respectively. Note that no check is done to
+	 * determine if horizontal distances smaller than the grid spacing should actually be zero (see
+	 * {@link GriddedSurfaceUtils#getPropagationDistances(EvenlyGriddedSurface, GriddedSurfaceTiles, Location)}).
+	 * @param loc
+	 * @return
+	 */
+	public double[] calcDistances(Location loc) {
+		double[] result = new double[3];
+		calcDistances(loc, result);
+		return result;
+	}
+
+	/**
+	 * Calculates rupture distance, the minimum horizontal distance, and seismogenic distance between the given
+	 * site and this surface, and stores them in elements 0, 1, and 2 of the given array respectively.
+	 * @param loc
+	 * @param result
+	 */
+	public void calcDistances(Location loc, double[] result) {
+		double siteLat = loc.getLatRad();
+		double siteLon = loc.getLonRad();
+		double siteDepth = loc.getDepth();
+
+		double[] mins = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+
+		// first scan the tile that is most likely to be closest
+		int bestTile = 0;
+		if (numTiles > 1) {
+			double bestBound = Double.POSITIVE_INFINITY;
+			for (int t=0; t<numTiles; t++) {
+				double bound = tileRupDistSqLowerBound(t, siteLat, siteLon, siteDepth);
+				if (bound < bestBound) {
+					bestBound = bound;
+					bestTile = t;
+				}
+			}
+		}
+		scanTile(bestTile, siteLat, siteLon, siteDepth, mins);
+
+		// now scan any other tiles which could beat the current minimum
+		for (int t=0; t<numTiles; t++) {
+			if (t == bestTile)
+				continue;
+			double horz = horzLowerBound(siteLat, siteLon, tileMinLats[t], tileMaxLats[t],
+					tileMinLons[t], tileMaxLons[t]);
+			if (horz >= mins[1]) {
+				// can't beat the horizontal distance, see if it can beat either of the others
+				double horzSq = horz * horz;
+				if (horzSq >= mins[0] && horzSq >= mins[2])
+					// no need to check depth, as the horizontal bound is also a bound for both
+					continue;
+				double vert = LOWER_BOUND_SCALAR * intervalDist(siteDepth, tileMinDepths[t], tileMaxDepths[t]);
+				double rupSq = horzSq + vert * vert;
+				double seisSq = projectToDepth ? horzSq : rupSq;
+				if (rupSq >= mins[0] && seisSq >= mins[2])
+					continue;
+			}
+			scanTile(t, siteLat, siteLon, siteDepth, mins);
+		}
+
+		result[0] = Math.pow(mins[0], 0.5);
+		result[1] = mins[1];
+		result[2] = Math.pow(mins[2], 0.5);
+	}
+
+	private double tileRupDistSqLowerBound(int t, double siteLat, double siteLon, double siteDepth) {
+		double horz = horzLowerBound(siteLat, siteLon, tileMinLats[t], tileMaxLats[t],
+				tileMinLons[t], tileMaxLons[t]);
+		double vert = intervalDist(siteDepth, tileMinDepths[t], tileMaxDepths[t]);
+		return horz * horz + vert * vert;
+	}
+
+	/*
+	 * mins array contains squared rupture distance, horizontal distance, and squared seismogenic distance
+	 */
+	private void scanTile(int t, double siteLat, double siteLon, double siteDepth, double[] mins) {
+		double minRupDistSq = mins[0];
+		double minHorzDist = mins[1];
+		double minSeisDistSq = mins[2];
+		int end = tileStarts[t+1];
+		for (int i=tileStarts[t]; i<end; i++) {
+			// same as LocationUtils.horzDistanceFast and vertDistance, inlined
+			double dLat = siteLat - nodeLats[i];
+			double dLon = (siteLon - nodeLons[i]) * Math.cos((siteLat + nodeLats[i]) * 0.5);
+			double horzDist = EARTH_RADIUS_MEAN * Math.sqrt((dLat * dLat) + (dLon * dLon));
+			double vertDist = nodeDepths[i] - siteDepth;
+
+			if (horzDist < minHorzDist) minHorzDist = horzDist;
+			double rupDistSq = horzDist * horzDist + vertDist * vertDist;
+			if (rupDistSq < minRupDistSq) minRupDistSq = rupDistSq;
+			if (nodeSeis[i]) {
+				if (rupDistSq < minSeisDistSq) minSeisDistSq = rupDistSq;
+			} else if (projectToDepth) {
+				// take care of shallow line or point source case
+				double projDistSq = horzDist * horzDist + SEIS_DEPTH * SEIS_DEPTH;
+				if (projDistSq < minSeisDistSq) minSeisDistSq = projDistSq;
+			}
+		}
+		mins[0] = minRupDistSq;
+		mins[1] = minHorzDist;
+		mins[2] = minSeisDistSq;
+	}
+
+}
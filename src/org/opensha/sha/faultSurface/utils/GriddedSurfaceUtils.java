@@ -4,9 +4,11 @@ import java.awt.Color;
 import java.awt.geom.Area;
 import java.awt.geom.Path2D;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import org.opensha.commons.geo.BorderType;
 import org.opensha.commons.geo.Location;
@@ -112,19 +114,7 @@ public class GriddedSurfaceUtils {
 		
 		// Check whether small values of distJB should really be zero
 		if(distJB <surface.getAveGridSpacing()) { // check this first since the next steps could take time
-			
-			// first identify whether it's a frankel type surface
-			boolean frankelTypeSurface=false;
-			if(surface instanceof FrankelGriddedSurface) {
-				frankelTypeSurface = true;
-			}
-			else if(surface instanceof GriddedSubsetSurface) {
-				if(((GriddedSubsetSurface)surface).getParentSurface() instanceof FrankelGriddedSurface) {
-					frankelTypeSurface = true;
-				}
-			}
-					
-			if (frankelTypeSurface) {
+			if (isFrankelTypeSurface(surface)) {
 				if (isDjbZeroFrankel(surface, distJB)) distJB = 0;
 			} else {
 				if (isDjbZero(surface.getPerimeter(), loc)) distJB = 0;
@@ -137,6 +127,152 @@ public class GriddedSurfaceUtils {
 
 	}
 	
+	private static boolean isFrankelTypeSurface(EvenlyGriddedSurface surface) {
+		if(surface instanceof FrankelGriddedSurface)
+			return true;
+		if(surface instanceof GriddedSubsetSurface)
+			return ((GriddedSubsetSurface)surface).getParentSurface() instanceof FrankelGriddedSurface;
+		return false;
+	}
+	
+	/**
+	 * Minimum number of sites handled by each parallel task in batch distance calculations
+	 */
+	private static final int BATCH_SITES_PER_TASK = 64;
+	
+	/**
+	 * Calculates a range of sites, from startIndex (inclusive) to endIndex (exclusive)
+	 */
+	public interface SiteRangeCalculator {
+		public void calc(int startIndex, int endIndex);
+	}
+	
+	/**
+	 * Splits the given number of sites into chunks and passes each to the given calculator, either
+	 * in the calling thread (if pool is null) or in parallel in the given {@link ForkJoinPool}.
+	 * @param numSites
+	 * @param calc
+	 * @param pool
+	 */
+	public static void calcSiteRanges(int numSites, SiteRangeCalculator calc, ForkJoinPool pool) {
+		if (pool == null || numSites <= BATCH_SITES_PER_TASK) {
+			calc.calc(0, numSites);
+			return;
+		}
+		int numTasks = Integer.min(pool.getParallelism()*4,
+				(numSites + BATCH_SITES_PER_TASK - 1)/BATCH_SITES_PER_TASK);
+		int sitesPerTask = (numSites + numTasks - 1)/numTasks;
+		pool.submit(() -> IntStream.range(0, numTasks).parallel().forEach(t -> {
+			int start = t*sitesPerTask;
+			int end = Integer.min(numSites, start+sitesPerTask);
+			if (start < end)
+				calc.calc(start, end);
+		})).join();
+	}
+	
+	/**
+	 * This computes distRup, distJB, & distSeis, which are available in the returned
+	 * array in elements 0, 1, and 2 respectively. This uses the given {@link GriddedSurfaceTiles}
+	 * (which must have been built for this surface) to avoid scanning parts of the surface that can't
+	 * be the closest to the site, and returns the same result as
+	 * {@link #getPropagationDistances(EvenlyGriddedSurface, Location)}.
+	 * @param surface
+	 * @param tiles
+	 * @param loc
+	 * @return
+	 */
+	public static double[] getPropagationDistances(EvenlyGriddedSurface surface, GriddedSurfaceTiles tiles,
+			Location loc) {
+		double[] results = tiles.calcDistances(loc);
+		// Check whether small values of distJB should really be zero
+		if (results[1] < surface.getAveGridSpacing()) {
+			if (isFrankelTypeSurface(surface)) {
+				if (isDjbZeroFrankel(surface, results[1])) results[1] = 0;
+			} else {
+				if (tiles.getSurfaceProjection().contains(loc)) results[1] = 0;
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Batch version of {@link #getPropagationDistances(EvenlyGriddedSurface, GriddedSurfaceTiles, Location)}.
+	 * The surface perimeter polygon used to check if distJB should be zero is cached in the tiles and
+	 * only built once, if needed.
+	 * Results are identical to the single site version.
+	 * @param surface
+	 * @param tiles tiles built for this surface
+	 * @param sites
+	 * @param distRup array to be filled with rupture distances, or null if not needed
+	 * @param distJB array to be filled with Joyner-Boore distances, or null if not needed
+	 * @param distSeis array to be filled with seismogenic distances, or null if not needed
+	 * @param pool pool used to split the sites into parallel tasks, or null to calculate in
+	 * the calling thread
+	 */
+	public static void getPropagationDistances(EvenlyGriddedSurface surface, GriddedSurfaceTiles tiles,
+			LocationList sites, double[] distRup, double[] distJB, double[] distSeis, ForkJoinPool pool) {
+		int numSites = sites.size();
+		checkBatchArray(distRup, numSites);
+		checkBatchArray(distJB, numSites);
+		checkBatchArray(distSeis, numSites);
+		
+		final double gridSpacing = surface.getAveGridSpacing();
+		final boolean frankelType = isFrankelTypeSurface(surface);
+		calcSiteRanges(numSites, (startIndex, endIndex) -> {
+			double[] dists = new double[3];
+			for (int s=startIndex; s<endIndex; s++) {
+				Location site = sites.get(s);
+				tiles.calcDistances(site, dists);
+				if (distJB != null) {
+					double minHorzDist = dists[1];
+					if (minHorzDist < gridSpacing) {
+						if (frankelType) {
+							if (isDjbZeroFrankel(surface, minHorzDist)) minHorzDist = 0;
+						} else {
+							if (tiles.getSurfaceProjection().contains(site)) minHorzDist = 0;
+						}
+					}
+					distJB[s] = minHorzDist;
+				}
+				if (distRup != null)
+					distRup[s] = dists[0];
+				if (distSeis != null)
+					distSeis[s] = dists[2];
+			}
+		}, pool);
+	}
+
+	private static void checkBatchArray(double[] array, int numSites) {
+		Preconditions.checkArgument(array == null || array.length >= numSites,
+				"Output array length (%s) is less than the number of sites (%s)",
+				array == null ? 0 : array.length, numSites);
+	}
+
+	/**
+	 * Computes the fraction of grid nodes of the given surface that are inside the given region. The
+	 * {@link SurfaceProjection} is used to skip the per node test when no node can be inside the region, or
+	 * when a rectangular region encloses every node. Results are identical to testing each node.
+	 * @param surface
+	 * @param projection projection built for this surface
+	 * @param region
+	 * @return
+	 */
+	public static double getFractionOfSurfaceInRegion(EvenlyGriddedSurface surface,
+			SurfaceProjection projection, Region region) {
+		if (projection.isOutside(region))
+			return 0d;
+		if (projection.isInside(region))
+			return 1d;
+		int numRows = surface.getNumRows();
+		int numCols = surface.getNumCols();
+		double numInside = 0;
+		for (int row=0; row<numRows; row++)
+			for (int col=0; col<numCols; col++)
+				if (region.contains(surface.get(row, col)))
+					numInside += 1;
+		return numInside/(numRows*numCols);
+	}
+
 	/**
 	 * This computes distanceX
 	 * @param surface
@@ -152,86 +288,125 @@ public class GriddedSurfaceUtils {
 			distanceX = 0;
 		}
 		else {
-			// We should probably set something here here too if it's vertical strike-slip
-			// (to avoid unnecessary calculations)
+			LocationList locsForExtendedTrace = new LocationList();
+			Region polygon = buildDistanceXRegion(trace, locsForExtendedTrace);
+			distanceX = getDistanceX(locsForExtendedTrace, polygon, siteLoc);
+		}
+		
+		return distanceX;
+	}
+	
+	/**
+	 * Batch version of {@link #getDistanceX(FaultTrace, Location)}. The extended trace and hanging
+	 * wall polygon are only built once for all sites.
+	 * @param trace
+	 * @param sites
+	 * @param distX array to be filled with distance X values
+	 * @param pool pool used to split the sites into parallel tasks, or null to calculate in
+	 * the calling thread
+	 */
+	public static void getDistanceX(FaultTrace trace, LocationList sites, double[] distX, ForkJoinPool pool) {
+		int numSites = sites.size();
+		checkBatchArray(distX, numSites);
+		if (trace.size() == 1) {
+			Arrays.fill(distX, 0, numSites, 0d);
+			return;
+		}
+		LocationList locsForExtendedTrace = new LocationList();
+		Region polygon = buildDistanceXRegion(trace, locsForExtendedTrace);
+		calcSiteRanges(numSites, (startIndex, endIndex) -> {
+			for (int s=startIndex; s<endIndex; s++)
+				distX[s] = getDistanceX(locsForExtendedTrace, polygon, sites.get(s));
+		}, pool);
+	}
+	
+	private static double getDistanceX(LocationList locsForExtendedTrace, Region polygon, Location siteLoc) {
+		boolean isInside = polygon.contains(siteLoc);
 
-				// get points projected off the ends
-				Location firstTraceLoc = trace.get(0); 						// first trace point
-				Location lastTraceLoc = trace.get(trace.size()-1); 	// last trace point
+		double distToExtendedTrace = locsForExtendedTrace.minDistToLine(siteLoc);
 
-				// get point projected from first trace point in opposite direction of the ave trace
-				LocationVector dir = LocationUtils.vector(lastTraceLoc, firstTraceLoc); 		
-				dir.setHorzDistance(1000); // project to 1000 km
-				dir.setVertDistance(0d);
-				Location projectedLoc1 = LocationUtils.location(firstTraceLoc, dir);
+		if(isInside || distToExtendedTrace == 0.0) // zero values are always on the hanging wall
+			return distToExtendedTrace;
+		return -distToExtendedTrace;
+	}
+	
+	/**
+	 * Builds the hanging wall polygon used for distance X calculations, and populates the given
+	 * list with the trace extended 1000 km off of each end.
+	 * @param trace
+	 * @param locsForExtendedTrace
+	 * @return
+	 */
+	private static Region buildDistanceXRegion(FaultTrace trace, LocationList locsForExtendedTrace) {
+		// We should probably set something here here too if it's vertical strike-slip
+		// (to avoid unnecessary calculations)
 
+		// get points projected off the ends
+		Location firstTraceLoc = trace.get(0); 						// first trace point
+		Location lastTraceLoc = trace.get(trace.size()-1); 	// last trace point
 
-				// get point projected from last trace point in ave trace direction
-				dir.setAzimuth(dir.getAzimuth()+180);  // flip to ave trace dir
-				Location projectedLoc2 = LocationUtils.location(lastTraceLoc, dir);
-				// point down dip by adding 90 degrees to the azimuth
-				dir.setAzimuth(dir.getAzimuth()+90);  // now point down dip
+		// get point projected from first trace point in opposite direction of the ave trace
+		LocationVector dir = LocationUtils.vector(lastTraceLoc, firstTraceLoc); 		
+		dir.setHorzDistance(1000); // project to 1000 km
+		dir.setVertDistance(0d);
+		Location projectedLoc1 = LocationUtils.location(firstTraceLoc, dir);
 
-				// get points projected in the down dip directions at the ends of the new trace
-				Location projectedLoc3 = LocationUtils.location(projectedLoc1, dir);
 
-				Location projectedLoc4 = LocationUtils.location(projectedLoc2, dir);
+		// get point projected from last trace point in ave trace direction
+		dir.setAzimuth(dir.getAzimuth()+180);  // flip to ave trace dir
+		Location projectedLoc2 = LocationUtils.location(lastTraceLoc, dir);
+		// point down dip by adding 90 degrees to the azimuth
+		dir.setAzimuth(dir.getAzimuth()+90);  // now point down dip
 
-				LocationList locsForExtendedTrace = new LocationList();
-				LocationList locsForRegion = new LocationList();
+		// get points projected in the down dip directions at the ends of the new trace
+		Location projectedLoc3 = LocationUtils.location(projectedLoc1, dir);
 
-				locsForExtendedTrace.add(projectedLoc1);
-				locsForRegion.add(projectedLoc1);
-				for(int c=0; c<trace.size(); c++) {
-					locsForExtendedTrace.add(trace.get(c));
-					locsForRegion.add(trace.get(c));     	
-				}
-				locsForExtendedTrace.add(projectedLoc2);
-				locsForRegion.add(projectedLoc2);
-
-				// finish the region
-				locsForRegion.add(projectedLoc4);
-				locsForRegion.add(projectedLoc3);
-
-				// write these out if in debug mode
-				if(D) {
-					System.out.println("Projected Trace:");
-					for(int l=0; l<locsForExtendedTrace.size(); l++) {
-						Location loc = locsForExtendedTrace.get(l);
-						System.out.println(loc.getLatitude()+"\t"+ loc.getLongitude()+"\t"+ loc.getDepth());
-					}
-					System.out.println("Region:");
-					for(int l=0; l<locsForRegion.size(); l++) {
-						Location loc = locsForRegion.get(l);
-						System.out.println(loc.getLatitude()+"\t"+ loc.getLongitude()+"\t"+ loc.getDepth());
-					}
-				}
+		Location projectedLoc4 = LocationUtils.location(projectedLoc2, dir);
 
-				Region polygon=null;
-				try {
-					polygon = new Region(locsForRegion, BorderType.MERCATOR_LINEAR);
-				} catch (Exception e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-					System.out.println("==== trace  ====");
-					System.out.println(trace);
-//					RegionUtils.locListToKML(trace, "distX_trace", Color.ORANGE);
-					System.out.println("==== region ====");
-					System.out.println(locsForRegion);
-//					RegionUtils.locListToKML(locsForRegion, "distX_region", Color.RED);
-					System.exit(0);
-				}
-				boolean isInside = polygon.contains(siteLoc);
+		LocationList locsForRegion = new LocationList();
 
-				double distToExtendedTrace = locsForExtendedTrace.minDistToLine(siteLoc);
+		locsForExtendedTrace.add(projectedLoc1);
+		locsForRegion.add(projectedLoc1);
+		for(int c=0; c<trace.size(); c++) {
+			locsForExtendedTrace.add(trace.get(c));
+			locsForRegion.add(trace.get(c));     	
+		}
+		locsForExtendedTrace.add(projectedLoc2);
+		locsForRegion.add(projectedLoc2);
 
-				if(isInside || distToExtendedTrace == 0.0) // zero values are always on the hanging wall
-					distanceX = distToExtendedTrace;
-				else 
-					distanceX = -distToExtendedTrace;
+		// finish the region
+		locsForRegion.add(projectedLoc4);
+		locsForRegion.add(projectedLoc3);
+
+		// write these out if in debug mode
+		if(D) {
+			System.out.println("Projected Trace:");
+			for(int l=0; l<locsForExtendedTrace.size(); l++) {
+				Location loc = locsForExtendedTrace.get(l);
+				System.out.println(loc.getLatitude()+"\t"+ loc.getLongitude()+"\t"+ loc.getDepth());
+			}
+			System.out.println("Region:");
+			for(int l=0; l<locsForRegion.size(); l++) {
+				Location loc = locsForRegion.get(l);
+				System.out.println(loc.getLatitude()+"\t"+ loc.getLongitude()+"\t"+ loc.getDepth());
+			}
 		}
-		
-		return distanceX;
+
+		Region polygon=null;
+		try {
+			polygon = new Region(locsForRegion, BorderType.MERCATOR_LINEAR);
+		} catch (Exception e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			System.out.println("==== trace  ====");
+			System.out.println(trace);
+//					RegionUtils.locListToKML(trace, "distX_trace", Color.ORANGE);
+			System.out.println("==== region ====");
+			System.out.println(locsForRegion);
+//					RegionUtils.locListToKML(locsForRegion, "distX_region", Color.RED);
+			System.exit(0);
+		}
+		return polygon;
 	}
 	
 	/**
@@ -397,22 +572,9 @@ public class GriddedSurfaceUtils {
 	 * @return distance in km
 	 */
 	public static double getMinDistanceBetweenSurfaces(RuptureSurface surface1, RuptureSurface surface2) {
-		Iterator<Location> it = surface1.getLocationsIterator();
-		double min3dDist = Double.POSITIVE_INFINITY;
-		double dist;
-		// find distance between all location pairs in the two surfaces
-		while(it.hasNext()) { // iterate over all locations in this surface
-			Location loc1 = (Location)it.next();
-			Iterator<Location> it2 = surface2.getEvenlyDiscritizedListOfLocsOnSurface().iterator();
-			while(it2.hasNext()) { // iterate over all locations on the user provided surface
-				Location loc2 = (Location)it2.next();
-				dist = LocationUtils.linearDistanceFast(loc1, loc2);
-				if(dist<min3dDist){
-					min3dDist = dist;
-				}
-			}
-		}
-		return min3dDist;
+		// find distance between all location pairs in the two surfaces, skipping blocks of locations that
+		// can't be closer than the current minimum
+		return SurfaceDistanceMatrix.calcMinDistance(surface1, surface2);
 	}
 
 	/*
@@ -432,6 +594,10 @@ public class GriddedSurfaceUtils {
 	 * likely affected.
 	 */
 	private static boolean isDjbZero(LocationList border, Location pt) {
+		return buildPerimeterArea(border).contains(pt.getLongitude(), pt.getLatitude());
+	}
+	
+	static Area buildPerimeterArea(LocationList border) {
 		Path2D path = new Path2D.Double(Path2D.WIND_EVEN_ODD, border.size());
 		boolean starting = true;
 		for (Location loc : border) {
@@ -446,8 +612,7 @@ public class GriddedSurfaceUtils {
 			path.lineTo(lon, lat);
 		}
 		path.closePath();
-		Area area = new Area(path);
-		return area.contains(pt.getLongitude(), pt.getLatitude());
+		return new Area(path);
 	}
 	
 	/*
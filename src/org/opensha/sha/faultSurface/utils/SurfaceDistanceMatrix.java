@@ -0,0 +1,510 @@
+package org.opensha.sha.faultSurface.utils;
+
+import static org.opensha.commons.geo.GeoTools.EARTH_RADIUS_MEAN;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.opensha.commons.data.CSVReader;
+import org.opensha.commons.data.CSVWriter;
+import org.opensha.commons.geo.Location;
+import org.opensha.sha.faultSurface.FaultSection;
+import org.opensha.sha.faultSurface.RuptureSurface;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Sparse matrix of minimum distances between all pairs of a list of {@link RuptureSurface}s (or
+ * {@link FaultSection}s), for pairs that are within a maximum distance of each other. Distances are the
+ * minimum {@link org.opensha.commons.geo.LocationUtils#linearDistanceFast(Location, Location)} between the
+ * evenly discretized locations of each surface, identical to
+ * {@link GriddedSurfaceUtils#getMinDistanceBetweenSurfaces(RuptureSurface, RuptureSurface)}.
+ * <br><br>
+ * Rather than comparing every location of every pair of surfaces, the discretized locations of each surface
+ * are grouped into blocks of consecutive locations, and the lat/lon/depth extents of each block (and of the
+ * whole surface) are stored. Candidate pairs are found by sweeping over surfaces sorted by latitude and are
+ * discarded if a lower bound of the distance between their extents exceeds the maximum distance. For each
+ * remaining pair, block pairs are scanned in order of increasing lower bound, stopping once no block pair can
+ * beat the current minimum. Candidate pairs are evaluated in parallel.
+ * <br><br>
+ * Matrices can be written to and read from CSV files. Instances are immutable and thread safe.
+ */
+public class SurfaceDistanceMatrix {
+
+	/**
+	 * Number of consecutive discretized locations in each block
+	 */
+	private static final int BLOCK_SIZE = 32;
+
+	// lower bounds are reduced by this fraction to guard against floating point rounding errors
+	private static final double LOWER_BOUND_SCALAR = 1d - 1e-10;
+
+	private final int numSurfaces;
+	private final double maxDistance;
+	// neighbors of surface i are neighbors[starts[i]] to neighbors[starts[i+1]-1], sorted by index
+	private final int[] starts;
+	private final int[] neighbors;
+	private final double[] distances;
+
+	private SurfaceDistanceMatrix(int numSurfaces, double maxDistance, int[] starts, int[] neighbors,
+			double[] distances) {
+		this.numSurfaces = numSurfaces;
+		this.maxDistance = maxDistance;
+		this.starts = starts;
+		this.neighbors = neighbors;
+		this.distances = distances;
+	}
+
+	/**
+	 * Calculates the distance matrix for the given surfaces
+	 * @param surfaces
+	 * @param maxDistance maximum distance (km) of pairs retained in the matrix
+	 * @param pool pool used to evaluate pairs in parallel, or null to calculate in the calling thread
+	 * @return
+	 */
+	public static SurfaceDistanceMatrix calc(List<? extends RuptureSurface> surfaces, double maxDistance,
+			ForkJoinPool pool) {
+		Preconditions.checkArgument(maxDistance >= 0, "Max distance must be >= 0");
+		SurfacePoints[] points = new SurfacePoints[surfaces.size()];
+		for (int i=0; i<points.length; i++)
+			points[i] = new SurfacePoints(surfaces.get(i).getEvenlyDiscritizedListOfLocsOnSurface());
+		return calc(points, maxDistance, pool);
+	}
+
+	/**
+	 * Calculates the distance matrix for the given fault sections. Surfaces are built with
+	 * {@link FaultSection#getFaultSurface(double, boolean, boolean)} (without preserving the grid spacing
+	 * exactly or reducing the area for aseismicity), and are discarded once discretized.
+	 * @param sections
+	 * @param gridSpacing
+	 * @param maxDistance maximum distance (km) of pairs retained in the matrix
+	 * @param pool pool used to build surfaces and evaluate pairs in parallel, or null to calculate in the
+	 * calling thread
+	 * @return
+	 */
+	public static SurfaceDistanceMatrix calcForSections(List<? extends FaultSection> sections,
+			double gridSpacing, double maxDistance, ForkJoinPool pool) {
+		Preconditions.checkArgument(maxDistance >= 0, "Max distance must be >= 0");
+		SurfacePoints[] points = new SurfacePoints[sections.size()];
+		forEach(points.length, i -> points[i] = new SurfacePoints(sections.get(i).getFaultSurface(
+				gridSpacing, false, false).getEvenlyDiscritizedListOfLocsOnSurface()), pool);
+		return calc(points, maxDistance, pool);
+	}
+
+	/**
+	 * Calculates the minimum distance between the evenly discretized locations of the given surfaces, using
+	 * the same block pruning as the distance matrix
+	 * @param surface1
+	 * @param surface2
+	 * @return
+	 */
+	public static double calcMinDistance(RuptureSurface surface1, RuptureSurface surface2) {
+		return new SurfacePoints(surface1.getEvenlyDiscritizedListOfLocsOnSurface()).minDistance(
+				new SurfacePoints(surface2.getEvenlyDiscritizedListOfLocsOnSurface()), Double.POSITIVE_INFINITY);
+	}
+
+	private interface IndexTask {
+		public void run(int index);
+	}
+
+	private static void forEach(int num, IndexTask task, ForkJoinPool pool) {
+		if (pool == null) {
+			for (int i=0; i<num; i++)
+				task.run(i);
+		} else {
+			pool.submit(() -> IntStream.range(0, num).parallel().forEach(i -> task.run(i))).join();
+		}
+	}
+
+	private static SurfaceDistanceMatrix calc(SurfacePoints[] points, double maxDistance, ForkJoinPool pool) {
+		int num = points.length;
+
+		// sweep over surfaces sorted by min latitude to find candidate pairs
+		Integer[] sorted = new Integer[num];
+		for (int i=0; i<num; i++)
+			sorted[i] = i;
+		Arrays.sort(sorted, (i, j) -> Double.compare(points[i].minLat, points[j].minLat));
+		// latitude difference (radians) beyond which no pair can be within the max distance
+		double maxLatDiff = maxDistance / (LOWER_BOUND_SCALAR * EARTH_RADIUS_MEAN);
+		int numCandidates = 0;
+		int[] candidates1 = new int[Integer.max(16, num)];
+		int[] candidates2 = new int[candidates1.length];
+		for (int s1=0; s1<num; s1++) {
+			SurfacePoints p1 = points[sorted[s1]];
+			if (p1.isEmpty())
+				continue;
+			for (int s2=s1+1; s2<num; s2++) {
+				SurfacePoints p2 = points[sorted[s2]];
+				if (p2.minLat - p1.maxLat > maxLatDiff)
+					break;
+				if (p2.isEmpty() || p1.lowerBound(p2) > maxDistance)
+					continue;
+				if (numCandidates == candidates1.length) {
+					candidates1 = Arrays.copyOf(candidates1, numCandidates*2);
+					candidates2 = Arrays.copyOf(candidates2, numCandidates*2);
+				}
+				candidates1[numCandidates] = Integer.min(sorted[s1], sorted[s2]);
+				candidates2[numCandidates] = Integer.max(sorted[s1], sorted[s2]);
+				numCandidates++;
+			}
+		}
+
+		// evaluate candidates
+		final int[] c1 = candidates1;
+		final int[] c2 = candidates2;
+		double[] candidateDists = new double[numCandidates];
+		forEach(numCandidates, c -> candidateDists[c] = points[c1[c]].minDistance(points[c2[c]], maxDistance),
+				pool);
+
+		// build symmetric sparse rows
+		int[] counts = new int[num];
+		int numPairs = 0;
+		for (int c=0; c<numCandidates; c++) {
+			if (candidateDists[c] <= maxDistance) {
+				counts[c1[c]]++;
+				counts[c2[c]]++;
+				numPairs++;
+			}
+		}
+		int[] starts = new int[num+1];
+		for (int i=0; i<num; i++)
+			starts[i+1] = starts[i] + counts[i];
+		int[] neighbors = new int[2*numPairs];
+		double[] distances = new double[2*numPairs];
+		int[] fill = Arrays.copyOf(starts, num);
+		for (int c=0; c<numCandidates; c++) {
+			double dist = candidateDists[c];
+			if (dist <= maxDistance) {
+				int i = c1[c];
+				int j = c2[c];
+				neighbors[fill[i]] = j;
+				distances[fill[i]++] = dist;
+				neighbors[fill[j]] = i;
+				distances[fill[j]++] = dist;
+			}
+		}
+		for (int i=0; i<num; i++)
+			sortRow(neighbors, distances, starts[i], starts[i+1]);
+		return new SurfaceDistanceMatrix(num, maxDistance, starts, neighbors, distances);
+	}
+
+	/* insertion sort of a (usually short) row by neighbor index */
+	private static void sortRow(int[] neighbors, double[] distances, int from, int to) {
+		for (int i=from+1; i<to; i++) {
+			int n = neighbors[i];
+			double d = distances[i];
+			int j = i-1;
+			while (j >= from && neighbors[j] > n) {
+				neighbors[j+1] = neighbors[j];
+				distances[j+1] = distances[j];
+				j--;
+			}
+			neighbors[j+1] = n;
+			distances[j+1] = d;
+		}
+	}
+
+	/**
+	 * @return the number of surfaces
+	 */
+	public int size() {
+		return numSurfaces;
+	}
+
+	/**
+	 * @return the maximum distance (km) of pairs retained in this matrix
+	 */
+	public double getMaxDistance() {
+		return maxDistance;
+	}
+
+	/**
+	 * @return the number of distinct pairs of surfaces within the maximum distance
+	 */
+	public int getNumPairs() {
+		return neighbors.length/2;
+	}
+
+	/**
+	 * Returns the minimum distance between the given surfaces, 0 if they're the same surface, or
+	 * {@link Double#POSITIVE_INFINITY} if they're further apart than {@link #getMaxDistance()}
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public double get(int i, int j) {
+		Preconditions.checkElementIndex(i, numSurfaces);
+		Preconditions.checkElementIndex(j, numSurfaces);
+		if (i == j)
+			return 0d;
+		int index = Arrays.binarySearch(neighbors, starts[i], starts[i+1], j);
+		return index < 0 ? Double.POSITIVE_INFINITY : distances[index];
+	}
+
+	/**
+	 * @param i
+	 * @param j
+	 * @return true if the given surfaces are within {@link #getMaxDistance()} of each other
+	 */
+	public boolean isWithinMaxDistance(int i, int j) {
+		return get(i, j) <= maxDistance;
+	}
+
+	/**
+	 * @param i
+	 * @return indices of all other surfaces within {@link #getMaxDistance()} of the given surface, sorted
+	 * by index
+	 */
+	public int[] getNeighbors(int i) {
+		Preconditions.checkElementIndex(i, numSurfaces);
+		return Arrays.copyOfRange(neighbors, starts[i], starts[i+1]);
+	}
+
+	/**
+	 * @param i
+	 * @return distances to each surface returned by {@link #getNeighbors(int)}
+	 */
+	public double[] getNeighborDistances(int i) {
+		Preconditions.checkElementIndex(i, numSurfaces);
+		return Arrays.copyOfRange(distances, starts[i], starts[i+1]);
+	}
+
+	/**
+	 * Writes this matrix to a CSV file. The first line contains the number of surfaces and the maximum
+	 * distance, followed by a header and then one line for each distinct pair.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeToFile(File file) throws IOException {
+		try (CSVWriter writer = new CSVWriter(file)) {
+			writer.write("Num Surfaces", numSurfaces, "Max Distance (km)", maxDistance);
+			writer.write("Index 1", "Index 2", "Distance (km)");
+			for (int i=0; i<numSurfaces; i++)
+				for (int n=starts[i]; n<starts[i+1]; n++)
+					if (neighbors[n] > i)
+						writer.write(i, neighbors[n], distances[n]);
+		}
+	}
+
+	/**
+	 * Reads a matrix written by {@link #writeToFile(File)}
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static SurfaceDistanceMatrix readFile(File file) throws IOException {
+		try (CSVReader reader = new CSVReader(new BufferedReader(new FileReader(file)))) {
+			CSVReader.Row row = reader.read();
+			Preconditions.checkState(row != null && row.columns() >= 4, "Missing matrix size header");
+			int num = row.getInt(1);
+			double maxDistance = row.getDouble(3);
+			reader.skip(1);
+			int[] counts = new int[num];
+			int numPairs = 0;
+			int[] pairs1 = new int[16];
+			int[] pairs2 = new int[16];
+			double[] pairDists = new double[16];
+			while ((row = reader.read()) != null) {
+				if (row.columns() == 0)
+					continue;
+				if (numPairs == pairs1.length) {
+					pairs1 = Arrays.copyOf(pairs1, numPairs*2);
+					pairs2 = Arrays.copyOf(pairs2, numPairs*2);
+					pairDists = Arrays.copyOf(pairDists, numPairs*2);
+				}
+				int i = row.getInt(0);
+				int j = row.getInt(1);
+				Preconditions.checkState(i >= 0 && i < num && j >= 0 && j < num && i != j,
+						"Bad pair at line %s: %s, %s", row.index()+1, i, j);
+				pairs1[numPairs] = i;
+				pairs2[numPairs] = j;
+				pairDists[numPairs] = row.getDouble(2);
+				counts[i]++;
+				counts[j]++;
+				numPairs++;
+			}
+			int[] starts = new int[num+1];
+			for (int i=0; i<num; i++)
+				starts[i+1] = starts[i] + counts[i];
+			int[] neighbors = new int[2*numPairs];
+			double[] distances = new double[2*numPairs];
+			int[] fill = Arrays.copyOf(starts, num);
+			for (int p=0; p<numPairs; p++) {
+				int i = pairs1[p];
+				int j = pairs2[p];
+				neighbors[fill[i]] = j;
+				distances[fill[i]++] = pairDists[p];
+				neighbors[fill[j]] = i;
+				distances[fill[j]++] = pairDists[p];
+			}
+			for (int i=0; i<num; i++)
+				sortRow(neighbors, distances, starts[i], starts[i+1]);
+			return new SurfaceDistanceMatrix(num, maxDistance, starts, neighbors, distances);
+		}
+	}
+
+	/*
+	 * Discretized locations of a surface (lat/lon in radians), grouped into blocks of consecutive locations
+	 * with their extents.
+	 */
+	private static class SurfacePoints {
+
+		private final int numPoints;
+		private final double[] lats, lons, depths;
+
+		private final int numBlocks;
+		private final double[] blockMinLats, blockMaxLats;
+		private final double[] blockMinLons, blockMaxLons;
+		private final double[] blockMinDepths, blockMaxDepths;
+
+		private double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+		private double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+		private double minDepth = Double.POSITIVE_INFINITY, maxDepth = Double.NEGATIVE_INFINITY;
+
+		public SurfacePoints(List<Location> locs) {
+			numPoints = locs.size();
+			lats = new double[numPoints];
+			lons = new double[numPoints];
+			depths = new double[numPoints];
+			for (int i=0; i<numPoints; i++) {
+				Location loc = locs.get(i);
+				lats[i] = loc.getLatRad();
+				lons[i] = loc.getLonRad();
+				depths[i] = loc.getDepth();
+			}
+			numBlocks = (numPoints + BLOCK_SIZE - 1)/BLOCK_SIZE;
+			blockMinLats = new double[numBlocks];
+			blockMaxLats = new double[numBlocks];
+			blockMinLons = new double[numBlocks];
+			blockMaxLons = new double[numBlocks];
+			blockMinDepths = new double[numBlocks];
+			blockMaxDepths = new double[numBlocks];
+			for (int b=0; b<numBlocks; b++) {
+				double bMinLat = Double.POSITIVE_INFINITY, bMaxLat = Double.NEGATIVE_INFINITY;
+				double bMinLon = Double.POSITIVE_INFINITY, bMaxLon = Double.NEGATIVE_INFINITY;
+				double bMinDepth = Double.POSITIVE_INFINITY, bMaxDepth = Double.NEGATIVE_INFINITY;
+				int end = Integer.min(numPoints, (b+1)*BLOCK_SIZE);
+				for (int i=b*BLOCK_SIZE; i<end; i++) {
+					bMinLat = Math.min(bMinLat, lats[i]);
+					bMaxLat = Math.max(bMaxLat, lats[i]);
+					bMinLon = Math.min(bMinLon, lons[i]);
+					bMaxLon = Math.max(bMaxLon, lons[i]);
+					bMinDepth = Math.min(bMinDepth, depths[i]);
+					bMaxDepth = Math.max(bMaxDepth, depths[i]);
+				}
+				blockMinLats[b] = bMinLat;
+				blockMaxLats[b] = bMaxLat;
+				blockMinLons[b] = bMinLon;
+				blockMaxLons[b] = bMaxLon;
+				blockMinDepths[b] = bMinDepth;
+				blockMaxDepths[b] = bMaxDepth;
+				minLat = Math.min(minLat, bMinLat);
+				maxLat = Math.max(maxLat, bMaxLat);
+				minLon = Math.min(minLon, bMinLon);
+				maxLon = Math.max(maxLon, bMaxLon);
+				minDepth = Math.min(minDepth, bMinDepth);
+				maxDepth = Math.max(maxDepth, bMaxDepth);
+			}
+		}
+
+		public boolean isEmpty() {
+			return numPoints == 0;
+		}
+
+		/* lower bound of the distance between any point of this surface and any point of the other */
+		public double lowerBound(SurfacePoints o) {
+			return lowerBound(minLat, maxLat, minLon, maxLon, minDepth, maxDepth,
+					o.minLat, o.maxLat, o.minLon, o.maxLon, o.minDepth, o.maxDepth);
+		}
+
+		/*
+		 * Minimum distance between any point of this surface and any point of the other, or
+		 * POSITIVE_INFINITY if greater than maxDistance
+		 */
+		public double minDistance(SurfacePoints o, double maxDistance) {
+			int numPairs = numBlocks*o.numBlocks;
+			double[] bounds = new double[numPairs];
+			int numKept = 0;
+			int[] kept = new int[numPairs];
+			for (int b1=0; b1<numBlocks; b1++) {
+				for (int b2=0; b2<o.numBlocks; b2++) {
+					double bound = lowerBound(blockMinLats[b1], blockMaxLats[b1], blockMinLons[b1],
+							blockMaxLons[b1], blockMinDepths[b1], blockMaxDepths[b1],
+							o.blockMinLats[b2], o.blockMaxLats[b2], o.blockMinLons[b2], o.blockMaxLons[b2],
+							o.blockMinDepths[b2], o.blockMaxDepths[b2]);
+					if (bound <= maxDistance) {
+						bounds[numKept] = bound;
+						kept[numKept++] = b1*o.numBlocks + b2;
+					}
+				}
+			}
+			// scan block pairs in order of increasing lower bound
+			Integer[] order = new Integer[numKept];
+			for (int k=0; k<numKept; k++)
+				order[k] = k;
+			Arrays.sort(order, (k1, k2) -> Double.compare(bounds[k1], bounds[k2]));
+			double min = Double.POSITIVE_INFINITY;
+			for (int k : order) {
+				if (bounds[k] > min)
+					break;
+				int b1 = kept[k] / o.numBlocks;
+				int b2 = kept[k] % o.numBlocks;
+				min = scanBlocks(b1, o, b2, min);
+			}
+			return min <= maxDistance ? min : Double.POSITIVE_INFINITY;
+		}
+
+		/* same formula as LocationUtils.linearDistanceFast */
+		private double scanBlocks(int b1, SurfacePoints o, int b2, double min) {
+			int end1 = Integer.min(numPoints, (b1+1)*BLOCK_SIZE);
+			int end2 = Integer.min(o.numPoints, (b2+1)*BLOCK_SIZE);
+			for (int i=b1*BLOCK_SIZE; i<end1; i++) {
+				double lat1 = lats[i];
+				double lon1 = lons[i];
+				double depth1 = depths[i];
+				for (int j=b2*BLOCK_SIZE; j<end2; j++) {
+					double lat2 = o.lats[j];
+					double dLat = lat1 - lat2;
+					double dLon = (lon1 - o.lons[j]) * Math.cos((lat1 + lat2) * 0.5);
+					double h = EARTH_RADIUS_MEAN * Math.sqrt((dLat * dLat) + (dLon * dLon));
+					double v = o.depths[j] - depth1;
+					double dist = Math.sqrt(h * h + v * v);
+					if (dist < min)
+						min = dist;
+				}
+			}
+			return min;
+		}
+
+		private static double intervalDist(double min1, double max1, double min2, double max2) {
+			if (max1 < min2)
+				return min2 - max1;
+			if (max2 < min1)
+				return min1 - max2;
+			return 0d;
+		}
+
+		/*
+		 * Lower bound of LocationUtils.linearDistanceFast between any points within the given extents. The
+		 * longitude scale factor is the minimum cosine of the mean latitude, which (as cosine is concave over
+		 * [-pi/2, pi/2]) lies at one of the end points.
+		 */
+		private static double lowerBound(double minLat1, double maxLat1, double minLon1, double maxLon1,
+				double minDepth1, double maxDepth1, double minLat2, double maxLat2, double minLon2,
+				double maxLon2, double minDepth2, double maxDepth2) {
+			double dLat = intervalDist(minLat1, maxLat1, minLat2, maxLat2);
+			double cos = Math.min(Math.cos((minLat1 + minLat2) * 0.5), Math.cos((maxLat1 + maxLat2) * 0.5));
+			double dLon = intervalDist(minLon1, maxLon1, minLon2, maxLon2) * cos;
+			double h = EARTH_RADIUS_MEAN * Math.sqrt((dLat * dLat) + (dLon * dLon));
+			double v = intervalDist(minDepth1, maxDepth1, minDepth2, maxDepth2);
+			return LOWER_BOUND_SCALAR * Math.sqrt(h * h + v * v);
+		}
+	}
+
+}
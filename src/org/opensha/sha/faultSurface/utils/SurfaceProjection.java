@@ -0,0 +1,100 @@
+package org.opensha.sha.faultSurface.utils;
+
+import java.awt.geom.Area;
+
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+import org.opensha.commons.geo.Region;
+import org.opensha.commons.geo.RegionIndex;
+import org.opensha.sha.faultSurface.EvenlyGriddedSurface;
+
+/**
+ * Compiled surface projection of an {@link EvenlyGriddedSurface}, used to check whether small values of
+ * distance JB should really be zero and to quickly bound region membership tests.
+ * <br><br>
+ * The perimeter polygon is built once, as the same {@link Area} used by
+ * {@link GriddedSurfaceUtils#getPropagationDistances(EvenlyGriddedSurface, Location)}, and then indexed with
+ * a {@link RegionIndex} so that each contains test only considers the few perimeter edges near the
+ * location. Results are identical to those of the {@link Area}. The lat/lon extents of every grid node are
+ * also stored.
+ * <br><br>
+ * Instances are immutable and thread safe, but must be rebuilt if the surface is modified. They are usually
+ * obtained from {@link GriddedSurfaceTiles#getSurfaceProjection()}, which builds them lazily.
+ */
+public class SurfaceProjection {
+
+	// perimeter polygon index, or null if the polygon is empty
+	private final RegionIndex index;
+
+	// extents of all grid nodes, in decimal degrees
+	private double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+	private double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Builds the surface projection from the perimeter of the given surface
+	 * @param surface
+	 */
+	public SurfaceProjection(EvenlyGriddedSurface surface) {
+		this(surface, surface.getPerimeter());
+	}
+
+	/**
+	 * Builds the surface projection using the given perimeter
+	 * @param surface
+	 * @param perimeter
+	 */
+	public SurfaceProjection(EvenlyGriddedSurface surface, LocationList perimeter) {
+		Area area = GriddedSurfaceUtils.buildPerimeterArea(perimeter);
+		// perimeters only contain line segments, so this is only null if the area is empty
+		index = RegionIndex.build(area, 0);
+
+		int numRows = surface.getNumRows();
+		int numCols = surface.getNumCols();
+		for (int row=0; row<numRows; row++) {
+			for (int col=0; col<numCols; col++) {
+				Location loc = surface.get(row, col);
+				double lat = loc.getLatitude();
+				double lon = loc.getLongitude();
+				minLat = Math.min(minLat, lat);
+				maxLat = Math.max(maxLat, lat);
+				minLon = Math.min(minLon, lon);
+				maxLon = Math.max(maxLon, lon);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the given location is inside the perimeter polygon of the surface projection
+	 * (ignoring depth)
+	 * @param loc
+	 * @return
+	 */
+	public boolean contains(Location loc) {
+		return index != null && index.contains(loc.getLongitude(), loc.getLatitude());
+	}
+
+	/**
+	 * Returns true if no grid node can be inside the given region, because the grid nodes all lie outside
+	 * of its bounding box.
+	 * @param region
+	 * @return
+	 */
+	public boolean isOutside(Region region) {
+		// Region.contains(...) follows Shape insidedness rules, which exclude the max bounds
+		return minLat >= region.getMaxLat() || maxLat < region.getMinLat()
+				|| minLon >= region.getMaxLon() || maxLon < region.getMinLon();
+	}
+
+	/**
+	 * Returns true if every grid node is known to be inside the given region, which is only determined for
+	 * rectangular regions that strictly enclose all grid nodes.
+	 * @param region
+	 * @return
+	 */
+	public boolean isInside(Region region) {
+		return region.isRectangular()
+				&& minLat > region.getMinLat() && maxLat < region.getMaxLat()
+				&& minLon > region.getMinLon() && maxLon < region.getMaxLon();
+	}
+
+}
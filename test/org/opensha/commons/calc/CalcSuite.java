@@ -2,14 +2,18 @@ package org.opensha.commons.calc;
 
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
+import org.opensha.commons.calc.nnls.TestParallelNNLS;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	TestFaultMomentCalc.class,
 	TestFractileCurveCalculator.class,
+	TestStreamingFractileCurveCalculator.class,
 	TestFunctionListCalc.class,
 	TestGaussianDistCalc.class,
-	TestWeightedSampler.class
+	TestTabulatedGaussianDistCalc.class,
+	TestWeightedSampler.class,
+	TestParallelNNLS.class
 })
 
 public class CalcSuite
@@ -0,0 +1,132 @@
+package org.opensha.commons.calc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.opensha.commons.data.function.ArbitrarilyDiscretizedFunc;
+import org.opensha.commons.data.function.XY_DataSet;
+import org.opensha.commons.data.function.XY_DataSetList;
+
+public class TestStreamingFractileCurveCalculator {
+	
+	private static final double[] FRACTIONS = { 0d, 0.025, 0.3, 0.5, 0.84, 0.975, 1d };
+	
+	private static XY_DataSetList getRandomCurves(Random r, int numCurves, boolean duplicates) {
+		XY_DataSetList list = new XY_DataSetList();
+		for (int c=0; c<numCurves; c++) {
+			ArbitrarilyDiscretizedFunc func = new ArbitrarilyDiscretizedFunc();
+			for (int x=0; x<10; x++) {
+				double y = r.nextGaussian()*(x+1);
+				if (duplicates)
+					y = Math.round(y);
+				func.set((double)x, y);
+			}
+			list.add(func);
+		}
+		return list;
+	}
+	
+	private static List<Double> getRandomWeights(Random r, int num) {
+		List<Double> weights = new ArrayList<Double>();
+		for (int i=0; i<num; i++)
+			weights.add(r.nextDouble());
+		return weights;
+	}
+	
+	private static void assertCurvesEqual(XY_DataSet expected, XY_DataSet actual, double tol) {
+		assertEquals(expected.size(), actual.size());
+		for (int i=0; i<expected.size(); i++) {
+			assertEquals(expected.getX(i), actual.getX(i), 0d);
+			assertEquals("mismatch at index "+i, expected.getY(i), actual.getY(i), tol);
+		}
+	}
+	
+	@Test
+	public void testExactMatchesFractileCurveCalculator() {
+		Random r = new Random(12345l);
+		for (boolean duplicates : new boolean[] {false, true}) {
+			XY_DataSetList curves = getRandomCurves(r, 500, duplicates);
+			List<Double> weights = getRandomWeights(r, curves.size());
+			
+			FractileCurveCalculator calc = new FractileCurveCalculator(curves, weights);
+			StreamingFractileCurveCalculator streaming = new StreamingFractileCurveCalculator(curves.get(0));
+			for (int i=0; i<curves.size(); i++)
+				streaming.addCurve(curves.get(i), weights.get(i));
+			
+			assertCurvesEqual(calc.getMeanCurve(), streaming.getMeanCurve(), 1e-10);
+			assertCurvesEqual(calc.getStdDev(), streaming.getStdDev(), 1e-10);
+			assertCurvesEqual(calc.getMinimumCurve(), streaming.getMinimumCurve(), 0d);
+			assertCurvesEqual(calc.getMaximumCurve(), streaming.getMaximumCurve(), 0d);
+			XY_DataSet[] fractiles = streaming.getFractiles(FRACTIONS);
+			for (int f=0; f<FRACTIONS.length; f++)
+				assertCurvesEqual(calc.getFractile(FRACTIONS[f]), fractiles[f], 0d);
+		}
+	}
+	
+	@Test
+	public void testMerge() {
+		Random r = new Random(1234l);
+		XY_DataSetList curves = getRandomCurves(r, 300, false);
+		List<Double> weights = getRandomWeights(r, curves.size());
+		
+		for (boolean exact : new boolean[] {true, false}) {
+			StreamingFractileCurveCalculator all = new StreamingFractileCurveCalculator(curves.get(0), exact);
+			StreamingFractileCurveCalculator first = new StreamingFractileCurveCalculator(curves.get(0), exact);
+			StreamingFractileCurveCalculator second = new StreamingFractileCurveCalculator(curves.get(0), exact);
+			for (int i=0; i<curves.size(); i++) {
+				all.addCurve(curves.get(i), weights.get(i));
+				if (i % 3 == 0)
+					first.addCurve(curves.get(i), weights.get(i));
+				else
+					second.addCurve(curves.get(i), weights.get(i));
+			}
+			first.merge(second);
+			assertEquals(curves.size(), first.getNumValues(0));
+			assertCurvesEqual(all.getMeanCurve(), first.getMeanCurve(), 1e-10);
+			assertCurvesEqual(all.getStdDev(), first.getStdDev(), 1e-10);
+			assertCurvesEqual(all.getMinimumCurve(), first.getMinimumCurve(), 0d);
+			assertCurvesEqual(all.getMaximumCurve(), first.getMaximumCurve(), 0d);
+			if (exact) {
+				for (double fraction : FRACTIONS)
+					assertCurvesEqual(all.getFractile(fraction), first.getFractile(fraction), 0d);
+			}
+		}
+	}
+	
+	@Test
+	public void testApproximateFractiles() {
+		Random r = new Random(123l);
+		XY_DataSetList curves = getRandomCurves(r, 20000, false);
+		List<Double> weights = getRandomWeights(r, curves.size());
+		
+		StreamingFractileCurveCalculator exact = new StreamingFractileCurveCalculator(curves.get(0), true);
+		StreamingFractileCurveCalculator approx = new StreamingFractileCurveCalculator(curves.get(0), false);
+		for (int i=0; i<curves.size(); i++) {
+			exact.addCurve(curves.get(i), weights.get(i));
+			approx.addCurve(curves.get(i), weights.get(i));
+		}
+		assertCurvesEqual(exact.getMeanCurve(), approx.getMeanCurve(), 1e-10);
+		assertCurvesEqual(exact.getMinimumCurve(), approx.getMinimumCurve(), 0d);
+		assertCurvesEqual(exact.getMaximumCurve(), approx.getMaximumCurve(), 0d);
+		for (double fraction : FRACTIONS) {
+			XY_DataSet exactFract = exact.getFractile(fraction);
+			XY_DataSet approxFract = approx.getFractile(fraction);
+			for (int i=0; i<exactFract.size(); i++) {
+				// values are normal with sigma=i+1, allow 1% of a sigma
+				assertEquals(exactFract.getY(i), approxFract.getY(i), 0.01*(i+1));
+			}
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testWrongSize() {
+		StreamingFractileCurveCalculator calc = new StreamingFractileCurveCalculator(
+				TestFractileCurveCalculator.getGoodTestData().get(0));
+		calc.addCurve(new double[3], 1d);
+	}
+
+}
@@ -0,0 +1,86 @@
+package org.opensha.commons.calc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestTabulatedGaussianDistCalc {
+	
+	private static final double ABS_TOL = 1e-12;
+	
+	@Test
+	public void testUntruncated() {
+		TabulatedGaussianDistCalc calc = new TabulatedGaussianDistCalc();
+		for (double z=-9; z<=9; z+=0.0013) {
+			double expected = GaussianDistCalc.getExceedProb(z);
+			double actual = calc.getExceedProb(z);
+			assertEquals("z="+z, expected, actual, ABS_TOL);
+			if (z > 0)
+				// upper tail relative error bound
+				assertEquals("z="+z, expected, actual,
+						TabulatedGaussianDistCalc.MAX_RELATIVE_ERROR*expected + 1e-15);
+			assertEquals(GaussianDistCalc.getCDF(z), TabulatedGaussianDistCalc.getCDF(z), ABS_TOL);
+		}
+	}
+	
+	@Test
+	public void testTruncated() {
+		int[] truncTypes = { 0, 1, 2, 1, 2 };
+		double[] truncLevels = { 0, 2, 3, 0, 0.5 };
+		for (int t=0; t<truncTypes.length; t++) {
+			TabulatedGaussianDistCalc calc = new TabulatedGaussianDistCalc(truncTypes[t], truncLevels[t]);
+			for (double z=-5; z<=5; z+=0.0017)
+				assertEquals("z="+z, GaussianDistCalc.getExceedProb(z, truncTypes[t], truncLevels[t]),
+						calc.getExceedProb(z), ABS_TOL);
+		}
+		TabulatedGaussianDistCalc calc = new TabulatedGaussianDistCalc(-1.5, 2.5);
+		for (double z=-5; z<=5; z+=0.0017)
+			assertEquals("z="+z, GaussianDistCalc.getExceedProb(z, -1.5, 2.5), calc.getExceedProb(z), ABS_TOL);
+	}
+	
+	@Test
+	public void testBatch() {
+		TabulatedGaussianDistCalc calc = new TabulatedGaussianDistCalc(2, 3d);
+		double[] imls = new double[50];
+		for (int i=0; i<imls.length; i++)
+			imls[i] = Math.log(0.001*Math.pow(1.2, i));
+		double mean = Math.log(0.1);
+		double std = 0.6;
+		double[] out = new double[imls.length];
+		calc.getExceedProbs(mean, std, imls, out);
+		for (int i=0; i<imls.length; i++)
+			assertEquals(calc.getExceedProb((imls[i] - mean)/std), out[i], 0d);
+		
+		// zero standard deviation
+		calc.getExceedProbs(mean, 0d, imls, out);
+		for (int i=0; i<imls.length; i++)
+			assertEquals(imls[i] > mean ? 0d : 1d, out[i], 0d);
+	}
+	
+	@Test
+	public void testStandRandVar() {
+		TabulatedGaussianDistCalc[] calcs = {
+				new TabulatedGaussianDistCalc(),
+				new TabulatedGaussianDistCalc(1, 2d),
+				new TabulatedGaussianDistCalc(2, 3d),
+				new TabulatedGaussianDistCalc(-1d, 4d)
+		};
+		for (TabulatedGaussianDistCalc calc : calcs) {
+			for (double z=-5; z<=7.5; z+=0.0011) {
+				double prob = calc.getExceedProb(z);
+				if (prob == 0d || prob == 1d)
+					continue;
+				double srv = calc.getStandRandVar(prob);
+				assertEquals("z="+z, z, srv, 1e-6);
+				assertEquals("z="+z, prob, calc.getExceedProb(srv), 1e-12*Math.min(prob, 1d-prob) + 1e-15);
+			}
+			assertEquals(calc.getUpperTruncLevel(), calc.getStandRandVar(0d), 0d);
+			assertEquals(calc.getLowerTruncLevel(), calc.getStandRandVar(1d), 0d);
+		}
+		// compare with the tolerance based search
+		for (double prob : new double[] { 1e-6, 1e-4, 0.01, 0.3, 0.7, 0.99 })
+			assertEquals(GaussianDistCalc.getStandRandVar(prob, 2, 3d, 1e-6),
+					new TabulatedGaussianDistCalc(2, 3d).getStandRandVar(prob), 1e-4);
+	}
+
+}
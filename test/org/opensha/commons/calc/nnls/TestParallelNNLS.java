@@ -0,0 +1,157 @@
+package org.opensha.commons.calc.nnls;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestParallelNNLS {
+
+	/*
+	 * Random problem with a sparse non-negative true solution, returned as { A, b }
+	 */
+	static double[][] buildProblem(int nrows, int ncols, long seed) {
+		Random r = new Random(seed);
+		double[] A = new double[nrows*ncols];
+		for (int i=0; i<A.length; i++)
+			A[i] = r.nextDouble();
+		double[] b = new double[nrows];
+		for (int j=0; j<ncols; j++) {
+			if (r.nextDouble() < 0.3) {
+				double xj = r.nextDouble();
+				for (int i=0; i<nrows; i++)
+					b[i] += A[j*nrows + i]*xj;
+			}
+		}
+		for (int i=0; i<nrows; i++)
+			b[i] += 0.5*r.nextGaussian();
+		return new double[][] { A, b };
+	}
+
+	private static double residualNorm(double[] A, double[] b, double[] x) {
+		int nrows = b.length;
+		double sum = 0;
+		for (int i=0; i<nrows; i++) {
+			double ri = -b[i];
+			for (int j=0; j<x.length; j++)
+				ri += A[j*nrows + i]*x[j];
+			sum += ri*ri;
+		}
+		return Math.sqrt(sum);
+	}
+
+	/*
+	 * Checks the KKT conditions: x >= 0, gradient Aᵀ(b - Ax) <= 0 where x = 0 and ~0 where x > 0
+	 */
+	private static void checkKKT(double[] A, double[] b, double[] x, double tol) {
+		int nrows = b.length;
+		double[] r = new double[nrows];
+		for (int i=0; i<nrows; i++) {
+			r[i] = b[i];
+			for (int j=0; j<x.length; j++)
+				r[i] -= A[j*nrows + i]*x[j];
+		}
+		for (int j=0; j<x.length; j++) {
+			assertTrue(x[j] >= 0);
+			double w = 0;
+			for (int i=0; i<nrows; i++)
+				w += A[j*nrows + i]*r[i];
+			if (x[j] > 0)
+				assertEquals("dual for passive "+j, 0d, w, tol);
+			else
+				assertTrue("dual for active "+j+": "+w, w <= tol);
+		}
+	}
+
+	@Test
+	public void testAgainstNnls() {
+		int[][] sizes = { {30, 10}, {100, 60}, {80, 120}, {300, 200} };
+		for (int[] size : sizes) {
+			int nrows = size[0];
+			int ncols = size[1];
+			double[][] prob = buildProblem(nrows, ncols, nrows*ncols);
+			double[] A = prob[0];
+			double[] b = prob[1];
+
+			double[] xRef = new double[ncols];
+			assertTrue(new NNLSWrapper(A, nrows, ncols).solve(b, xRef));
+
+			ParallelNNLS nnls = new ParallelNNLS(A, nrows, ncols);
+			double[] x = new double[ncols];
+			assertTrue(nnls.solve(b, x));
+			double rnorm = residualNorm(A, b, x);
+			assertEquals(rnorm, nnls.getResidualNorm(), 1e-8);
+			assertEquals(residualNorm(A, b, xRef), rnorm, 1e-6*rnorm);
+			checkKKT(A, b, x, 1e-6);
+			assertTrue(nnls.getIterations() > 0);
+			assertTrue(nnls.getSolveMillis() >= 0);
+
+			// sequential computation gives identical results
+			ParallelNNLS seq = new ParallelNNLS(A, nrows, ncols);
+			seq.setParallel(false);
+			seq.update(A);
+			double[] xSeq = new double[ncols];
+			assertTrue(seq.solve(b, xSeq));
+			assertArrayEquals(x, xSeq, 0d);
+		}
+	}
+
+	@Test
+	public void testWarmStart() {
+		int nrows = 200;
+		int ncols = 150;
+		double[][] prob = buildProblem(nrows, ncols, 7);
+		double[] A = prob[0];
+		double[] b = prob[1];
+		ParallelNNLS nnls = new ParallelNNLS(A, nrows, ncols);
+		double[] x = new double[ncols];
+		assertTrue(nnls.solve(b, x));
+		int coldIters = nnls.getIterations();
+
+		// same problem: already optimal
+		double[] xWarm = x.clone();
+		assertTrue(nnls.solve(b, xWarm, true));
+		assertEquals(0, nnls.getIterations());
+		assertArrayEquals(x, xWarm, 1e-8);
+
+		// small change to b
+		Random r = new Random(1);
+		double[] b2 = b.clone();
+		for (int i=0; i<nrows; i++)
+			b2[i] += 0.05*r.nextGaussian();
+		double[] xCold = new double[ncols];
+		assertTrue(nnls.solve(b2, xCold));
+		coldIters = nnls.getIterations();
+		xWarm = x.clone();
+		assertTrue(nnls.solve(b2, xWarm, true));
+		assertTrue(nnls.getIterations() < coldIters);
+		assertArrayEquals(xCold, xWarm, 1e-6);
+		checkKKT(A, b2, xWarm, 1e-6);
+	}
+
+	@Test
+	public void testDependentColumns() {
+		int nrows = 20;
+		int ncols = 6;
+		double[][] prob = buildProblem(nrows, ncols, 3);
+		double[] A = prob[0];
+		double[] b = prob[1];
+		// duplicate and scaled columns
+		System.arraycopy(A, 0, A, 3*nrows, nrows);
+		for (int i=0; i<nrows; i++)
+			A[4*nrows + i] = 2*A[nrows + i];
+		ParallelNNLS nnls = new ParallelNNLS(A, nrows, ncols);
+		double[] x = new double[ncols];
+		assertTrue(nnls.solve(b, x));
+		double[] xRef = new double[ncols];
+		new NNLSWrapper(A, nrows, ncols).solve(b, xRef);
+		assertEquals(residualNorm(A, b, xRef), nnls.getResidualNorm(), 1e-8);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBadDimensions() {
+		new ParallelNNLS(new double[10], 3, 3);
+	}
+
+}
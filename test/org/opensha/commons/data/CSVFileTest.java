@@ -0,0 +1,209 @@
+package org.opensha.commons.data;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class CSVFileTest {
+
+	private static CSVFile<String> read(String str, boolean strict) throws IOException {
+		return CSVFile.readStream(new ByteArrayInputStream(str.getBytes()), strict);
+	}
+
+	@Test
+	public void testReadCells() throws IOException {
+		String str = "a,b,c\n  1,\"2,3\",4  \r\n\r5,,\"\"\n\nx,y,";
+		CSVFile<String> csv = read(str, false);
+		assertEquals(6, csv.getNumRows());
+		assertEquals(Lists.newArrayList("a", "b", "c"), csv.getLine(0));
+		assertEquals(Lists.newArrayList("1", "2,3", "4"), csv.getLine(1));
+		assertEquals(Collections.emptyList(), csv.getLine(2));
+		// empty final cell is dropped
+		assertEquals(Lists.newArrayList("5", ""), csv.getLine(3));
+		assertEquals(Collections.emptyList(), csv.getLine(4));
+		assertEquals(Lists.newArrayList("x", "y"), csv.getLine(5));
+
+		// strict rows are padded
+		csv = read("a,b,c\n1,2\n", true);
+		assertEquals(Lists.newArrayList("1", "2", ""), csv.getLine(1));
+		try {
+			read("a,b\n1,2,3\n", true);
+			fail("long row should fail with strict row sizes");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testReaderCursor() throws IOException {
+		CSVReader reader = new CSVReader(new StringReader("h1,h2\n1,2.5\n-3,4e2\n"));
+		assertEquals(1, reader.skip(1));
+		CSVReader.Row row = reader.read();
+		assertEquals(1, row.index());
+		assertEquals(2, row.columns());
+		assertEquals(1, row.getInt(0));
+		assertEquals(2.5, row.getDouble(1), 0d);
+		CSVReader.Row row2 = reader.read();
+		assertSame(row, row2);
+		assertEquals(-3L, row2.getLong(0));
+		assertEquals(400d, row2.getDouble(1), 0d);
+		assertNull(reader.read());
+		assertNull(reader.read());
+		assertEquals(3, reader.getRowsRead());
+		reader.close();
+	}
+
+	@Test
+	public void testParseDouble() {
+		Random r = new Random(1);
+		List<String> strs = Lists.newArrayList("0", "-0", "-0.0", "+1", "1.", ".5", "007",
+				"0.1", "1e10", "1E-5", "-2.5e+3", "123456789012345678", "1234567890123456789",
+				"0.30000000000000004", "1e-400", "1e400", "4.9e-324", "NaN", "-Infinity",
+				"1.5d", " 2 ", "0x1p3", "9007199254740993", "1e22", "1e23", "0.0000001");
+		for (int i=0; i<5000; i++) {
+			strs.add(Double.toString(r.nextDouble() * Math.pow(10, r.nextInt(40) - 20)));
+			strs.add(String.format("%.6f", r.nextGaussian() * 1000));
+			strs.add(Float.toString((float)r.nextGaussian()));
+		}
+		for (String str : strs) {
+			char[] chars = ("x"+str+"y").toCharArray();
+			double expected = Double.parseDouble(str);
+			double actual = CSVReader.parseDouble(chars, 1, chars.length - 1);
+			assertEquals(str, Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+		}
+		for (String bad : new String[] {"", "-", ".", "e5", "1e", "1.2.3", "abc", "1-2"}) {
+			char[] chars = bad.toCharArray();
+			try {
+				CSVReader.parseDouble(chars, 0, chars.length);
+				fail("expected NumberFormatException for '"+bad+"'");
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+		char[] chars = "-9223372036854775808".toCharArray();
+		assertEquals(Long.MIN_VALUE, CSVReader.parseLong(chars, 0, chars.length));
+	}
+
+	@Test
+	public void testNumericColumns() throws IOException {
+		int rows = 3000;
+		StringBuilder sb = new StringBuilder("x,y,z\n");
+		Random r = new Random(2);
+		double[][] expected = new double[3][rows];
+		for (int i=0; i<rows; i++) {
+			for (int c=0; c<3; c++) {
+				expected[c][i] = r.nextGaussian();
+				sb.append(c == 0 ? "" : ",").append(expected[c][i]);
+			}
+			sb.append("\n");
+		}
+		byte[] bytes = sb.toString().getBytes();
+		double[][] cols = CSVFile.readStreamNumericColumns(new ByteArrayInputStream(bytes), 1);
+		assertEquals(3, cols.length);
+		for (int c=0; c<3; c++)
+			assertArrayEquals(expected[c], cols[c], 0d);
+
+		CSVFile<Double> csv = CSVFile.readStreamNumeric(new ByteArrayInputStream(bytes), true, -1, 1);
+		assertEquals(rows, csv.getNumRows());
+		assertEquals(expected[2][rows-1], csv.get(rows-1, 2), 0d);
+
+		try {
+			CSVFile.readStreamNumericColumns(new ByteArrayInputStream("1,2\n3\n".getBytes()), 0);
+			fail("inconsistent rows should fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testWriteRoundTrip() throws IOException {
+		CSVFile<String> csv = new CSVFile<String>(true);
+		csv.addLine("a", "b,c", "d");
+		csv.addLine("1", "2", "3");
+		File file = File.createTempFile("csv", ".csv");
+		try {
+			csv.writeToFile(file);
+			CSVFile<String> read = CSVFile.readFile(file, true);
+			assertEquals(csv.getNumRows(), read.getNumRows());
+			for (int i=0; i<csv.getNumRows(); i++)
+				assertEquals(csv.getLine(i), read.getLine(i));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testConcurrentIndexedWriter() throws Exception {
+		final int rows = 2000;
+		StringWriter out = new StringWriter();
+		final CSVWriter writer = new CSVWriter(out);
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i=0; i<rows; i++)
+			order.add(i);
+		Collections.shuffle(order, new Random(3));
+		ExecutorService exec = Executors.newFixedThreadPool(4);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final int row : order) {
+			futures.add(exec.submit(() -> {
+				writer.write(row, Arrays.asList(row, row * 0.5));
+				return null;
+			}));
+		}
+		for (Future<?> f : futures)
+			f.get();
+		exec.shutdown();
+		exec.awaitTermination(1, TimeUnit.MINUTES);
+		assertEquals(rows, writer.getNumRowsWritten());
+		assertEquals(0, writer.getNumPending());
+		writer.write("end", "row");
+		writer.close();
+
+		CSVReader reader = new CSVReader(new StringReader(out.toString()));
+		for (int i=0; i<rows; i++) {
+			CSVReader.Row row = reader.read();
+			assertEquals(i, row.getInt(0));
+			assertEquals(i * 0.5, row.getDouble(1), 0d);
+		}
+		assertEquals("end", reader.read().get(0));
+		assertNull(reader.read());
+		reader.close();
+	}
+
+	@Test
+	public void testWriterPending() throws IOException {
+		CSVWriter writer = new CSVWriter(new StringWriter());
+		writer.write(1, Arrays.asList("b"));
+		assertEquals(0, writer.getNumRowsWritten());
+		assertEquals(1, writer.getNumPending());
+		try {
+			writer.write(1, Arrays.asList("b"));
+			fail("duplicate row should fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			writer.close();
+			fail("pending rows should fail on close");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+}
@@ -21,7 +21,9 @@ package org.opensha.commons.data;
 
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
+import org.opensha.commons.data.siteData.CachedSiteDataWrapperTest;
 import org.opensha.commons.data.siteData.SiteDataProvidersTest;
+import org.opensha.commons.data.siteData.SiteDataServletTest;
 import org.opensha.commons.data.siteData.TestSiteDataProviders_Operational;
 import org.opensha.commons.geo.GriddedRegionTest;
 import org.opensha.commons.geo.RegionTest;
@@ -29,6 +31,7 @@ import org.opensha.commons.geo.RegionTest;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	Container2DTest.class,
+	CSVFileTest.class,
 	DataPoint2DTests.class,
 	Point2DToleranceSortedArrayListTest.class,
 	SiteTests.class,
@@ -38,6 +41,8 @@ import org.opensha.commons.geo.RegionTest;
 	
 	// siteData
 	SiteDataProvidersTest.class,
+	CachedSiteDataWrapperTest.class,
+	SiteDataServletTest.class,
 	TestSiteDataProviders_Operational.class
 })
 
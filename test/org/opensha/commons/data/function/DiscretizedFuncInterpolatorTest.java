@@ -0,0 +1,85 @@
+package org.opensha.commons.data.function;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.opensha.commons.exceptions.InvalidRangeException;
+
+public class DiscretizedFuncInterpolatorTest {
+	
+	private static ArbitrarilyDiscretizedFunc buildHazardCurve() {
+		ArbitrarilyDiscretizedFunc func = new ArbitrarilyDiscretizedFunc();
+		for (int i=0; i<30; i++) {
+			double x = 0.001*Math.pow(1.3, i);
+			// include some zero values at the tail
+			double y = i < 25 ? Math.exp(-0.5*i) : 0d;
+			func.set(x, y);
+		}
+		return func;
+	}
+	
+	private static void testMatches(DiscretizedFunc func, boolean logX, boolean logY) {
+		DiscretizedFuncInterpolator interp = new DiscretizedFuncInterpolator(func, logX, logY);
+		Random r = new Random(func.size());
+		double minX = func.getMinX();
+		double maxX = func.getMaxX();
+		double[] xs = new double[1000];
+		for (int i=0; i<xs.length; i++) {
+			if (i < func.size())
+				// exact x values
+				xs[i] = func.getX(i);
+			else
+				xs[i] = minX + r.nextDouble()*(maxX - minX);
+		}
+		double[] batch = new double[xs.length];
+		interp.interpolate(xs, batch);
+		for (int i=0; i<xs.length; i++) {
+			double expected;
+			if (logX && logY)
+				expected = func.getInterpolatedY_inLogXLogYDomain(xs[i]);
+			else if (logX)
+				expected = func.getInterpolatedY_inLogXDomain(xs[i]);
+			else if (logY)
+				expected = func.getInterpolatedY_inLogYDomain(xs[i]);
+			else
+				expected = func.getInterpolatedY(xs[i]);
+			double actual = interp.interpolate(xs[i]);
+			assertEquals("x="+xs[i], expected, actual, 1e-12*Math.abs(expected) + 1e-300);
+			assertEquals(actual, batch[i], 0d);
+		}
+	}
+	
+	@Test
+	public void testArbitrarilyDiscretized() {
+		ArbitrarilyDiscretizedFunc func = buildHazardCurve();
+		for (boolean logX : new boolean[] {false, true})
+			for (boolean logY : new boolean[] {false, true})
+				testMatches(func, logX, logY);
+	}
+	
+	@Test
+	public void testEvenlyDiscretized() {
+		EvenlyDiscretizedFunc func = new EvenlyDiscretizedFunc(0.1, 50, 0.1);
+		for (int i=0; i<func.size(); i++)
+			func.set(i, 1d/(i+1));
+		for (boolean logX : new boolean[] {false, true})
+			for (boolean logY : new boolean[] {false, true})
+				testMatches(func, logX, logY);
+	}
+	
+	@Test
+	public void testSinglePoint() {
+		ArbitrarilyDiscretizedFunc func = new ArbitrarilyDiscretizedFunc();
+		func.set(1d, 5d);
+		DiscretizedFuncInterpolator interp = DiscretizedFuncInterpolator.getLinear(func);
+		assertEquals(5d, interp.interpolate(1d), 0d);
+	}
+	
+	@Test(expected=InvalidRangeException.class)
+	public void testOutOfRange() {
+		DiscretizedFuncInterpolator.getLogXLogY(buildHazardCurve()).interpolate(100d);
+	}
+
+}
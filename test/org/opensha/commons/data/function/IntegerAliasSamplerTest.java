@@ -0,0 +1,105 @@
+package org.opensha.commons.data.function;
+
+import static org.junit.Assert.*;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class IntegerAliasSamplerTest {
+	
+	private static double[] randomWeights(SplittableRandom r, int num) {
+		double[] weights = new double[num];
+		for (int i=0; i<num; i++) {
+			// include some zero weights
+			if (i % 7 != 3)
+				weights[i] = r.nextDouble()*r.nextDouble();
+		}
+		return weights;
+	}
+	
+	/*
+	 * Checks that sampled frequencies are consistent with the weights, to within 5 standard deviations
+	 */
+	private static void checkFrequencies(IntegerAliasSampler sampler, double[] weights, SplittableRandom r) {
+		int numSamples = 1000000;
+		int[] samples = new int[numSamples];
+		sampler.sample(r, numSamples, samples);
+		long[] counts = new long[weights.length];
+		for (int sample : samples)
+			counts[sample]++;
+		double sum = 0d;
+		for (double weight : weights)
+			sum += weight;
+		assertEquals(sum, sampler.getSumOfY_vals(), 1e-10*sum);
+		for (int i=0; i<weights.length; i++) {
+			double p = weights[i]/sum;
+			if (p == 0d) {
+				assertEquals("zero weight index "+i+" was sampled", 0, counts[i]);
+			} else {
+				double expected = p*numSamples;
+				double sd = Math.sqrt(numSamples*p*(1-p));
+				assertEquals("index "+i, expected, counts[i], 5*sd + 1);
+			}
+		}
+	}
+	
+	@Test
+	public void testFrequencies() {
+		SplittableRandom r = new SplittableRandom(12345l);
+		for (int num : new int[] {1, 5, 100, 1000}) {
+			double[] weights = randomWeights(r, num);
+			if (num == 1)
+				weights[0] = 1d;
+			checkFrequencies(new IntegerAliasSampler(weights), weights, r);
+			// small blocks, so that there are many blocks
+			checkFrequencies(new IntegerAliasSampler(weights, 4), weights, r);
+		}
+	}
+	
+	@Test
+	public void testUpdates() {
+		SplittableRandom r = new SplittableRandom(1234l);
+		double[] weights = randomWeights(r, 1000);
+		IntegerAliasSampler sampler = new IntegerAliasSampler(weights, 16);
+		checkFrequencies(sampler, weights, r);
+		for (int i=0; i<50; i++) {
+			int index = r.nextInt(weights.length);
+			weights[index] = i % 5 == 0 ? 0d : 2*r.nextDouble();
+			sampler.set(index, weights[index]);
+			assertEquals(weights[index], sampler.getY(index), 0d);
+		}
+		// zero out an entire block
+		for (int i=32; i<48; i++) {
+			weights[i] = 0d;
+			sampler.set(i, 0d);
+		}
+		checkFrequencies(sampler, weights, r);
+	}
+	
+	@Test
+	public void testReproducible() {
+		double[] weights = randomWeights(new SplittableRandom(123l), 500);
+		IntegerAliasSampler sampler = new IntegerAliasSampler(weights);
+		int num = 100000;
+		int[] serial = sampler.samples(new SplittableRandom(42l), num).toArray();
+		int[] parallel = sampler.samples(new SplittableRandom(42l), num).parallel().toArray();
+		assertArrayEquals(serial, parallel);
+		int[] bulk = new int[num];
+		sampler.sample(new SplittableRandom(42l), num, bulk);
+		SplittableRandom r = new SplittableRandom(42l);
+		for (int i=0; i<num; i++)
+			assertEquals(bulk[i], sampler.getRandomInt(r));
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testAllZero() {
+		new IntegerAliasSampler(new double[5]);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNegative() {
+		new IntegerAliasSampler(new double[] {1d, -1d});
+	}
+
+}
@@ -6,7 +6,9 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	ArbitrarilyDiscretizedFunctionTest.class,
-	EvenlyDiscretizedFuncTest.class
+	DiscretizedFuncInterpolatorTest.class,
+	EvenlyDiscretizedFuncTest.class,
+	IntegerAliasSamplerTest.class
 })
 
 public class XY_DataSetTestSuite {
@@ -0,0 +1,224 @@
+package org.opensha.commons.data.siteData;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.junit.Test;
+import org.opensha.commons.data.siteData.impl.ConstantValueDataProvider;
+import org.opensha.commons.data.siteData.impl.WillsMap2006;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+import org.opensha.commons.util.binFile.BinaryMesh2DCalculator.DataType;
+import org.opensha.commons.util.binFile.GeolocatedRectangularBinaryMesh2DCalculator;
+
+public class CachedSiteDataWrapperTest {
+	
+	/*
+	 * Provider which returns the latitude plus longitude of each location, rounded to its
+	 * resolution, and keeps track of the number of values requested
+	 */
+	private static class CountingProvider extends ConstantValueDataProvider<Double> {
+		
+		private double res;
+		protected int numRequested = 0;
+		
+		public CountingProvider(double res) {
+			super(TYPE_VS30, TYPE_FLAG_INFERRED, 1e-10);
+			this.res = res;
+		}
+
+		@Override
+		public double getResolution() {
+			return res;
+		}
+
+		@Override
+		public Double getValue(Location loc) throws IOException {
+			numRequested++;
+			if (loc.getLatitude() < 0)
+				return null;
+			return round(loc.getLatitude()) + round(loc.getLongitude());
+		}
+
+		@Override
+		public ArrayList<Double> getValues(LocationList locs) throws IOException {
+			ArrayList<Double> vals = new ArrayList<Double>();
+			for (Location loc : locs)
+				vals.add(getValue(loc));
+			return vals;
+		}
+		
+		private double round(double val) {
+			return res > 0 ? Math.round(val/res)*res : val;
+		}
+	}
+	
+	/*
+	 * Mesh provider which returns the index of the closest mesh point, with a mesh origin that isn't a
+	 * multiple of the resolution (like WillsMap2015)
+	 */
+	private static class MeshProvider extends CountingProvider implements MeshSiteData<Double> {
+		
+		private GeolocatedRectangularBinaryMesh2DCalculator calc;
+		
+		public MeshProvider() {
+			super(0.01);
+			calc = new GeolocatedRectangularBinaryMesh2DCalculator(
+					DataType.FLOAT, 200, 200, 33d, -124.406528862058, 0.01);
+		}
+
+		@Override
+		public GeolocatedRectangularBinaryMesh2DCalculator getMeshCalculator() {
+			return calc;
+		}
+
+		@Override
+		public Double getValue(Location loc) throws IOException {
+			super.getValue(loc);
+			long index = calc.calcClosestLocationIndex(loc);
+			return index < 0 ? Double.NaN : (double)index;
+		}
+	}
+	
+	@Test
+	public void testGetValue() throws IOException {
+		CountingProvider prov = new CountingProvider(0);
+		CachedSiteDataWrapper<Double> cache = new CachedSiteDataWrapper<Double>(prov, 10);
+		Location loc = new Location(34, -118);
+		assertEquals(-84d, cache.getValue(loc), 1e-10);
+		assertEquals(-84d, cache.getValue(new Location(34, -118)), 1e-10);
+		assertEquals(1, prov.numRequested);
+		assertEquals(1, cache.getStats().hitCount());
+		assertEquals(1, cache.getStats().missCount());
+		
+		// null values are cached
+		Location nullLoc = new Location(-10, 0);
+		assertNull(cache.getValue(nullLoc));
+		assertNull(cache.getValue(nullLoc));
+		assertEquals(2, prov.numRequested);
+		
+		cache.clearCache();
+		assertEquals(-84d, cache.getValue(loc), 1e-10);
+		assertEquals(3, prov.numRequested);
+	}
+	
+	@Test
+	public void testEviction() throws IOException {
+		CountingProvider prov = new CountingProvider(0);
+		CachedSiteDataWrapper<Double> cache = new CachedSiteDataWrapper<Double>(prov, 5);
+		for (int i=0; i<20; i++)
+			cache.getValue(new Location(i, 0));
+		assertEquals(20, prov.numRequested);
+		assertTrue(cache.getStats().evictionCount() >= 15);
+		// most recent value is retained
+		cache.getValue(new Location(19, 0));
+		assertEquals(20, prov.numRequested);
+	}
+	
+	@Test
+	public void testQuantized() throws IOException {
+		CountingProvider prov = new CountingProvider(0.5);
+		CachedSiteDataWrapper<Double> cache = new CachedSiteDataWrapper<Double>(prov, 10, true);
+		assertEquals(-84d, cache.getValue(new Location(34.1, -118.1)), 1e-10);
+		assertEquals(-84d, cache.getValue(new Location(33.9, -117.9)), 1e-10);
+		assertEquals(1, prov.numRequested);
+		assertEquals(-83.5, cache.getValue(new Location(34.4, -118.1)), 1e-10);
+		assertEquals(2, prov.numRequested);
+	}
+	
+	@Test
+	public void testQuantizedMesh() throws IOException {
+		MeshProvider prov = new MeshProvider();
+		CachedSiteDataWrapper<Double> cache = new CachedSiteDataWrapper<Double>(prov, 100, true);
+		// mesh cell boundary at -123.90152886, so these round to the same multiple of the resolution but
+		// have different closest mesh points
+		Location loc1 = new Location(34.001, -123.9016);
+		Location loc2 = new Location(34.001, -123.9014);
+		assertEquals(prov.getValue(loc1), cache.getValue(loc1), 0d);
+		assertEquals(prov.getValue(loc2), cache.getValue(loc2), 0d);
+		assertNotEquals(cache.getValue(loc1), cache.getValue(loc2));
+		assertEquals(4, prov.numRequested);
+		
+		// these round to different multiples of the resolution but share a mesh point
+		Location loc3 = new Location(34.001, -123.8920);
+		assertEquals(cache.getValue(loc2), cache.getValue(loc3), 0d);
+		assertEquals(4, prov.numRequested);
+		
+		// outside of the mesh, keyed on exact locations
+		assertTrue(Double.isNaN(cache.getValue(new Location(40, -110))));
+		assertTrue(Double.isNaN(cache.getValue(new Location(40.1, -110.1))));
+		assertEquals(6, prov.numRequested);
+		
+		// bulk requests match direct values
+		LocationList locs = new LocationList();
+		for (int i=0; i<200; i++)
+			locs.add(new Location(33.5 + 0.00037*i, -123.95 + 0.00091*i));
+		ArrayList<Double> vals = cache.getValues(locs);
+		for (int i=0; i<locs.size(); i++)
+			assertEquals(prov.getValue(locs.get(i)), vals.get(i), 0d);
+	}
+	
+	@Test
+	public void testWrapWithCache() throws IOException {
+		ArrayList<SiteData<?>> providers = new ArrayList<SiteData<?>>();
+		providers.add(new MeshProvider());
+		providers.add(new CountingProvider(0.5));
+		OrderedSiteDataProviderList list = new OrderedSiteDataProviderList(providers);
+		list.wrapWithCache(10, true);
+		// only providers with a mesh are quantized
+		assertTrue(((CachedSiteDataWrapper<?>)list.getProvider(0)).isQuantized());
+		assertFalse(((CachedSiteDataWrapper<?>)list.getProvider(1)).isQuantized());
+	}
+	
+	@Test
+	public void testXMLRoundTrip() throws IOException {
+		// servlet backed, so no data file is needed
+		WillsMap2006 wills = new WillsMap2006();
+		assertNotNull(wills.getMeshCalculator());
+		for (boolean quantize : new boolean[] { false, true }) {
+			CachedSiteDataWrapper<Double> cache = new CachedSiteDataWrapper<Double>(wills, 123, quantize);
+			Document doc = DocumentHelper.createDocument();
+			Element root = doc.addElement("root");
+			cache.toXMLMetadata(root);
+			SiteData<?> loaded = AbstractSiteData.fromXMLMetadata(root.element(AbstractSiteData.XML_METADATA_NAME));
+			assertTrue(loaded instanceof CachedSiteDataWrapper);
+			CachedSiteDataWrapper<?> loadedCache = (CachedSiteDataWrapper<?>)loaded;
+			assertEquals(123, loadedCache.getCacheSize());
+			assertEquals(quantize, loadedCache.isQuantized());
+			assertTrue(loadedCache.getProvider() instanceof WillsMap2006);
+		}
+	}
+	
+	@Test
+	public void testGetValues() throws IOException {
+		CountingProvider prov = new CountingProvider(0);
+		CachedSiteDataWrapper<Double> cache = new CachedSiteDataWrapper<Double>(prov, 100);
+		cache.getValue(new Location(1, 1));
+		LocationList locs = new LocationList();
+		locs.add(new Location(1, 1));
+		locs.add(new Location(2, 2));
+		locs.add(new Location(-1, 2));
+		locs.add(new Location(2, 2));
+		locs.add(new Location(3, 3));
+		ArrayList<Double> vals = cache.getValues(locs);
+		assertEquals(5, vals.size());
+		assertEquals(2d, vals.get(0), 1e-10);
+		assertEquals(4d, vals.get(1), 1e-10);
+		assertNull(vals.get(2));
+		assertEquals(4d, vals.get(3), 1e-10);
+		assertEquals(6d, vals.get(4), 1e-10);
+		// one initial request, then only the unique missing locations
+		assertEquals(4, prov.numRequested);
+		
+		SiteDataValueList<Double> annotated = cache.getAnnotatedValues(locs);
+		assertEquals(5, annotated.size());
+		assertEquals(6d, annotated.getValue(4).getValue(), 1e-10);
+		assertEquals(4, prov.numRequested);
+	}
+
+}
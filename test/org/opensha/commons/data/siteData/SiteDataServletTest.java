@@ -0,0 +1,288 @@
+package org.opensha.commons.data.siteData;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.opensha.commons.data.siteData.impl.ConstantValueDataProvider;
+import org.opensha.commons.data.siteData.servlet.AbstractSiteDataServlet;
+import org.opensha.commons.data.siteData.servlet.LocalSiteDataServer;
+import org.opensha.commons.data.siteData.servlet.SiteDataServletAccessor;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+import org.opensha.commons.param.impl.DoubleParameter;
+
+public class SiteDataServletTest {
+
+	/*
+	 * Provider which returns the latitude plus longitude of each location, plus an optional server side
+	 * offset parameter, and tracks the maximum number of concurrent bulk requests
+	 */
+	private static class SumProvider extends ConstantValueDataProvider<Double> {
+
+		private DoubleParameter offsetParam;
+		private long bulkMillis;
+		private AtomicInteger active = new AtomicInteger();
+		private AtomicInteger maxActive = new AtomicInteger();
+
+		public SumProvider(boolean offset, long bulkMillis) {
+			super(TYPE_VS30, TYPE_FLAG_INFERRED, 0d, "Sum Provider", "Sum");
+			if (offset) {
+				offsetParam = new DoubleParameter("Offset", 0d);
+				serverParamsList.addParameter(offsetParam);
+			}
+			this.bulkMillis = bulkMillis;
+		}
+
+		@Override
+		public Double getValue(Location loc) throws IOException {
+			double val = loc.getLatitude() + loc.getLongitude();
+			if (offsetParam != null)
+				val += offsetParam.getValue();
+			return val;
+		}
+
+		@Override
+		public ArrayList<Double> getValues(LocationList locs) throws IOException {
+			maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+			try {
+				if (bulkMillis > 0)
+					Thread.sleep(bulkMillis);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			} finally {
+				active.decrementAndGet();
+			}
+			return super.getValues(locs);
+		}
+	}
+
+	private static class SumServlet extends AbstractSiteDataServlet<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		public SumServlet(SumProvider data, boolean threadSafe) {
+			super(data, threadSafe);
+		}
+
+		public SumServlet(SiteDataFactory<Double> factory) throws IOException {
+			super(factory);
+		}
+	}
+
+	private static class StringProvider extends ConstantValueDataProvider<String> {
+
+		public StringProvider() {
+			super(TYPE_WILLS_CLASS, TYPE_FLAG_INFERRED, "", "String Provider", "Str");
+		}
+
+		@Override
+		public String getValue(Location loc) throws IOException {
+			if (loc.getLatitude() < 0)
+				return null;
+			return "class "+(int)loc.getLatitude();
+		}
+	}
+
+	private static LocationList buildLocs(int num) {
+		LocationList locs = new LocationList();
+		for (int i=0; i<num; i++)
+			locs.add(new Location(-40 + 80d*i/num, -120 + (i % 97)*0.01));
+		return locs;
+	}
+
+	private static void checkSums(LocationList locs, ArrayList<Double> vals, double offset) {
+		assertEquals(locs.size(), vals.size());
+		for (int i=0; i<locs.size(); i++)
+			assertEquals(locs.get(i).getLatitude() + locs.get(i).getLongitude() + offset, vals.get(i), 0d);
+	}
+
+	@Test
+	public void testBinaryAndObjectProtocols() throws IOException {
+		try (LocalSiteDataServer server = new LocalSiteDataServer(new SumServlet(new SumProvider(false, 0), true), 4)) {
+			SiteDataServletAccessor<Double> accessor = new SiteDataServletAccessor<Double>(
+					new SumProvider(false, 0), server.getURL());
+			accessor.setMaxLocsPerRequest(1000);
+			LocationList locs = buildLocs(12345);
+			checkSums(locs, accessor.getValues(locs), 0d);
+			assertEquals(13, server.getNumRequests());
+
+			accessor.setUseBinary(false);
+			checkSums(locs, accessor.getValues(locs), 0d);
+
+			// single value and closest location requests use serialized objects
+			Location loc = new Location(34, -118);
+			assertEquals(-84d, accessor.getValue(loc), 1e-10);
+			assertEquals(loc, accessor.getClosestLocation(loc));
+		}
+	}
+
+	@Test
+	public void testStringValues() throws IOException {
+		HttpServlet servlet = new AbstractSiteDataServlet<String>(new StringProvider(), true) {};
+		try (LocalSiteDataServer server = new LocalSiteDataServer(servlet, 2)) {
+			SiteDataServletAccessor<String> accessor = new SiteDataServletAccessor<String>(
+					new StringProvider(), server.getURL());
+			LocationList locs = buildLocs(1000);
+			ArrayList<String> vals = accessor.getValues(locs);
+			StringProvider prov = new StringProvider();
+			for (int i=0; i<locs.size(); i++)
+				assertEquals(prov.getValue(locs.get(i)), vals.get(i));
+			assertNull(vals.get(0));
+		}
+	}
+
+	@Test
+	public void testServerSideParams() throws IOException {
+		SumServlet servlet = new SumServlet(() -> new SumProvider(true, 0));
+		try (LocalSiteDataServer server = new LocalSiteDataServer(servlet, 4)) {
+			SumProvider client = new SumProvider(true, 0);
+			SiteDataServletAccessor<Double> accessor = new SiteDataServletAccessor<Double>(client, server.getURL());
+			accessor.setMaxLocsPerRequest(500);
+			LocationList locs = buildLocs(3000);
+			client.offsetParam.setValue(10d);
+			checkSums(locs, accessor.getValues(locs), 10d);
+			client.offsetParam.setValue(-5d);
+			checkSums(locs, accessor.getValues(locs), -5d);
+			accessor.setUseBinary(false);
+			checkSums(locs, accessor.getValues(locs), -5d);
+		}
+	}
+
+	@Test
+	public void testConcurrency() throws IOException {
+		LocationList locs = buildLocs(4000);
+
+		// shared thread safe provider: chunks are handled in parallel
+		SumProvider shared = new SumProvider(false, 50);
+		try (LocalSiteDataServer server = new LocalSiteDataServer(new SumServlet(shared, true), 4)) {
+			SiteDataServletAccessor<Double> accessor = new SiteDataServletAccessor<Double>(
+					new SumProvider(false, 0), server.getURL());
+			accessor.setMaxLocsPerRequest(500);
+			checkSums(locs, accessor.getValues(locs), 0d);
+			assertTrue("max concurrent: "+shared.maxActive.get(), shared.maxActive.get() > 1);
+			assertTrue(shared.maxActive.get() <= SiteDataServletAccessor.DEFAULT_MAX_CONCURRENT_REQUESTS);
+		}
+
+		// provider that isn't thread safe: requests are serialized
+		SumProvider locked = new SumProvider(false, 20);
+		try (LocalSiteDataServer server = new LocalSiteDataServer(new SumServlet(locked, false), 4)) {
+			SiteDataServletAccessor<Double> accessor = new SiteDataServletAccessor<Double>(
+					new SumProvider(false, 0), server.getURL());
+			accessor.setMaxLocsPerRequest(500);
+			checkSums(locs, accessor.getValues(locs), 0d);
+			assertEquals(1, locked.maxActive.get());
+		}
+	}
+
+	@Test
+	public void testProviderPool() throws Exception {
+		AtomicInteger numBuilt = new AtomicInteger();
+		List<SumProvider> built = new ArrayList<>();
+		SumServlet servlet = new SumServlet(() -> {
+			numBuilt.incrementAndGet();
+			SumProvider prov = new SumProvider(false, 20);
+			synchronized (built) {
+				built.add(prov);
+			}
+			return prov;
+		});
+		assertEquals(1, numBuilt.get());
+		LocationList locs = buildLocs(4000);
+		try (LocalSiteDataServer server = new LocalSiteDataServer(servlet, 4)) {
+			SiteDataServletAccessor<Double> accessor = new SiteDataServletAccessor<Double>(
+					new SumProvider(false, 0), server.getURL());
+			accessor.setMaxLocsPerRequest(500);
+			for (int i=0; i<3; i++)
+				checkSums(locs, accessor.getValues(locs), 0d);
+			// never more providers than concurrent requests, and each used by one request at a time
+			int numAfterFirst = numBuilt.get();
+			assertTrue(numAfterFirst <= SiteDataServletAccessor.DEFAULT_MAX_CONCURRENT_REQUESTS);
+			for (SumProvider prov : built)
+				assertTrue(prov.maxActive.get() <= 1);
+
+			// idle providers are reused
+			checkSums(locs, accessor.getValues(locs), 0d);
+			assertEquals(numAfterFirst, numBuilt.get());
+
+			// and dropped when the servlet is destroyed
+			servlet.destroy();
+			accessor.setMaxConcurrentRequests(1);
+			checkSums(locs, accessor.getValues(locs), 0d);
+			assertEquals(numAfterFirst+1, numBuilt.get());
+		}
+	}
+
+	@Test
+	public void testSharedRequestThreads() throws Exception {
+		// concurrent bulk calls through one accessor share its request threads
+		SumProvider shared = new SumProvider(false, 30);
+		try (LocalSiteDataServer server = new LocalSiteDataServer(new SumServlet(shared, true), 8)) {
+			SiteDataServletAccessor<Double> accessor = new SiteDataServletAccessor<Double>(
+					new SumProvider(false, 0), server.getURL());
+			accessor.setMaxLocsPerRequest(500);
+			accessor.setMaxConcurrentRequests(2);
+			LocationList locs = buildLocs(4000);
+			int numCallers = 3;
+			ExecutorService callers = Executors.newFixedThreadPool(numCallers);
+			try {
+				List<Future<ArrayList<Double>>> futures = new ArrayList<>();
+				for (int i=0; i<numCallers; i++)
+					futures.add(callers.submit(() -> accessor.getValues(locs)));
+				for (Future<ArrayList<Double>> future : futures)
+					checkSums(locs, future.get(), 0d);
+			} finally {
+				callers.shutdown();
+			}
+			assertTrue("max concurrent: "+shared.maxActive.get(), shared.maxActive.get() <= 2);
+
+			// resized
+			shared.maxActive.set(0);
+			accessor.setMaxConcurrentRequests(4);
+			checkSums(locs, accessor.getValues(locs), 0d);
+			assertTrue("max concurrent: "+shared.maxActive.get(), shared.maxActive.get() > 2);
+			assertTrue(shared.maxActive.get() <= 4);
+		}
+	}
+
+	@Test
+	public void testObjectOnlyServer() throws IOException {
+		// simulates a server without binary support by hiding the request content type
+		SumServlet servlet = new SumServlet(new SumProvider(false, 0), true);
+		HttpServlet objectOnly = new HttpServlet() {
+			@Override
+			protected void service(HttpServletRequest req, HttpServletResponse resp)
+					throws ServletException, IOException {
+				servlet.doPost(new HttpServletRequestWrapper(req) {
+					@Override
+					public String getContentType() {
+						return "application/octet-stream";
+					}
+				}, resp);
+			}
+		};
+		try (LocalSiteDataServer server = new LocalSiteDataServer(objectOnly, 2)) {
+			SiteDataServletAccessor<Double> accessor = new SiteDataServletAccessor<Double>(
+					new SumProvider(false, 0), server.getURL());
+			LocationList locs = buildLocs(100);
+			checkSums(locs, accessor.getValues(locs), 0d);
+			checkSums(locs, accessor.getValues(locs), 0d);
+			// one failed binary attempt, then serialized objects only
+			assertEquals(3, server.getNumRequests());
+		}
+	}
+
+}
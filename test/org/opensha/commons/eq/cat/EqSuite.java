@@ -3,13 +3,17 @@ package org.opensha.commons.eq.cat;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.opensha.commons.eq.cat.filters.CatalogBrushTest;
+import org.opensha.commons.eq.cat.filters.CatalogQueryTest;
+import org.opensha.commons.eq.cat.io.ColumnarCatalogFileTest;
 import org.opensha.commons.eq.cat.io.ReaderTests;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	MagUtilsTest.class,
 	CatalogBrushTest.class,
-	ReaderTests.class
+	CatalogQueryTest.class,
+	ReaderTests.class,
+	ColumnarCatalogFileTest.class
 })
 
 public class EqSuite
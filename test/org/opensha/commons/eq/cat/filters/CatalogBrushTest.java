@@ -3,10 +3,18 @@ package org.opensha.commons.eq.cat.filters;
 import static org.junit.Assert.*;
 import static org.opensha.commons.eq.cat.filters.CatalogBrush.calcMinCaret;
 import static org.opensha.commons.eq.cat.filters.CatalogBrush.calcMaxCaret;
+import static org.opensha.commons.eq.cat.filters.CatalogBrush.LimitKey.*;
+import static org.opensha.commons.eq.cat.filters.CatalogBrush.SelectionChange.*;
+import static org.opensha.commons.eq.cat.util.DataType.*;
+
+import java.util.BitSet;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.opensha.commons.eq.cat.MutableCatalog;
+import org.opensha.commons.eq.cat.filters.CatalogBrush.SelectionChange;
 
 public class CatalogBrushTest {
 
@@ -82,7 +90,77 @@ public class CatalogBrushTest {
 		assertEquals(calcMaxCaret(M, cMin, cMax, M[cMax-1], 4.5), 10); // [10] below min
 		assertEquals(calcMaxCaret(M, cMin, cMax, M[cMax-1], 4.5), 10); // [10] at min
 	}
-	
-	// test with carets at extremes
+
+	@Test
+	public void testIncrementalSelection() {
+		int size = 5000;
+		Random r = new Random(11);
+		long[] times = new long[size];
+		double[] depths = new double[size];
+		double[] mags = new double[size];
+		long t = 0;
+		for (int i = 0; i < size; i++) {
+			t += r.nextInt(1000);
+			times[i] = t;
+			depths[i] = r.nextInt(200) / 10.0;
+			mags[i] = 1 + r.nextInt(60) / 10.0;
+		}
+		MutableCatalog cat = new MutableCatalog();
+		cat.addData(TIME, times);
+		cat.addData(DEPTH, depths);
+		cat.addData(MAGNITUDE, mags);
+		CatalogBrush brush = new CatalogBrush(cat);
+		assertEquals(size, brush.selection().cardinality());
+
+		// limits kept apart so carets are never clamped
+		double magMin = 0, magMax = 10, depMin = 0, depMax = 30;
+		long timeMin = 0, timeMax = t;
+		for (int n = 0; n < 200; n++) {
+			BitSet before = (BitSet) brush.selection().clone();
+			SelectionChange change;
+			int choice = r.nextInt(6);
+			if (choice == 0) {
+				magMin = 1 + 2.5 * r.nextDouble();
+				change = brush.adjust(MAGNITUDE, MIN, magMin);
+			} else if (choice == 1) {
+				magMax = 4 + 3 * r.nextDouble();
+				change = brush.adjust(MAGNITUDE, MAX, magMax);
+			} else if (choice == 2) {
+				depMin = 8 * r.nextDouble();
+				change = brush.adjust(DEPTH, MIN, depMin);
+			} else if (choice == 3) {
+				depMax = 10 + 10 * r.nextDouble();
+				change = brush.adjust(DEPTH, MAX, depMax);
+			} else if (choice == 4) {
+				timeMin = (long) (0.4 * t * r.nextDouble());
+				change = brush.adjust(MIN, timeMin);
+			} else {
+				timeMax = t - (long) (0.4 * t * r.nextDouble());
+				change = brush.adjust(MAX, timeMax);
+			}
+			BitSet expected = new BitSet();
+			for (int i = 0; i < size; i++) {
+				if (mags[i] >= magMin && mags[i] <= magMax &&
+					depths[i] >= depMin && depths[i] <= depMax &&
+					times[i] >= timeMin && times[i] <= timeMax) {
+					expected.set(i);
+				}
+			}
+			assertEquals(expected, brush.selection());
+			BitSet diff = (BitSet) before.clone();
+			diff.xor(expected);
+			if (change == NONE) {
+				assertTrue(diff.isEmpty());
+			} else {
+				assertEquals(diff, brush.selectionChange());
+				BitSet check = (BitSet) before.clone();
+				check.and(diff);
+				assertEquals(change == REMOVE, !check.isEmpty());
+			}
+		}
+		// unsupported type and invalid value
+		assertEquals(NONE, brush.adjust(LATITUDE, MIN, 10));
+		assertEquals(NONE, brush.adjust(MAGNITUDE, MIN, 20));
+	}
 
 }
@@ -0,0 +1,190 @@
+package org.opensha.commons.eq.cat.filters;
+
+import static org.junit.Assert.*;
+import static org.opensha.commons.eq.cat.util.DataType.*;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensha.commons.eq.cat.MutableCatalog;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationUtils;
+
+public class CatalogQueryTest {
+
+	private static final int SIZE = 20000;
+
+	private static MutableCatalog catalog;
+	private static CatalogIndex index;
+	private static long[] times;
+	private static double[] lats, lons, depths, mags;
+
+	@BeforeClass
+	public static void setUpBeforeClass() {
+		Random r = new Random(17);
+		times = new long[SIZE];
+		lats = new double[SIZE];
+		lons = new double[SIZE];
+		depths = new double[SIZE];
+		mags = new double[SIZE];
+		long t = 315532800000L;
+		for (int i = 0; i < SIZE; i++) {
+			t += r.nextInt(1000000);
+			times[i] = t;
+			lats[i] = 32 + 10 * r.nextDouble();
+			lons[i] = -125 + 10 * r.nextDouble();
+			depths[i] = 20 * r.nextDouble();
+			// coarse magnitudes to exercise equal values
+			mags[i] = 1 + r.nextInt(60) / 10.0;
+		}
+		catalog = new MutableCatalog();
+		catalog.addData(TIME, times);
+		catalog.addData(LATITUDE, lats);
+		catalog.addData(LONGITUDE, lons);
+		catalog.addData(DEPTH, depths);
+		catalog.addData(MAGNITUDE, mags);
+		index = new CatalogIndex(catalog);
+	}
+
+	private static BitSet toBits(int[] indices) {
+		BitSet bits = new BitSet();
+		if (indices != null) {
+			for (int i : indices) bits.set(i);
+		}
+		return bits;
+	}
+
+	@Test
+	public void testIndex() {
+		assertEquals(SIZE, index.size());
+		assertTrue(index.contains(MAGNITUDE));
+		assertFalse(index.contains(EVENT_ID));
+		int[] range = index.range(MAGNITUDE, 2.0, 3.0);
+		int count = 0;
+		for (double m : mags) {
+			if (m >= 2.0 && m <= 3.0) count++;
+		}
+		assertEquals(count, range[1] - range[0]);
+		for (int i = range[0]; i < range[1]; i++) {
+			double m = index.value(MAGNITUDE, index.event(MAGNITUDE, i));
+			assertTrue(m >= 2.0 && m <= 3.0);
+		}
+		assertEquals(times[5], (long) index.value(TIME, 5));
+		assertEquals(5, index.event(TIME, 5));
+	}
+
+	@Test
+	public void testSortOrder() {
+		double[] values = new double[1000];
+		Random r = new Random(3);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = r.nextInt(50);
+		}
+		values[10] = Double.NaN;
+		values[20] = -0.0;
+		int[] order = CatalogIndex.sortOrder(values);
+		for (int i = 1; i < order.length; i++) {
+			int c = Double.compare(values[order[i - 1]], values[order[i]]);
+			assertTrue(c < 0 || c == 0 && order[i - 1] < order[i]);
+		}
+		assertEquals(10, order[order.length - 1]);
+	}
+
+	@Test
+	public void testRange() {
+		ExtentsFilter ef = new ExtentsFilter().setMagnitudes(3.0, 4.5)
+			.setDepths(5, 10).setDates(times[1000], times[15000]);
+		CatalogQuery q = CatalogQuery.range(MAGNITUDE, 3.0, 4.5)
+			.and(CatalogQuery.range(DEPTH, 5, 10),
+				CatalogQuery.timeRange(times[1000], times[15000]));
+		assertArrayEquals(ef.process(catalog), q.indices(index));
+
+		// wide scattered range
+		ef = new ExtentsFilter().setLatitudes(32.5, 41.5);
+		q = CatalogQuery.range(LATITUDE, 32.5, 41.5);
+		assertArrayEquals(ef.process(catalog), q.indices(index));
+
+		assertNull(CatalogQuery.range(MAGNITUDE, 8, 9).indices(index));
+		assertNull(CatalogQuery.range(MAGNITUDE, 4, 3).indices(index));
+	}
+
+	@Test
+	public void testPolygon() {
+		double[] polyLats = { 33.5, 36.25, 40.75, 38.0, 35.0 };
+		double[] polyLons = { -124.5, -116.0, -119.5, -122.75, -121.0 };
+		PolygonFilter pf = new PolygonFilter(polyLats, polyLons);
+		CatalogQuery q = CatalogQuery.polygon(polyLats, polyLons);
+		assertArrayEquals(pf.process(catalog), q.indices(index));
+	}
+
+	@Test
+	public void testRadial() {
+		Location center = new Location(36.5, -119.0);
+		RadialFilter rf = new RadialFilter(center, 150, times[2000],
+			times[18000]);
+		CatalogQuery q = CatalogQuery.radial(center, 150).and(
+			CatalogQuery.timeRange(times[2000], times[18000]));
+		assertArrayEquals(rf.process(catalog), q.indices(index));
+
+		// small radius; conjunction tested per event
+		BitSet expected = new BitSet();
+		for (int i = 0; i < SIZE; i++) {
+			double d = LocationUtils.horzDistanceFast(center, new Location(
+				lats[i], lons[i]));
+			if (d <= 30 && mags[i] >= 2.0) expected.set(i);
+		}
+		q = CatalogQuery.range(MAGNITUDE, 2.0, 10.0).and(
+			CatalogQuery.radial(center, 30));
+		assertEquals(expected, q.select(index));
+	}
+
+	@Test
+	public void testComposition() {
+		CatalogQuery a = CatalogQuery.range(MAGNITUDE, 2.0, 4.0);
+		CatalogQuery b = CatalogQuery.range(DEPTH, 0, 8);
+		CatalogQuery c = CatalogQuery.radial(new Location(37, -120), 200);
+		BitSet aBits = toBits(new ExtentsFilter().setMagnitudes(2.0, 4.0)
+			.process(catalog));
+		BitSet bBits = toBits(new ExtentsFilter().setDepths(0, 8).process(
+			catalog));
+		BitSet cBits = c.select(index);
+
+		BitSet expected = (BitSet) aBits.clone();
+		expected.or(bBits);
+		assertEquals(expected, a.or(b).select(index));
+
+		expected = (BitSet) aBits.clone();
+		expected.andNot(bBits);
+		assertEquals(expected, a.and(b.not()).select(index));
+
+		expected = (BitSet) aBits.clone();
+		expected.and(bBits);
+		expected.or(cBits);
+		expected.flip(0, SIZE);
+		CatalogQuery q = a.and(b).or(c).not();
+		assertEquals(expected, q.select(index));
+
+		// per-event tests agree with evaluation
+		BitSet scanned = CatalogQuery.scan(index, null, q);
+		assertEquals(expected, scanned);
+
+		assertEquals(SIZE, CatalogQuery.all().select(index).cardinality());
+		assertEquals(SIZE, a.or(a.not()).select(index).cardinality());
+		assertTrue(a.and(a.not()).select(index).isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingDataIAE() {
+		MutableCatalog cat = new MutableCatalog();
+		cat.addData(TIME, times);
+		CatalogQuery.range(MAGNITUDE, 1, 2).select(new CatalogIndex(cat));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRadiusIAE() {
+		CatalogQuery.radial(new Location(0, 0), 0);
+	}
+
+}
@@ -0,0 +1,237 @@
+package org.opensha.commons.eq.cat.io;
+
+import static org.junit.Assert.*;
+import static org.opensha.commons.eq.cat.util.DataType.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensha.commons.eq.cat.DefaultCatalog;
+import org.opensha.commons.eq.cat.MutableCatalog;
+import org.opensha.commons.eq.cat.util.DataType;
+
+import com.google.common.io.Files;
+
+public class ColumnarCatalogFileTest {
+
+	private static File dir;
+
+	@BeforeClass
+	public static void setUp() {
+		dir = Files.createTempDir();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	private static File loadFile(String name) throws Exception {
+		return new File(ColumnarCatalogFileTest.class.getResource(
+			"cats/"+name).toURI());
+	}
+
+	private static Map<DataType, Object> randomData(int size) {
+		Random r = new Random(size);
+		long[] times = new long[size];
+		double[] mags = new double[size];
+		double[] lats = new double[size];
+		int[] ids = new int[size];
+		long t = 315532800000L;
+		for (int i=0; i<size; i++) {
+			t += r.nextInt(100000);
+			times[i] = t;
+			mags[i] = 1 + 6*r.nextDouble();
+			lats[i] = -90 + 180*r.nextDouble();
+			ids[i] = r.nextInt();
+		}
+		Map<DataType, Object> data = new EnumMap<DataType, Object>(DataType.class);
+		data.put(TIME, times);
+		data.put(MAGNITUDE, mags);
+		data.put(LATITUDE, lats);
+		data.put(EVENT_ID, ids);
+		return data;
+	}
+
+	@Test
+	public void testCatalogRoundTrip() throws Exception {
+		MutableCatalog orig = new MutableCatalog(loadFile("SCEDC.cat"), new Reader_SCEDC(20));
+		File file = new File(dir, "scedc.bin");
+		orig.writeColumnar(file, 2);
+
+		DefaultCatalog loaded = new DefaultCatalog();
+		loaded.readColumnar(file);
+		assertEquals(orig.size(), loaded.size());
+		assertEquals(orig.getDataTypes(), loaded.getDataTypes());
+		assertEquals(orig.minDate(), loaded.minDate());
+		assertEquals(orig.maxDate(), loaded.maxDate());
+		for (DataType type : new DataType[] {LATITUDE, LONGITUDE, DEPTH, MAGNITUDE}) {
+			assertEquals(orig.minForType(type), loaded.minForType(type), 0d);
+			assertEquals(orig.maxForType(type), loaded.maxForType(type), 0d);
+		}
+
+		// mapped buffers before any array access
+		DoubleBuffer mags = loaded.getDoubleBuffer(MAGNITUDE);
+		assertTrue(mags.isReadOnly());
+		assertTrue(mags.isDirect());
+		for (int i=0; i<orig.size(); i++)
+			assertEquals(orig.getValue(MAGNITUDE, i), mags.get(i), 0d);
+		LongBuffer times = loaded.getLongBuffer(TIME);
+		for (int i=0; i<orig.size(); i++)
+			assertEquals(orig.getTime(i), times.get(i));
+		assertNull(loaded.getDoubleBuffer(FAULT_DISTANCE));
+
+		// arrays
+		assertArrayEquals((int[])orig.getData(QUALITY), (int[])loaded.getData(QUALITY));
+		assertArrayEquals((int[])orig.getData(MAGNITUDE_TYPE), (int[])loaded.getData(MAGNITUDE_TYPE));
+		assertArrayEquals((double[])orig.getData(LATITUDE), (double[])loaded.getData(LATITUDE), 0d);
+		for (int i=0; i<orig.size(); i++) {
+			assertEquals(orig.getEventID(i), loaded.getEventID(i));
+			assertEquals(orig.getValue(DEPTH, i), loaded.getValue(DEPTH, i), 0d);
+		}
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		Map<DataType, Object> data = randomData(5000);
+		File file = new File(dir, "concurrent.bin");
+		ColumnarCatalogFile.write(file, data);
+		final double[] mags = (double[])data.get(MAGNITUDE);
+		final double[] lats = (double[])data.get(LATITUDE);
+		ExecutorService exec = Executors.newFixedThreadPool(8);
+		try {
+			for (int n=0; n<20; n++) {
+				// columns are copied from the mapped file on first access
+				final DefaultCatalog cat = new DefaultCatalog();
+				cat.readColumnar(file);
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (int t=0; t<16; t++) {
+					final boolean buffersFirst = t % 2 == 0;
+					futures.add(exec.submit(new Callable<Void>() {
+						@Override
+						public Void call() {
+							if (buffersFirst) {
+								DoubleBuffer buf = cat.getDoubleBuffer(MAGNITUDE);
+								for (int i=0; i<mags.length; i++)
+									assertEquals(mags[i], buf.get(i), 0d);
+							}
+							assertArrayEquals(mags, (double[])cat.getData(MAGNITUDE), 0d);
+							assertArrayEquals(lats, (double[])cat.getData(LATITUDE), 0d);
+							DoubleBuffer buf = cat.getDoubleBuffer(LATITUDE);
+							for (int i=0; i<lats.length; i++)
+								assertEquals(lats[i], buf.get(i), 0d);
+							return null;
+						}
+					}));
+				}
+				for (Future<?> future : futures)
+					future.get();
+			}
+		} finally {
+			exec.shutdown();
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBufferTypeIAE() {
+		new DefaultCatalog().getDoubleBuffer(TIME);
+	}
+
+	@Test
+	public void testBlockStatsAndTimeIndex() throws IOException {
+		int size = 10007;
+		int blockSize = 100;
+		Map<DataType, Object> data = randomData(size);
+		File file = new File(dir, "random.bin");
+		ColumnarCatalogFile.write(file, data, blockSize);
+		ColumnarCatalogFile cf = ColumnarCatalogFile.open(file);
+
+		assertEquals(size, cf.size());
+		assertEquals(blockSize, cf.getBlockSize());
+		assertEquals(101, cf.getNumBlocks());
+		assertTrue(cf.isTimeSorted());
+		assertArrayEquals((int[])data.get(EVENT_ID), (int[])cf.getData(EVENT_ID));
+
+		double[] mags = (double[])data.get(MAGNITUDE);
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for (int b=0; b<cf.getNumBlocks(); b++) {
+			double bMin = Double.POSITIVE_INFINITY, bMax = Double.NEGATIVE_INFINITY;
+			for (int i=b*blockSize; i<Math.min(size, (b+1)*blockSize); i++) {
+				bMin = Math.min(bMin, mags[i]);
+				bMax = Math.max(bMax, mags[i]);
+			}
+			assertEquals(bMin, cf.getBlockMin(MAGNITUDE, b), 0d);
+			assertEquals(bMax, cf.getBlockMax(MAGNITUDE, b), 0d);
+			min = Math.min(min, bMin);
+			max = Math.max(max, bMax);
+		}
+		assertEquals(min, cf.getMin(MAGNITUDE), 0d);
+		assertEquals(max, cf.getMax(MAGNITUDE), 0d);
+
+		long[] times = (long[])data.get(TIME);
+		Random r = new Random(0);
+		for (int n=0; n<200; n++) {
+			long t1 = times[0] - 1000 + (long)(r.nextDouble()*(times[size-1] - times[0] + 2000));
+			long t2 = t1 + r.nextInt(5000000);
+			int from = 0;
+			while (from < size && times[from] < t1) from++;
+			int to = from;
+			while (to < size && times[to] < t2) to++;
+			int[] range = cf.getTimeIndexRange(t1, t2);
+			assertEquals(from, range[0]);
+			assertEquals(to, range[1]);
+		}
+		assertArrayEquals(new int[] {0, 0}, cf.getTimeIndexRange(0, times[0]));
+		assertArrayEquals(new int[] {0, size}, cf.getTimeIndexRange(0, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testUnsortedTimes() throws IOException {
+		Map<DataType, Object> data = randomData(10);
+		long[] times = (long[])data.get(TIME);
+		times[3] = times[9] + 1;
+		File file = new File(dir, "unsorted.bin");
+		ColumnarCatalogFile.write(file, data);
+		assertFalse(ColumnarCatalogFile.open(file).isTimeSorted());
+		try {
+			new DefaultCatalog().readColumnar(file);
+			fail("unsorted times should not load");
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testBadFile() throws IOException {
+		File file = new File(dir, "bad.bin");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[100]);
+		out.close();
+		ColumnarCatalogFile.open(file);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMismatchedSizes() throws IOException {
+		Map<DataType, Object> data = randomData(10);
+		data.put(DEPTH, new double[9]);
+		ColumnarCatalogFile.write(new File(dir, "mismatch.bin"), data);
+	}
+
+}
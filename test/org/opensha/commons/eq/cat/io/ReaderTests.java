@@ -68,9 +68,11 @@ public class ReaderTests {
 		CatalogReader r = new Reader_Basic(0);
 	}
 	
-	@Test(expected=IllegalArgumentException.class)
-	public void testAbstractReaderIAE2() {
-		CatalogReader r = new Reader_Basic(Catalog.MAX_SIZE + 1);
+	@Test
+	public void testAbstractReaderLargeSize() {
+		// no upper limit on catalog size
+		CatalogReader r = new Reader_Basic(10000000);
+		assertNotNull(r);
 	}
 	
 	@Test
@@ -96,6 +98,63 @@ public class ReaderTests {
 		r.process(loadFile("Bad.cat"), new MutableCatalog());
 	}
 
+	@Test
+	public void testProcessIOEParallel() throws IOException {
+		Reader_Basic r = new Reader_Basic(10);
+		String expected = null;
+		try {
+			r.process(loadFile("Bad.cat"), new MutableCatalog());
+		} catch (IllegalArgumentException iae) {
+			expected = iae.getMessage();
+		}
+		assertNotNull(expected);
+		r.setChunkSize(64);
+		try {
+			r.process(loadFile("Bad.cat"), new MutableCatalog());
+			fail("Bad.cat should not parse");
+		} catch (IllegalArgumentException iae) {
+			assertEquals(expected, iae.getMessage());
+		}
+	}
+
+	@Test
+	public void testChunkedReaders() throws IOException {
+		// small chunks force files to be parsed in parallel pieces
+		AbstractReader[] readers = { new Reader_Basic(1),
+			new Reader_ANSS(1), new Reader_LSH(1), new Reader_NC_PARK(1),
+			new Reader_NC_USGS(1), new Reader_NC_WALDHAUSER(1),
+			new Reader_NCEDC(1), new Reader_SCEDC(1), new Reader_SCSN(1),
+			new Reader_SHLK(1), new Reader_TW_RELOC(1) };
+		File[] files = { BASIC_DAT, ANSS_DAT, LSH_DAT, NC_PARK_DAT,
+			NC_USGS_DAT, NC_WALDHAUSER_DAT, NCEDC_DAT, SCEDC_DAT, SCSN_DAT,
+			SHLK_DAT, TW_RELOC_DAT };
+		for (int i=0; i<readers.length; i++) {
+			AbstractReader r = readers[i];
+			r.setParallel(false);
+			Catalog expected = new MutableCatalog(files[i], r);
+			for (int chunkSize : new int[] {1, 64, 150}) {
+				r.setParallel(true);
+				r.setChunkSize(chunkSize);
+				Catalog actual = new MutableCatalog(files[i], r);
+				String msg = r+", chunkSize="+chunkSize;
+				assertEquals(msg, expected.size(), actual.size());
+				assertArrayEquals(msg, (long[])expected.getData(TIME),
+					(long[])actual.getData(TIME));
+				assertArrayEquals(msg, (double[])expected.getData(LATITUDE),
+					(double[])actual.getData(LATITUDE), 0d);
+				assertArrayEquals(msg, (double[])expected.getData(LONGITUDE),
+					(double[])actual.getData(LONGITUDE), 0d);
+				assertArrayEquals(msg, (double[])expected.getData(DEPTH),
+					(double[])actual.getData(DEPTH), 0d);
+				assertArrayEquals(msg, (double[])expected.getData(MAGNITUDE),
+					(double[])actual.getData(MAGNITUDE), 0d);
+				if (expected.contains(EVENT_ID))
+					assertArrayEquals(msg, (int[])expected.getData(EVENT_ID),
+						(int[])actual.getData(EVENT_ID));
+			}
+		}
+	}
+
 	//////////////////////////////////////////////////
 	//												//
 	//				Individual Readers				//
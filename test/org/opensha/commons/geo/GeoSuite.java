@@ -26,6 +26,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
 	GeoToolsTest.class,
 	GriddedRegionTest.class,
+	LocationKDTreeTest.class,
 	LocationListTest.class,
 	LocationTest.class,
 	LocationUtilsTest.class,
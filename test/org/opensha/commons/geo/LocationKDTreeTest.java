@@ -0,0 +1,137 @@
+package org.opensha.commons.geo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.opensha.commons.geo.LocationUtils.horzDistance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class LocationKDTreeTest {
+
+	private static final double TOL = 1e-8;
+
+	private static LocationList scattered;
+	private static LocationList gridded;
+	private static LocationList queries;
+
+	@BeforeClass
+	public static void setUp() {
+		Random r = new Random(1);
+		scattered = new LocationList();
+		for (int i=0; i<5000; i++) {
+			scattered.add(new Location(-90 + 180 * r.nextDouble(), -180 + 360 * r.nextDouble()));
+		}
+		// regular grid spanning the dateline; lots of duplicate coordinates
+		gridded = new LocationList();
+		for (double lat=-50; lat<=-30; lat+=0.25) {
+			for (double lon=165; lon<=180; lon+=0.25) {
+				gridded.add(new Location(lat, lon));
+			}
+			for (double lon=-179.75; lon<=-170; lon+=0.25) {
+				gridded.add(new Location(lat, lon));
+			}
+		}
+		queries = new LocationList();
+		for (int i=0; i<200; i++) {
+			queries.add(new Location(-90 + 180 * r.nextDouble(), -180 + 360 * r.nextDouble()));
+			queries.add(new Location(-50 + 20 * r.nextDouble(), (i % 2 == 0) ? 165 + 15 * r.nextDouble() : -180 + 10 * r.nextDouble()));
+		}
+		queries.add(new Location(90, 0));
+		queries.add(new Location(-40, 180));
+		queries.add(new Location(-40, -180));
+		queries.add(gridded.get(100));
+	}
+
+	/* brute force sorted indices */
+	private static Integer[] bruteSorted(final List<Location> locs, final Location loc) {
+		Integer[] order = new Integer[locs.size()];
+		for (int i=0; i<order.length; i++) order[i] = i;
+		Arrays.sort(order, Comparator.comparingDouble((Integer i) -> horzDistance(loc, locs.get(i))));
+		return order;
+	}
+
+	@Test
+	public void testNearest() {
+		for (LocationList locs : new LocationList[] {scattered, gridded}) {
+			LocationKDTree tree = new LocationKDTree(locs);
+			assertEquals(locs.size(), tree.size());
+			int[] bulk = tree.nearest(queries);
+			for (int q=0; q<queries.size(); q++) {
+				Location loc = queries.get(q);
+				Integer[] brute = bruteSorted(locs, loc);
+				double expected = horzDistance(loc, locs.get(brute[0]));
+				int index = tree.nearest(loc);
+				assertEquals(expected, horzDistance(loc, locs.get(index)), TOL);
+				assertEquals(index, bulk[q]);
+			}
+		}
+	}
+
+	@Test
+	public void testNearestWithin() {
+		LocationKDTree tree = new LocationKDTree(gridded);
+		Location loc = new Location(-20, 175);
+		double dist = horzDistance(loc, gridded.get(tree.nearest(loc)));
+		assertEquals(-1, tree.nearest(loc, dist * 0.99));
+		assertEquals(tree.nearest(loc), tree.nearest(loc, dist * 1.01));
+		assertEquals(-1, new LocationKDTree(new LocationList()).nearest(loc));
+	}
+
+	@Test
+	public void testKNearest() {
+		int k = 25;
+		for (LocationList locs : new LocationList[] {scattered, gridded}) {
+			LocationKDTree tree = new LocationKDTree(locs);
+			for (Location loc : queries) {
+				Integer[] brute = bruteSorted(locs, loc);
+				int[] indices = tree.nearest(loc, k);
+				assertEquals(k, indices.length);
+				for (int i=0; i<k; i++) {
+					assertEquals(horzDistance(loc, locs.get(brute[i])),
+						horzDistance(loc, locs.get(indices[i])), TOL);
+				}
+			}
+		}
+		LocationList small = new LocationList();
+		small.add(new Location(1, 1));
+		small.add(new Location(2, 2));
+		assertArrayEquals(new int[] {1, 0},
+			new LocationKDTree(small).nearest(new Location(3, 3), 5));
+	}
+
+	@Test
+	public void testWithinRadius() {
+		double radius = 150;
+		for (LocationList locs : new LocationList[] {scattered, gridded}) {
+			LocationKDTree tree = new LocationKDTree(locs);
+			for (Location loc : queries) {
+				List<Integer> expected = new ArrayList<>();
+				boolean ambiguous = false;
+				for (int i=0; i<locs.size(); i++) {
+					double dist = horzDistance(loc, locs.get(i));
+					// skip anything too close to the radius to call
+					ambiguous |= Math.abs(dist - radius) < 1e-6;
+					if (dist <= radius) expected.add(i);
+				}
+				if (ambiguous) continue;
+				int[] indices = tree.withinRadius(loc, radius);
+				assertEquals(expected.size(), indices.length);
+				double prev = 0;
+				for (int index : indices) {
+					double dist = horzDistance(loc, locs.get(index));
+					assertEquals(true, expected.contains(index));
+					assertEquals(true, dist >= prev - TOL);
+					prev = dist;
+				}
+			}
+		}
+	}
+
+}
@@ -181,4 +181,22 @@ public class LocationTest {
 		assertTrue(locList.get(4) == l4);
 	}	
 
+	@Test
+	public final void testFromRadians() {
+		for (Location loc : new Location[] { new Location(34.123456789, -118.987654321, 7.3),
+				new Location(90, 180), new Location(-90, -180, 0.1) }) {
+			Location copy = Location.fromRadians(loc.getLatRad(), loc.getLonRad(), loc.getDepth());
+			assertEquals(loc, copy);
+			// exact, unlike converting radians back to degrees
+			assertTrue(loc.getLatRad() == copy.getLatRad());
+			assertTrue(loc.getLonRad() == copy.getLonRad());
+			assertTrue(loc.getDepth() == copy.getDepth());
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public final void testFromRadiansOutOfRange() {
+		Location.fromRadians(0.6*Math.PI, 0d, 0d);
+	}
+
 }
@@ -35,6 +35,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.commons.math3.util.Precision;
 import org.junit.BeforeClass;
@@ -45,6 +46,8 @@ import org.opensha.commons.geo.Location;
 import org.opensha.commons.geo.LocationList;
 import org.opensha.commons.geo.Region;
 
+import com.google.common.collect.Lists;
+
 public class RegionTest {
 	
 	// TODO need to test immutability of border
@@ -447,6 +450,33 @@ public class RegionTest {
 		assertTrue(lgRectMercRegion.contains(containsWloc));
 	}
 	
+	@Test
+	public final void testContainsLocationIndexed() {
+		// indexed results must match the underlying Area exactly, including
+		// grid aligned points and border vertices
+		Region[] regions = { circRegion, buffRegion, circLgRectUnion,
+			interiorRegion };
+		Random r = new Random(1);
+		for (Region region : regions) {
+			Area area = region.getShape();
+			List<Location> locs = Lists.newArrayList(region.getBorder());
+			for (int i=0; i<10000; i++) {
+				locs.add(new Location(
+					region.getMinLat() - 1 + r.nextDouble() * (region.getMaxLat() - region.getMinLat() + 2),
+					region.getMinLon() - 1 + r.nextDouble() * (region.getMaxLon() - region.getMinLon() + 2)));
+			}
+			for (double lat = Math.floor(region.getMinLat()); lat <= region.getMaxLat(); lat += 0.1) {
+				for (double lon = Math.floor(region.getMinLon()); lon <= region.getMaxLon(); lon += 0.1) {
+					locs.add(new Location(lat, lon));
+				}
+			}
+			for (Location loc : locs) {
+				assertEquals(area.contains(loc.getLongitude(), loc.getLatitude()),
+					region.contains(loc));
+			}
+		}
+	}
+	
 	@Test
 	public final void testContainsRegion() {
 		assertTrue(lgRectMercRegion.contains(smRectRegion1));
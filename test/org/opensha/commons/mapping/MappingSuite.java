@@ -25,7 +25,8 @@ import org.opensha.commons.mapping.gmt.TestGMT_MapGenerator;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
-	TestGMT_MapGenerator.class
+	TestGMT_MapGenerator.class,
+	RasterMapRendererTest.class
 })
 
 public class MappingSuite
@@ -0,0 +1,150 @@
+package org.opensha.commons.mapping;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+import org.opensha.commons.data.xyz.GriddedGeoDataSet;
+import org.opensha.commons.exceptions.GMT_MapException;
+import org.opensha.commons.geo.BorderType;
+import org.opensha.commons.geo.GriddedRegion;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+import org.opensha.commons.geo.Region;
+import org.opensha.commons.mapping.RasterMapRenderer.Projection;
+import org.opensha.commons.mapping.gmt.GMT_Map;
+import org.opensha.commons.mapping.gmt.elements.PSXYPolygon;
+import org.opensha.commons.mapping.gmt.elements.PSXYSymbol;
+import org.opensha.commons.mapping.gmt.elements.PSXYSymbol.Symbol;
+import org.opensha.commons.util.FileUtils;
+import org.opensha.commons.util.cpt.CPT;
+import org.opensha.commons.util.cpt.CPTVal;
+
+public class RasterMapRendererTest {
+
+	private static final double SPACING = 0.1;
+
+	private static GMT_Map buildMap(Region region) {
+		GriddedRegion gridded = new GriddedRegion(new Region(new Location(33, -120), new Location(36, -116)),
+				SPACING, GriddedRegion.ANCHOR_0_0);
+		GriddedGeoDataSet data = new GriddedGeoDataSet(gridded, false);
+		for (int i=0; i<data.size(); i++) {
+			Location loc = data.getLocation(i);
+			data.set(i, loc.getLatitude() + loc.getLongitude());
+		}
+		CPT cpt = new CPT(0d, 1d, Color.BLUE, Color.GREEN, Color.RED);
+		cpt.setNanColor(Color.GRAY);
+		GMT_Map map = new GMT_Map(region, data, SPACING, cpt);
+		map.setBlackBackground(false);
+		map.setCustomLabel("Sum");
+		return map;
+	}
+
+	private static int getPixel(BufferedImage image, Projection proj, double lat, double lon) {
+		return image.getRGB((int)proj.x(lon), (int)proj.y(lat)) & 0xFFFFFF;
+	}
+
+	@Test
+	public void testGridColors() throws GMT_MapException {
+		GMT_Map map = buildMap(new Region(new Location(33, -120), new Location(36, -116)));
+		BufferedImage image = new RasterMapRenderer(null).render(map);
+		Projection proj = RasterMapRenderer.buildProjection(map);
+		assertEquals(proj.imageWidth, image.getWidth());
+		assertEquals(proj.imageHeight, image.getHeight());
+		assertEquals(612, image.getWidth());
+
+		CPT cpt = map.getCpt().rescale(map.getGriddedData().getMinZ(), map.getGriddedData().getMaxZ());
+		for (double lat : new double[] {33.5, 34.2, 35.7}) {
+			for (double lon : new double[] {-119.6, -118.1, -116.4}) {
+				// pixel at a node has the color of that node
+				Color expected = cpt.getColor((float)(lat + lon));
+				assertEquals("Bad color at "+lat+", "+lon,
+						expected.getRGB() & 0xFFFFFF, getPixel(image, proj, lat, lon));
+			}
+		}
+		// background
+		assertEquals(0xFFFFFF, image.getRGB(2, 2) & 0xFFFFFF);
+	}
+
+	@Test
+	public void testParallel() throws GMT_MapException {
+		GMT_Map map = buildMap(new Region(new Location(33, -120), new Location(36, -116)));
+		map.setDpi(150);
+		BufferedImage serial = new RasterMapRenderer(null).render(map);
+		BufferedImage parallel = new RasterMapRenderer(new ForkJoinPool(4)).render(map);
+		assertEquals(serial.getWidth(), parallel.getWidth());
+		assertEquals(serial.getHeight(), parallel.getHeight());
+		for (int y=0; y<serial.getHeight(); y++)
+			for (int x=0; x<serial.getWidth(); x++)
+				assertEquals(serial.getRGB(x, y), parallel.getRGB(x, y));
+	}
+
+	@Test
+	public void testMaskAndOverlays() throws GMT_MapException {
+		LocationList border = new LocationList();
+		border.add(new Location(33, -120));
+		border.add(new Location(36, -120));
+		border.add(new Location(36, -116));
+		border.add(new Location(33, -118));
+		Region region = new Region(border, BorderType.MERCATOR_LINEAR);
+		GMT_Map map = buildMap(region);
+		map.setMaskIfNotRectangular(true);
+		map.setCoast(null);
+
+		LocationList polyLocs = new LocationList();
+		polyLocs.add(new Location(35, -119.5));
+		polyLocs.add(new Location(35.5, -119.5));
+		polyLocs.add(new Location(35.5, -119));
+		polyLocs.add(new Location(35, -119));
+		PSXYPolygon poly = new PSXYPolygon(polyLocs);
+		poly.setFillColor(Color.MAGENTA);
+		map.addPolys(poly);
+		map.addSymbol(new PSXYSymbol(new Point2D.Double(-117, 35.5), Symbol.CIRCLE, 0.2, 0, null, Color.CYAN));
+
+		Projection proj = RasterMapRenderer.buildProjection(map);
+		BufferedImage image = new RasterMapRenderer().render(map);
+		// outside of the region: NaN color
+		assertEquals(Color.GRAY.getRGB() & 0xFFFFFF, getPixel(image, proj, 33.3, -116.5));
+		// inside the region: data
+		assertNotEquals(Color.GRAY.getRGB() & 0xFFFFFF, getPixel(image, proj, 34, -119));
+		assertEquals(Color.MAGENTA.getRGB() & 0xFFFFFF, getPixel(image, proj, 35.25, -119.25));
+		assertEquals(Color.CYAN.getRGB() & 0xFFFFFF, getPixel(image, proj, 35.5, -117));
+	}
+
+	@Test
+	public void testMakeMap() throws GMT_MapException, IOException {
+		GMT_Map map = buildMap(new Region(new Location(33, -120), new Location(36, -116)));
+		map.setImageWidth(4);
+		CPT discrete = new CPT();
+		discrete.add(new CPTVal(0f, Color.BLUE, 0.5f, Color.BLUE));
+		discrete.add(new CPTVal(0.5f, Color.RED, 1f, Color.RED));
+		map.setCpt(discrete);
+		File dir = FileUtils.createTempDir();
+		try {
+			File png = new RasterMapRenderer().makeMap(map, dir);
+			assertEquals(map.getPNGFileName(), png.getName());
+			BufferedImage image = ImageIO.read(png);
+			assertEquals(4*map.getDpi(), image.getWidth());
+		} finally {
+			FileUtils.deleteRecursive(dir);
+		}
+	}
+
+	@Test(expected=GMT_MapException.class)
+	public void testBadPolygon() throws GMT_MapException {
+		GMT_Map map = buildMap(new Region(new Location(33, -120), new Location(36, -116)));
+		PSXYPolygon poly = new PSXYPolygon();
+		poly.addPoint(new Point2D.Double(-118, 34));
+		map.addPolys(poly);
+		new RasterMapRenderer().render(map);
+	}
+
+}
@@ -0,0 +1,135 @@
+package org.opensha.commons.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+
+import ucar.ma2.ArrayDouble;
+import ucar.ma2.ArrayFloat;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Dimension;
+import ucar.nc2.NetcdfFileWriteable;
+
+public class GMT_GrdFileTest {
+
+	private static final int NX = 301;
+	private static final int NY = 203;
+	private static final double MIN_X = -120;
+	private static final double MIN_Y = 34;
+	private static final double SPACING = 0.01;
+
+	private static File file;
+	private static GMT_GrdFile cached;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		file = File.createTempFile("grd_test", ".grd");
+		NetcdfFileWriteable nc = NetcdfFileWriteable.createNew(file.getAbsolutePath(), false);
+		Dimension xDim = nc.addDimension("x", NX);
+		Dimension yDim = nc.addDimension("y", NY);
+		nc.addVariable("x", DataType.DOUBLE, new Dimension[] {xDim});
+		nc.addVariable("y", DataType.DOUBLE, new Dimension[] {yDim});
+		nc.addVariable("z", DataType.FLOAT, new Dimension[] {yDim, xDim});
+		nc.create();
+		ArrayDouble.D1 xs = new ArrayDouble.D1(NX);
+		for (int i=0; i<NX; i++)
+			xs.set(i, MIN_X + i*SPACING);
+		ArrayDouble.D1 ys = new ArrayDouble.D1(NY);
+		for (int i=0; i<NY; i++)
+			ys.set(i, MIN_Y + i*SPACING);
+		ArrayFloat.D2 zs = new ArrayFloat.D2(NY, NX);
+		for (int y=0; y<NY; y++)
+			for (int x=0; x<NX; x++)
+				zs.set(y, x, (float)(y*1000 + x));
+		nc.write("x", xs);
+		nc.write("y", ys);
+		nc.write("z", zs);
+		nc.close();
+
+		cached = new GMT_GrdFile(file.getAbsolutePath(), true);
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() {
+		file.delete();
+	}
+
+	@Test
+	public void testTiledValues() throws Exception {
+		GMT_GrdFile tiled = new GMT_GrdFile(file.getAbsolutePath(), 32, 100);
+		assertEquals(NX, tiled.getNumX());
+		assertEquals(NY, tiled.getNumY());
+		for (int y=0; y<NY; y++) {
+			for (int x=0; x<NX; x++) {
+				double expected = y*1000 + x;
+				assertEquals(expected, cached.getZ(x, y), 0d);
+				assertEquals(expected, tiled.getZ(x, y), 0d);
+			}
+		}
+		// 10x7 tiles, each read once
+		assertEquals(10*7, tiled.getNumTilesRead());
+	}
+
+	@Test(expected=InvalidRangeException.class)
+	public void testOutOfRange() throws Exception {
+		new GMT_GrdFile(file.getAbsolutePath(), false).getZ(NX, 0);
+	}
+
+	@Test
+	public void testBulkInterpolation() throws Exception {
+		GMT_GrdFile tiled = new GMT_GrdFile(file.getAbsolutePath(), 64, 100);
+		Random r = new Random(1);
+		LocationList locs = new LocationList();
+		for (int i=0; i<5000; i++) {
+			double lat = MIN_Y + SPACING*(NY-1.001)*r.nextDouble();
+			double lon = MIN_X + SPACING*(NX-1.001)*r.nextDouble();
+			locs.add(new Location(lat, lon));
+		}
+		double[] values = tiled.getInterpolatedZ(locs);
+		for (int i=0; i<locs.size(); i++)
+			assertEquals(cached.getInterpolatedZ(locs.get(i)), values[i], 0d);
+		// 5x4 tiles, each read once
+		assertEquals(20, tiled.getNumTilesRead());
+	}
+
+	@Test
+	public void testConcurrentReads() throws Exception {
+		final GMT_GrdFile tiled = new GMT_GrdFile(file.getAbsolutePath(), 16, 8);
+		ExecutorService exec = Executors.newFixedThreadPool(4);
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for (int t=0; t<8; t++) {
+			final long seed = t;
+			futures.add(exec.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					Random r = new Random(seed);
+					for (int i=0; i<20000; i++) {
+						int x = r.nextInt(NX);
+						int y = r.nextInt(NY);
+						if (tiled.getZ(x, y) != y*1000 + x)
+							return false;
+					}
+					return true;
+				}
+			}));
+		}
+		for (Future<Boolean> f : futures)
+			assertTrue(f.get());
+		exec.shutdown();
+	}
+
+}
@@ -22,15 +22,24 @@ package org.opensha.commons.util;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.opensha.commons.util.binFile.BinaryMesh2DTest;
+import org.opensha.commons.util.binFile.BinaryRandomAccessFileTest;
 import org.opensha.commons.util.binFile.GeolocatedBinaryMesh2DTest;
+import org.opensha.commons.util.binFile.MappedFloatFileReaderTest;
+import org.opensha.commons.util.cpt.CPTLookupTableTest;
+import org.opensha.commons.util.threads.ForkJoinTaskComputerTest;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	DataUtilsTest.class,
+	GMT_GrdFileTest.class,
 	FaultUtilsTests.class,
 	BinaryMesh2DTest.class,
+	BinaryRandomAccessFileTest.class,
 	GeolocatedBinaryMesh2DTest.class,
-	InterpolateTests.class
+	MappedFloatFileReaderTest.class,
+	InterpolateTests.class,
+	ForkJoinTaskComputerTest.class,
+	CPTLookupTableTest.class
 })
 
 
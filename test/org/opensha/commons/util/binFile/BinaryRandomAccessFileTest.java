@@ -0,0 +1,151 @@
+package org.opensha.commons.util.binFile;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensha.commons.data.xyz.ArbDiscrGeoDataSet;
+import org.opensha.commons.data.xyz.ArbDiscrXYZ_DataSet;
+import org.opensha.commons.geo.Location;
+
+import com.google.common.io.Files;
+
+public class BinaryRandomAccessFileTest {
+	
+	private static File dir;
+	
+	@BeforeClass
+	public static void setUp() {
+		dir = Files.createTempDir();
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		for (File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+	
+	private static double val(int index) {
+		return 0.5*index - 7;
+	}
+	
+	@Test
+	public void testScalarMappedMatchesLegacy() throws Exception {
+		int num = 1000;
+		for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+			File legacyFile = new File(dir, "legacy_"+order+".bin");
+			File mappedFile = new File(dir, "mapped_"+order+".bin");
+			BinaryDoubleScalarRandomAccessFile legacy =
+					new BinaryDoubleScalarRandomAccessFile(legacyFile, order, num);
+			BinaryDoubleScalarRandomAccessFile mapped =
+					new BinaryDoubleScalarRandomAccessFile(mappedFile, order, num, true);
+			legacy.initialize();
+			mapped.initialize();
+			for (int i=0; i<num; i+=2) {
+				legacy.write(i, val(i));
+				mapped.write(i, val(i));
+			}
+			legacy.close();
+			mapped.close();
+			
+			assertArrayEquals(Files.toByteArray(legacyFile), Files.toByteArray(mappedFile));
+			
+			double[] vals = BinaryDoubleScalarRandomAccessFile.readFile(mappedFile, order);
+			assertEquals(num, vals.length);
+			for (int i=0; i<num; i++) {
+				if (i % 2 == 0)
+					assertEquals(val(i), vals[i], 0d);
+				else
+					assertTrue(Double.isNaN(vals[i]));
+			}
+		}
+	}
+	
+	@Test
+	public void testScalarConcurrentResume() throws Exception {
+		final int num = 10000;
+		File file = new File(dir, "concurrent.bin");
+		final BinaryDoubleScalarRandomAccessFile mapped =
+				new BinaryDoubleScalarRandomAccessFile(file, ByteOrder.BIG_ENDIAN, num, true);
+		mapped.initialize();
+		ExecutorService exec = Executors.newFixedThreadPool(4);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t=0; t<4; t++) {
+			final int thread = t;
+			futures.add(exec.submit(() -> {
+				// only write the first half, batched
+				int[] indexes = new int[num/8];
+				double[] vals = new double[indexes.length];
+				for (int i=0; i<indexes.length; i++) {
+					indexes[i] = thread + 4*i;
+					vals[i] = val(indexes[i]);
+				}
+				mapped.write(indexes, vals);
+				return null;
+			}));
+		}
+		for (Future<?> future : futures)
+			future.get();
+		exec.shutdown();
+		mapped.force();
+		mapped.close();
+		
+		// reopen and resume
+		BinaryDoubleScalarRandomAccessFile resumed =
+				new BinaryDoubleScalarRandomAccessFile(file, ByteOrder.BIG_ENDIAN, num, true);
+		resumed.initialize();
+		for (int i=0; i<num; i++) {
+			assertEquals(i < num/2, resumed.isCalculated(i));
+			if (!resumed.isCalculated(i))
+				resumed.write(i, val(i));
+		}
+		resumed.close();
+		
+		DoubleBuffer buff = BinaryDoubleScalarRandomAccessFile.mapFile(file, ByteOrder.BIG_ENDIAN);
+		assertEquals(num, buff.remaining());
+		for (int i=0; i<num; i++)
+			assertEquals(val(i), buff.get(i), 0d);
+	}
+	
+	@Test
+	public void testXYZ() throws IOException {
+		int num = 100;
+		File file = new File(dir, "geo.bin");
+		BinaryGeoDatasetRandomAccessFile mapped =
+				new BinaryGeoDatasetRandomAccessFile(file, ByteOrder.LITTLE_ENDIAN, num, true);
+		mapped.setPlaceholder(-9999);
+		mapped.initialize();
+		for (int i=0; i<num; i++) {
+			assertFalse(mapped.isCalculated(i));
+			mapped.write(i, new Location(30 + 0.1*i, -120 + 0.05*i), val(i));
+			assertTrue(mapped.isCalculated(i));
+		}
+		mapped.close();
+		
+		ArbDiscrXYZ_DataSet xyz = BinaryXYZRandomAccessFile.loadXYZ(file, ByteOrder.LITTLE_ENDIAN);
+		ArbDiscrGeoDataSet geo = BinaryGeoDatasetRandomAccessFile.loadGeoDataset(file, ByteOrder.LITTLE_ENDIAN);
+		assertEquals(num, xyz.size());
+		assertEquals(num, geo.size());
+		for (int i=0; i<num; i++) {
+			Location loc = geo.getLocation(i);
+			assertEquals(30 + 0.1*i, loc.getLatitude(), 1e-10);
+			assertEquals(-120 + 0.05*i, loc.getLongitude(), 1e-10);
+			assertEquals(val(i), geo.get(i), 0d);
+			assertEquals(loc.getLongitude(), xyz.getPoint(i).getX(), 0d);
+			assertEquals(val(i), xyz.get(i), 0d);
+		}
+	}
+
+}
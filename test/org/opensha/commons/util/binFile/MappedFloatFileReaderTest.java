@@ -0,0 +1,136 @@
+package org.opensha.commons.util.binFile;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class MappedFloatFileReaderTest {
+	
+	private static final int NUM = 50000;
+	
+	private static File file;
+	private static float[] expected;
+	private static byte[] bytes;
+	
+	@BeforeClass
+	public static void setUp() throws IOException {
+		file = File.createTempFile("floats", ".bin");
+		expected = new float[NUM];
+		Random r = new Random(1);
+		ByteBuffer buff = ByteBuffer.allocate(4*NUM).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i=0; i<NUM; i++) {
+			expected[i] = (float)(1000*r.nextGaussian());
+			buff.putFloat(expected[i]);
+		}
+		bytes = buff.array();
+		Files.write(bytes, file);
+	}
+	
+	@AfterClass
+	public static void tearDown() {
+		file.delete();
+	}
+	
+	private static void doTest(MappedFloatFileReader reader) throws IOException {
+		assertEquals(4l*NUM, reader.length());
+		for (int i=0; i<NUM; i++)
+			assertEquals(expected[i], reader.getFloat(4l*i), 0f);
+		assertTrue(Float.isNaN(reader.getFloat(-4)));
+		assertTrue(Float.isNaN(reader.getFloat(4l*NUM)));
+		
+		Random r = new Random(2);
+		long[] positions = new long[10000];
+		for (int i=0; i<positions.length; i++)
+			positions[i] = 4l*(r.nextInt(NUM+200)-100);
+		float[] vals = new float[positions.length];
+		reader.getFloats(positions, vals);
+		for (int i=0; i<positions.length; i++) {
+			long index = positions[i]/4;
+			if (positions[i] < 0 || index >= NUM)
+				assertTrue(Float.isNaN(vals[i]));
+			else
+				assertEquals(expected[(int)index], vals[i], 0f);
+		}
+		reader.close();
+	}
+	
+	/**
+	 * Checks unaligned reads at every position around each of the given edges
+	 */
+	private static void doTestEdges(MappedFloatFileReader reader, ByteOrder byteOrder, long... edges)
+			throws IOException {
+		ByteBuffer buff = ByteBuffer.wrap(bytes).order(byteOrder);
+		for (long edge : edges) {
+			for (long pos=edge-5; pos<=edge+1; pos++) {
+				float value = reader.getFloat(pos);
+				if (pos < 0 || pos > bytes.length - 4)
+					assertTrue(Float.isNaN(value));
+				else
+					assertEquals("pos="+pos, Float.floatToRawIntBits(buff.getFloat((int)pos)),
+							Float.floatToRawIntBits(value));
+			}
+		}
+		// bulk reads of unaligned positions
+		long[] positions = new long[edges.length];
+		for (int i=0; i<edges.length; i++)
+			positions[i] = edges[i]-2;
+		float[] vals = new float[positions.length];
+		reader.getFloats(positions, vals);
+		for (int i=0; i<positions.length; i++) {
+			if (positions[i] < 0 || positions[i] > bytes.length - 4)
+				assertTrue(Float.isNaN(vals[i]));
+			else
+				assertEquals(buff.getFloat((int)positions[i]), vals[i], 0f);
+		}
+		reader.close();
+	}
+	
+	@Test
+	public void testMapped() throws IOException {
+		MappedFloatFileReader reader = new MappedFloatFileReader(file, ByteOrder.LITTLE_ENDIAN);
+		assertTrue(reader.isMemoryMapped());
+		doTest(reader);
+	}
+	
+	@Test
+	public void testBlockCache() throws IOException {
+		// odd sized blocks and a small cache so that the last block is partial and blocks get evicted
+		MappedFloatFileReader reader = new MappedFloatFileReader(file, ByteOrder.LITTLE_ENDIAN, 4*999, 4);
+		assertFalse(reader.isMemoryMapped());
+		assertNull(reader.getMapFailure());
+		doTest(reader);
+	}
+	
+	@Test
+	public void testSegmentEdges() throws IOException {
+		// segments which aren't a multiple of 4, so that even aligned values span segments
+		int segmentSize = 4*1000 + 2;
+		MappedFloatFileReader reader = new MappedFloatFileReader(file, ByteOrder.LITTLE_ENDIAN, segmentSize);
+		assertTrue(reader.isMemoryMapped());
+		doTest(reader);
+		for (ByteOrder byteOrder : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+			reader = new MappedFloatFileReader(file, byteOrder, segmentSize);
+			doTestEdges(reader, byteOrder, 0, segmentSize, 2*segmentSize, 17*segmentSize, bytes.length);
+		}
+	}
+	
+	@Test
+	public void testBlockEdges() throws IOException {
+		int blockSize = 4*999;
+		for (ByteOrder byteOrder : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+			MappedFloatFileReader reader = new MappedFloatFileReader(file, byteOrder, blockSize, 2);
+			doTestEdges(reader, byteOrder, 0, blockSize, 2*blockSize, 31*blockSize, bytes.length);
+		}
+	}
+
+}
@@ -0,0 +1,155 @@
+package org.opensha.commons.util.cpt;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CPTLookupTableTest {
+
+	private static int getMaxDiff(int argb1, int argb2) {
+		Color c1 = new Color(argb1, true);
+		Color c2 = new Color(argb2, true);
+		int diff = Math.abs(c1.getRed() - c2.getRed());
+		diff = Math.max(diff, Math.abs(c1.getGreen() - c2.getGreen()));
+		diff = Math.max(diff, Math.abs(c1.getBlue() - c2.getBlue()));
+		return Math.max(diff, Math.abs(c1.getAlpha() - c2.getAlpha()));
+	}
+
+	private static double[] buildTestValues(CPT cpt, int num, Random r) {
+		double min = cpt.getMinValue();
+		double max = cpt.getMaxValue();
+		double span = max - min;
+		double[] values = new double[num];
+		for (int i=0; i<num; i++)
+			values[i] = min - 0.1*span + 1.2*span*r.nextDouble();
+		// edges and special values
+		int index = 0;
+		for (CPTVal val : cpt) {
+			values[index++] = val.start;
+			values[index++] = Math.nextDown(val.start);
+			values[index++] = Math.nextUp(val.start);
+			values[index++] = val.end;
+			values[index++] = Math.nextDown(val.end);
+			values[index++] = Math.nextUp(val.end);
+		}
+		values[index++] = Double.NaN;
+		values[index++] = Double.POSITIVE_INFINITY;
+		values[index++] = Double.NEGATIVE_INFINITY;
+		return values;
+	}
+
+	/**
+	 * @return max channel error, checking that edge and out of range values are exact
+	 */
+	private static int checkAgainstExact(CPT cpt, CPTLookupTable lookup, double[] values) {
+		int maxDiff = 0;
+		for (double value : values) {
+			float v = (float)value;
+			int expected = cpt.getColor(v).getRGB();
+			int actual = lookup.getARGB(value);
+			boolean edge = Float.isNaN(v) || v < cpt.getMinValue() || v > cpt.getMaxValue();
+			for (CPTVal val : cpt)
+				edge = edge || v == val.start || v == val.end;
+			if (edge)
+				assertEquals("Edge value "+v+" not exact", expected, actual);
+			int diff = getMaxDiff(expected, actual);
+			assertTrue("Error of "+diff+" at "+v+" exceeds max of "+lookup.getMaxColorError(),
+					diff <= lookup.getMaxColorError());
+			maxDiff = Math.max(maxDiff, diff);
+		}
+		return maxDiff;
+	}
+
+	private static CPT buildContinuousCPT() {
+		CPT cpt = new CPT(-2d, 3d, Color.BLUE, new Color(0, 255, 255, 128), Color.GREEN, Color.YELLOW, Color.RED);
+		cpt.setNanColor(Color.GRAY);
+		cpt.setBelowMinColor(Color.BLACK);
+		cpt.setAboveMaxColor(Color.WHITE);
+		return cpt;
+	}
+
+	@Test
+	public void testContinuous() {
+		CPT cpt = buildContinuousCPT();
+		Random r = new Random(12345);
+		double[] values = buildTestValues(cpt, 200000, r);
+		int prevError = Integer.MAX_VALUE;
+		for (int resolution : new int[] {64, 512, 4096}) {
+			CPTLookupTable lookup = new CPTLookupTable(cpt, resolution, false);
+			checkAgainstExact(cpt, lookup, values);
+			assertTrue(lookup.getMaxColorError() <= prevError);
+			prevError = lookup.getMaxColorError();
+		}
+		assertTrue("Error too large at default resolution: "+prevError, prevError <= 1);
+	}
+
+	@Test
+	public void testDiscrete() {
+		CPT cpt = buildContinuousCPT().asDiscrete(17, true);
+		CPTLookupTable lookup = new CPTLookupTable(cpt, 100, false);
+		assertEquals(0, lookup.getMaxColorError());
+		Random r = new Random(54321);
+		assertEquals(0, checkAgainstExact(cpt, lookup, buildTestValues(cpt, 100000, r)));
+	}
+
+	@Test
+	public void testGaps() {
+		CPT cpt = new CPT();
+		cpt.add(new CPTVal(0f, Color.RED, 1f, Color.BLUE));
+		cpt.add(new CPTVal(2f, Color.GREEN, 2f, Color.GREEN));
+		cpt.add(new CPTVal(3f, Color.YELLOW, 5f, Color.CYAN));
+		cpt.setGapColor(Color.MAGENTA);
+		CPTLookupTable lookup = new CPTLookupTable(cpt, 1000, false);
+		assertEquals(Color.MAGENTA.getRGB(), lookup.getARGB(1.5));
+		assertEquals(Color.GREEN.getRGB(), lookup.getARGB(2d));
+		assertEquals(Color.MAGENTA.getRGB(), lookup.getARGB(Math.nextUp(2f)));
+		Random r = new Random(2468);
+		checkAgainstExact(cpt, lookup, buildTestValues(cpt, 100000, r));
+	}
+
+	@Test
+	public void testLog() {
+		// one CPT value per decade
+		Color[] colors = { Color.BLUE, Color.CYAN, Color.GREEN, Color.YELLOW, Color.ORANGE, Color.RED };
+		CPT cpt = new CPT();
+		for (int i=0; i<colors.length-1; i++)
+			cpt.add(new CPTVal((float)Math.pow(10, i-4), colors[i], (float)Math.pow(10, i-3), colors[i+1]));
+		CPTLookupTable lookup = new CPTLookupTable(cpt, 1024, true);
+		assertTrue(lookup.isLog());
+		Random r = new Random(1357);
+		double[] values = new double[100000];
+		for (int i=0; i<values.length; i++)
+			values[i] = Math.pow(10, -4.5 + 6*r.nextDouble());
+		checkAgainstExact(cpt, lookup, values);
+		// log spacing resolves the low end of the range far better than linear spacing
+		assertTrue(lookup.getMaxColorError() < new CPTLookupTable(cpt, 1024, false).getMaxColorError());
+	}
+
+	@Test
+	public void testColorize() {
+		CPT cpt = buildContinuousCPT();
+		CPTLookupTable lookup = new CPTLookupTable(cpt);
+		Random r = new Random(97531);
+		int width = 500;
+		int height = 400;
+		double[] values = buildTestValues(cpt, width*height, r);
+
+		// large enough to be parallel
+		assertTrue(values.length >= CPTLookupTable.MIN_PARALLEL_LENGTH);
+		int[] argb = new int[values.length];
+		lookup.colorize(values, argb);
+		for (int i=0; i<values.length; i++)
+			assertEquals(lookup.getARGB(values[i]), argb[i]);
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		lookup.colorize(values, image);
+		for (int y=0; y<height; y++)
+			for (int x=0; x<width; x++)
+				assertEquals(argb[y*width + x], image.getRGB(x, y));
+	}
+
+}
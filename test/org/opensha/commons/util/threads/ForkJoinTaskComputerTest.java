@@ -0,0 +1,247 @@
+package org.opensha.commons.util.threads;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class ForkJoinTaskComputerTest {
+
+	private static List<Task> buildCountingTasks(AtomicIntegerArray counts) {
+		List<Task> tasks = new ArrayList<>();
+		for (int i=0; i<counts.length(); i++) {
+			final int index = i;
+			tasks.add(() -> counts.incrementAndGet(index));
+		}
+		return tasks;
+	}
+
+	@Test
+	public void testAllTasksComputedOnce() throws InterruptedException {
+		for (int chunkSize : new int[] {-1, 1, 7, 10000}) {
+			AtomicIntegerArray counts = new AtomicIntegerArray(1000);
+			ForkJoinTaskComputer comp = new ForkJoinTaskComputer(buildCountingTasks(counts), true);
+			comp.setChunkSize(chunkSize);
+			comp.computeThreaded(4);
+			for (int i=0; i<counts.length(); i++)
+				assertEquals("task "+i+" computed wrong number of times with chunkSize="+chunkSize, 1, counts.get(i));
+
+			TaskTimingStats stats = comp.getTimingStats();
+			assertEquals(counts.length(), stats.getCount());
+			long binSum = 0;
+			for (long count : stats.getBinCounts())
+				binSum += count;
+			assertEquals(counts.length(), binSum);
+			assertTrue(stats.getMinNanos() <= stats.getMaxNanos());
+			assertTrue(stats.getPercentileNanos(0.5) <= stats.getMaxNanos());
+		}
+	}
+
+	@Test
+	public void testProgressListener() throws InterruptedException {
+		int numTasks = 537;
+		final List<Integer> done = new ArrayList<>();
+		final AtomicInteger timingUpdates = new AtomicInteger();
+		ForkJoinTaskComputer comp = new ForkJoinTaskComputer(buildCountingTasks(new AtomicIntegerArray(numTasks)));
+		comp.setProgressListener(new TaskProgressListener() {
+
+			@Override
+			public synchronized void taskProgressUpdate(int tasksDone, int tasksLeft, int totalTasks) {
+				assertEquals(numTasks, totalTasks);
+				assertEquals(numTasks, tasksDone+tasksLeft);
+				done.add(tasksDone);
+			}
+
+			@Override
+			public void taskTimingUpdate(TaskTimingStats stats) {
+				timingUpdates.incrementAndGet();
+			}
+		}, 10);
+		comp.computeThreaded(3);
+
+		// one update per 10% bin (0% is never reported as the first task completes the first bin)
+		assertTrue("expected at most 11 updates, got "+done.size(), done.size() <= 11);
+		assertTrue("final update must be reported", done.contains(numTasks));
+		assertEquals(done.size(), timingUpdates.get());
+	}
+
+	@Test
+	public void testExceptionPropagated() throws InterruptedException {
+		int numTasks = 1000;
+		AtomicInteger numComputed = new AtomicInteger();
+		List<Task> tasks = new ArrayList<>();
+		for (int i=0; i<numTasks; i++) {
+			final int index = i;
+			tasks.add(() -> {
+				numComputed.incrementAndGet();
+				if (index == 10)
+					throw new IllegalStateException("test failure");
+			});
+		}
+		ForkJoinTaskComputer comp = new ForkJoinTaskComputer(tasks);
+		comp.setChunkSize(1);
+		try {
+			comp.computeThreaded(2);
+			fail("exception should have been rethrown");
+		} catch (IllegalStateException e) {
+			assertEquals("test failure", e.getMessage());
+		}
+		assertTrue(comp.isStopped());
+		assertTrue("tasks should have stopped after the failure", numComputed.get() < numTasks);
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		int numTasks = 100;
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger numComputed = new AtomicInteger();
+		List<Task> tasks = new ArrayList<>();
+		for (int i=0; i<numTasks; i++) {
+			tasks.add(() -> {
+				numComputed.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			});
+		}
+		ForkJoinTaskComputer comp = new ForkJoinTaskComputer(tasks);
+		comp.setChunkSize(1);
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			CompletableFuture<Void> future = comp.submit(pool);
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+			assertTrue(future.cancel(false));
+			assertTrue(comp.isStopped());
+			release.countDown();
+			try {
+				future.get();
+				fail("cancelled future should throw");
+			} catch (CancellationException e) {
+				// expected
+			} catch (ExecutionException e) {
+				fail("unexpected exception: "+e);
+			}
+			pool.shutdown();
+			assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+			assertTrue("tasks should have stopped after cancellation", numComputed.get() <= 2);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCancelThenResubmit() throws Exception {
+		int numTasks = 200;
+		AtomicIntegerArray counts = new AtomicIntegerArray(numTasks);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Task> tasks = new ArrayList<>();
+		for (int i=0; i<numTasks; i++) {
+			final int index = i;
+			tasks.add(() -> {
+				counts.incrementAndGet(index);
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			});
+		}
+		ForkJoinTaskComputer comp = new ForkJoinTaskComputer(tasks);
+		comp.setChunkSize(1);
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			CompletableFuture<Void> future = comp.submit(pool);
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+			assertTrue(future.cancel(false));
+			assertTrue(future.isDone());
+
+			// resubmitting must wait for the cancelled run's tasks to finish
+			CompletableFuture<CompletableFuture<Void>> resubmitted = CompletableFuture.supplyAsync(
+					() -> comp.submit(pool));
+			Thread.sleep(200);
+			assertFalse("resubmitted while cancelled tasks were still running", resubmitted.isDone());
+			release.countDown();
+			resubmitted.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+			assertFalse(comp.isStopped());
+
+			// only tasks which were already running when cancelled are computed twice
+			int total = 0;
+			for (int i=0; i<numTasks; i++) {
+				assertTrue(counts.get(i) >= 1 && counts.get(i) <= 2);
+				total += counts.get(i);
+			}
+			assertTrue("computed "+(total-numTasks)+" extra tasks", total <= numTasks + pool.getParallelism());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testInterruptWaitsForTasks() throws Exception {
+		int numTasks = 50;
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger running = new AtomicInteger();
+		List<Task> tasks = new ArrayList<>();
+		for (int i=0; i<numTasks; i++) {
+			tasks.add(() -> {
+				running.incrementAndGet();
+				try {
+					started.countDown();
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} finally {
+					running.decrementAndGet();
+				}
+			});
+		}
+		ForkJoinTaskComputer comp = new ForkJoinTaskComputer(tasks);
+		comp.setChunkSize(1);
+		AtomicInteger runningOnReturn = new AtomicInteger(-1);
+		AtomicInteger numInterrupted = new AtomicInteger();
+		Thread thread = new Thread(() -> {
+			try {
+				comp.computeThreaded(2);
+			} catch (InterruptedException e) {
+				numInterrupted.incrementAndGet();
+			}
+			runningOnReturn.set(running.get());
+		});
+		thread.start();
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		thread.interrupt();
+		thread.join(200);
+		assertTrue("returned while tasks were still running", thread.isAlive());
+		release.countDown();
+		thread.join(10000);
+		assertFalse(thread.isAlive());
+		assertEquals(1, numInterrupted.get());
+		assertEquals(0, runningOnReturn.get());
+		assertTrue(comp.isStopped());
+	}
+
+	@Test
+	public void testEmpty() throws InterruptedException {
+		ForkJoinTaskComputer comp = new ForkJoinTaskComputer(new ArrayList<>());
+		comp.computeThreaded(2);
+		assertEquals(0, comp.getTimingStats().getCount());
+	}
+
+}
@@ -0,0 +1,146 @@
+package org.opensha.sha.faultSurface;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+
+public class BatchDistanceTest {
+
+	private static ForkJoinPool pool;
+	private static LocationList sites;
+
+	@BeforeClass
+	public static void setUpBeforeClass() {
+		pool = new ForkJoinPool(4);
+		// regular grid around the test faults, more sites than a single parallel task
+		sites = new LocationList();
+		for (double lat=33.5; lat<=35.1; lat+=0.05)
+			for (double lon=-118.6; lon<=-116.6; lon+=0.05)
+				sites.add(new Location(lat, lon));
+		// sites on the trace and on grid nodes
+		sites.add(new Location(34, -118));
+		sites.add(new Location(34.15, -117.85));
+		sites.add(new Location(34.3, -117.7));
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() {
+		pool.shutdown();
+	}
+
+	private static FaultTrace buildTrace(double... latLons) {
+		FaultTrace trace = new FaultTrace("test");
+		for (int i=0; i<latLons.length; i+=2)
+			trace.add(new Location(latLons[i], latLons[i+1]));
+		return trace;
+	}
+
+	private static StirlingGriddedSurface buildSurface() {
+		return new StirlingGriddedSurface(buildTrace(34, -118, 34.3, -117.7, 34.5, -117.2), 50, 1, 14, 1d);
+	}
+
+	/**
+	 * Checks that batch results, with and without a pool, equal the single site results
+	 */
+	private static void checkBatch(RuptureSurface surf) {
+		int num = sites.size();
+		double[][] expected = new double[4][num];
+		for (int s=0; s<num; s++) {
+			Location site = sites.get(s);
+			expected[0][s] = surf.getDistanceRup(site);
+			expected[1][s] = surf.getDistanceJB(site);
+			expected[2][s] = surf.getDistanceSeis(site);
+			expected[3][s] = surf.getDistanceX(site);
+		}
+		for (ForkJoinPool pool : new ForkJoinPool[] { null, BatchDistanceTest.pool }) {
+			double[] distRup = new double[num];
+			double[] distJB = new double[num];
+			double[] distSeis = new double[num];
+			double[] distX = new double[num];
+			surf.calcDistances(sites, distRup, distJB, distSeis, distX, pool);
+			String poolStr = pool == null ? "serial" : "parallel";
+			assertArrayEquals("distRup, "+poolStr, expected[0], distRup, 0d);
+			assertArrayEquals("distJB, "+poolStr, expected[1], distJB, 0d);
+			assertArrayEquals("distSeis, "+poolStr, expected[2], distSeis, 0d);
+			assertArrayEquals("distX, "+poolStr, expected[3], distX, 0d);
+
+			// individual metrics, with the others skipped
+			distX = new double[num];
+			surf.calcDistances(sites, null, null, null, distX, pool);
+			assertArrayEquals("distX only, "+poolStr, expected[3], distX, 0d);
+			distJB = new double[num+5];
+			surf.calcDistances(sites, null, distJB, null, null, pool);
+			for (int s=0; s<num; s++)
+				assertEquals("distJB only, "+poolStr, expected[1][s], distJB[s], 0d);
+		}
+	}
+
+	@Test
+	public void testGriddedSurface() {
+		checkBatch(buildSurface());
+	}
+
+	@Test
+	public void testVerticalSurface() {
+		checkBatch(new StirlingGriddedSurface(buildTrace(34, -118, 34.3, -117.7), 90, 0, 12, 1d));
+	}
+
+	@Test
+	public void testSubsetSurface() {
+		StirlingGriddedSurface surf = buildSurface();
+		GriddedSubsetSurface subset = surf.getNthSubsetSurface(10, 6, 5, 3, 4);
+		assertTrue(subset.getNumCols() < surf.getNumCols());
+		assertTrue(subset.getNumRows() < surf.getNumRows());
+		checkBatch(subset);
+	}
+
+	@Test
+	public void testCompoundSurface() {
+		List<RuptureSurface> surfs = new ArrayList<>();
+		surfs.add(new StirlingGriddedSurface(buildTrace(34, -118, 34.3, -117.7), 50, 1, 14, 1d, 135));
+		// second trace is reversed relative to the first, with the same dip direction
+		surfs.add(new StirlingGriddedSurface(buildTrace(34.6, -117.2, 34.3, -117.7), 50, 1, 14, 1d, 135));
+		CompoundSurface compound = new CompoundSurface(surfs);
+		assertTrue(compound.isSubSurfaceReversed(1));
+		checkBatch(compound);
+
+		// distance X comes from the closest sub surface, with sites on both sides of the trace
+		int num = sites.size();
+		double[] distX = new double[num];
+		compound.calcDistances(sites, null, null, null, distX, null);
+		boolean[] closest = new boolean[surfs.size()];
+		int numPositive = 0, numNegative = 0;
+		for (int s=0; s<num; s++) {
+			Location site = sites.get(s);
+			int closestIndex = surfs.get(0).getDistanceRup(site) <= surfs.get(1).getDistanceRup(site) ? 0 : 1;
+			closest[closestIndex] = true;
+			assertEquals(surfs.get(closestIndex).getDistanceX(site), distX[s], 0d);
+			if (distX[s] > 0)
+				numPositive++;
+			else if (distX[s] < 0)
+				numNegative++;
+		}
+		assertTrue(closest[0] && closest[1]);
+		assertTrue(numPositive > 0 && numNegative > 0);
+	}
+
+	@Test
+	public void testDefaultImplementation() {
+		// point surfaces use the single site default implementation
+		checkBatch(new PointSurface(new Location(34.2, -117.6, 5d)));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testShortArray() {
+		buildSurface().calcDistances(sites, new double[sites.size()-1], null, null, null);
+	}
+
+}
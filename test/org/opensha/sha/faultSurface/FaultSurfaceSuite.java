@@ -0,0 +1,28 @@
+package org.opensha.sha.faultSurface;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.opensha.sha.faultSurface.cache.StripedDistanceCacheTest;
+import org.opensha.sha.faultSurface.utils.GriddedSurfaceTilesTest;
+import org.opensha.sha.faultSurface.utils.SurfaceDistanceMatrixTest;
+import org.opensha.sha.faultSurface.utils.SurfaceProjectionTest;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+	StripedDistanceCacheTest.class,
+	BatchDistanceTest.class,
+	GriddedSurfaceTilesTest.class,
+	PackedSurfaceStorageTest.class,
+	SurfaceProjectionTest.class,
+	SurfaceDistanceMatrixTest.class,
+	FaultTraceTest.class
+})
+
+public class FaultSurfaceSuite
+{
+
+	public static void main(String args[])
+	{
+		org.junit.runner.JUnitCore.runClasses(FaultSurfaceSuite.class);
+	}
+}
@@ -0,0 +1,52 @@
+package org.opensha.sha.faultSurface;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.util.FaultUtils;
+
+public class FaultTraceTest {
+
+	private static FaultTrace buildTrace(double... latLons) {
+		FaultTrace trace = new FaultTrace("test");
+		for (int i=0; i<latLons.length; i+=2)
+			trace.add(new Location(latLons[i], latLons[i+1]));
+		return trace;
+	}
+
+	private static double bruteForce(FaultTrace trace1, FaultTrace trace2, double discrInterval) {
+		int num = (int)(trace2.getTraceLength()/discrInterval) + 1;
+		double min = Double.POSITIVE_INFINITY;
+		for (Location loc : FaultUtils.resampleTrace(trace2, num))
+			min = Math.min(min, trace1.minDistToLine(loc));
+		return min;
+	}
+
+	@Test
+	public void testMinDistance() {
+		FaultTrace[] traces = {
+				buildTrace(34, -118, 34.2, -117.8, 34.25, -117.5, 34.5, -117.3),
+				// sharing an end point
+				buildTrace(34.5, -117.3, 34.8, -117.1),
+				// crossing
+				buildTrace(34.4, -117.9, 34.0, -117.5),
+				// parallel
+				buildTrace(34.05, -118.05, 34.25, -117.85, 34.3, -117.55),
+				// far away, and at high latitude
+				buildTrace(36, -120, 36.3, -119.8),
+				buildTrace(70, 20, 70.5, 22, 71, 21),
+				buildTrace(70.2, 21, 70.3, 23)
+		};
+		for (FaultTrace trace1 : traces) {
+			for (FaultTrace trace2 : traces) {
+				for (double discrInterval : new double[] { 0.5, 1, 5 }) {
+					double expected = bruteForce(trace1, trace2, discrInterval);
+					assertEquals(expected, trace1.getMinDistance(trace2, discrInterval), 0d);
+				}
+			}
+		}
+		assertEquals(0d, traces[0].getMinDistance(traces[1], 1d), 1e-10);
+	}
+
+}
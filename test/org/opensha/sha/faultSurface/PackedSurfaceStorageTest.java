@@ -0,0 +1,180 @@
+package org.opensha.sha.faultSurface;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.ListIterator;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+
+public class PackedSurfaceStorageTest {
+
+	private static StirlingGriddedSurface buildSurface(boolean packed) {
+		FaultTrace trace = new FaultTrace("test");
+		trace.add(new Location(34, -118));
+		trace.add(new Location(34.3, -117.7));
+		trace.add(new Location(34.35, -117.2));
+		StirlingGriddedSurface surf = new StirlingGriddedSurface(trace, 50, 0, 12, 1d);
+		surf.setPackedStorage(packed);
+		assertEquals(packed, surf.isPackedStorage());
+		return surf;
+	}
+
+	@After
+	public void tearDown() {
+		AbstractEvenlyGriddedSurface.setPackedStorageDefault(false);
+	}
+
+	private static void assertLocsEqual(String message, Location expected, Location actual) {
+		assertEquals(message, expected, actual);
+		if (expected != null) {
+			// exact, not just within the Location equality tolerance
+			assertEquals(message, expected.getLatRad(), actual.getLatRad(), 0d);
+			assertEquals(message, expected.getLonRad(), actual.getLonRad(), 0d);
+			assertEquals(message, expected.getDepth(), actual.getDepth(), 0d);
+		}
+	}
+
+	private static void assertIteratorsEqual(String message, ListIterator<Location> expected,
+			ListIterator<Location> actual) {
+		int count = 0;
+		while (expected.hasNext()) {
+			assertTrue(message+": ended early at "+count, actual.hasNext());
+			assertLocsEqual(message+": "+count, expected.next(), actual.next());
+			count++;
+		}
+		assertFalse(message+": has extra locations", actual.hasNext());
+	}
+
+	private static void assertListsEqual(String message, List<Location> expected, List<Location> actual) {
+		assertEquals(message, expected.size(), actual.size());
+		for (int i=0; i<expected.size(); i++)
+			assertLocsEqual(message+": "+i, expected.get(i), actual.get(i));
+	}
+
+	private static void assertSurfacesEqual(EvenlyGriddedSurface expected, EvenlyGriddedSurface actual) {
+		assertEquals(expected.getNumRows(), actual.getNumRows());
+		assertEquals(expected.getNumCols(), actual.getNumCols());
+		assertEquals(expected.size(), actual.size());
+		for (int row=0; row<expected.getNumRows(); row++) {
+			for (int col=0; col<expected.getNumCols(); col++) {
+				assertLocsEqual("get("+row+", "+col+")", expected.get(row, col), actual.get(row, col));
+				assertLocsEqual("getLocation("+row+", "+col+")",
+						expected.getLocation(row, col), actual.getLocation(row, col));
+			}
+		}
+		for (int row=0; row<expected.getNumRows(); row++) {
+			assertIteratorsEqual("column iterator "+row,
+					expected.getColumnIterator(row), actual.getColumnIterator(row));
+			assertListsEqual("row trace "+row, expected.getRowAsTrace(row), actual.getRowAsTrace(row));
+		}
+		// subset row iterators check the column against the number of rows
+		if (!(expected instanceof GriddedSubsetSurface))
+			for (int col=0; col<expected.getNumCols(); col++)
+				assertIteratorsEqual("row iterator "+col,
+						expected.getRowIterator(col), actual.getRowIterator(col));
+		assertIteratorsEqual("all by rows", expected.getAllByRowsIterator(), actual.getAllByRowsIterator());
+		assertIteratorsEqual("all by columns", expected.getAllByColumnsIterator(),
+				actual.getAllByColumnsIterator());
+		assertIteratorsEqual("list iterator", expected.listIterator(), actual.listIterator());
+		assertIteratorsEqual("locations iterator", expected.getLocationsIterator(), actual.getLocationsIterator());
+		assertListsEqual("location list", expected.getEvenlyDiscritizedListOfLocsOnSurface(),
+				actual.getEvenlyDiscritizedListOfLocsOnSurface());
+		assertListsEqual("location list view", expected.getEvenlyDiscritizedListOfLocsOnSurface(),
+				actual.getEvenlyDiscritizedListOfLocsOnSurface(false));
+		assertListsEqual("perimeter", expected.getPerimeter(), actual.getPerimeter());
+	}
+
+	@Test
+	public void testPackedEqualsUnpacked() {
+		StirlingGriddedSurface unpacked = buildSurface(false);
+		StirlingGriddedSurface packed = buildSurface(true);
+		assertSurfacesEqual(unpacked, packed);
+
+		Location site = new Location(34.2, -117.6);
+		assertEquals(unpacked.getDistanceRup(site), packed.getDistanceRup(site), 0d);
+		assertEquals(unpacked.getDistanceJB(site), packed.getDistanceJB(site), 0d);
+		assertEquals(unpacked.getDistanceX(site), packed.getDistanceX(site), 0d);
+
+		// and back again
+		packed.setPackedStorage(false);
+		assertFalse(packed.isPackedStorage());
+		assertSurfacesEqual(unpacked, packed);
+	}
+
+	@Test
+	public void testSetAfterPacking() {
+		StirlingGriddedSurface unpacked = buildSurface(false);
+		StirlingGriddedSurface packed = buildSurface(true);
+		Location site = new Location(34.6, -117.4);
+		double origDist = packed.getDistanceRup(site);
+
+		// move a corner node towards the site and clear another node, on both surfaces
+		int lastCol = packed.getNumCols()-1;
+		Location moved = new Location(34.5, -117.3, 0.5);
+		for (StirlingGriddedSurface surf : new StirlingGriddedSurface[] { unpacked, packed }) {
+			surf.set(0, lastCol, moved);
+			surf.set(1, 1, null);
+			surf.clearCache();
+		}
+		assertTrue(packed.isPackedStorage());
+		assertLocsEqual("moved node", moved, packed.get(0, lastCol));
+		assertNull(packed.get(1, 1));
+		assertFalse(packed.exist(1, 1));
+		assertTrue(packed.exist(0, lastCol));
+		assertSurfacesEqual(unpacked, packed);
+
+		// restore the cleared node
+		Location node = buildSurface(false).get(1, 1);
+		packed.set(1, 1, node);
+		unpacked.set(1, 1, node);
+		assertSurfacesEqual(unpacked, packed);
+
+		// distance tiles are rebuilt
+		double newDist = packed.getDistanceRup(site);
+		assertTrue(newDist < origDist);
+		assertEquals(unpacked.getDistanceRup(site), newDist, 0d);
+
+		packed.setPackedStorage(false);
+		assertSurfacesEqual(unpacked, packed);
+	}
+
+	@Test(expected=ArrayIndexOutOfBoundsException.class)
+	public void testSetOutOfBounds() {
+		StirlingGriddedSurface packed = buildSurface(true);
+		packed.set(packed.getNumRows(), 0, new Location(34, -118));
+	}
+
+	@Test
+	public void testSubsetOfPacked() {
+		StirlingGriddedSurface unpacked = buildSurface(false);
+		StirlingGriddedSurface packed = buildSurface(true);
+		GriddedSubsetSurface expected = unpacked.getNthSubsetSurface(8, 5, 4, 2, 3);
+		GriddedSubsetSurface actual = packed.getNthSubsetSurface(8, 5, 4, 2, 3);
+		assertSurfacesEqual(expected, actual);
+	}
+
+	@Test
+	public void testDefault() {
+		AbstractEvenlyGriddedSurface.setPackedStorageDefault(true);
+		assertTrue(AbstractEvenlyGriddedSurface.isPackedStorageDefault());
+		FaultTrace trace = new FaultTrace("test");
+		trace.add(new Location(34, -118));
+		trace.add(new Location(34.3, -117.7));
+		StirlingGriddedSurface surf = new StirlingGriddedSurface(trace, 50, 0, 12, 1d);
+		assertTrue(surf.isPackedStorage());
+		// copies keep the storage mode
+		assertTrue(surf.copyShallow().isPackedStorage());
+
+		AbstractEvenlyGriddedSurface.setPackedStorageDefault(false);
+		StirlingGriddedSurface unpacked = new StirlingGriddedSurface(trace, 50, 0, 12, 1d);
+		assertFalse(unpacked.isPackedStorage());
+		assertSurfacesEqual(unpacked, surf);
+		LocationList perim = surf.getEvenlyDiscritizedPerimeter();
+		assertListsEqual("evenly discretized perimeter", unpacked.getEvenlyDiscritizedPerimeter(), perim);
+	}
+
+}
@@ -0,0 +1,144 @@
+package org.opensha.sha.faultSurface.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensha.commons.geo.Location;
+import org.opensha.sha.faultSurface.FaultTrace;
+import org.opensha.sha.faultSurface.StirlingGriddedSurface;
+
+public class StripedDistanceCacheTest {
+
+	private static StirlingGriddedSurface surf;
+	private static List<Location> sites;
+	private static double[][] expected;
+
+	@BeforeClass
+	public static void setUpBeforeClass() {
+		FaultTrace trace = new FaultTrace("test");
+		trace.add(new Location(34, -118));
+		trace.add(new Location(34.3, -117.7));
+		trace.add(new Location(34.5, -117.2));
+		surf = new StirlingGriddedSurface(trace, 60, 0, 12, 1d);
+
+		Random r = new Random(12345);
+		sites = new ArrayList<>();
+		for (int i=0; i<50; i++)
+			sites.add(new Location(33.5 + 1.5*r.nextDouble(), -118.5 + 1.5*r.nextDouble()));
+		expected = new double[sites.size()][];
+		for (int i=0; i<sites.size(); i++)
+			expected[i] = calcDirect(sites.get(i));
+	}
+
+	private static double[] calcDirect(Location loc) {
+		SurfaceDistances dists = surf.calcDistances(loc);
+		return new double[] { dists.getDistanceRup(), dists.getDistanceJB(), dists.getDistanceSeis(),
+				surf.calcQuickDistance(loc), surf.calcDistanceX(loc) };
+	}
+
+	private static double[] calcCached(SurfaceDistanceCache cache, Location loc) {
+		SurfaceDistances dists = cache.getSurfaceDistances(loc);
+		return new double[] { dists.getDistanceRup(), dists.getDistanceJB(), dists.getDistanceSeis(),
+				cache.getQuickDistance(loc), cache.getDistanceX(loc) };
+	}
+
+	private static void check(String message, double[] expected, double[] actual) {
+		assertArrayEquals(message, expected, actual, 0d);
+	}
+
+	@Test
+	public void testHitsAndMisses() {
+		StripedDistanceCache cache = new StripedDistanceCache(surf, 4);
+		assertEquals(8, cache.getNumStripes());
+		assertEquals(16, new StripedDistanceCache(surf, 5).getNumStripes());
+		assertTrue(Double.isNaN(cache.getHitRate()));
+
+		Location loc = sites.get(0);
+		check("first request", expected[0], calcCached(cache, loc));
+		// one miss for each distance type
+		assertEquals(0, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+
+		// equal but not identical location is a hit
+		Location copy = new Location(loc.getLatitude(), loc.getLongitude(), loc.getDepth());
+		check("repeat request", expected[0], calcCached(cache, copy));
+		assertEquals(3, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+		assertEquals(0.5, cache.getHitRate(), 0d);
+
+		// distance types requested separately are merged into the same record
+		cache.clearCache();
+		assertEquals(expected[0][4], cache.getDistanceX(loc), 0d);
+		assertEquals(expected[0][3], cache.getQuickDistance(loc), 0d);
+		assertEquals(expected[0][0], cache.getSurfaceDistances(loc).getDistanceRup(), 0d);
+		assertEquals(6, cache.getMissCount());
+		check("after merge", expected[0], calcCached(cache, loc));
+		assertEquals(6, cache.getHitCount());
+	}
+
+	@Test
+	public void testCollisions() {
+		// a single pair of slots, so most sites evict each other
+		StripedDistanceCache cache = new StripedDistanceCache(surf, 1);
+		assertEquals(2, cache.getNumStripes());
+		for (int pass=0; pass<3; pass++)
+			for (int i=0; i<sites.size(); i++)
+				check("site "+i+", pass "+pass, expected[i], calcCached(cache, sites.get(i)));
+		assertTrue(cache.getMissCount() > 0);
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		int threads = 8;
+		// fewer stripes than threads so that threads share and overwrite slots
+		StripedDistanceCache cache = new StripedDistanceCache(surf, 2);
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int t=0; t<threads; t++) {
+				Random r = new Random(t);
+				futures.add(exec.submit(new Callable<Integer>() {
+
+					@Override
+					public Integer call() throws Exception {
+						for (int i=0; i<5000; i++) {
+							int index = r.nextInt(sites.size());
+							Location loc = sites.get(index);
+							// mix of record and primitive requests in varying order
+							double[] actual;
+							switch (r.nextInt(3)) {
+							case 0:
+								actual = calcCached(cache, loc);
+								break;
+							case 1:
+								assertEquals(expected[index][3], cache.getQuickDistance(loc), 0d);
+								assertEquals(expected[index][4], cache.getDistanceX(loc), 0d);
+								continue;
+							default:
+								assertEquals(expected[index][4], cache.getDistanceX(loc), 0d);
+								actual = calcCached(cache, loc);
+							}
+							check("site "+index, expected[index], actual);
+						}
+						return 0;
+					}
+				}));
+			}
+			for (Future<Integer> future : futures)
+				future.get();
+		} finally {
+			exec.shutdown();
+		}
+		assertTrue(cache.getHitCount() > 0);
+	}
+
+}
@@ -0,0 +1,138 @@
+package org.opensha.sha.faultSurface.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+import org.opensha.commons.geo.LocationUtils;
+import org.opensha.sha.faultSurface.EvenlyGriddedSurface;
+import org.opensha.sha.faultSurface.FaultTrace;
+import org.opensha.sha.faultSurface.FrankelGriddedSurface;
+import org.opensha.sha.faultSurface.SimpleFaultData;
+import org.opensha.sha.faultSurface.StirlingGriddedSurface;
+
+public class GriddedSurfaceTilesTest {
+
+	private static final int[] TILE_SIZES = { 1, 3, GriddedSurfaceTiles.DEFAULT_TILE_SIZE, 1000 };
+
+	private static FaultTrace buildTrace(double... latLons) {
+		FaultTrace trace = new FaultTrace("test");
+		for (int i=0; i<latLons.length; i+=2)
+			trace.add(new Location(latLons[i], latLons[i+1]));
+		return trace;
+	}
+
+	/**
+	 * Sites near and far from the surface, on its upper edge and grid nodes, and on both the footwall and
+	 * hanging wall side, perpendicular to strike at points along the upper edge
+	 */
+	private static LocationList buildSites(EvenlyGriddedSurface surf) {
+		LocationList sites = new LocationList();
+		int lastCol = surf.getNumCols()-1;
+		Location first = surf.getLocation(0, 0);
+		Location last = surf.getLocation(0, lastCol);
+		double strike = LocationUtils.azimuthRad(first, last);
+		// towards the hanging wall (surface dip direction isn't set for all surface types)
+		double dipDir = strike + 0.5*Math.PI;
+		for (int col=0; col<=lastCol; col+=Integer.max(1, lastCol/5)) {
+			Location edgeLoc = surf.getLocation(0, col);
+			edgeLoc = new Location(edgeLoc.getLatitude(), edgeLoc.getLongitude());
+			sites.add(edgeLoc);
+			for (double dist : new double[] { 0.3, 1, 2.5, 5, 10, 20, 50, 300 }) {
+				// hanging wall side
+				sites.add(LocationUtils.location(edgeLoc, dipDir, dist));
+				// footwall side
+				sites.add(LocationUtils.location(edgeLoc, dipDir + Math.PI, dist));
+			}
+		}
+		// beyond the ends
+		for (double dist : new double[] { 0.5, 3, 30, 200 }) {
+			sites.add(LocationUtils.location(new Location(last.getLatitude(), last.getLongitude()), strike, dist));
+			sites.add(LocationUtils.location(new Location(first.getLatitude(), first.getLongitude()),
+					strike + Math.PI, dist));
+		}
+		// grid nodes, both at the surface and at depth
+		for (int row=0; row<surf.getNumRows(); row+=3) {
+			for (int col=0; col<surf.getNumCols(); col+=4) {
+				Location node = surf.getLocation(row, col);
+				sites.add(new Location(node.getLatitude(), node.getLongitude()));
+				sites.add(node);
+			}
+		}
+		// between grid nodes
+		Location node1 = surf.getLocation(surf.getNumRows()/2, surf.getNumCols()/2);
+		Location node2 = surf.getLocation(Integer.min(surf.getNumRows()-1, surf.getNumRows()/2 + 1),
+				surf.getNumCols()/2 + 1);
+		sites.add(new Location(0.5*(node1.getLatitude() + node2.getLatitude()),
+				0.5*(node1.getLongitude() + node2.getLongitude())));
+		return sites;
+	}
+
+	private static void checkSurface(EvenlyGriddedSurface surf) {
+		LocationList sites = buildSites(surf);
+		int numZeroJB = 0;
+		for (int tileSize : TILE_SIZES) {
+			GriddedSurfaceTiles tiles = new GriddedSurfaceTiles(surf, tileSize);
+			for (Location site : sites) {
+				double[] expected = GriddedSurfaceUtils.getPropagationDistances(surf, site);
+				double[] actual = GriddedSurfaceUtils.getPropagationDistances(surf, tiles, site);
+				String message = "tileSize="+tileSize+", site="+site;
+				assertArrayEquals(message, expected, actual, 0d);
+
+				// tiles alone give the minimum horizontal distance
+				double[] raw = tiles.calcDistances(site);
+				assertEquals(message, expected[0], raw[0], 0d);
+				assertEquals(message, expected[2], raw[2], 0d);
+				assertTrue(message, expected[1] == 0d || expected[1] == raw[1]);
+
+				assertTrue(message, tiles.getDistanceRupLowerBound(site) <= expected[0]);
+				assertTrue(message, tiles.getHorzDistanceLowerBound(site) <= raw[1]);
+				if (expected[1] == 0d)
+					numZeroJB++;
+			}
+		}
+		// sites on the upper edge are always within the surface projection
+		assertTrue(numZeroJB > 0);
+	}
+
+	@Test
+	public void testPlanar() {
+		checkSurface(new StirlingGriddedSurface(buildTrace(34, -118, 34.5, -117.5), 40, 0, 15, 1d));
+	}
+
+	@Test
+	public void testMultiSegmentTrace() {
+		checkSurface(new StirlingGriddedSurface(buildTrace(34, -118, 34.3, -117.7, 34.35, -117.2), 55, 2, 12, 1d));
+	}
+
+	@Test
+	public void testVertical() {
+		checkSurface(new StirlingGriddedSurface(buildTrace(34, -118, 34.3, -117.7), 90, 0, 12, 1d));
+	}
+
+	@Test
+	public void testShallowSingleRow() {
+		StirlingGriddedSurface surf = new StirlingGriddedSurface(buildTrace(34, -118, 34.3, -117.7), 90, 1, 1, 1d);
+		assertEquals(1, surf.getNumRows());
+		checkSurface(surf);
+	}
+
+	@Test
+	public void testStitched() {
+		List<SimpleFaultData> sects = new ArrayList<>();
+		sects.add(new SimpleFaultData(60, 14, 0, buildTrace(34, -118, 34.2, -117.8)));
+		sects.add(new SimpleFaultData(40, 12, 1, buildTrace(34.2, -117.8, 34.3, -117.4)));
+		sects.add(new SimpleFaultData(70, 15, 0, buildTrace(34.3, -117.4, 34.6, -117.2)));
+		checkSurface(new StirlingGriddedSurface(sects, 1d));
+	}
+
+	@Test
+	public void testFrankel() {
+		checkSurface(new FrankelGriddedSurface(buildTrace(34, -118, 34.3, -117.7, 34.35, -117.2), 50, 0, 13, 1d));
+	}
+
+}
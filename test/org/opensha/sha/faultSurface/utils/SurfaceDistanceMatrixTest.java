@@ -0,0 +1,168 @@
+package org.opensha.sha.faultSurface.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationUtils;
+import org.opensha.sha.faultSurface.FaultTrace;
+import org.opensha.sha.faultSurface.PointSurface;
+import org.opensha.sha.faultSurface.RuptureSurface;
+import org.opensha.sha.faultSurface.StirlingGriddedSurface;
+
+public class SurfaceDistanceMatrixTest {
+
+	private static ForkJoinPool pool;
+	private static List<RuptureSurface> surfaces;
+	private static double[][] expected;
+
+	@BeforeClass
+	public static void setUpBeforeClass() {
+		pool = new ForkJoinPool(4);
+		surfaces = new ArrayList<>();
+		// connected sections sharing trace end points
+		surfaces.add(new StirlingGriddedSurface(buildTrace(34, -118, 34.2, -117.8), 60, 0, 12, 1d));
+		surfaces.add(new StirlingGriddedSurface(buildTrace(34.2, -117.8, 34.3, -117.5), 60, 0, 12, 1d));
+		surfaces.add(new StirlingGriddedSurface(buildTrace(34.3, -117.5, 34.5, -117.3, 34.6, -117), 90, 0, 14, 1d));
+		// nearby parallel and crossing faults
+		surfaces.add(new StirlingGriddedSurface(buildTrace(34.1, -118.1, 34.3, -117.9), 45, 1, 10, 1d));
+		surfaces.add(new StirlingGriddedSurface(buildTrace(34.5, -117.6, 34.1, -117.4), 80, 0, 15, 1d));
+		// deep, below another
+		surfaces.add(new StirlingGriddedSurface(buildTrace(34, -118, 34.2, -117.8), 90, 20, 25, 1d));
+		// far away
+		surfaces.add(new StirlingGriddedSurface(buildTrace(36, -120, 36.3, -119.8), 70, 0, 12, 1d));
+		surfaces.add(new StirlingGriddedSurface(buildTrace(36.4, -119.7, 36.6, -119.5), 70, 0, 12, 1d));
+		// subset surface and point surface
+		surfaces.add(((StirlingGriddedSurface)surfaces.get(2)).getNthSubsetSurface(8, 5, 4, 2, 3));
+		surfaces.add(new PointSurface(new Location(34.25, -117.6, 5d)));
+
+		int num = surfaces.size();
+		expected = new double[num][num];
+		for (int i=0; i<num; i++)
+			for (int j=0; j<num; j++)
+				expected[i][j] = i == j ? 0d : bruteForce(surfaces.get(i), surfaces.get(j));
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() {
+		pool.shutdown();
+	}
+
+	private static FaultTrace buildTrace(double... latLons) {
+		FaultTrace trace = new FaultTrace("test");
+		for (int i=0; i<latLons.length; i+=2)
+			trace.add(new Location(latLons[i], latLons[i+1]));
+		return trace;
+	}
+
+	private static double bruteForce(RuptureSurface surf1, RuptureSurface surf2) {
+		double min = Double.POSITIVE_INFINITY;
+		for (Location loc1 : surf1.getEvenlyDiscritizedListOfLocsOnSurface())
+			for (Location loc2 : surf2.getEvenlyDiscritizedListOfLocsOnSurface())
+				min = Math.min(min, LocationUtils.linearDistanceFast(loc1, loc2));
+		return min;
+	}
+
+	private static void checkMatrix(SurfaceDistanceMatrix matrix, double maxDistance) {
+		int num = surfaces.size();
+		assertEquals(num, matrix.size());
+		assertEquals(maxDistance, matrix.getMaxDistance(), 0d);
+		int numPairs = 0;
+		for (int i=0; i<num; i++) {
+			List<Integer> expectedNeighbors = new ArrayList<>();
+			for (int j=0; j<num; j++) {
+				String message = "i="+i+", j="+j;
+				if (i == j) {
+					assertEquals(message, 0d, matrix.get(i, j), 0d);
+				} else if (expected[i][j] <= maxDistance) {
+					assertEquals(message, expected[i][j], matrix.get(i, j), 0d);
+					assertTrue(message, matrix.isWithinMaxDistance(i, j));
+					expectedNeighbors.add(j);
+					if (j > i)
+						numPairs++;
+				} else {
+					assertEquals(message, Double.POSITIVE_INFINITY, matrix.get(i, j), 0d);
+					assertFalse(message, matrix.isWithinMaxDistance(i, j));
+				}
+			}
+			int[] neighbors = matrix.getNeighbors(i);
+			double[] dists = matrix.getNeighborDistances(i);
+			assertEquals(expectedNeighbors.size(), neighbors.length);
+			for (int n=0; n<neighbors.length; n++) {
+				assertEquals(expectedNeighbors.get(n).intValue(), neighbors[n]);
+				assertEquals(expected[i][neighbors[n]], dists[n], 0d);
+			}
+		}
+		assertEquals(numPairs, matrix.getNumPairs());
+	}
+
+	@Test
+	public void testPairDistances() {
+		int num = surfaces.size();
+		for (int i=0; i<num; i++) {
+			for (int j=i+1; j<num; j++) {
+				RuptureSurface surf1 = surfaces.get(i);
+				RuptureSurface surf2 = surfaces.get(j);
+				assertEquals(expected[i][j], GriddedSurfaceUtils.getMinDistanceBetweenSurfaces(surf1, surf2), 0d);
+				assertEquals(expected[i][j], SurfaceDistanceMatrix.calcMinDistance(surf2, surf1), 0d);
+			}
+		}
+		// touching sections, within the grid spacing
+		assertTrue(expected[0][1] < 1d);
+	}
+
+	@Test
+	public void testMatrix() {
+		for (double maxDistance : new double[] { 0d, 5d, 20d, 100d, 1000d }) {
+			checkMatrix(SurfaceDistanceMatrix.calc(surfaces, maxDistance, null), maxDistance);
+			checkMatrix(SurfaceDistanceMatrix.calc(surfaces, maxDistance, pool), maxDistance);
+		}
+	}
+
+	@Test
+	public void testCutoffEdge() {
+		// max distance exactly at, and just below, the distance of a pair
+		double dist = expected[0][3];
+		assertTrue(dist > 0);
+		SurfaceDistanceMatrix matrix = SurfaceDistanceMatrix.calc(surfaces, dist, pool);
+		checkMatrix(matrix, dist);
+		assertEquals(dist, matrix.get(0, 3), 0d);
+		assertEquals(dist, matrix.get(3, 0), 0d);
+
+		double below = Math.nextDown(dist);
+		matrix = SurfaceDistanceMatrix.calc(surfaces, below, pool);
+		checkMatrix(matrix, below);
+		assertFalse(matrix.isWithinMaxDistance(0, 3));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		SurfaceDistanceMatrix matrix = SurfaceDistanceMatrix.calc(surfaces, 100d, pool);
+		assertTrue(matrix.getNumPairs() > 0);
+		File file = File.createTempFile("dist_matrix", ".csv");
+		file.deleteOnExit();
+		matrix.writeToFile(file);
+		SurfaceDistanceMatrix loaded = SurfaceDistanceMatrix.readFile(file);
+		assertEquals(matrix.getNumPairs(), loaded.getNumPairs());
+		checkMatrix(loaded, 100d);
+		for (int i=0; i<matrix.size(); i++) {
+			assertArrayEquals(matrix.getNeighbors(i), loaded.getNeighbors(i));
+			assertArrayEquals(matrix.getNeighborDistances(i), loaded.getNeighborDistances(i), 0d);
+		}
+		file.delete();
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNegativeMaxDistance() {
+		SurfaceDistanceMatrix.calc(surfaces, -1d, null);
+	}
+
+}
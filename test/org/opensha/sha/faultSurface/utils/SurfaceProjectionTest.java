@@ -0,0 +1,227 @@
+package org.opensha.sha.faultSurface.utils;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Area;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opensha.commons.geo.BorderType;
+import org.opensha.commons.geo.Location;
+import org.opensha.commons.geo.LocationList;
+import org.opensha.commons.geo.Region;
+import org.opensha.commons.geo.RegionIndex;
+import org.opensha.sha.faultSurface.CompoundSurface;
+import org.opensha.sha.faultSurface.EvenlyGriddedSurface;
+import org.opensha.sha.faultSurface.FaultTrace;
+import org.opensha.sha.faultSurface.RuptureSurface;
+import org.opensha.sha.faultSurface.SimpleFaultData;
+import org.opensha.sha.faultSurface.StirlingGriddedSurface;
+
+public class SurfaceProjectionTest {
+
+	private static FaultTrace buildTrace(double... latLons) {
+		FaultTrace trace = new FaultTrace("test");
+		for (int i=0; i<latLons.length; i+=2)
+			trace.add(new Location(latLons[i], latLons[i+1]));
+		return trace;
+	}
+
+	/**
+	 * Perimeter vertices, edge midpoints, points just either side of each edge, and a regular grid of
+	 * points over (and beyond) the perimeter bounds
+	 */
+	private static LocationList buildTestLocs(LocationList perimeter) {
+		LocationList locs = new LocationList();
+		double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+		double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+		for (int i=0; i<perimeter.size(); i++) {
+			Location loc = perimeter.get(i);
+			Location next = perimeter.get((i+1) % perimeter.size());
+			double lat = loc.getLatitude();
+			double lon = loc.getLongitude();
+			minLat = Math.min(minLat, lat);
+			maxLat = Math.max(maxLat, lat);
+			minLon = Math.min(minLon, lon);
+			maxLon = Math.max(maxLon, lon);
+			// vertex
+			locs.add(new Location(lat, lon));
+			// edge midpoint
+			double midLat = 0.5*(lat + next.getLatitude());
+			double midLon = 0.5*(lon + next.getLongitude());
+			locs.add(new Location(midLat, midLon));
+			// just either side of the edge
+			for (double offset : new double[] { -1e-7, 1e-7 }) {
+				locs.add(new Location(midLat + offset, midLon));
+				locs.add(new Location(midLat, midLon + offset));
+			}
+		}
+		double latBuffer = 0.2*(maxLat - minLat) + 0.01;
+		double lonBuffer = 0.2*(maxLon - minLon) + 0.01;
+		int num = 60;
+		for (int i=0; i<=num; i++) {
+			double lat = minLat - latBuffer + i*(maxLat - minLat + 2*latBuffer)/num;
+			for (int j=0; j<=num; j++) {
+				double lon = minLon - lonBuffer + j*(maxLon - minLon + 2*lonBuffer)/num;
+				locs.add(new Location(lat, lon));
+			}
+		}
+		return locs;
+	}
+
+	/**
+	 * Checks the projection contains test against the uncached perimeter {@link Area}, and returns the
+	 * number of test locations inside
+	 */
+	private static int checkContains(SurfaceProjection projection, LocationList perimeter) {
+		Area area = GriddedSurfaceUtils.buildPerimeterArea(perimeter);
+		int numInside = 0;
+		for (Location loc : buildTestLocs(perimeter)) {
+			boolean expected = area.contains(loc.getLongitude(), loc.getLatitude());
+			assertEquals("loc="+loc, expected, projection.contains(loc));
+			if (expected)
+				numInside++;
+		}
+		return numInside;
+	}
+
+	private static void checkSurface(EvenlyGriddedSurface surf) {
+		LocationList perimeter = surf.getPerimeter();
+		SurfaceProjection projection = new SurfaceProjection(surf);
+		assertTrue(checkContains(projection, perimeter) > 0);
+
+		// cached projection used for distance JB
+		GriddedSurfaceTiles tiles = new GriddedSurfaceTiles(surf);
+		SurfaceProjection cached = tiles.getSurfaceProjection();
+		assertSame(cached, tiles.getSurfaceProjection());
+		checkContains(cached, perimeter);
+		for (Location loc : buildTestLocs(perimeter))
+			assertArrayEquals("loc="+loc, GriddedSurfaceUtils.getPropagationDistances(surf, loc),
+					GriddedSurfaceUtils.getPropagationDistances(surf, tiles, loc), 0d);
+	}
+
+	@Test
+	public void testPlanar() {
+		checkSurface(new StirlingGriddedSurface(buildTrace(34, -118, 34.5, -117.5), 40, 0, 15, 1d));
+	}
+
+	@Test
+	public void testConcaveSurface() {
+		// sharp bend in the trace, so the perimeter is concave on the inside of the bend
+		checkSurface(new StirlingGriddedSurface(buildTrace(34, -118, 34.4, -117.8, 34.1, -117.4), 45, 0, 14, 1d));
+	}
+
+	@Test
+	public void testStitched() {
+		List<SimpleFaultData> sects = new ArrayList<>();
+		sects.add(new SimpleFaultData(60, 14, 0, buildTrace(34, -118, 34.2, -117.8)));
+		sects.add(new SimpleFaultData(40, 12, 0, buildTrace(34.2, -117.8, 34.3, -117.4)));
+		sects.add(new SimpleFaultData(70, 15, 0, buildTrace(34.3, -117.4, 34.6, -117.2)));
+		checkSurface(new StirlingGriddedSurface(sects, 1d));
+	}
+
+	@Test
+	public void testConcavePerimeter() {
+		// U shaped perimeter, with axis aligned edges and vertices shared by the grid test points
+		LocationList perimeter = new LocationList();
+		perimeter.add(new Location(34, -118));
+		perimeter.add(new Location(34, -117));
+		perimeter.add(new Location(35, -117));
+		perimeter.add(new Location(35, -117.3));
+		perimeter.add(new Location(34.3, -117.3));
+		perimeter.add(new Location(34.3, -117.7));
+		perimeter.add(new Location(35, -117.7));
+		perimeter.add(new Location(35, -118));
+		StirlingGriddedSurface surf = new StirlingGriddedSurface(buildTrace(34, -118, 34, -117), 90, 0, 5, 1d);
+		SurfaceProjection projection = new SurfaceProjection(surf, perimeter);
+		assertTrue(checkContains(projection, perimeter) > 0);
+		// inside the notch of the U
+		assertFalse(projection.contains(new Location(34.6, -117.5)));
+		// arms of the U
+		assertTrue(projection.contains(new Location(34.6, -117.85)));
+		assertTrue(projection.contains(new Location(34.6, -117.15)));
+	}
+
+	@Test
+	public void testCompound() {
+		List<RuptureSurface> surfs = new ArrayList<>();
+		List<SurfaceProjection> projections = new ArrayList<>();
+		List<Area> areas = new ArrayList<>();
+		LocationList allPerimeters = new LocationList();
+		for (FaultTrace trace : new FaultTrace[] { buildTrace(34, -118, 34.3, -117.7),
+				buildTrace(34.3, -117.7, 34.3, -117.2), buildTrace(34.3, -117.2, 34.0, -116.9) }) {
+			StirlingGriddedSurface surf = new StirlingGriddedSurface(trace, 50, 0, 12, 1d, 200);
+			surfs.add(surf);
+			projections.add(new SurfaceProjection(surf));
+			areas.add(GriddedSurfaceUtils.buildPerimeterArea(surf.getPerimeter()));
+			allPerimeters.addAll(surf.getPerimeter());
+		}
+		CompoundSurface compound = new CompoundSurface(surfs);
+		int numZero = 0;
+		for (Location loc : buildTestLocs(allPerimeters)) {
+			boolean expected = false;
+			for (int i=0; i<surfs.size(); i++) {
+				boolean inside = areas.get(i).contains(loc.getLongitude(), loc.getLatitude());
+				assertEquals("loc="+loc, inside, projections.get(i).contains(loc));
+				expected |= inside;
+			}
+			double distJB = compound.getDistanceJB(loc);
+			if (expected) {
+				assertEquals("loc="+loc, 0d, distJB, 0d);
+				numZero++;
+			} else {
+				double minNodeDist = Double.POSITIVE_INFINITY;
+				for (RuptureSurface surf : surfs)
+					minNodeDist = Math.min(minNodeDist, surf.getDistanceJB(loc));
+				assertEquals("loc="+loc, minNodeDist, distJB, 0d);
+			}
+		}
+		assertTrue(numZero > 0);
+	}
+
+	@Test
+	public void testFractionInRegion() {
+		StirlingGriddedSurface surf = new StirlingGriddedSurface(
+				buildTrace(34, -118, 34.3, -117.7, 34.35, -117.2), 50, 0, 12, 1d);
+		SurfaceProjection projection = new SurfaceProjection(surf);
+		List<Region> regions = new ArrayList<>();
+		// enclosing, disjoint and partially overlapping rectangles
+		regions.add(new Region(new Location(33, -119), new Location(35, -116)));
+		regions.add(new Region(new Location(36, -119), new Location(37, -116)));
+		regions.add(new Region(new Location(33, -117.5), new Location(35, -116)));
+		// non rectangular region enclosing the surface
+		LocationList border = new LocationList();
+		border.add(new Location(33, -119));
+		border.add(new Location(33, -116));
+		border.add(new Location(35.5, -116));
+		border.add(new Location(35, -119));
+		regions.add(new Region(border, BorderType.MERCATOR_LINEAR));
+		for (Region region : regions) {
+			int numInside = 0;
+			for (Location loc : surf.getEvenlyDiscritizedListOfLocsOnSurface())
+				if (region.contains(loc))
+					numInside++;
+			double expected = (double)numInside/surf.size();
+			assertEquals(expected, GriddedSurfaceUtils.getFractionOfSurfaceInRegion(surf, projection, region), 0d);
+			assertEquals(expected, surf.getFractionOfSurfaceInRegion(region), 0d);
+			if (projection.isOutside(region))
+				assertEquals(0, numInside);
+			if (projection.isInside(region))
+				assertEquals(surf.size(), numInside);
+		}
+		assertTrue(projection.isInside(regions.get(0)));
+		assertTrue(projection.isOutside(regions.get(1)));
+		assertFalse(projection.isInside(regions.get(3)));
+	}
+
+	@Test
+	public void testIndexMinEdges() {
+		Area area = GriddedSurfaceUtils.buildPerimeterArea(new StirlingGriddedSurface(
+				buildTrace(34, -118, 34.5, -117.5), 40, 0, 15, 1d).getPerimeter());
+		assertNotNull(RegionIndex.build(area, 0));
+		assertNull(RegionIndex.build(area, Integer.MAX_VALUE));
+		assertNull(RegionIndex.build(new Area(), 0));
+	}
+
+}